@@ -0,0 +1,110 @@
+package techtest.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import techtest.myservice.codec.BetsJsonCodec;
+import techtest.originalservice.api.DecimalOdds;
+
+/**
+ * JSON (de)serialisation of the "/available" and "/bets" payloads, on both sides of the service:
+ * what we read from the remote service, and what we read from and write to our clients.
+ * 
+ * The ObjectMapper is built the same way Spring Boot builds the one used by the message converters.
+ * The *Streaming benchmarks do the same job for "/bets" with BetsJsonCodec instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    ObjectMapper mapper;
+    BetsJsonCodec codec = new BetsJsonCodec();
+
+    byte[] remoteAvailableJson;
+    byte[] remoteBetsResponseJson;
+    byte[] betsRequestJson;
+    techtest.myservice.dto.Bet[] available;
+    techtest.myservice.dto.BetsResponse betsResponse;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+
+        remoteAvailableJson = Files.readAllBytes(Paths.get(StubFiles.folder(), "available"));
+        remoteBetsResponseJson = Files.readAllBytes(Paths.get(StubFiles.folder(), "bets"));
+
+        techtest.originalservice.dto.Bet[] remote = mapper.readValue(remoteAvailableJson,
+                techtest.originalservice.dto.Bet[].class);
+        available = new techtest.myservice.dto.Bet[remote.length];
+        for (int i = 0; i < remote.length; i++) {
+            techtest.originalservice.dto.Bet bet = remote[i];
+            BigDecimal odds = DecimalOdds.toDecimal(bet.getOdds().getNumerator(), bet.getOdds().getDenominator());
+            available[i] = new techtest.myservice.dto.Bet(bet.getBet_id(), bet.getEvent(), bet.getName(), odds);
+        }
+
+        betsRequestJson = mapper.writeValueAsBytes(
+                new techtest.myservice.dto.BetsRequest(1, new BigDecimal("11"), BigDecimal.TEN));
+        betsResponse = new techtest.myservice.dto.BetsResponse(1, "World Cup 2018", "England", new BigDecimal("11"),
+                BigDecimal.TEN, 314442);
+    }
+
+    @Benchmark
+    public techtest.originalservice.dto.Bet[] readRemoteAvailable() throws IOException {
+        return mapper.readValue(remoteAvailableJson, techtest.originalservice.dto.Bet[].class);
+    }
+
+    @Benchmark
+    public byte[] writeAvailable() throws IOException {
+        return mapper.writeValueAsBytes(available);
+    }
+
+    @Benchmark
+    public techtest.myservice.dto.BetsRequest readBetsRequest() throws IOException {
+        return mapper.readValue(betsRequestJson, techtest.myservice.dto.BetsRequest.class);
+    }
+
+    @Benchmark
+    public techtest.originalservice.dto.BetsResponse readRemoteBetsResponse() throws IOException {
+        return mapper.readValue(remoteBetsResponseJson, techtest.originalservice.dto.BetsResponse.class);
+    }
+
+    @Benchmark
+    public byte[] writeBetsResponse() throws IOException {
+        return mapper.writeValueAsBytes(betsResponse);
+    }
+
+    @Benchmark
+    public techtest.myservice.api.BetsRequest readBetsRequestStreaming() throws IOException {
+        return codec.readBetsRequest(new ByteArrayInputStream(betsRequestJson));
+    }
+
+    /**
+     * Reading the remote service's response and writing ours, which with data binding is
+     * readRemoteBetsResponse() plus writeBetsResponse().
+     */
+    @Benchmark
+    public byte[] transcodeBetsResponseStreaming() throws IOException {
+        return codec.read(new ByteArrayInputStream(remoteBetsResponseJson));
+    }
+}
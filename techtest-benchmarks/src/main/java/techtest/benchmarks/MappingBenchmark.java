@@ -0,0 +1,76 @@
+package techtest.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import techtest.myservice.conversion.FractionalOddsToDecimalOddsConverter;
+import techtest.myservice.conversion.OriginalServiceBetToMyServiceBetConverter;
+import techtest.originalservice.api.Odds;
+
+/**
+ * Mapping between the DTOs and the api objects of both services.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MappingBenchmark {
+    OriginalServiceBetToMyServiceBetConverter inwardBetConverter;
+
+    techtest.myservice.dto.BetsRequest myDtoBetsRequest;
+    techtest.myservice.api.Bet myApiBet;
+    techtest.myservice.api.BetsResponse myApiBetsResponse;
+    techtest.originalservice.api.Bet origApiBet;
+    techtest.originalservice.dto.Bet origDtoBet;
+
+    @Setup
+    public void setup() {
+        inwardBetConverter = new OriginalServiceBetToMyServiceBetConverter(new FractionalOddsToDecimalOddsConverter());
+
+        myDtoBetsRequest = new techtest.myservice.dto.BetsRequest(1, new BigDecimal("11"), BigDecimal.TEN);
+        myApiBet = new techtest.myservice.api.Bet(1, "World Cup 2018", "England", new BigDecimal("11"));
+        myApiBetsResponse = new techtest.myservice.api.BetsResponse(1, "World Cup 2018", "England",
+                new BigDecimal("11"), BigDecimal.TEN, 314442);
+        origApiBet = new techtest.originalservice.api.Bet(1, "World Cup 2018", "England", new Odds(10, 1));
+        origDtoBet = new techtest.originalservice.dto.Bet(1, "World Cup 2018", "England",
+                new techtest.originalservice.dto.Odds(10, 1));
+    }
+
+    @Benchmark
+    public techtest.myservice.api.BetsRequest myDtoBetsRequest_toApi() {
+        return myDtoBetsRequest.toApi();
+    }
+
+    @Benchmark
+    public techtest.myservice.dto.Bet myDtoBet_fromApi() {
+        return new techtest.myservice.dto.Bet(myApiBet);
+    }
+
+    @Benchmark
+    public techtest.myservice.dto.BetsResponse myDtoBetsResponse_fromApi() {
+        return new techtest.myservice.dto.BetsResponse(myApiBetsResponse);
+    }
+
+    @Benchmark
+    public techtest.myservice.api.Bet origApiBet_toMyApiBet() {
+        return inwardBetConverter.convert(origApiBet);
+    }
+
+    @Benchmark
+    public techtest.originalservice.api.Bet origDtoBet_toApi() {
+        return origDtoBet.toApi();
+    }
+}
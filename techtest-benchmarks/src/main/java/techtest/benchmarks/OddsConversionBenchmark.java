@@ -0,0 +1,86 @@
+package techtest.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import techtest.myservice.conversion.DecimalOddsToFractionalOddsConverter;
+import techtest.myservice.conversion.FractionalOddsLadder;
+import techtest.myservice.conversion.FractionalOddsToDecimalOddsConverter;
+import techtest.originalservice.api.DecimalOdds;
+import techtest.originalservice.api.Odds;
+
+/**
+ * Fractional to decimal odds conversion, the odds check, and decimal to fractional conversion with
+ * and without the memo cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OddsConversionBenchmark {
+    FractionalOddsToDecimalOddsConverter f2d;
+    DecimalOddsToFractionalOddsConverter d2fCached;
+    DecimalOddsToFractionalOddsConverter d2fUncached;
+
+    Odds terminating = new Odds(7, 4);
+    Odds recurring = new Odds(1, 3);
+    BigDecimal submittedTerminating = new BigDecimal("2.75");
+    BigDecimal submittedRecurring = new BigDecimal("1.33");
+    BigDecimal submittedOffLadder = new BigDecimal("1.12");
+
+    @Setup
+    public void setup() {
+        f2d = new FractionalOddsToDecimalOddsConverter();
+        d2fCached = new DecimalOddsToFractionalOddsConverter();
+        d2fUncached = new DecimalOddsToFractionalOddsConverter(
+                DecimalOddsToFractionalOddsConverter.DEFAULT_MAX_DENOMINATOR, FractionalOddsLadder.STANDARD, 0);
+    }
+
+    @Benchmark
+    public BigDecimal fractionalToDecimal_terminating() {
+        return f2d.convert(terminating);
+    }
+
+    @Benchmark
+    public BigDecimal fractionalToDecimal_recurring() {
+        return f2d.convert(recurring);
+    }
+
+    @Benchmark
+    public boolean matches_terminating() {
+        return DecimalOdds.matches(terminating, submittedTerminating);
+    }
+
+    @Benchmark
+    public boolean matches_recurring() {
+        return DecimalOdds.matches(recurring, submittedRecurring);
+    }
+
+    @Benchmark
+    public Odds decimalToFractional_cached() {
+        return d2fCached.convert(submittedOffLadder);
+    }
+
+    @Benchmark
+    public Odds decimalToFractional_uncached_ladder() {
+        return d2fUncached.convert(submittedTerminating);
+    }
+
+    @Benchmark
+    public Odds decimalToFractional_uncached_continuedFraction() {
+        return d2fUncached.convert(submittedOffLadder);
+    }
+}
@@ -0,0 +1,19 @@
+package techtest.benchmarks;
+
+/**
+ * Where the benchmarks find the stub files of the remote service.
+ * 
+ * Defaults to the stub files in the techtest-original-service-client project, relative to this
+ * project. Set the "techtest.stubFileFolder" system property to run from elsewhere.
+ */
+public final class StubFiles {
+    public static final String FOLDER_PROP_NAME = "techtest.stubFileFolder";
+    public static final String DEFAULT_FOLDER = "../techtest-original-service-client/src/test/resources/techtest/originalservice/api";
+
+    private StubFiles() {
+    }
+
+    public static String folder() {
+        return System.getProperty(FOLDER_PROP_NAME, DEFAULT_FOLDER);
+    }
+}
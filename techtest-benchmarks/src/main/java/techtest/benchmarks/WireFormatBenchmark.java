@@ -0,0 +1,79 @@
+package techtest.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import techtest.myservice.dto.Bet;
+import techtest.originalservice.WireFormat;
+import techtest.originalservice.api.DecimalOdds;
+
+/**
+ * Encoding and decoding an "/available" response of catalogSize bets in each WireFormat, with an
+ * ObjectMapper configured the way Spring Boot configures the message converters' (see
+ * WireFormatConfig).
+ *
+ * The size of the payload in each format is printed in the setup, as the benchmarks only measure
+ * the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+    @Param({"JSON", "SMILE", "CBOR"})
+    WireFormat format;
+
+    @Param({"100", "10000"})
+    int catalogSize;
+
+    ObjectMapper mapper;
+    Bet[] bets;
+    byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        if (WireFormat.JSON != format) {
+            mapper = format.newObjectMapper();
+            Jackson2ObjectMapperBuilder.json().configure(mapper);
+        }
+
+        // 50 selections per event, with odds from the bookmaker ladder's range.
+        bets = new Bet[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            bets[i] = new Bet(i + 1, "Event number " + i / 50, "Selection " + i % 50,
+                    DecimalOdds.toDecimal(1 + i % 20, 1 + i % 4));
+        }
+
+        encoded = mapper.writeValueAsBytes(bets);
+        System.out.println();
+        System.out.println(format + " payload of " + catalogSize + " bets: " + encoded.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return mapper.writeValueAsBytes(bets);
+    }
+
+    @Benchmark
+    public Bet[] decode() throws IOException {
+        return mapper.readValue(encoded, Bet[].class);
+    }
+}
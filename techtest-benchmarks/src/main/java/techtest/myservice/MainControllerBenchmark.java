@@ -0,0 +1,111 @@
+package techtest.myservice;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import techtest.benchmarks.StubFiles;
+import techtest.myservice.codec.AvailableResponseCache;
+import techtest.myservice.codec.BetsJsonCodec;
+import techtest.myservice.conversion.DecimalOddsToFractionalOddsConverter;
+import techtest.myservice.conversion.FractionalOddsToDecimalOddsConverter;
+import techtest.myservice.conversion.OriginalServiceBetToMyServiceBetConverter;
+import techtest.myservice.dto.BetsRequest;
+import techtest.originalservice.CachingOriginalService;
+import techtest.originalservice.CatalogHistory;
+import techtest.originalservice.OriginalServiceStub;
+import techtest.originalservice.ResponseCompressor;
+import techtest.originalservice.api.OriginalService;
+import techtest.originalservice.metrics.ServiceMetrics;
+
+/**
+ * The whole MainController pipeline for "/available" and "/bets" against the OriginalServiceStub:
+ * read the request body, call the controller, and write the response body, as the message
+ * converters would (for "/bets" that is BetsJsonCodec). The servlet container and Spring MVC dispatch are not included.
+ * 
+ * This is in the techtest.myservice package so that it can wire the controller's fields itself.
+ * 
+ * With cached=true the stub sits behind a CachingOriginalService, as the remote service does in the
+ * "prod" profile, so the stub files are only read, and "/available" only serialized (see
+ * AvailableResponseCache), when the cache refreshes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MainControllerBenchmark {
+    @Param({"false", "true"})
+    boolean cached;
+
+    ObjectMapper mapper;
+    BetsJsonCodec codec;
+    MainController controller;
+    byte[] betsRequestJson;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+
+        OriginalService originalService = new OriginalServiceStub(StubFiles.folder(),
+                new MappingJackson2HttpMessageConverter(mapper));
+        if (cached) {
+            originalService = new CachingOriginalService(originalService, 1000, 10000);
+        }
+
+        FractionalOddsToDecimalOddsConverter f2d = new FractionalOddsToDecimalOddsConverter();
+        controller = new MainController();
+        controller.originalService = originalService;
+        controller.availableResponseCache = new AvailableResponseCache(mapper,
+                new OriginalServiceBetToMyServiceBetConverter(f2d), 1000,
+                new ResponseCompressor(false, false, ResponseCompressor.DEFAULT_MIN_SIZE, new ServiceMetrics()),
+                new CatalogHistory<>(techtest.myservice.dto.Bet::getBet_id, 64));
+        controller.d2fOddsConverter = new DecimalOddsToFractionalOddsConverter();
+        controller.betsJsonCodec = codec = new BetsJsonCodec();
+
+        betsRequestJson = mapper.writeValueAsBytes(new BetsRequest(1, new BigDecimal("11"), BigDecimal.TEN));
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public byte[] available() throws IOException {
+        return ((ResponseEntity<byte[]>) controller.available(null, null, null, null, null, null, null, null)
+                .getResult()).getBody();
+    }
+
+    /**
+     * "/available?limit=1", which is served from the CatalogIndex and the JSON of each bet.
+     */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public byte[] availableFirstBet() throws IOException {
+        return ((ResponseEntity<byte[]>) controller.available(null, null, null, "1", null, null, null, null)
+                .getResult()).getBody();
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public byte[] bets() throws IOException {
+        techtest.myservice.api.BetsRequest request = codec.readBetsRequest(new ByteArrayInputStream(betsRequestJson));
+        return ((ResponseEntity<byte[]>) controller.bets(request, null, null).getResult()).getBody();
+    }
+}
@@ -1,13 +1,25 @@
 package techtest.myservice;
 
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.RestTemplate;
 
+import techtest.originalservice.Bulkhead;
+import techtest.originalservice.CachingOriginalService;
+import techtest.originalservice.CircuitBreaker;
+import techtest.originalservice.Hedger;
+import techtest.originalservice.MeteredOriginalService;
 import techtest.originalservice.OriginalServiceClient;
+import techtest.originalservice.PooledHttpTransport;
+import techtest.originalservice.ResilientOriginalService;
 import techtest.originalservice.api.OriginalService;
+import techtest.originalservice.metrics.ServiceMetrics;
 
 @Profile("prod")
 @Configuration
@@ -16,8 +28,52 @@ public class ConfigProd {
     @Value("${techtest.remoteServiceUrl:http://skybettechtestapi.herokuapp.com}")
     private String remoteServiceUrl;
 
+    // How long a fetched list of available bets is considered fresh. It is refreshed in the
+    // background shortly before this.
+    @Value("${techtest.availableCache.ttlMillis:1000}")
+    private long availableCacheTtlMillis;
+
+    // The oldest list of available bets that will be served while a refresh is failing.
+    @Value("${techtest.availableCache.maxStaleMillis:10000}")
+    private long availableCacheMaxStaleMillis;
+
+    // Pooled, keep-alive connections to the remote service. See HttpTransportConfig.
+    @Autowired
+    PooledHttpTransport httpTransport;
+
+    // Upstream latency and errors. See MetricsConfig.
+    @Autowired
+    ServiceMetrics serviceMetrics;
+
+    // Fail fast when the remote service is failing or slow. See ResilienceConfig.
+    @Autowired
+    CircuitBreaker circuitBreaker;
+
+    @Autowired
+    Bulkhead bulkhead;
+
+    @Autowired
+    Hedger.Settings hedgeSettings;
+
+    @Autowired
+    ScheduledExecutorService hedgeScheduler;
+
     @Bean
     public OriginalService originalServiceClient() {
-        return new OriginalServiceClient(remoteServiceUrl, new RestTemplate());
+        // The async methods use the non-blocking (NIO) pool.
+        RestTemplate restTemplate = new RestTemplate(httpTransport.requestFactory());
+        AsyncRestTemplate asyncRestTemplate = new AsyncRestTemplate(httpTransport.asyncRequestFactory());
+        OriginalServiceClient client = new OriginalServiceClient(remoteServiceUrl, restTemplate, asyncRestTemplate);
+        client.setErrorCounters(serviceMetrics.getUpstreamErrors());
+        if (hedgeSettings.isEnabled()) {
+            client.setHedging(new Hedger(hedgeSettings, serviceMetrics, ServiceMetrics.UPSTREAM_AVAILABLE), hedgeScheduler);
+        }
+        // Only calls that actually go upstream are timed, so this is innermost.
+        OriginalService metered = new MeteredOriginalService(client, serviceMetrics);
+        // Calls rejected by the breaker or bulkhead are not timed, and never reach the client.
+        OriginalService resilient = new ResilientOriginalService(metered, circuitBreaker, bulkhead);
+        // Concurrent fetches of the available bets share one upstream GET, as the cache only ever has
+        // one refresh in flight.
+        return new CachingOriginalService(resilient, availableCacheTtlMillis, availableCacheMaxStaleMillis);
     }
 }
@@ -1,17 +1,63 @@
 package techtest.myservice;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 
+import techtest.myservice.codec.AvailableResponseCache;
+import techtest.myservice.codec.BetsJsonCodec;
+import techtest.myservice.codec.BetsRequestHttpMessageConverter;
 import techtest.myservice.conversion.DecimalOddsToFractionalOddsConverter;
+import techtest.myservice.conversion.FractionalOddsLadder;
 import techtest.myservice.conversion.FractionalOddsToDecimalOddsConverter;
 import techtest.myservice.conversion.OriginalServiceBetToMyServiceBetConverter;
+import techtest.myservice.dto.Bet;
+import techtest.originalservice.CatalogHistory;
+import techtest.originalservice.ResponseCompressor;
+import techtest.originalservice.metrics.ServiceMetrics;
 
 /**
  * Collection of converter beans exposed in a @Configuration class.
  */
 @Configuration
 public class ConverterConfig {
+    // The largest denominator that decimal odds not on the bookmaker ladder are converted to.
+    @Value("${techtest.odds.maxDenominator:" + DecimalOddsToFractionalOddsConverter.DEFAULT_MAX_DENOMINATOR + "}")
+    private int oddsMaxDenominator;
+
+    // How many decimal to fractional odds conversions are remembered.
+    @Value("${techtest.odds.maxCacheSize:" + DecimalOddsToFractionalOddsConverter.DEFAULT_MAX_CACHE_SIZE + "}")
+    private int oddsMaxCacheSize;
+
+    // How long clients may cache "/available" for. Defaults to the TTL of the cached available bets.
+    @Value("${techtest.availableResponse.maxAgeMillis:${techtest.availableCache.ttlMillis:1000}}")
+    private long availableMaxAgeMillis;
+
+    // Whether large JSON responses are compressed for clients that accept it. Was
+    // "techtest.availableResponse.gzip", which is still read.
+    @Value("${techtest.compression.enabled:${techtest.availableResponse.gzip:true}}")
+    private boolean compressionEnabled;
+
+    // Whether deflate is offered as well as gzip.
+    @Value("${techtest.compression.deflate:false}")
+    private boolean compressionDeflate;
+
+    // The smallest response body, in bytes, that is compressed.
+    @Value("${techtest.compression.minSize:" + ResponseCompressor.DEFAULT_MIN_SIZE + "}")
+    private int compressionMinSize;
+
+    // How many changes to the available bets back "/available?since=" can send a delta for.
+    @Value("${techtest.availableHistory.size:64}")
+    private int availableHistorySize;
+
+    @Autowired
+    MappingJackson2HttpMessageConverter httpMessageConverter;
+
+    @Autowired
+    ServiceMetrics serviceMetrics;
+
     @Bean
     public FractionalOddsToDecimalOddsConverter fractionalOddsToDecimalOddsConverter() {
         return new FractionalOddsToDecimalOddsConverter();
@@ -19,7 +65,31 @@ public class ConverterConfig {
 
     @Bean
     public DecimalOddsToFractionalOddsConverter decimalOddsToFractionalOddsConverter() {
-        return new DecimalOddsToFractionalOddsConverter();
+        return new DecimalOddsToFractionalOddsConverter(oddsMaxDenominator, FractionalOddsLadder.STANDARD,
+                oddsMaxCacheSize);
+    }
+
+    @Bean
+    public BetsJsonCodec betsJsonCodec() {
+        return new BetsJsonCodec();
+    }
+
+    // Spring Boot puts HttpMessageConverter beans ahead of the default (Jackson) ones.
+    @Bean
+    public BetsRequestHttpMessageConverter betsRequestHttpMessageConverter() {
+        return new BetsRequestHttpMessageConverter(betsJsonCodec());
+    }
+
+    @Bean
+    public AvailableResponseCache availableResponseCache() {
+        return new AvailableResponseCache(httpMessageConverter.getObjectMapper(),
+                originalServiceBetToMyServiceBetConverter(), availableMaxAgeMillis, responseCompressor(),
+                new CatalogHistory<>(Bet::getBet_id, availableHistorySize));
+    }
+
+    @Bean
+    public ResponseCompressor responseCompressor() {
+        return new ResponseCompressor(compressionEnabled, compressionDeflate, compressionMinSize, serviceMetrics);
     }
 
     @Bean
@@ -0,0 +1,72 @@
+package techtest.myservice;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import techtest.originalservice.PooledHttpTransport;
+
+/**
+ * The pooled HTTP transport shared by everything that calls the remote service (the
+ * OriginalServiceClient in ConfigProd, and the LightweightController).
+ * 
+ * The transport is configured with "techtest.http.*" properties, e.g.
+ * "techtest.http.maxTotal=200" or "techtest.http.readTimeoutMillis=5000". See
+ * PooledHttpTransport.Settings for the full list.
+ * 
+ * Pool utilization and wait times are published to the actuator "/metrics" endpoint as
+ * "httpclient.pool.*" (the blocking pool) and "httpclient.asyncpool.*" (the non-blocking pool).
+ */
+@Configuration
+public class HttpTransportConfig {
+    @Bean
+    @ConfigurationProperties(prefix = "techtest.http")
+    public PooledHttpTransport.Settings httpTransportSettings() {
+        return new PooledHttpTransport.Settings();
+    }
+
+    @Bean(destroyMethod = "close")
+    public PooledHttpTransport httpTransport() {
+        return new PooledHttpTransport(httpTransportSettings());
+    }
+
+    @Bean
+    public PublicMetrics httpTransportMetrics() {
+        return new HttpTransportMetrics(httpTransport());
+    }
+
+    /**
+     * Publishes the pool stats of a PooledHttpTransport.
+     */
+    static class HttpTransportMetrics implements PublicMetrics {
+        private final PooledHttpTransport transport;
+
+        HttpTransportMetrics(PooledHttpTransport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public Collection<Metric<?>> metrics() {
+            List<Metric<?>> metrics = new ArrayList<>();
+            addStats(metrics, "httpclient.pool.", transport.getStats());
+            addStats(metrics, "httpclient.asyncpool.", transport.getAsyncStats());
+            return metrics;
+        }
+
+        private void addStats(List<Metric<?>> metrics, String prefix, PooledHttpTransport.Stats stats) {
+            metrics.add(new Metric<>(prefix + "leased", stats.getLeased()));
+            metrics.add(new Metric<>(prefix + "available", stats.getAvailable()));
+            metrics.add(new Metric<>(prefix + "pending", stats.getPending()));
+            metrics.add(new Metric<>(prefix + "max", stats.getMax()));
+            metrics.add(new Metric<>(prefix + "wait.count", stats.getWaitCount()));
+            metrics.add(new Metric<>(prefix + "wait.meanMillis", stats.getWaitMeanMillis()));
+            metrics.add(new Metric<>(prefix + "wait.maxMillis", stats.getWaitMaxMillis()));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package techtest.myservice;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import techtest.originalservice.IdempotencyStore;
+
+/**
+ * The IdempotencyStore behind MainController's "Idempotency-Key" header for POST "/bets".
+ *
+ * It is configured with "techtest.idempotency.*" properties, e.g.
+ * "techtest.idempotency.ttlMillis=600000". See IdempotencyStore.Settings for the full list.
+ *
+ * Its state is published to the actuator "/metrics" endpoint as "idempotency.*".
+ */
+@Configuration
+@Profile("!lightweight")
+public class IdempotencyConfig {
+    @Bean
+    @ConfigurationProperties(prefix = "techtest.idempotency")
+    public IdempotencyStore.Settings idempotencySettings() {
+        return new IdempotencyStore.Settings();
+    }
+
+    /**
+     * Keeps the JSON of our "/bets" responses.
+     */
+    @Bean
+    public IdempotencyStore<byte[]> idempotencyStore() {
+        return new IdempotencyStore<>(idempotencySettings());
+    }
+
+    @Bean
+    public PublicMetrics idempotencyMetrics() {
+        return new IdempotencyMetrics(idempotencyStore());
+    }
+
+    static class IdempotencyMetrics implements PublicMetrics {
+        private final IdempotencyStore<?> store;
+
+        IdempotencyMetrics(IdempotencyStore<?> store) {
+            this.store = store;
+        }
+
+        @Override
+        public Collection<Metric<?>> metrics() {
+            return Arrays.asList(new Metric<>("idempotency.keys", store.getSize()),
+                    new Metric<>("idempotency.replayed", store.getReplayedCount()),
+                    new Metric<>("idempotency.evicted", store.getEvictedCount()));
+        }
+    }
+}
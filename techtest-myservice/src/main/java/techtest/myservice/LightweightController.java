@@ -7,6 +7,8 @@ import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
@@ -25,7 +27,14 @@ import org.springframework.web.client.RestTemplate;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import techtest.originalservice.PooledHttpTransport;
+import techtest.originalservice.SingleFlight;
+import techtest.originalservice.WireFormat;
+import techtest.originalservice.api.BetCatalog;
+import techtest.originalservice.api.DecimalOdds;
 import techtest.originalservice.api.OriginalService;
+import techtest.originalservice.metrics.LatencyHistogram;
+import techtest.originalservice.metrics.ServiceMetrics;
 
 /**
  * This is an alternative, lightweight (and lightly-typed) controller responsible for handling
@@ -33,24 +42,54 @@ import techtest.originalservice.api.OriginalService;
  * 
  * This controller does not go through an intermediate service layer, and instead is more
  * 'script-like' and simply 'does what it needs to'.
+ * 
+ * Requests and responses may be in Smile or CBOR as well as JSON. The message converters (see
+ * WireFormatConfig) read and write the same DTOs in each.
  */
 @RestController
 @Profile("lightweight")
 public class LightweightController {
-    RestTemplate restTemplate = new RestTemplate();
+    RestTemplate restTemplate;
+
+    String root;
+
+    // Latency of calls to the remote service. See MetricsConfig.
+    final LatencyHistogram upstreamAvailableLatency;
+    final LatencyHistogram upstreamBetsLatency;
 
-    String root = "http://skybettechtestapi.herokuapp.com";
+    // Concurrent requests share one in-flight GET of the available bets, and the catalog built from it.
+    final SingleFlight<FetchedAvailableBets> availableFlight = new SingleFlight<>();
+
+    /**
+     * @param httpTransport
+     *            The pooled HTTP transport shared with the rest of the application. See
+     *            HttpTransportConfig.
+     * @param root
+     *            The base URL of the remote service, from the "techtest.remoteServiceUrl" property
+     *            (the same one the "prod" profile uses).
+     * @param serviceMetrics
+     *            Where the latency of calls to the remote service is recorded.
+     */
+    @Autowired
+    public LightweightController(PooledHttpTransport httpTransport,
+            @Value("${techtest.remoteServiceUrl:http://skybettechtestapi.herokuapp.com}") String root,
+            ServiceMetrics serviceMetrics) {
+        this.restTemplate = new RestTemplate(httpTransport.requestFactory());
+        this.root = root;
+        this.upstreamAvailableLatency = serviceMetrics.histogram(ServiceMetrics.UPSTREAM_AVAILABLE);
+        this.upstreamBetsLatency = serviceMetrics.histogram(ServiceMetrics.UPSTREAM_BETS);
+    }
 
     @RequestMapping(value = "/available", method = {RequestMethod.GET})
     public ResponseEntity<List<AvailableBet>> available() {
-        ResponseEntity<List<RemoteAvailableBet>> original = availableInternal();
+        ResponseEntity<List<RemoteAvailableBet>> original = availableInternal().getResponse();
 
         List<AvailableBet> converted = original.getBody().stream().map(remoteBet -> {
             BigDecimal odds = decimalOddsFromFractionalOdds(remoteBet.getOdds());
             return new AvailableBet(remoteBet.getBet_id(), remoteBet.getEvent(), remoteBet.getName(), odds);
         }).collect(Collectors.toList());
 
-        return new ResponseEntity<>(converted, removeContentLength(original.getHeaders()), original.getStatusCode());
+        return new ResponseEntity<>(converted, removeContentHeaders(original.getHeaders()), original.getStatusCode());
     }
 
     /**
@@ -64,7 +103,8 @@ public class LightweightController {
         return "Cannot " + method.name() + " " + request.getRequestURI() + "\n";
     }
 
-    @RequestMapping(value = "/bets", method = {RequestMethod.POST}, consumes = {MediaType.APPLICATION_JSON_VALUE})
+    @RequestMapping(value = "/bets", method = {RequestMethod.POST}, consumes = {MediaType.APPLICATION_JSON_VALUE,
+            WireFormat.SMILE_VALUE, WireFormat.CBOR_VALUE})
     public ResponseEntity<BetsResponse> bets(@RequestBody BetsRequest betsRequest) {
         String url = root + "/bets";
 
@@ -74,8 +114,13 @@ public class LightweightController {
                 betsRequest.getStake());
 
         // Make remote call
-        ResponseEntity<RemoteBetsResponse> remoteBetsEntity = restTemplate.postForEntity(url, remoteBetsRequest,
-                RemoteBetsResponse.class);
+        ResponseEntity<RemoteBetsResponse> remoteBetsEntity;
+        long start = System.nanoTime();
+        try {
+            remoteBetsEntity = restTemplate.postForEntity(url, remoteBetsRequest, RemoteBetsResponse.class);
+        } finally {
+            upstreamBetsLatency.recordSince(start);
+        }
         RemoteBetsResponse remoteBetsResponse = remoteBetsEntity.getBody();
 
         // Convert RemoteBetsResponse to BetsResponse
@@ -83,7 +128,7 @@ public class LightweightController {
         BetsResponse betsResponse = new BetsResponse(remoteBetsResponse.getBet_id(), remoteBetsResponse.getEvent(),
                 remoteBetsResponse.getName(), bdOdds, remoteBetsResponse.getStake(), remoteBetsResponse.getTransaction_id());
 
-        return new ResponseEntity<>(betsResponse, removeContentLength(remoteBetsEntity.getHeaders()),
+        return new ResponseEntity<>(betsResponse, removeContentHeaders(remoteBetsEntity.getHeaders()),
                 remoteBetsEntity.getStatusCode());
     }
 
@@ -98,12 +143,25 @@ public class LightweightController {
         return "Cannot " + method.name() + " " + request.getRequestURI() + "\n";
     }
 
-    private ResponseEntity<List<RemoteAvailableBet>> availableInternal() {
+    /**
+     * Gets the available bets from the remote service. Callers that arrive while a GET is already
+     * in flight wait for that one rather than sending their own. The shared response must not be
+     * modified.
+     */
+    private FetchedAvailableBets availableInternal() {
         String url = root + "/available";
 
         // Preserve typing with ParameterizedTypeReference
         // http://stackoverflow.com/a/13820584
-        return restTemplate.exchange(url, HttpMethod.GET, null, new ParameterizedTypeReference<List<RemoteAvailableBet>>() {
+        return availableFlight.call(() -> {
+            long start = System.nanoTime();
+            try {
+                return new FetchedAvailableBets(restTemplate.exchange(url, HttpMethod.GET, null,
+                        new ParameterizedTypeReference<List<RemoteAvailableBet>>() {
+                        }));
+            } finally {
+                upstreamAvailableLatency.recordSince(start);
+            }
         });
     }
 
@@ -114,16 +172,12 @@ public class LightweightController {
     private RemoteOdds checkOdds(BetsRequest betsRequest) {
         Optional<RemoteAvailableBet> betWithId = findAvailableBet(betsRequest.getBet_id());
 
-        // If the betWithId is found, convert its fractional odds to decimal.
-        // Compare these decimal odds to those submitted by the user.
+        // If the betWithId is found, compare its fractional odds to the decimal odds submitted by
+        // the user (see DecimalOdds).
         // If they do not match, throw an INCORRECT_ODDS error.
         Optional<RemoteOdds> odds = betWithId.map(bet -> {
-            BigDecimal bdOdds = decimalOddsFromFractionalOdds(bet.getOdds());
-            BigDecimal submittedOdds = betsRequest.getOdds();
-
-            // compareTo() is safer than equals() as the BigDecimals may have have different scales.
-            // https://docs.oracle.com/javase/8/docs/api/java/math/BigDecimal.html#compareTo-java.math.BigDecimal-
-            if (0 != bdOdds.compareTo(submittedOdds)) {
+            RemoteOdds remoteOdds = bet.getOdds();
+            if (!DecimalOdds.matches(remoteOdds.getNumerator(), remoteOdds.getDenominator(), betsRequest.getOdds())) {
                 throw new OriginalService.BusinessLogicException(OriginalService.Error.INCORRECT_ODDS);
             }
 
@@ -140,35 +194,56 @@ public class LightweightController {
      * @return
      */
     private Optional<RemoteAvailableBet> findAvailableBet(long betId) {
-        // Make request to original service
-        ResponseEntity<List<RemoteAvailableBet>> available = availableInternal();
-
-        // Using Java 8 Steams and Optional to align with techtest technical requirements.
-        return available.getBody().stream()
-                // filter to find the matching bet
-                .filter(bet -> bet.getBet_id() == betId)
-                // return the first filtered item (if any)
-                .findFirst();
+        // Make request to original service, and look up the bet in the catalog shared by every
+        // request that joined the same GET.
+        return availableInternal().getCatalog().find(betId);
     }
 
     private BigDecimal decimalOddsFromFractionalOdds(RemoteOdds odds) {
-        return new BigDecimal(odds.getNumerator()).divide(new BigDecimal(odds.getDenominator())).add(BigDecimal.ONE);
+        return DecimalOdds.toDecimal(odds.getNumerator(), odds.getDenominator());
     }
 
     /**
-     * Removes the "Content-Length" header from the remote response. Changing the odds means the
-     * "Content-Length" will no longer be correct.
+     * Removes the "Content-Length" and "Content-Type" headers from the remote response. Changing the
+     * odds means the "Content-Length" will no longer be correct, and the message converter sets the
+     * "Content-Type" of the format the client asked for.
      * 
      * @param headers
      * @return the modified headers.
      */
-    private MultiValueMap<String, String> removeContentLength(HttpHeaders headers) {
+    private MultiValueMap<String, String> removeContentHeaders(HttpHeaders headers) {
         HttpHeaders modified = new HttpHeaders();
         modified.putAll(headers);
         modified.remove(HttpHeaders.CONTENT_LENGTH);
+        modified.remove(HttpHeaders.CONTENT_TYPE);
         return modified;
     }
 
+    /**
+     * A response from GET /available, and a catalog of its bets by bet_id. The catalog is only built
+     * when a /bets request first asks for it, and then only once for all of the requests sharing the
+     * response.
+     */
+    static class FetchedAvailableBets {
+        private final ResponseEntity<List<RemoteAvailableBet>> response;
+        private BetCatalog<RemoteAvailableBet> catalog;
+
+        FetchedAvailableBets(ResponseEntity<List<RemoteAvailableBet>> response) {
+            this.response = response;
+        }
+
+        ResponseEntity<List<RemoteAvailableBet>> getResponse() {
+            return response;
+        }
+
+        synchronized BetCatalog<RemoteAvailableBet> getCatalog() {
+            if (null == catalog) {
+                catalog = BetCatalog.of(response.getBody(), RemoteAvailableBet::getBet_id);
+            }
+            return catalog;
+        }
+    }
+
     // ----------
     // Data Transfer Objects
     // ----------
@@ -2,29 +2,48 @@ package techtest.myservice;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
-import java.util.Optional;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import techtest.myservice.conversion.FractionalOddsToDecimalOddsConverter;
-import techtest.myservice.conversion.OriginalServiceBetToMyServiceBetConverter;
-import techtest.myservice.dto.Bet;
-import techtest.myservice.dto.BetsRequest;
-import techtest.myservice.dto.BetsResponse;
+import techtest.myservice.api.BetsRequest;
+import techtest.myservice.codec.AvailableResponseCache;
+import techtest.myservice.codec.BetsJsonCodec;
+import techtest.myservice.conversion.DecimalOddsToFractionalOddsConverter;
+import techtest.myservice.stream.AvailableBetsStream;
+import techtest.originalservice.CatalogHistory;
+import techtest.originalservice.CatalogIndex;
+import techtest.originalservice.Futures;
+import techtest.originalservice.IdempotencyStore;
+import techtest.originalservice.ResponseCompressor;
+import techtest.originalservice.WireFormat;
+import techtest.originalservice.api.CompactBetCatalog;
+import techtest.originalservice.api.DecimalOdds;
 import techtest.originalservice.api.Odds;
 import techtest.originalservice.api.OriginalService;
 import techtest.originalservice.api.OriginalService.BusinessLogicException;
+import techtest.originalservice.metrics.ErrorCounters;
+import techtest.originalservice.metrics.ServiceMetrics;
 
 /**
  * This is the main controller responsible for handling incoming requests.
@@ -37,39 +56,129 @@ import techtest.originalservice.api.OriginalService.BusinessLogicException;
  * This extra static typing and abstraction could be considered overkill for the techtest, but it
  * does mean we have a standalone Java client of the original service available to us if we need it.
  * 
- * POSSIBLE IMPROVEMENTS:
+ * The "/available" and "/bets" handlers are asynchronous. They use the async methods of the
+ * OriginalService interface and return a DeferredResult, so the request thread goes back to the
+ * container while the remote service answers (see
+ * https://spring.io/guides/gs/async-method/).
  * 
- * This controller's methods are synchronous (as is the OriginalService Java interface). It could be
- * more performant to use async requests - https://spring.io/guides/gs/async-method/.
+ * "/available" is served from an AvailableResponseCache, which keeps the serialized (and gzipped)
+ * response of the current available bets, and answers If-None-Match with 304 Not Modified. Its
+ * "X-Catalog-Version" header is the version of the bets, and "/available?since=version" returns
+ * only the bets added, changed and removed since that version (or all of them, if it is too old).
+ * "event", "ids" (comma-separated bet_ids), "limit" and "cursor" parameters ask for only some of the
+ * bets, a page at a time, in bet_id order (see CatalogIndex). Invalid ones get 400 Invalid Query.
+ * 
+ * "/available/stream" is a Server-Sent Events stream of the available bets: a snapshot, and then
+ * only the bets that change (see AvailableBetsStream). One background poller serves every client.
+ * 
+ * "/bets" doesn't use the dto classes or data binding. BetsJsonCodec reads the request straight
+ * into an api.BetsRequest (see BetsRequestHttpMessageConverter), and writes our response JSON
+ * straight from the remote service's.
+ * 
+ * "/bets/batch" places an array of bets. Every bet is checked against the same catalog of
+ * available bets, which is fetched once for the whole batch, and the valid ones are placed with
+ * at most "techtest.batch.parallelism" calls to the remote service in flight at once. The response
+ * is an array with a result for each bet, in the order of the request: our "/bets" response JSON
+ * if it was placed, or its error (with the OriginalService.Error code) if it wasn't.
+ * 
+ * JSON responses of at least "techtest.compression.minSize" bytes are compressed for clients that
+ * accept it (see ResponseCompressor). "/available" compresses the whole list once per list.
+ * 
+ * Clients may send "/bets" and "/bets/batch" requests in Smile or CBOR as well as JSON (see
+ * WireFormatConfig), and ask for any response in them with the Accept header (see
+ * WireFormat.negotiate()). "/bets" writes its response straight into the format, and "/available"
+ * transcodes the whole list once per list and format.
+ * 
+ * A client that may retry a "/bets" request can send an "Idempotency-Key" header with it (see
+ * IdempotencyStore). A retry with the same key waits for the bet that is being placed, or gets the
+ * response of the bet already placed, rather than checking the odds and placing it again. A retry
+ * is the same bet if its bet_id, odds and stake are, however its numbers are written (e.g. 1 and
+ * 1.0). A key used for a different bet gets 422 Idempotency Key Reused, and a key that is empty or
+ * too long gets 400 Invalid Idempotency Key.
  */
 @RestController
 // Only activate this Controller when the lightweight profile (which has the LightweightController)
 // is not active.
 @Profile("!lightweight")
 public class MainController {
+    public static final int DEFAULT_BATCH_MAX_SIZE = 100;
+    public static final int DEFAULT_BATCH_PARALLELISM = 8;
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     @Autowired
     OriginalService originalService;
 
     @Autowired
-    OriginalServiceBetToMyServiceBetConverter inwardBetConverter;
+    DecimalOddsToFractionalOddsConverter d2fOddsConverter;
+
+    @Autowired
+    BetsJsonCodec betsJsonCodec;
+
+    @Autowired
+    AvailableResponseCache availableResponseCache;
+
+    @Autowired
+    AvailableBetsStream availableBetsStream;
+
+    @Autowired
+    ResponseCompressor responseCompressor;
 
     @Autowired
-    FractionalOddsToDecimalOddsConverter f2dOddsConverter;
+    ServiceMetrics serviceMetrics;
+
+    @Autowired
+    IdempotencyStore<byte[]> idempotencyStore;
+
+    // Write "/bets" responses in the binary formats. betsJsonCodec writes JSON.
+    final Map<WireFormat, BetsJsonCodec> binaryBetsCodecs = new EnumMap<>(WireFormat.class);
+
+    {
+        binaryBetsCodecs.put(WireFormat.SMILE, new BetsJsonCodec(WireFormat.SMILE));
+        binaryBetsCodecs.put(WireFormat.CBOR, new BetsJsonCodec(WireFormat.CBOR));
+    }
+
+    // The most bets in a "/bets/batch" request. Larger batches are rejected with 413.
+    @Value("${techtest.batch.maxSize:" + DEFAULT_BATCH_MAX_SIZE + "}")
+    int batchMaxSize = DEFAULT_BATCH_MAX_SIZE;
+
+    // The most bets of a batch being placed with the remote service at once.
+    @Value("${techtest.batch.parallelism:" + DEFAULT_BATCH_PARALLELISM + "}")
+    int batchParallelism = DEFAULT_BATCH_PARALLELISM;
 
     @RequestMapping(value = "/available", method = {RequestMethod.GET})
-    public Bet[] available() {
-        // Make request to original service
-        techtest.originalservice.api.Bet[] origResponse = originalService.available();
+    public DeferredResult<ResponseEntity<?>> available(
+            @RequestParam(value = "since", required = false) String since,
+            @RequestParam(value = "event", required = false) String event,
+            @RequestParam(value = "ids", required = false) String ids,
+            @RequestParam(value = "limit", required = false) String limit,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        CatalogIndex.Query query;
+        try {
+            query = CatalogIndex.Query.parse(event, ids, limit, cursor);
+        } catch (IllegalArgumentException e) {
+            DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+            serviceMetrics.getResponseErrors().incrementInternal();
+            result.setResult(new ResponseEntity<>(new DefaultError("Invalid Query"), HttpStatus.BAD_REQUEST));
+            return result;
+        }
+        // A since that isn't a version gets all the bets.
+        Long sinceVersion = CatalogHistory.parseVersion(since);
+        WireFormat format = WireFormat.negotiate(accept);
+        // Make request to original service, and respond with the serialized form of the bets
+        return toDeferredResult(originalService.compactCatalogAsync().thenApply(bets -> {
+            AvailableResponseCache.Entry entry = availableResponseCache.get(bets);
+            return query.isAll()
+                    ? availableResponseCache.respond(entry, format, sinceVersion, ifNoneMatch, acceptEncoding)
+                    : availableResponseCache.respondPage(entry, format, query, acceptEncoding);
+        }));
+    }
 
-        // Using Java 8 Streams to align with techtest technical requirements.
-        // Get stream of response to be used to convert to correct return type
-        return Arrays.stream(origResponse)
-                // Map original service api to myservice api
-                .map(inwardBetConverter::convert)
-                // Map myservice api to myservice dto
-                .map(Bet::new)
-                // terminal. collect the the myservice dto objects into an array.
-                .toArray(Bet[]::new);
+    @RequestMapping(value = "/available/stream", method = {RequestMethod.GET})
+    public SseEmitter availableStream() {
+        return availableBetsStream.subscribe();
     }
 
     /**
@@ -83,28 +192,112 @@ public class MainController {
         return "Cannot " + method.name() + " " + request.getRequestURI() + "\n";
     }
 
-    @RequestMapping(value = "/bets", method = {RequestMethod.POST}, consumes = {MediaType.APPLICATION_JSON_VALUE})
-    @ResponseStatus(HttpStatus.CREATED)
-    public BetsResponse bets(@RequestBody BetsRequest request) {
-        // Map myservice dto to myservice api
-        techtest.myservice.api.BetsRequest myApiRequest = request.toApi();
+    @RequestMapping(value = "/bets", method = {RequestMethod.POST}, consumes = {MediaType.APPLICATION_JSON_VALUE,
+            WireFormat.SMILE_VALUE, WireFormat.CBOR_VALUE})
+    public DeferredResult<ResponseEntity<?>> bets(@RequestBody BetsRequest request,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        if (null != idempotencyKey && !IdempotencyStore.isValidKey(idempotencyKey)) {
+            DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+            serviceMetrics.getResponseErrors().incrementInternal();
+            result.setResult(new ResponseEntity<>(new DefaultError("Invalid Idempotency Key"), HttpStatus.BAD_REQUEST));
+            return result;
+        }
 
-        Odds odds = checkOdds(myApiRequest);
+        WireFormat format = WireFormat.negotiate(accept);
+        if (null == idempotencyKey) {
+            return toDeferredResult(placeBet(request, binaryBetsCodecs.getOrDefault(format, betsJsonCodec))
+                    .thenApply(body -> created(body, format)));
+        }
 
-        // Map myservice api to original service api
-        techtest.originalservice.api.BetsRequest origApiReq = new techtest.originalservice.api.BetsRequest(
-                myApiRequest.getBetId(), odds, myApiRequest.getStake());
+        // The store keeps our response JSON, so that a retry may ask for another format.
+        return toDeferredResult(idempotencyStore
+                .execute(idempotencyKey, request.normalized(), () -> placeBet(request, betsJsonCodec))
+                .thenApply(json -> created(format.transcode(json), format)));
+    }
 
-        // Make request to original service
-        techtest.originalservice.api.BetsResponse origApiResp = originalService.bets(origApiReq);
+    @RequestMapping(value = "/bets/batch", method = {RequestMethod.POST}, consumes = {
+            MediaType.APPLICATION_JSON_VALUE, WireFormat.SMILE_VALUE, WireFormat.CBOR_VALUE})
+    public DeferredResult<ResponseEntity<?>> betsBatch(@RequestBody BetsRequest[] requests,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        DeferredResult<ResponseEntity<?>> result = new DeferredResult<>();
+        if (requests.length > batchMaxSize) {
+            serviceMetrics.getResponseErrors().incrementInternal();
+            result.setResult(new ResponseEntity<>(new DefaultError("Batch Too Large"), HttpStatus.PAYLOAD_TOO_LARGE));
+            return result;
+        }
 
-        // Map original service api to myservice api
-        BigDecimal bdOdds = f2dOddsConverter.convert(origApiResp.getOdds());
-        techtest.myservice.api.BetsResponse myApiResponse = new techtest.myservice.api.BetsResponse(origApiResp.getBetId(),
-                origApiResp.getEvent(), origApiResp.getName(), bdOdds, origApiResp.getStake(), origApiResp.getTransactionId());
+        WireFormat format = WireFormat.negotiate(accept);
+        return toDeferredResult(originalService.compactCatalogAsync()
+                .thenCompose(c -> Futures.mapBounded(Arrays.asList(requests), batchParallelism,
+                        request -> placeBatchItem(request, c)))
+                .thenApply(items -> ok(BetsJsonCodec.writeArray(items), format, acceptEncoding)));
+    }
 
-        // Map myservice api to myservice dto
-        return new BetsResponse(myApiResponse);
+    /**
+     * Checks the odds against the available bets, and places the bet with the remote service.
+     * 
+     * @return Our response, written by the codec straight from the remote service's response.
+     */
+    private CompletableFuture<byte[]> placeBet(BetsRequest request, BetsJsonCodec codec) {
+        return originalService.compactCatalogAsync()
+                .thenApply(catalog -> checkOdds(request, catalog))
+                .thenCompose(odds -> originalService.betsAsync(
+                        new techtest.originalservice.api.BetsRequest(request.getBetId(), odds, request.getStake()),
+                        codec));
+    }
+
+    /**
+     * Places one bet of a batch. Never fails: errors are written as the bet's result.
+     */
+    private CompletableFuture<byte[]> placeBatchItem(BetsRequest request, CompactBetCatalog catalog) {
+        CompletableFuture<byte[]> placed;
+        try {
+            Odds odds = checkOdds(request, catalog);
+            placed = originalService.betsAsync(
+                    new techtest.originalservice.api.BetsRequest(request.getBetId(), odds, request.getStake()),
+                    betsJsonCodec);
+        } catch (RuntimeException e) {
+            placed = Futures.failed(e);
+        }
+        return placed.handle((json, t) -> null == t ? json : batchItemError(request, Futures.unwrap(t)));
+    }
+
+    private byte[] batchItemError(BetsRequest request, Throwable t) {
+        ErrorCounters responseErrors = serviceMetrics.getResponseErrors();
+        OriginalService.Error error = OriginalService.Error.UNKNOWN;
+        if (t instanceof BusinessLogicException) {
+            error = ((BusinessLogicException) t).getError();
+            responseErrors.increment(error);
+        } else {
+            responseErrors.incrementInternal();
+        }
+        return betsJsonCodec.writeError(request.getBetId(), error);
+    }
+
+    /**
+     * @return The JSON in the format, compressed if the client accepts it and it is large enough.
+     */
+    private ResponseEntity<?> ok(byte[] json, WireFormat format, String acceptEncoding) {
+        byte[] body = format.transcode(json);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, format.getContentType());
+        headers.set(HttpHeaders.VARY, responseCompressor.isEnabled()
+                ? HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING : HttpHeaders.ACCEPT);
+        ResponseCompressor.Encoding encoding = responseCompressor.negotiate(acceptEncoding, body.length);
+        if (null == encoding) {
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
+        }
+        headers.set(HttpHeaders.CONTENT_ENCODING, encoding.getName());
+        return new ResponseEntity<>(responseCompressor.compress(body, encoding), headers, HttpStatus.OK);
+    }
+
+    private static ResponseEntity<?> created(byte[] body, WireFormat format) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, format.getContentType());
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        return new ResponseEntity<>(body, headers, HttpStatus.CREATED);
     }
 
     /**
@@ -134,64 +327,77 @@ public class MainController {
     /**
      * Not quite sure of another way to do this correctly. Without a foolproof way of mapping an
      * arbitrary decimal back to its original fraction, I am instead getting the latest fractional
-     * odds from the remote server, finding the odds for the corresponding bet, converting this to
-     * decimal, and comparing the decimals.
+     * odds from the remote server, finding the odds for the corresponding bet, and comparing these
+     * to the submitted decimal odds (exactly, using DecimalOdds).
      * 
-     * If there was a strict limited set of valid decimal odds, then we could externalise a table
-     * with the mappings from these to fractional odds, and avoid having to contact the remote
-     * server.
+     * The submitted decimal odds are resolved to fractional odds locally by the
+     * DecimalOddsToFractionalOddsConverter (the ladder price, or else the closest fraction by
+     * continued fractions), from its cache after the first time. When that is the bet's price, as
+     * it is for prices on the ladder, it is what is sent to the remote service. The remote service
+     * compares fractional odds exactly (2/4 isn't 1/2), so when it isn't, e.g. 33/100 for "1.33" or
+     * a denominator over maxDenominator, the bet's own price is checked exactly and sent instead.
      * 
      * The trade off here is the correctness of the data versus the extra expense of calling the
-     * remote service.
+     * remote service. In the "prod" profile the OriginalService is a CachingOriginalService, so the
+     * available bets are normally read from memory rather than fetched again.
      * 
      * @param betsRequest
      *            The request to check the odds for.
+     * @param catalog
+     *            The available bets.
      * 
      * @return The fractional odds for the betsRequest.
      * 
      * @throws BusinessLogicException
-     *             (error=OriginalService.Error.INCORRECT_ODDS). if the odds don't match.
+     *             (error=OriginalService.Error.INVALID_BET_ID) if there is no bet with the id, or
+     *             (error=OriginalService.Error.INCORRECT_ODDS) if the odds (which may be null) don't
+     *             match its price.
      */
-    private Odds checkOdds(techtest.myservice.api.BetsRequest betsRequest) {
-        Optional<techtest.originalservice.api.Bet> betWithId = findAvailableBet(betsRequest.getBetId());
+    private Odds checkOdds(BetsRequest betsRequest, CompactBetCatalog catalog) {
+        // If there is no bet with the id, throw an INVALID_BET_ID error.
+        int bet = catalog.indexOf(betsRequest.getBetId());
+        if (bet < 0) {
+            throw new BusinessLogicException(OriginalService.Error.INVALID_BET_ID);
+        }
 
-        // If the betWithId is found, convert its fractional odds to decimal.
-        // Compare these decimal odds to those submitted by the user.
-        // If they do not match, throw an INCORRECT_ODDS error.
-        Optional<Odds> odds = betWithId.map(bet -> {
-            BigDecimal bdOdds = f2dOddsConverter.convert(bet.getOdds());
-            BigDecimal submittedOdds = betsRequest.getOdds();
-
-            // compareTo() is safer than equals() as the BigDecimals may have have different scales.
-            // https://docs.oracle.com/javase/8/docs/api/java/math/BigDecimal.html#compareTo-java.math.BigDecimal-
-            if (0 != bdOdds.compareTo(submittedOdds)) {
-                throw new BusinessLogicException(OriginalService.Error.INCORRECT_ODDS);
-            }
+        // The bet's fractional odds, straight from the catalog's columns.
+        int numerator = catalog.numerator(bet);
+        int denominator = catalog.denominator(bet);
 
-            return bet.getOdds();
-        });
+        // Usually the odds resolved locally are the bet's price.
+        BigDecimal submitted = betsRequest.getOdds();
+        Odds resolved = null == submitted ? null : d2fOddsConverter.convert(submitted);
+        if (null != resolved && resolved.getNumerator() == numerator && resolved.getDenominator() == denominator) {
+            return resolved;
+        }
 
-        // If we have odds (which implies we found a matching bet), then return them.
-        // Else throw an INVALID_BET_ID error.
-        return odds.orElseThrow(() -> new BusinessLogicException(OriginalService.Error.INVALID_BET_ID));
+        // Otherwise compare the bet's fractional odds to the decimal odds submitted by the user.
+        // DecimalOdds does this by integer cross-multiplication, so it's exact, ignores scale, and
+        // doesn't divide.
+        // If they do not match, throw an INCORRECT_ODDS error.
+        if (!DecimalOdds.matches(numerator, denominator, submitted)) {
+            throw new BusinessLogicException(OriginalService.Error.INCORRECT_ODDS);
+        }
+
+        return new Odds(numerator, denominator);
     }
 
     /**
-     * Attempts to find an available bet with matching betId.
+     * Completes a DeferredResult from a CompletableFuture.
      * 
-     * @param betId
-     * @return
+     * Failures are unwrapped from the CompletionException that CompletableFuture adds, so that
+     * MyControllerAdvice sees the original exception (e.g. BusinessLogicException).
      */
-    private Optional<techtest.originalservice.api.Bet> findAvailableBet(long betId) {
-        // Make request to original service
-        techtest.originalservice.api.Bet[] available = originalService.available();
-
-        // Using Java 8 Steams and Optional to align with techtest technical requirements.
-        return Arrays.stream(available)
-                // filter to find the matching bet
-                .filter(bet -> bet.getBetId() == betId)
-                // return the first filtered item (if any)
-                .findFirst();
+    private static <T> DeferredResult<T> toDeferredResult(CompletableFuture<T> future) {
+        DeferredResult<T> result = new DeferredResult<>();
+        future.whenComplete((value, t) -> {
+            if (null == t) {
+                result.setResult(value);
+            } else {
+                result.setErrorResult(Futures.unwrap(t));
+            }
+        });
+        return result;
     }
 
     /**
@@ -0,0 +1,153 @@
+package techtest.myservice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import techtest.originalservice.metrics.LatencyHistogram;
+import techtest.originalservice.metrics.ServiceMetrics;
+
+/**
+ * Latency histograms and error counters (see ServiceMetrics), published to the actuator "/metrics"
+ * endpoint as "techtest.*", e.g. "techtest.endpoint.available.p99" (milliseconds) or
+ * "techtest.errors.upstream.incorrect_odds".
+ *
+ * <ul>
+ * <li>"endpoint.available" and "endpoint.bets" time requests to this service, whichever controller
+ * handles them, from when the request arrives to when the (possibly async) response is
+ * complete.</li>
+ * <li>"upstream.available" and "upstream.bets" time calls to the remote service.</li>
+ * <li>"errors.upstream.*" count error responses from the remote service, and "errors.response.*"
+ * the errors this service returns (see MyControllerAdvice).</li>
+ * </ul>
+ */
+@Configuration
+public class MetricsConfig {
+    @Bean
+    public ServiceMetrics serviceMetrics() {
+        return new ServiceMetrics();
+    }
+
+    @Bean
+    public PublicMetrics serviceMetricsPublicMetrics() {
+        return new ServiceMetricsPublicMetrics(serviceMetrics());
+    }
+
+    @Bean
+    public EndpointLatencyFilter endpointLatencyFilter() {
+        return new EndpointLatencyFilter(serviceMetrics());
+    }
+
+    /**
+     * Publishes a ServiceMetrics.
+     */
+    static class ServiceMetricsPublicMetrics implements PublicMetrics {
+        private final ServiceMetrics serviceMetrics;
+
+        ServiceMetricsPublicMetrics(ServiceMetrics serviceMetrics) {
+            this.serviceMetrics = serviceMetrics;
+        }
+
+        @Override
+        public Collection<Metric<?>> metrics() {
+            List<Metric<?>> metrics = new ArrayList<>();
+            serviceMetrics.toMap().forEach((name, value) -> metrics.add(new Metric<>("techtest." + name, value)));
+            return metrics;
+        }
+    }
+
+    /**
+     * Times requests for "/available", "/bets" and "/bets/batch". If the request goes async (MainController
+     * returns a DeferredResult), it is timed until the async request completes.
+     */
+    static class EndpointLatencyFilter extends OncePerRequestFilter {
+        private final LatencyHistogram availableLatency;
+        private final LatencyHistogram betsLatency;
+        private final LatencyHistogram betsBatchLatency;
+
+        EndpointLatencyFilter(ServiceMetrics serviceMetrics) {
+            this.availableLatency = serviceMetrics.histogram(ServiceMetrics.ENDPOINT_AVAILABLE);
+            this.betsLatency = serviceMetrics.histogram(ServiceMetrics.ENDPOINT_BETS);
+            this.betsBatchLatency = serviceMetrics.histogram(ServiceMetrics.ENDPOINT_BETS_BATCH);
+        }
+
+        @Override
+        protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+                throws ServletException, IOException {
+            LatencyHistogram histogram = histogramFor(request.getRequestURI().substring(request.getContextPath().length()));
+            if (null == histogram) {
+                filterChain.doFilter(request, response);
+                return;
+            }
+
+            long start = System.nanoTime();
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                if (isAsyncStarted(request)) {
+                    request.getAsyncContext().addListener(new RecordOnComplete(histogram, start));
+                } else {
+                    histogram.recordSince(start);
+                }
+            }
+        }
+
+        private LatencyHistogram histogramFor(String path) {
+            if ("/available".equals(path)) {
+                return availableLatency;
+            }
+            if ("/bets".equals(path)) {
+                return betsLatency;
+            }
+            if ("/bets/batch".equals(path)) {
+                return betsBatchLatency;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * onComplete() is called however the async request ends (including after an error or
+     * timeout), so it is the only place the time is recorded.
+     */
+    static class RecordOnComplete implements AsyncListener {
+        private final LatencyHistogram histogram;
+        private final long start;
+
+        RecordOnComplete(LatencyHistogram histogram, long start) {
+            this.histogram = histogram;
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            histogram.recordSince(start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
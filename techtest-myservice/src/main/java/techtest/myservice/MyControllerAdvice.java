@@ -2,7 +2,12 @@ package techtest.myservice;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -12,20 +17,49 @@ import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
 
 import techtest.myservice.MainController.DefaultError;
+import techtest.originalservice.IdempotencyStore.KeyReusedException;
 import techtest.originalservice.api.OriginalService.BusinessLogicException;
+import techtest.originalservice.api.OriginalService.ServiceUnavailableException;
+import techtest.originalservice.metrics.ErrorCounters;
+import techtest.originalservice.metrics.ServiceMetrics;
 
 /**
  * Controller advice to perform general exception handling.
+ * 
+ * Every error returned is counted in the "errors.response.*" counters of the ServiceMetrics.
+ * 
+ * A ServiceUnavailableException (the circuit breaker is open or the bulkhead is full) is answered
+ * with a 503 whose body and headers are built once, and isn't logged, so that failing fast stays
+ * cheap while the remote service is having trouble.
  */
 @ControllerAdvice(basePackageClasses = {MainController.class, LightweightController.class})
 public class MyControllerAdvice extends ResponseEntityExceptionHandler {
     private static final Logger LOG = LoggerFactory.getLogger(MyControllerAdvice.class);
 
+    private static final byte[] SERVICE_UNAVAILABLE_BODY = "{\"error\":\"Service Unavailable\"}"
+            .getBytes(StandardCharsets.UTF_8);
+    private static final HttpHeaders SERVICE_UNAVAILABLE_HEADERS;
+
+    static {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        headers.setContentLength(SERVICE_UNAVAILABLE_BODY.length);
+        SERVICE_UNAVAILABLE_HEADERS = HttpHeaders.readOnlyHttpHeaders(headers);
+    }
+
+    private final ErrorCounters responseErrors;
+
+    @Autowired
+    public MyControllerAdvice(ServiceMetrics serviceMetrics) {
+        this.responseErrors = serviceMetrics.getResponseErrors();
+    }
+
     @ExceptionHandler(Exception.class)
     @ResponseBody
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     DefaultError handleControllerException(Exception e) {
         LOG.error(e.getMessage(), e);
+        responseErrors.incrementInternal();
 
         return new DefaultError("Internal Error");
     }
@@ -44,10 +78,19 @@ public class MyControllerAdvice extends ResponseEntityExceptionHandler {
     @ResponseBody
     ResponseEntity<Object> handleHttpStatusCodeException(HttpStatusCodeException e) {
         LOG.error(e.getMessage(), e);
+        responseErrors.incrementInternal();
 
         return new ResponseEntity<>(e.getResponseBodyAsByteArray(), e.getResponseHeaders(), e.getStatusCode());
     }
 
+    @ExceptionHandler(ServiceUnavailableException.class)
+    @ResponseBody
+    ResponseEntity<byte[]> handleServiceUnavailableException(ServiceUnavailableException e) {
+        responseErrors.incrementInternal();
+
+        return new ResponseEntity<>(SERVICE_UNAVAILABLE_BODY, SERVICE_UNAVAILABLE_HEADERS, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     /**
      * @param e
      * @return
@@ -57,7 +100,20 @@ public class MyControllerAdvice extends ResponseEntityExceptionHandler {
     @ResponseStatus(HttpStatus.I_AM_A_TEAPOT)
     DefaultError handleBusinessLogicException(BusinessLogicException e) {
         LOG.error(e.getMessage(), e);
+        responseErrors.increment(e.getError());
 
         return new DefaultError(e.getError().getDescription());
     }
+
+    /**
+     * An "Idempotency-Key" that was first used for a different bet (see MainController).
+     */
+    @ExceptionHandler(KeyReusedException.class)
+    @ResponseBody
+    @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+    DefaultError handleKeyReusedException(KeyReusedException e) {
+        responseErrors.incrementInternal();
+
+        return new DefaultError("Idempotency Key Reused");
+    }
 }
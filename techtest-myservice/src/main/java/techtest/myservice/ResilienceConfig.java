@@ -0,0 +1,105 @@
+package techtest.myservice;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import techtest.originalservice.Bulkhead;
+import techtest.originalservice.CircuitBreaker;
+import techtest.originalservice.Hedger;
+
+/**
+ * The CircuitBreaker and Bulkhead that guard calls to the remote service (see
+ * ResilientOriginalService in ConfigProd), and the settings for hedging GET "/available" (see
+ * Hedger).
+ * 
+ * The breaker is configured with "techtest.circuitBreaker.*" properties, e.g.
+ * "techtest.circuitBreaker.failureRateThreshold=50". See CircuitBreaker.Settings for the full list.
+ * The bulkhead allows "techtest.bulkhead.maxConcurrentCalls" calls at once, which defaults to the
+ * connections per route of the HTTP transport, as more calls than that would only wait for a
+ * pooled connection.
+ * 
+ * Hedging is off unless "techtest.hedge.enabled=true", and is configured with the other
+ * "techtest.hedge.*" properties, e.g. "techtest.hedge.percentile=95". See Hedger.Settings for the
+ * full list.
+ * 
+ * Their state is published to the actuator "/metrics" endpoint as "circuitbreaker.*" and
+ * "bulkhead.*".
+ */
+@Configuration
+public class ResilienceConfig {
+    @Value("${techtest.bulkhead.maxConcurrentCalls:${techtest.http.maxPerRoute:100}}")
+    private int bulkheadMaxConcurrentCalls;
+
+    @Bean
+    @ConfigurationProperties(prefix = "techtest.circuitBreaker")
+    public CircuitBreaker.Settings circuitBreakerSettings() {
+        return new CircuitBreaker.Settings();
+    }
+
+    @Bean
+    public CircuitBreaker circuitBreaker() {
+        return new CircuitBreaker(circuitBreakerSettings());
+    }
+
+    @Bean
+    public Bulkhead bulkhead() {
+        return new Bulkhead(bulkheadMaxConcurrentCalls);
+    }
+
+    @Bean
+    @ConfigurationProperties(prefix = "techtest.hedge")
+    public Hedger.Settings hedgeSettings() {
+        return new Hedger.Settings();
+    }
+
+    /**
+     * Runs the timers for hedged requests. Its thread is only started if hedging is enabled.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ScheduledExecutorService hedgeScheduler() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("hedge-");
+        threadFactory.setDaemon(true);
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, threadFactory);
+        // Most timers are cancelled, because the first attempt answers in time.
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    @Bean
+    public PublicMetrics resilienceMetrics() {
+        return new ResilienceMetrics(circuitBreaker(), bulkhead());
+    }
+
+    /**
+     * Publishes the state of the CircuitBreaker (as the ordinal of its State, so 0 is CLOSED) and
+     * the Bulkhead.
+     */
+    static class ResilienceMetrics implements PublicMetrics {
+        private final CircuitBreaker circuitBreaker;
+        private final Bulkhead bulkhead;
+
+        ResilienceMetrics(CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+            this.circuitBreaker = circuitBreaker;
+            this.bulkhead = bulkhead;
+        }
+
+        @Override
+        public Collection<Metric<?>> metrics() {
+            return Arrays.asList(new Metric<>("circuitbreaker.state", circuitBreaker.getState().ordinal()),
+                    new Metric<>("circuitbreaker.rejected", circuitBreaker.getRejectedCount()),
+                    new Metric<>("bulkhead.inUse", bulkhead.getInUse()),
+                    new Metric<>("bulkhead.max", bulkhead.getMaxConcurrentCalls()),
+                    new Metric<>("bulkhead.rejected", bulkhead.getRejectedCount()));
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package techtest.myservice;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import techtest.myservice.conversion.OriginalServiceBetToMyServiceBetConverter;
+import techtest.myservice.stream.AvailableBetsStream;
+import techtest.originalservice.api.OriginalService;
+import techtest.originalservice.metrics.ServiceMetrics;
+
+/**
+ * The AvailableBetsStream behind MainController's "/available/stream".
+ * 
+ * It is configured with "techtest.availableStream.*" properties, e.g.
+ * "techtest.availableStream.pollMillis=1000". See AvailableBetsStream.Settings for the full list.
+ */
+@Configuration
+@Profile("!lightweight")
+public class StreamConfig {
+    @Autowired
+    OriginalService originalService;
+
+    @Autowired
+    OriginalServiceBetToMyServiceBetConverter betConverter;
+
+    @Autowired
+    MappingJackson2HttpMessageConverter httpMessageConverter;
+
+    @Autowired
+    ServiceMetrics serviceMetrics;
+
+    @Bean
+    @ConfigurationProperties(prefix = "techtest.availableStream")
+    public AvailableBetsStream.Settings availableStreamSettings() {
+        return new AvailableBetsStream.Settings();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public AvailableBetsStream availableBetsStream() {
+        return new AvailableBetsStream(originalService, betConverter, httpMessageConverter.getObjectMapper(),
+                serviceMetrics, availableStreamSettings());
+    }
+}
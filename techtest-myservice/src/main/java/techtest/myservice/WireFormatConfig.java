@@ -0,0 +1,44 @@
+package techtest.myservice;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import techtest.myservice.codec.BetsJsonCodec;
+import techtest.myservice.codec.BetsRequestHttpMessageConverter;
+import techtest.myservice.codec.WireFormatHttpMessageConverter;
+import techtest.originalservice.WireFormat;
+
+/**
+ * Message converters for the binary WireFormats (Smile and CBOR), so that clients can send requests
+ * and get responses in them as well as in JSON (see WireFormat).
+ *
+ * For each format, a BetsRequestHttpMessageConverter reads the "/bets" requests, and a
+ * WireFormatHttpMessageConverter reads and writes everything else (e.g. the LightweightController's
+ * DTOs, and errors), with the format's ObjectMapper configured by Spring Boot's
+ * Jackson2ObjectMapperBuilder, so like the JSON one.
+ *
+ * They are added after the default converters, rather than as beans (which Spring Boot puts ahead
+ * of them), so that a client that accepts anything still gets JSON.
+ */
+@Configuration
+public class WireFormatConfig extends WebMvcConfigurerAdapter {
+    @Autowired
+    Jackson2ObjectMapperBuilder objectMapperBuilder;
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (WireFormat format : new WireFormat[] {WireFormat.SMILE, WireFormat.CBOR}) {
+            converters.add(new BetsRequestHttpMessageConverter(new BetsJsonCodec(format)));
+            ObjectMapper mapper = format.newObjectMapper();
+            objectMapperBuilder.configure(mapper);
+            converters.add(new WireFormatHttpMessageConverter(format, mapper));
+        }
+    }
+}
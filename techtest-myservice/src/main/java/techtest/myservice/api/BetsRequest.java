@@ -12,4 +12,17 @@ public class BetsRequest {
     long betId;
     BigDecimal odds;
     BigDecimal stake;
+
+    /**
+     * @return This request with the trailing zeros of its numbers stripped, so that requests for
+     *         the same bet, odds and stake are equal however the numbers were written (e.g. 1 and
+     *         1.0).
+     */
+    public BetsRequest normalized() {
+        return new BetsRequest(betId, stripTrailingZeros(odds), stripTrailingZeros(stake));
+    }
+
+    private static BigDecimal stripTrailingZeros(BigDecimal decimal) {
+        return null == decimal ? null : decimal.stripTrailingZeros();
+    }
 }
@@ -0,0 +1,434 @@
+package techtest.myservice.codec;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import techtest.myservice.conversion.OriginalServiceBetToMyServiceBetConverter;
+import techtest.originalservice.CatalogHistory;
+import techtest.originalservice.CatalogIndex;
+import techtest.originalservice.ResponseCompressor;
+import techtest.originalservice.WireFormat;
+import techtest.originalservice.api.CompactBetCatalog;
+
+/**
+ * Keeps the serialized "/available" response of the current list of available bets, so that
+ * repeated GETs of an unchanged list are a copy of a byte[] rather than a conversion and
+ * serialization.
+ * 
+ * An Entry is made once per list (a CachingOriginalService hands out the same CompactBetCatalog
+ * until it refreshes, and the Entry is kept for that catalog). Entries only ever move forward: a
+ * catalog older than the current Entry's (see CompactBetCatalog.getSequence()), which a request
+ * may still hold after a refresh, gets the current Entry. It holds:
+ * 
+ * <ul>
+ * <li>the JSON, exactly as Spring would have written the dto.Bet[].</li>
+ * <li>the JSON transcoded to each binary WireFormat (Smile, CBOR), and each of those compressed
+ * in each encoding (see ResponseCompressor), made the first time a client asks for it, and then
+ * sent to every client that does until the bets change.</li>
+ * <li>a strong ETag, the MD5 of the JSON, with the format and/or encoding appended for the other
+ * representations, e.g. "-gzip" or "-smile-gzip". If a refresh returns the same JSON, the previous
+ * Entry's bytes and ETag are kept.</li>
+ * </ul>
+ * 
+ * respond() answers a matching If-None-Match with 304 Not Modified, and sets "Cache-Control:
+ * max-age" to what is left of maxAgeMillis since the Entry was made.
+ * 
+ * Each list also gets a version (see CatalogHistory), which goes up when the bets change, and is
+ * sent in the "X-Catalog-Version" header. A client that sends the version it has back as "since"
+ * gets only what has changed since, as a CatalogHistory.Delta of dto.Bets, unless the version is
+ * older than the last historySize changes, in which case it gets the whole list. A Delta is
+ * serialized once per Entry and version asked for.
+ * 
+ * A client that only wants some of the bets (see CatalogIndex.Query) gets them from a CatalogIndex
+ * of the Entry's bets, and each bet's JSON, which are made once per Entry, the first time they are
+ * asked for. A filtered response is those bets' JSON joined into an array, so it costs the size of
+ * the result rather than the list. Its bets are in bet_id order, and if there are more, the
+ * "X-Next-Cursor" header is the cursor of the next page. Deltas and filtered responses are
+ * transcoded and compressed for each request, if they are in a binary format or large enough.
+ * 
+ * The methods without a WireFormat respond with JSON.
+ */
+public class AvailableResponseCache {
+    public static final String VERSION_HEADER = "X-Catalog-Version";
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private final ObjectMapper mapper;
+    private final OriginalServiceBetToMyServiceBetConverter betConverter;
+    private final long maxAgeMillis;
+    private final ResponseCompressor compressor;
+    private final LongSupplier clock;
+    private final CatalogHistory<techtest.myservice.dto.Bet> history;
+
+    private final AtomicReference<Entry> current = new AtomicReference<>();
+
+    /**
+     * @param mapper
+     *            Writes the JSON. Use the one the message converters use.
+     * @param maxAgeMillis
+     *            How long clients may cache a response for. Normally the TTL of the available bets.
+     * @param compressor
+     *            Compresses the responses for clients that accept it.
+     * @param history
+     *            The versions of the bets. Its items are dto.Bets.
+     */
+    public AvailableResponseCache(ObjectMapper mapper, OriginalServiceBetToMyServiceBetConverter betConverter,
+            long maxAgeMillis, ResponseCompressor compressor, CatalogHistory<techtest.myservice.dto.Bet> history) {
+        this(mapper, betConverter, maxAgeMillis, compressor, history, System::currentTimeMillis);
+    }
+
+    AvailableResponseCache(ObjectMapper mapper, OriginalServiceBetToMyServiceBetConverter betConverter,
+            long maxAgeMillis, ResponseCompressor compressor, CatalogHistory<techtest.myservice.dto.Bet> history,
+            LongSupplier clock) {
+        super();
+
+        Assert.notNull(mapper, "mapper");
+        Assert.notNull(betConverter, "betConverter");
+        Assert.isTrue(maxAgeMillis >= 0, "maxAgeMillis cannot be negative");
+        Assert.notNull(compressor, "compressor");
+        Assert.notNull(history, "history");
+        Assert.notNull(clock, "clock");
+
+        this.mapper = mapper;
+        this.betConverter = betConverter;
+        this.maxAgeMillis = maxAgeMillis;
+        this.compressor = compressor;
+        this.history = history;
+        this.clock = clock;
+    }
+
+    /**
+     * @return The Entry for the bets, made now if the bets are newer than the ones of the current
+     *         Entry. If they are older, the current Entry.
+     */
+    public Entry get(CompactBetCatalog bets) {
+        Entry entry = current.get();
+        if (isCurrent(entry, bets)) {
+            return entry;
+        }
+
+        // Once per list, so that the history is updated in the order of the lists.
+        synchronized (current) {
+            entry = current.get();
+            if (isCurrent(entry, bets)) {
+                return entry;
+            }
+
+            List<techtest.myservice.dto.Bet> dtos = convert(bets);
+            long version = history.update(dtos);
+            byte[] json = serialize(dtos);
+            long now = clock.getAsLong();
+            Entry made = null != entry && Arrays.equals(entry.json, json) ? new Entry(bets, entry, version, now)
+                    : new Entry(bets, dtos, json, version, now);
+            current.set(made);
+            return made;
+        }
+    }
+
+    /**
+     * @return true if the entry is for the bets, or for newer ones.
+     */
+    private static boolean isCurrent(Entry entry, CompactBetCatalog bets) {
+        return null != entry && entry.source.getSequence() >= bets.getSequence();
+    }
+
+    /**
+     * @param ifNoneMatch
+     *            The If-None-Match request header, or null.
+     * @param acceptEncoding
+     *            The Accept-Encoding request header, or null.
+     */
+    public ResponseEntity<byte[]> respond(Entry entry, String ifNoneMatch, String acceptEncoding) {
+        return respond(entry, WireFormat.JSON, ifNoneMatch, acceptEncoding);
+    }
+
+    /**
+     * @param format
+     *            The format to respond in (see WireFormat.negotiate()).
+     */
+    public ResponseEntity<byte[]> respond(Entry entry, WireFormat format, String ifNoneMatch,
+            String acceptEncoding) {
+        byte[] body = entry.body(format);
+        ResponseCompressor.Encoding encoding = compressor.negotiate(acceptEncoding, body.length);
+        String etag = entry.etag(format, encoding);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        headers.setCacheControl("max-age=" + maxAgeSeconds(entry));
+        headers.set(VERSION_HEADER, Long.toString(entry.version));
+        headers.set(HttpHeaders.VARY, vary());
+
+        if (matches(ifNoneMatch, etag)) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+
+        headers.set(HttpHeaders.CONTENT_TYPE, format.getContentType());
+        if (null != encoding) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, encoding.getName());
+            // Compressed once per Entry, format and encoding.
+            byte[] compressed = entry.compressed.computeIfAbsent(Entry.representation(format, encoding),
+                    r -> compressor.compress(body, encoding));
+            return new ResponseEntity<>(compressed, headers, HttpStatus.OK);
+        }
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    /**
+     * @param since
+     *            The version the client has, or null for the whole list.
+     * @return The changes since the version, or else the whole list as respond() does.
+     */
+    public ResponseEntity<byte[]> respond(Entry entry, Long since, String ifNoneMatch, String acceptEncoding) {
+        return respond(entry, WireFormat.JSON, since, ifNoneMatch, acceptEncoding);
+    }
+
+    public ResponseEntity<byte[]> respond(Entry entry, WireFormat format, Long since, String ifNoneMatch,
+            String acceptEncoding) {
+        if (null == since) {
+            return respond(entry, format, ifNoneMatch, acceptEncoding);
+        }
+
+        byte[] json = entry.deltas.get(since);
+        long version = entry.version;
+        if (null == json) {
+            CatalogHistory.Delta<techtest.myservice.dto.Bet> delta = history.since(since);
+            if (null == delta) {
+                return respond(entry, format, ifNoneMatch, acceptEncoding);
+            }
+            json = write(delta);
+            version = delta.getVersion();
+            if (version == entry.version) {
+                // Otherwise the bets have changed since the Entry was made, so the next GET gets
+                // the next Entry.
+                entry.deltas.put(since, json);
+            }
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl("max-age=" + maxAgeSeconds(entry));
+        headers.set(VERSION_HEADER, Long.toString(version));
+        return ok(headers, format, json, acceptEncoding);
+    }
+
+    /**
+     * @param query
+     *            Which of the bets to respond with. Must not be for all of them, which is what
+     *            respond(entry, since, ...) is for.
+     */
+    public ResponseEntity<byte[]> respondPage(Entry entry, CatalogIndex.Query query, String acceptEncoding) {
+        return respondPage(entry, WireFormat.JSON, query, acceptEncoding);
+    }
+
+    public ResponseEntity<byte[]> respondPage(Entry entry, WireFormat format, CatalogIndex.Query query,
+            String acceptEncoding) {
+        Filter filter = filter(entry);
+        CatalogIndex.Page page = filter.index.query(query);
+        List<byte[]> items = new ArrayList<>(page.getPositions().length);
+        for (int position : page.getPositions()) {
+            items.add(filter.items[position]);
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl("max-age=" + maxAgeSeconds(entry));
+        headers.set(VERSION_HEADER, Long.toString(entry.version));
+        if (null != page.getNextCursor()) {
+            headers.set(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return ok(headers, format, BetsJsonCodec.writeArray(items), acceptEncoding);
+    }
+
+    /**
+     * @return The JSON in the format, compressed if the client accepts it and it is large enough.
+     */
+    private ResponseEntity<byte[]> ok(HttpHeaders headers, WireFormat format, byte[] json, String acceptEncoding) {
+        byte[] body = format.transcode(json);
+        headers.set(HttpHeaders.CONTENT_TYPE, format.getContentType());
+        headers.set(HttpHeaders.VARY, vary());
+        ResponseCompressor.Encoding encoding = compressor.negotiate(acceptEncoding, body.length);
+        if (null == encoding) {
+            return new ResponseEntity<>(body, headers, HttpStatus.OK);
+        }
+        headers.set(HttpHeaders.CONTENT_ENCODING, encoding.getName());
+        return new ResponseEntity<>(compressor.compress(body, encoding), headers, HttpStatus.OK);
+    }
+
+    /**
+     * @return The Vary header: the format depends on Accept, and the encoding on Accept-Encoding.
+     */
+    private String vary() {
+        return compressor.isEnabled() ? HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING
+                : HttpHeaders.ACCEPT;
+    }
+
+    private Filter filter(Entry entry) {
+        Filter filter = entry.filter;
+        if (null == filter) {
+            // Racing threads make it twice, and keep either.
+            byte[][] items = new byte[entry.bets.size()][];
+            for (int i = 0; i < items.length; i++) {
+                items[i] = write(entry.bets.get(i));
+            }
+            entry.filter = filter = new Filter(
+                    new CatalogIndex(entry.bets, techtest.myservice.dto.Bet::getBet_id,
+                            techtest.myservice.dto.Bet::getEvent),
+                    items);
+        }
+        return filter;
+    }
+
+    private long maxAgeSeconds(Entry entry) {
+        long remaining = maxAgeMillis - (clock.getAsLong() - entry.createdAt);
+        return Math.max(0, TimeUnit.MILLISECONDS.toSeconds(remaining));
+    }
+
+    private List<techtest.myservice.dto.Bet> convert(CompactBetCatalog bets) {
+        List<techtest.myservice.dto.Bet> dtos = new ArrayList<>(bets.size());
+        for (int i = 0; i < bets.size(); i++) {
+            dtos.add(new techtest.myservice.dto.Bet(betConverter.convert(bets.bet(i))));
+        }
+        return dtos;
+    }
+
+    private byte[] serialize(List<techtest.myservice.dto.Bet> dtos) {
+        return write(dtos);
+    }
+
+    private byte[] write(Object value) {
+        try {
+            return mapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize the available bets", e);
+        }
+    }
+
+    /**
+     * @return true if the If-None-Match header is "*" or lists the ETag. As If-None-Match uses the
+     *         weak comparison, a W/ prefix is ignored.
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (null == ifNoneMatch) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if ("*".equals(tag) || etag.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The index and JSON of each bet of an Entry, for filtered responses.
+     */
+    static class Filter {
+        final CatalogIndex index;
+        final byte[][] items;
+
+        Filter(CatalogIndex index, byte[][] items) {
+            this.index = index;
+            this.items = items;
+        }
+    }
+
+    /**
+     * The serialized response for one list of available bets.
+     */
+    public static class Entry {
+        final CompactBetCatalog source;
+        final List<techtest.myservice.dto.Bet> bets;
+        final byte[] json;
+        final String etag;
+        final String md5;
+        final long version;
+        final long createdAt;
+        // The serialized Deltas to this version, by the version they are since.
+        final Map<Long, byte[]> deltas;
+        // The JSON in each binary format it has been asked for in.
+        final Map<WireFormat, byte[]> encoded;
+        // Each format in each encoding it has been asked for in, by representation().
+        final Map<String, byte[]> compressed;
+        private volatile Filter filter;
+
+        Entry(CompactBetCatalog source, List<techtest.myservice.dto.Bet> bets, byte[] json, long version, long createdAt) {
+            this.source = source;
+            this.bets = bets;
+            this.json = json;
+            this.md5 = DigestUtils.md5DigestAsHex(json);
+            this.etag = "\"" + md5 + "\"";
+            this.version = version;
+            this.createdAt = createdAt;
+            this.deltas = new ConcurrentHashMap<>();
+            this.encoded = new ConcurrentHashMap<>();
+            this.compressed = new ConcurrentHashMap<>();
+        }
+
+        /**
+         * The same JSON (and so the same version) as the previous Entry, for a new list.
+         */
+        Entry(CompactBetCatalog source, Entry previous, long version, long createdAt) {
+            this.source = source;
+            this.bets = previous.bets;
+            this.json = previous.json;
+            this.etag = previous.etag;
+            this.md5 = previous.md5;
+            this.version = version;
+            this.createdAt = createdAt;
+            this.deltas = previous.deltas;
+            this.encoded = previous.encoded;
+            this.compressed = previous.compressed;
+            this.filter = previous.filter;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return The bets in the format, transcoded from the JSON once per Entry and format.
+         */
+        byte[] body(WireFormat format) {
+            return WireFormat.JSON == format ? json : encoded.computeIfAbsent(format, f -> f.transcode(json));
+        }
+
+        /**
+         * @return The ETag of the bets in the format and encoding (which may be null).
+         */
+        String etag(WireFormat format, ResponseCompressor.Encoding encoding) {
+            String representation = representation(format, encoding);
+            return representation.isEmpty() ? etag : "\"" + md5 + "-" + representation + "\"";
+        }
+
+        /**
+         * @return e.g. "smile-gzip", "gzip" or "smile", or "" for uncompressed JSON.
+         */
+        static String representation(WireFormat format, ResponseCompressor.Encoding encoding) {
+            String name = WireFormat.JSON == format ? "" : format.name().toLowerCase();
+            if (null == encoding) {
+                return name;
+            }
+            return name.isEmpty() ? encoding.getName() : name + "-" + encoding.getName();
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package techtest.myservice.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import techtest.myservice.api.BetsRequest;
+import techtest.originalservice.CborDecimals;
+import techtest.originalservice.WireFormat;
+import techtest.originalservice.api.BetsResponse;
+import techtest.originalservice.api.BetsResponseReader;
+import techtest.originalservice.api.DecimalOdds;
+import techtest.originalservice.api.OriginalService;
+
+/**
+ * A streaming JSON codec for the "/bets" hot path, built on Jackson's JsonParser and JsonGenerator
+ * rather than data binding.
+ * 
+ * <ul>
+ * <li>readBetsRequest() parses our clients' JSON straight into a myservice api.BetsRequest,
+ * without the dto.BetsRequest. readBetsRequests() does the same for a "/bets/batch" array.</li>
+ * <li>As a BetsResponseReader, it writes our clients' JSON straight from the remote service's
+ * response, converting the fractional odds to decimal odds (see DecimalOdds) on the way. No
+ * response objects are created at all.</li>
+ * </ul>
+ * 
+ * The JSON is the same as the dto classes': the request fields are bet_id, odds and stake
+ * (anything else is ignored), and the response fields are bet_id, event, name, odds, stake and
+ * transaction_id, in the order the remote service sends them.
+ * 
+ * A codec has a WireFormat, JSON by default, which is the format of the requests it reads and the
+ * responses it writes (the remote service's responses are always JSON). Smile and CBOR have the same
+ * fields, but the odds and stakes are binary numbers rather than text (in CBOR, decimal fractions;
+ * see CborDecimals). writeArray() is for JSON only.
+ * 
+ * It is stateless and thread-safe.
+ */
+public class BetsJsonCodec implements BetsResponseReader<byte[]> {
+    // The callers own the streams.
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private final WireFormat format;
+    // The factory of the format, also not closing the callers' streams.
+    private final JsonFactory factory;
+
+    // Each thread writes responses into its own buffer, which is copied out and reused.
+    private static final ThreadLocal<ByteArrayOutputStream> RESPONSE_BUFFER = ThreadLocal
+            .withInitial(() -> new ByteArrayOutputStream(512));
+
+    public BetsJsonCodec() {
+        this(WireFormat.JSON);
+    }
+
+    public BetsJsonCodec(WireFormat format) {
+        super();
+
+        Assert.notNull(format, "format");
+
+        this.format = format;
+        this.factory = WireFormat.JSON == format ? JSON_FACTORY
+                : format.getFactory().copy().disable(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+                        .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @throws JsonParseException
+     *             If the request isn't a JSON object, or a field has the wrong type.
+     */
+    public BetsRequest readBetsRequest(InputStream in) throws IOException {
+        try (JsonParser parser = factory.createParser(in)) {
+            if (JsonToken.START_OBJECT != parser.nextToken()) {
+                throw new JsonParseException("Expected a JSON object", parser.getCurrentLocation());
+            }
+            return readBetsRequest(parser);
+        }
+    }
+
+    /**
+     * Reads a "/bets/batch" request: a JSON array of "/bets" requests.
+     * 
+     * @throws JsonParseException
+     *             If the request isn't a JSON array of objects, or a field has the wrong type.
+     */
+    public BetsRequest[] readBetsRequests(InputStream in) throws IOException {
+        try (JsonParser parser = factory.createParser(in)) {
+            if (JsonToken.START_ARRAY != parser.nextToken()) {
+                throw new JsonParseException("Expected a JSON array", parser.getCurrentLocation());
+            }
+
+            List<BetsRequest> requests = new ArrayList<>();
+            JsonToken token;
+            while (JsonToken.END_ARRAY != (token = parser.nextToken())) {
+                if (JsonToken.START_OBJECT != token) {
+                    throw new JsonParseException("Expected a JSON object", parser.getCurrentLocation());
+                }
+                requests.add(readBetsRequest(parser));
+            }
+            return requests.toArray(new BetsRequest[requests.size()]);
+        }
+    }
+
+    /**
+     * Reads the fields of a request object, whose START_OBJECT is the current token.
+     */
+    private static BetsRequest readBetsRequest(JsonParser parser) throws IOException {
+        long betId = 0;
+        BigDecimal odds = null;
+        BigDecimal stake = null;
+        while (JsonToken.FIELD_NAME == parser.nextToken()) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+            case "bet_id":
+                betId = readLong(parser);
+                break;
+            case "odds":
+                odds = readDecimal(parser);
+                break;
+            case "stake":
+                stake = readDecimal(parser);
+                break;
+            default:
+                parser.skipChildren();
+            }
+        }
+        return new BetsRequest(betId, odds, stake);
+    }
+
+    /**
+     * Transcodes the remote service's response to a bet into our JSON (or the codec's format).
+     */
+    @Override
+    public byte[] read(InputStream remoteJson) throws IOException {
+        ByteArrayOutputStream out = responseBuffer();
+        try (JsonParser parser = JSON_FACTORY.createParser(remoteJson);
+                JsonGenerator gen = factory.createGenerator(out, JsonEncoding.UTF8)) {
+            if (JsonToken.START_OBJECT != parser.nextToken()) {
+                throw new JsonParseException("Expected a JSON object", parser.getCurrentLocation());
+            }
+
+            gen.writeStartObject();
+            while (JsonToken.FIELD_NAME == parser.nextToken()) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                case "bet_id":
+                case "event":
+                case "name":
+                case "transaction_id":
+                    gen.writeFieldName(field);
+                    gen.copyCurrentEvent(parser);
+                    break;
+                case "stake":
+                    gen.writeFieldName(field);
+                    // Keep the scale, as binding to a BigDecimal would.
+                    if (JsonToken.VALUE_NUMBER_FLOAT == token) {
+                        CborDecimals.write(gen, parser.getDecimalValue());
+                    } else {
+                        gen.copyCurrentEvent(parser);
+                    }
+                    break;
+                case "odds":
+                    gen.writeFieldName(field);
+                    writeDecimalOdds(parser, gen);
+                    break;
+                default:
+                    parser.skipChildren();
+                }
+            }
+            gen.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes our JSON from a BetsResponse, for OriginalService implementations that don't have the
+     * remote service's JSON (e.g. the stub).
+     */
+    @Override
+    public byte[] convert(BetsResponse response) {
+        ByteArrayOutputStream out = responseBuffer();
+        try {
+            writeBetsResponse(response, out);
+        } catch (IOException e) {
+            // Not possible when writing to a ByteArrayOutputStream.
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    public void writeBetsResponse(BetsResponse response, OutputStream out) throws IOException {
+        try (JsonGenerator gen = factory.createGenerator(out, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeNumberField("bet_id", response.getBetId());
+            gen.writeStringField("event", response.getEvent());
+            gen.writeStringField("name", response.getName());
+            gen.writeFieldName("odds");
+            CborDecimals.write(gen, DecimalOdds.toDecimal(response.getOdds()));
+            gen.writeFieldName("stake");
+            CborDecimals.write(gen, response.getStake());
+            gen.writeNumberField("transaction_id", response.getTransactionId());
+            gen.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes the result of a batch item that failed: the error our "/bets" would have returned for
+     * it (see MainController.DefaultError), with the bet_id and the OriginalService.Error code.
+     */
+    public byte[] writeError(long betId, OriginalService.Error error) {
+        ByteArrayOutputStream out = responseBuffer();
+        try (JsonGenerator gen = factory.createGenerator(out, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeNumberField("bet_id", betId);
+            gen.writeStringField("error", error.getDescription());
+            gen.writeNumberField("code", error.getCode());
+            gen.writeEndObject();
+        } catch (IOException e) {
+            // Not possible when writing to a ByteArrayOutputStream.
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return A JSON array of the JSON values in items, in order, without parsing them again.
+     */
+    public static byte[] writeArray(List<byte[]> items) {
+        int length = 2 + Math.max(0, items.size() - 1);
+        for (byte[] item : items) {
+            length += item.length;
+        }
+
+        byte[] json = new byte[length];
+        int pos = 0;
+        json[pos++] = '[';
+        for (byte[] item : items) {
+            if (pos > 1) {
+                json[pos++] = ',';
+            }
+            System.arraycopy(item, 0, json, pos, item.length);
+            pos += item.length;
+        }
+        json[pos] = ']';
+        return json;
+    }
+
+    private static ByteArrayOutputStream responseBuffer() {
+        ByteArrayOutputStream out = RESPONSE_BUFFER.get();
+        out.reset();
+        return out;
+    }
+
+    /**
+     * Reads {"numerator":n,"denominator":d} and writes the decimal odds.
+     */
+    private static void writeDecimalOdds(JsonParser parser, JsonGenerator gen) throws IOException {
+        if (JsonToken.START_OBJECT != parser.getCurrentToken()) {
+            throw new JsonParseException("Expected fractional odds", parser.getCurrentLocation());
+        }
+
+        int numerator = -1;
+        int denominator = -1;
+        while (JsonToken.FIELD_NAME == parser.nextToken()) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("numerator".equals(field)) {
+                numerator = parser.getIntValue();
+            } else if ("denominator".equals(field)) {
+                denominator = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (numerator < 0 || denominator < 1) {
+            throw new JsonParseException("Invalid fractional odds", parser.getCurrentLocation());
+        }
+        CborDecimals.write(gen, DecimalOdds.toDecimal(numerator, denominator));
+    }
+
+    /**
+     * Accepts a JSON number or a string holding one, as data binding does. null is 0.
+     */
+    private static long readLong(JsonParser parser) throws IOException {
+        switch (parser.getCurrentToken()) {
+        case VALUE_NUMBER_INT:
+            return parser.getLongValue();
+        case VALUE_NULL:
+            return 0;
+        case VALUE_STRING:
+            try {
+                return Long.parseLong(parser.getText().trim());
+            } catch (NumberFormatException e) {
+                throw new JsonParseException("Expected a whole number", parser.getCurrentLocation(), e);
+            }
+        default:
+            throw new JsonParseException("Expected a whole number", parser.getCurrentLocation());
+        }
+    }
+
+    /**
+     * Accepts a JSON number or a string holding one, as data binding does, or a CBOR decimal
+     * fraction.
+     */
+    private static BigDecimal readDecimal(JsonParser parser) throws IOException {
+        if (CborDecimals.isDecimalFraction(parser)) {
+            return CborDecimals.read(parser);
+        }
+        switch (parser.getCurrentToken()) {
+        case VALUE_NUMBER_INT:
+        case VALUE_NUMBER_FLOAT:
+            return parser.getDecimalValue();
+        case VALUE_NULL:
+            return null;
+        case VALUE_STRING:
+            try {
+                return new BigDecimal(parser.getText().trim());
+            } catch (NumberFormatException e) {
+                throw new JsonParseException("Expected a number", parser.getCurrentLocation(), e);
+            }
+        default:
+            throw new JsonParseException("Expected a number", parser.getCurrentLocation());
+        }
+    }
+}
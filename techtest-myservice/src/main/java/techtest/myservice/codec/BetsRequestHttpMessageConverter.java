@@ -0,0 +1,76 @@
+package techtest.myservice.codec;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import techtest.myservice.api.BetsRequest;
+import techtest.originalservice.WireFormat;
+
+/**
+ * Reads a "/bets" request body straight into an api.BetsRequest, and a "/bets/batch" request body
+ * into an api.BetsRequest[], with BetsJsonCodec. Malformed JSON is a
+ * HttpMessageNotReadableException, as it is for the Jackson converter.
+ * 
+ * It reads the media types of the codec's WireFormat: JSON (and "+json") by default, or e.g. Smile
+ * for a Smile codec.
+ */
+public class BetsRequestHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+    private final BetsJsonCodec codec;
+
+    public BetsRequestHttpMessageConverter(BetsJsonCodec codec) {
+        this(codec, mediaTypes(codec));
+    }
+
+    public BetsRequestHttpMessageConverter(BetsJsonCodec codec, MediaType... supportedMediaTypes) {
+        super(supportedMediaTypes);
+
+        Assert.notNull(codec, "codec");
+
+        this.codec = codec;
+    }
+
+    private static MediaType[] mediaTypes(BetsJsonCodec codec) {
+        Assert.notNull(codec, "codec");
+
+        if (WireFormat.JSON == codec.getFormat()) {
+            return new MediaType[] {MediaType.APPLICATION_JSON, new MediaType("application", "*+json")};
+        }
+        return new MediaType[] {codec.getFormat().getMediaType()};
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return BetsRequest.class == clazz || BetsRequest[].class == clazz;
+    }
+
+    @Override
+    protected boolean canWrite(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Object readInternal(Class<? extends Object> clazz, HttpInputMessage inputMessage) throws IOException {
+        try {
+            if (BetsRequest[].class == clazz) {
+                return codec.readBetsRequests(inputMessage.getBody());
+            }
+            return codec.readBetsRequest(inputMessage.getBody());
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotReadableException(
+                    "Could not read " + codec.getFormat() + ": " + e.getOriginalMessage(), e);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object t, HttpOutputMessage outputMessage) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,35 @@
+package techtest.myservice.codec;
+
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import techtest.originalservice.WireFormat;
+
+/**
+ * The Jackson message converter for a binary WireFormat (Smile or CBOR), which Spring 4.2 doesn't
+ * have. It reads and writes the same DTOs as the JSON one, with an ObjectMapper whose factory is the
+ * format's.
+ */
+public class WireFormatHttpMessageConverter extends AbstractJackson2HttpMessageConverter {
+    private final WireFormat format;
+
+    /**
+     * @param mapper
+     *            Made with the format's factory, and otherwise configured like the JSON one, e.g.
+     *            with Jackson2ObjectMapperBuilder.configure(format.newObjectMapper()).
+     */
+    public WireFormatHttpMessageConverter(WireFormat format, ObjectMapper mapper) {
+        super(mapper, format.getMediaType());
+
+        Assert.isTrue(WireFormat.JSON != format, "format must be a binary format");
+        Assert.isInstanceOf(format.getFactory().getClass(), mapper.getFactory(), "mapper's factory");
+
+        this.format = format;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+}
@@ -2,28 +2,224 @@ package techtest.myservice.conversion;
 
 import java.math.BigDecimal;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.core.convert.converter.Converter;
+import org.springframework.util.Assert;
 
+import techtest.originalservice.api.DecimalOdds;
 import techtest.originalservice.api.Odds;
 
+/**
+ * Convert from decimal odds to fractional odds.
+ *
+ * <ol>
+ * <li>If the decimal odds are those of a price on the ladder (see FractionalOddsLadder), that price
+ * is returned. E.g. 1.67 is 4/6.</li>
+ * <li>Otherwise the fraction is found with continued fractions: the best rational approximation
+ * whose denominator is no greater than maxDenominator. E.g. 1.12 is 3/25.</li>
+ * </ol>
+ *
+ * In both cases the result is only returned if it matches the decimal odds exactly, or (for
+ * recurring odds) displays as them - see DecimalOdds. If there is no such fraction, or the decimal
+ * odds are not greater than 1, null is returned.
+ *
+ * Fractions found are memoised in a ConcurrentHashMap keyed by the decimal odds with trailing zeros
+ * stripped, so "2", "2.0" and "2.00" share an entry. A hit is a plain get(), with no lock and no
+ * bookkeeping. About maxCacheSize are kept: once there are more, the oldest entries are forgotten
+ * first, in the order they were added (kept in a ConcurrentLinkedQueue). Concurrent misses may
+ * briefly take it over maxCacheSize. Misses (null) are never kept, so decimals that aren't prices
+ * can't push out ones that are.
+ */
 public class DecimalOddsToFractionalOddsConverter implements Converter<BigDecimal, Odds> {
+    public static final int DEFAULT_MAX_DENOMINATOR = 100;
+    public static final int DEFAULT_MAX_CACHE_SIZE = 10_000;
 
-    Map<BigDecimal, Odds> mappings = new HashMap<BigDecimal, Odds>() {
-        {
-            put(new BigDecimal("11.0"), new Odds(10, 1));
-            put(new BigDecimal("2.0"), new Odds(1, 1));
-            put(new BigDecimal("4.0"), new Odds(3, 1));
-            put(new BigDecimal("2.75"), new Odds(7, 4));
-            put(new BigDecimal("3.0"), new Odds(2, 1));
-            put(new BigDecimal("18.0"), new Odds(17, 1));
+    // Fractions with larger denominators would need more decimal places than a long can hold.
+    static final int MAX_MAX_DENOMINATOR = 100_000;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final int maxDenominator;
+    private final int maxCacheSize;
+    private final Map<BigDecimal, Odds> ladder = new HashMap<>();
+    private final ConcurrentHashMap<BigDecimal, Odds> cache = new ConcurrentHashMap<>();
+    // The keys of the cache, oldest first, and how many there are.
+    private final Queue<BigDecimal> cacheOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger cacheCount = new AtomicInteger();
+
+    public DecimalOddsToFractionalOddsConverter() {
+        this(DEFAULT_MAX_DENOMINATOR, FractionalOddsLadder.STANDARD, DEFAULT_MAX_CACHE_SIZE);
+    }
+
+    /**
+     * @param maxDenominator
+     *            The largest denominator that will be returned for odds not on the ladder.
+     * @param ladder
+     *            The prices to prefer. See FractionalOddsLadder.STANDARD.
+     * @param maxCacheSize
+     *            The most conversions to remember.
+     */
+    public DecimalOddsToFractionalOddsConverter(int maxDenominator, List<Odds> ladder, int maxCacheSize) {
+        super();
+
+        Assert.isTrue(maxDenominator >= 1 && maxDenominator <= MAX_MAX_DENOMINATOR,
+                "maxDenominator must be between 1 and " + MAX_MAX_DENOMINATOR);
+        Assert.notNull(ladder, "ladder");
+        Assert.isTrue(maxCacheSize >= 0, "maxCacheSize cannot be negative");
+
+        this.maxDenominator = maxDenominator;
+        this.maxCacheSize = maxCacheSize;
+        for (Odds odds : ladder) {
+            this.ladder.putIfAbsent(DecimalOdds.toDecimal(odds).stripTrailingZeros(), odds);
         }
-    };
+    }
 
     @Override
     public Odds convert(BigDecimal source) {
-        return mappings.get(source);
+        BigDecimal key = source.stripTrailingZeros();
+
+        if (0 == maxCacheSize) {
+            return compute(key);
+        }
+
+        Odds odds = cache.get(key);
+        if (null != odds) {
+            return odds;
+        }
+        odds = compute(key);
+        if (null != odds && null == cache.putIfAbsent(key, odds)) {
+            cacheOrder.add(key);
+            if (cacheCount.incrementAndGet() > maxCacheSize) {
+                evictOldest();
+            }
+        }
+        return odds;
+    }
+
+    public int getMaxDenominator() {
+        return maxDenominator;
     }
 
+    int cacheSize() {
+        return cache.size();
+    }
+
+    boolean isCached(BigDecimal decimal) {
+        return cache.containsKey(decimal.stripTrailingZeros());
+    }
+
+    private void evictOldest() {
+        // Other threads may be adding and evicting too, so stop as soon as it is back to size.
+        while (cacheCount.get() > maxCacheSize) {
+            BigDecimal oldest = cacheOrder.poll();
+            if (null == oldest) {
+                return;
+            }
+            // Each key is queued once per time it is added, so this removes it.
+            cache.remove(oldest);
+            cacheCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param decimal
+     *            The decimal odds, with trailing zeros stripped.
+     */
+    private Odds compute(BigDecimal decimal) {
+        if (decimal.compareTo(BigDecimal.ONE) <= 0) {
+            return null;
+        }
+
+        Odds onLadder = ladder.get(decimal);
+        if (null != onLadder) {
+            return onLadder;
+        }
+
+        if (decimal.scale() < 0) {
+            // e.g. 1E+1
+            decimal = decimal.setScale(0);
+        }
+
+        // decimal is unscaled / 10^scale, so the fractional odds are (unscaled - 10^scale) / 10^scale.
+        int scale = decimal.scale();
+        if (scale >= POWERS_OF_TEN.length || decimal.precision() >= POWERS_OF_TEN.length) {
+            return null;
+        }
+        long q = POWERS_OF_TEN[scale];
+        long p = decimal.unscaledValue().longValue() - q;
+
+        return approximate(p, q, decimal);
+    }
+
+    /**
+     * Finds the best rational approximation of p/q with a denominator no greater than
+     * maxDenominator, by walking the convergents of its continued fraction and then trying the best
+     * semiconvergent.
+     */
+    private Odds approximate(long p, long q, BigDecimal decimal) {
+        long gcd = gcd(p, q);
+        p /= gcd;
+        q /= gcd;
+        if (q <= maxDenominator) {
+            return toOdds(p, q, decimal);
+        }
+
+        long p0 = 0, q0 = 1, p1 = 1, q1 = 0;
+        long n = p, d = q;
+        while (0 != d) {
+            long a = n / d;
+            // q0 + a * q1 > maxDenominator, written so that it can't overflow.
+            if (0 != q1 && a > (maxDenominator - q0) / q1) {
+                break;
+            }
+            long p2 = p0 + a * p1;
+            long q2 = q0 + a * q1;
+            p0 = p1;
+            q0 = q1;
+            p1 = p2;
+            q1 = q2;
+            long r = n - a * d;
+            n = d;
+            d = r;
+        }
+
+        // The last convergent is the closer candidate more often than not, so try it first.
+        Odds convergent = toOdds(p1, q1, decimal);
+        if (null != convergent) {
+            return convergent;
+        }
+        long k = (maxDenominator - q0) / q1;
+        return toOdds(p0 + k * p1, q0 + k * q1, decimal);
+    }
+
+    private static Odds toOdds(long numerator, long denominator, BigDecimal decimal) {
+        if (numerator < 1 || numerator > Integer.MAX_VALUE || denominator < 1) {
+            return null;
+        }
+        int n = (int) numerator;
+        int d = (int) denominator;
+        return DecimalOdds.matches(n, d, decimal) ? new Odds(n, d) : null;
+    }
+
+    private static long gcd(long a, long b) {
+        while (0 != b) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
 }
@@ -0,0 +1,44 @@
+package techtest.myservice.conversion;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import techtest.originalservice.api.Odds;
+
+/**
+ * The standard bookmaker ladder of fractional odds.
+ *
+ * Bookmakers quote from a conventional set of prices, some of which are not in lowest terms (e.g.
+ * 4/6 rather than 2/3, 6/4 rather than 3/2, 85/40 rather than 17/8). When converting decimal odds
+ * back to fractional odds, a price on the ladder is preferred over any other fraction with the same
+ * decimal value, so that the conventional form is returned.
+ */
+public final class FractionalOddsLadder {
+    private FractionalOddsLadder() {
+    }
+
+    /**
+     * The standard ladder, shortest price first.
+     */
+    public static final List<Odds> STANDARD = Collections.unmodifiableList(Arrays.asList(
+            // odds-on
+            odds(1, 10), odds(1, 9), odds(1, 8), odds(2, 15), odds(1, 7), odds(1, 6), odds(2, 11), odds(1, 5),
+            odds(2, 9), odds(1, 4), odds(2, 7), odds(3, 10), odds(1, 3), odds(4, 11), odds(2, 5), odds(4, 9),
+            odds(1, 2), odds(8, 15), odds(4, 7), odds(8, 13), odds(4, 6), odds(8, 11), odds(4, 5), odds(5, 6),
+            odds(10, 11),
+            // evens
+            odds(1, 1),
+            // odds-against
+            odds(21, 20), odds(11, 10), odds(6, 5), odds(5, 4), odds(11, 8), odds(6, 4), odds(13, 8), odds(7, 4),
+            odds(15, 8), odds(2, 1), odds(85, 40), odds(9, 4), odds(5, 2), odds(11, 4), odds(3, 1), odds(10, 3),
+            odds(7, 2), odds(4, 1), odds(9, 2), odds(5, 1), odds(11, 2), odds(6, 1), odds(13, 2), odds(7, 1),
+            odds(15, 2), odds(8, 1), odds(17, 2), odds(9, 1), odds(10, 1), odds(11, 1), odds(12, 1), odds(14, 1),
+            odds(16, 1), odds(18, 1), odds(20, 1), odds(25, 1), odds(28, 1), odds(33, 1), odds(40, 1),
+            odds(50, 1), odds(66, 1), odds(80, 1), odds(100, 1), odds(150, 1), odds(200, 1), odds(250, 1),
+            odds(500, 1), odds(1000, 1)));
+
+    private static Odds odds(int numerator, int denominator) {
+        return new Odds(numerator, denominator);
+    }
+}
@@ -4,16 +4,19 @@ import java.math.BigDecimal;
 
 import org.springframework.core.convert.converter.Converter;
 
+import techtest.originalservice.api.DecimalOdds;
 import techtest.originalservice.api.Odds;
 
 /**
  * Convert from fractional odds to BigDecimal.
+ * 
+ * Recurring odds (e.g. 1/3) are rounded for display. See DecimalOdds for the rounding policy.
  */
 public class FractionalOddsToDecimalOddsConverter implements Converter<Odds, BigDecimal> {
 
     @Override
     public BigDecimal convert(Odds source) {
-        return new BigDecimal(source.getNumerator()).divide(new BigDecimal(source.getDenominator())).add(BigDecimal.ONE);
+        return DecimalOdds.toDecimal(source.getNumerator(), source.getDenominator());
     }
 
 }
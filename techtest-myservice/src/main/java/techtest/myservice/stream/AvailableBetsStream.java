@@ -0,0 +1,260 @@
+package techtest.myservice.stream;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import techtest.myservice.conversion.OriginalServiceBetToMyServiceBetConverter;
+import techtest.myservice.dto.Bet;
+import techtest.originalservice.DeltaBroadcaster;
+import techtest.originalservice.DeltaBroadcaster.Event;
+import techtest.originalservice.DeltaBroadcaster.Subscription;
+import techtest.originalservice.api.CompactBetCatalog;
+import techtest.originalservice.api.OriginalService;
+import techtest.originalservice.metrics.ServiceMetrics;
+
+/**
+ * The "/available/stream" Server-Sent Events: a "snapshot" of the available bets (as "/available"
+ * would return them), and then the "changes" and "removed" bets (see DeltaBroadcaster).
+ *
+ * One poller thread gets the available bets every pollMillis, while there is anyone to send them
+ * to, and publishes them to a DeltaBroadcaster. So however many clients there are, they cost one
+ * call to the OriginalService per poll, and one conversion and serialization per change. In the
+ * "prod" profile the OriginalService is a CachingOriginalService, which hands out the same
+ * CompactBetCatalog until it refreshes, and an unchanged catalog isn't even converted.
+ *
+ * Events are written to the clients by a pool of senderThreads, as SseEmitter writes block. Each
+ * client has a queue of queueSize events. A client that falls that far behind is dropped (its
+ * response is completed), and an EventSource will reconnect and get a new snapshot.
+ *
+ * The emitters time out after timeoutMillis, after which an EventSource also reconnects.
+ */
+public class AvailableBetsStream {
+    // The data is JSON, but already serialized, so it must be written as a String.
+    private static final MediaType TEXT_UTF8 = new MediaType("text", "plain", StandardCharsets.UTF_8);
+
+    private final OriginalService originalService;
+    private final OriginalServiceBetToMyServiceBetConverter betConverter;
+    private final ObjectMapper mapper;
+    private final Settings settings;
+    private final DeltaBroadcaster<Bet> broadcaster;
+    private final ScheduledExecutorService poller;
+    private final ExecutorService sender;
+
+    private final AtomicBoolean polling = new AtomicBoolean();
+    // Only read and written by one poll at a time.
+    private CompactBetCatalog lastPublished;
+
+    public AvailableBetsStream(OriginalService originalService, OriginalServiceBetToMyServiceBetConverter betConverter,
+            ObjectMapper mapper, ServiceMetrics metrics, Settings settings) {
+        super();
+
+        Assert.notNull(originalService, "originalService");
+        Assert.notNull(betConverter, "betConverter");
+        Assert.notNull(mapper, "mapper");
+        Assert.notNull(settings, "settings");
+        Assert.isTrue(settings.getPollMillis() > 0, "pollMillis must be greater than zero");
+        Assert.isTrue(settings.getSenderThreads() >= 1, "senderThreads must be at least 1");
+
+        this.originalService = originalService;
+        this.betConverter = betConverter;
+        this.mapper = mapper;
+        this.settings = settings;
+        this.broadcaster = new DeltaBroadcaster<>(Bet::getBet_id, this::toJson, settings.getQueueSize(), metrics,
+                ServiceMetrics.STREAM_AVAILABLE);
+
+        CustomizableThreadFactory pollerThreads = new CustomizableThreadFactory("available-stream-poller-");
+        pollerThreads.setDaemon(true);
+        this.poller = Executors.newSingleThreadScheduledExecutor(pollerThreads);
+        CustomizableThreadFactory senderThreads = new CustomizableThreadFactory("available-stream-sender-");
+        senderThreads.setDaemon(true);
+        this.sender = Executors.newFixedThreadPool(settings.getSenderThreads(), senderThreads);
+
+        poller.scheduleWithFixedDelay(this::poll, settings.getPollMillis(), settings.getPollMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return The emitter for a new client, which gets a snapshot as soon as there is one.
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(settings.getTimeoutMillis());
+        Client client = new Client(emitter);
+        emitter.onCompletion(client::cancel);
+        emitter.onTimeout(client::cancel);
+        client.subscription = broadcaster.subscribe(client::onEvent, client::onDrop);
+        client.start();
+        if (!broadcaster.hasCurrent()) {
+            // Rather than wait for the next poll.
+            poller.execute(this::poll);
+        }
+        return client.emitter;
+    }
+
+    public int getSubscriberCount() {
+        return broadcaster.getSubscriberCount();
+    }
+
+    public void shutdown() {
+        poller.shutdownNow();
+        sender.shutdownNow();
+    }
+
+    /**
+     * Publishes the available bets, if anyone is subscribed. At most one call to the
+     * OriginalService is in progress at once.
+     */
+    void poll() {
+        if (0 == broadcaster.getSubscriberCount() || !polling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            originalService.compactCatalogAsync().whenComplete((bets, t) -> {
+                try {
+                    if (null == t) {
+                        publish(bets);
+                    }
+                    // Otherwise the next poll tries again.
+                } finally {
+                    polling.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            // A scheduled task that throws is never run again.
+            polling.set(false);
+        }
+    }
+
+    private void publish(CompactBetCatalog bets) {
+        if (bets == lastPublished && broadcaster.hasCurrent()) {
+            return;
+        }
+        List<Bet> dtos = new ArrayList<>(bets.size());
+        for (int i = 0; i < bets.size(); i++) {
+            dtos.add(new Bet(betConverter.convert(bets.bet(i))));
+        }
+        broadcaster.publish(dtos);
+        lastPublished = bets;
+    }
+
+    private String toJson(Object data) {
+        try {
+            return mapper.writeValueAsString(data);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * One client. Its events are sent by one sender thread at a time, in order.
+     */
+    private class Client implements Runnable {
+        final SseEmitter emitter;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile Subscription subscription;
+        // Events queued before the subscription is set are sent by start().
+        volatile boolean started;
+
+        Client(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        void start() {
+            started = true;
+            onEvent();
+        }
+
+        void onEvent() {
+            if (started && scheduled.compareAndSet(false, true)) {
+                sender.execute(this);
+            }
+        }
+
+        void onDrop() {
+            // Not here, as the emitter may be locked by a sender thread that is blocked writing.
+            sender.execute(emitter::complete);
+        }
+
+        void cancel() {
+            Subscription s = subscription;
+            if (null != s) {
+                s.cancel();
+            }
+        }
+
+        @Override
+        public void run() {
+            do {
+                Event event;
+                while (!subscription.isClosed() && null != (event = subscription.poll())) {
+                    try {
+                        emitter.send(SseEmitter.event().id(Long.toString(event.getId())).name(event.getName())
+                                .data(event.getData(), TEXT_UTF8));
+                    } catch (IOException | IllegalStateException e) {
+                        // The client has gone, or the emitter has completed.
+                        cancel();
+                        return;
+                    }
+                }
+                scheduled.set(false);
+            } while (!subscription.isEmpty() && scheduled.compareAndSet(false, true));
+        }
+    }
+
+    /**
+     * "/available/stream" settings.
+     */
+    public static class Settings {
+        private long pollMillis = 1000;
+        private int queueSize = 16;
+        private long timeoutMillis = 600000;
+        private int senderThreads = 4;
+
+        public long getPollMillis() {
+            return pollMillis;
+        }
+
+        public void setPollMillis(long pollMillis) {
+            this.pollMillis = pollMillis;
+        }
+
+        public int getQueueSize() {
+            return queueSize;
+        }
+
+        public void setQueueSize(int queueSize) {
+            this.queueSize = queueSize;
+        }
+
+        public long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public void setTimeoutMillis(long timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        public int getSenderThreads() {
+            return senderThreads;
+        }
+
+        public void setSenderThreads(int senderThreads) {
+            this.senderThreads = senderThreads;
+        }
+    }
+}
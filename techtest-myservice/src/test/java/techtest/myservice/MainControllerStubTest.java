@@ -0,0 +1,354 @@
+package techtest.myservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.context.web.WebAppConfiguration;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.WebApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import techtest.myservice.MainControllerStubTest.Config;
+import techtest.myservice.dto.Bet;
+import techtest.myservice.dto.BetsRequest;
+import techtest.myservice.dto.BetsResponse;
+import techtest.myservice.stream.AvailableBetsStream;
+import techtest.originalservice.OriginalServiceStub;
+import techtest.originalservice.WireFormat;
+import techtest.originalservice.api.OriginalService;
+import techtest.originalservice.metrics.ServiceMetrics;
+
+/**
+ * Tests the MainController against the OriginalServiceStub, using the stub files from the
+ * techtest-original-service-client project. Unlike MainControllerTest, these tests don't need the
+ * live site.
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@SpringApplicationConfiguration(classes = {Application.class, Config.class})
+@WebAppConfiguration
+// The stub's available bets are smaller than the default minSize.
+@TestPropertySource(properties = "techtest.compression.minSize=0")
+public class MainControllerStubTest {
+    static final String STUB_FILE_FOLDER = "../techtest-original-service-client/src/test/resources/techtest/originalservice/api";
+
+    @Autowired
+    private WebApplicationContext wac;
+
+    @Autowired
+    MappingJackson2HttpMessageConverter httpMessageConverter;
+
+    @Autowired
+    ServiceMetrics serviceMetrics;
+
+    @Autowired
+    CountingOriginalServiceStub originalService;
+
+    @Autowired
+    AvailableBetsStream availableBetsStream;
+
+    private MockMvc mockMvc;
+    private BigDecimal bet1Odds = new BigDecimal("11.0");
+
+    @Before
+    public void before() {
+        this.mockMvc = MockMvcBuilders.webAppContextSetup(this.wac).build();
+    }
+
+    @Test
+    public void when_get_available_then_ok_with_decimal_odds() throws Exception {
+        Bet[] bets = readValue(performAsync(get("/available")).andExpect(status().isOk()), Bet[].class);
+
+        assertThat(bets.length, is(6));
+        assertThat(bets[0], is(new Bet(1, "World Cup 2018", "England", new BigDecimal("11"))));
+        assertThat(bets[3].getOdds(), is(new BigDecimal("2.75")));
+    }
+
+    @Test
+    public void when_get_available_with_matching_etag_then_not_modified() throws Exception {
+        MvcResult first = performAsync(get("/available")).andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, startsWith("max-age="))).andReturn();
+        String etag = first.getResponse().getHeader(HttpHeaders.ETAG);
+
+        performAsync(get("/available").header(HttpHeaders.IF_NONE_MATCH, etag)).andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    public void when_get_available_accepting_gzip_then_gzipped() throws Exception {
+        String plain = performAsync(get("/available")).andReturn().getResponse().getContentAsString();
+
+        MvcResult gzipped = performAsync(get("/available").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk()).andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip")).andReturn();
+
+        byte[] unzipped = StreamUtils.copyToByteArray(
+                new GZIPInputStream(new ByteArrayInputStream(gzipped.getResponse().getContentAsByteArray())));
+        assertThat(new String(unzipped, "UTF-8"), is(plain));
+        assertThat(serviceMetrics.toMap().get("compression.gzip.bytesOut").longValue(),
+                is((long) gzipped.getResponse().getContentAsByteArray().length));
+    }
+
+    @Test
+    public void when_get_available_accepting_smile_then_smile() throws Exception {
+        Bet[] json = readValue(performAsync(get("/available")), Bet[].class);
+
+        MvcResult smile = performAsync(get("/available").header(HttpHeaders.ACCEPT, WireFormat.SMILE_VALUE))
+                .andExpect(status().isOk()).andExpect(content().contentType(WireFormat.SMILE.getMediaType()))
+                .andReturn();
+
+        Bet[] bets = WireFormat.SMILE.newObjectMapper().readValue(smile.getResponse().getContentAsByteArray(),
+                Bet[].class);
+        assertThat(bets, is(json));
+        assertThat(smile.getResponse().getHeader(HttpHeaders.VARY), containsString(HttpHeaders.ACCEPT));
+    }
+
+    @Test
+    public void when_post_bets_in_cbor_then_created_in_cbor() throws Exception {
+        ObjectMapper cbor = WireFormat.CBOR.newObjectMapper();
+        byte[] content = cbor.writeValueAsBytes(new BetsRequest(1, bet1Odds, BigDecimal.ONE));
+
+        MvcResult result = performAsync(post("/bets").content(content).contentType(WireFormat.CBOR.getMediaType())
+                .accept(WireFormat.CBOR.getMediaType())).andExpect(status().isCreated())
+                        .andExpect(content().contentType(WireFormat.CBOR.getMediaType())).andReturn();
+
+        BetsResponse betsResponse = cbor.readValue(result.getResponse().getContentAsByteArray(), BetsResponse.class);
+        assertThat(betsResponse.getOdds(), is(new BigDecimal("11")));
+        assertThat(betsResponse.getStake(), is(BigDecimal.TEN));
+        assertThat(betsResponse.getTransaction_id(), is(314442L));
+    }
+
+    @Test
+    public void when_get_available_stream_then_snapshot_event() throws Exception {
+        MvcResult result = this.mockMvc.perform(get("/available/stream")).andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(availableBetsStream.getSubscriberCount(), is(1));
+
+        // The first event is sent once the poller has fetched the available bets.
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!result.getResponse().getContentAsString().endsWith("\n\n") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(result.getResponse().getContentType(), startsWith("text/event-stream"));
+        assertThat(result.getResponse().getContentAsString(), containsString(
+                "event:snapshot\ndata:[{\"bet_id\":1,\"event\":\"World Cup 2018\",\"name\":\"England\",\"odds\":11},"));
+
+        // The client goes away.
+        result.getRequest().getAsyncContext().complete();
+        assertThat(availableBetsStream.getSubscriberCount(), is(0));
+    }
+
+    @Test
+    public void when_post_bets_with_valid_request_body_then_created() throws Exception {
+        ResultActions resultActions = performAsync(postBets(new BetsRequest(1, bet1Odds, BigDecimal.ONE)));
+        BetsResponse betsResponse = readValue(resultActions.andExpect(status().isCreated()), BetsResponse.class);
+
+        assertThat(betsResponse.getBet_id(), is(1L));
+        assertThat(betsResponse.getOdds(), is(new BigDecimal("11")));
+        assertThat(betsResponse.getTransaction_id(), is(314442L));
+    }
+
+    @Test
+    public void when_post_bets_with_incorrect_odds_then_incorrect_odds_error() throws Exception {
+        long before = serviceMetrics.getResponseErrors().get(OriginalService.Error.INCORRECT_ODDS);
+
+        performAsync(postBets(new BetsRequest(1, new BigDecimal("1.0"), BigDecimal.ONE)))
+                .andExpect(status().isIAmATeapot()).andExpect(content().string(jsonError("Incorrect Odds")));
+
+        assertThat(serviceMetrics.getResponseErrors().get(OriginalService.Error.INCORRECT_ODDS), is(before + 1));
+    }
+
+    @Test
+    public void when_post_bets_with_unknown_bet_id_then_invalid_bet_id_error() throws Exception {
+        performAsync(postBets(new BetsRequest(999, bet1Odds, BigDecimal.ONE))).andExpect(status().isIAmATeapot())
+                .andExpect(content().string(jsonError("Invalid Bet ID")));
+    }
+
+    @Test
+    public void when_post_bets_with_unknown_bet_id_and_odds_of_1_then_invalid_bet_id_error() throws Exception {
+        performAsync(postBets(new BetsRequest(999, new BigDecimal("1.0"), BigDecimal.ONE)))
+                .andExpect(status().isIAmATeapot()).andExpect(content().string(jsonError("Invalid Bet ID")));
+    }
+
+    @Test
+    public void when_post_bets_again_with_the_same_idempotency_key_then_placed_once() throws Exception {
+        BetsRequest request = new BetsRequest(1, bet1Odds, BigDecimal.ONE);
+        int before = originalService.betsCalls.get();
+
+        BetsResponse first = readValue(performAsync(postBets(request).header(MainController.IDEMPOTENCY_KEY, "retry-1"))
+                .andExpect(status().isCreated()), BetsResponse.class);
+        BetsResponse retried = readValue(performAsync(postBets(request).header(MainController.IDEMPOTENCY_KEY, "retry-1"))
+                .andExpect(status().isCreated()), BetsResponse.class);
+
+        assertThat(retried, is(first));
+        assertThat(originalService.betsCalls.get(), is(before + 1));
+    }
+
+    @Test
+    public void when_post_bets_again_with_the_same_numbers_written_differently_then_placed_once() throws Exception {
+        int before = originalService.betsCalls.get();
+
+        performAsync(postBets(new BetsRequest(1, bet1Odds, BigDecimal.ONE)).header(MainController.IDEMPOTENCY_KEY,
+                "retry-2")).andExpect(status().isCreated());
+        // "stake":1.0 and the odds with a trailing zero.
+        BetsRequest retry = new BetsRequest(1, bet1Odds.setScale(bet1Odds.scale() + 1), new BigDecimal("1.0"));
+        performAsync(postBets(retry).header(MainController.IDEMPOTENCY_KEY, "retry-2"))
+                .andExpect(status().isCreated());
+
+        assertThat(originalService.betsCalls.get(), is(before + 1));
+    }
+
+    @Test
+    public void when_post_bets_with_an_idempotency_key_used_for_another_bet_then_unprocessable() throws Exception {
+        performAsync(postBets(new BetsRequest(1, bet1Odds, BigDecimal.ONE)).header(MainController.IDEMPOTENCY_KEY,
+                "reused")).andExpect(status().isCreated());
+
+        performAsync(postBets(new BetsRequest(1, bet1Odds, BigDecimal.TEN)).header(MainController.IDEMPOTENCY_KEY,
+                "reused")).andExpect(status().isUnprocessableEntity())
+                        .andExpect(content().string(jsonError("Idempotency Key Reused")));
+    }
+
+    @Test
+    public void when_post_bets_batch_then_a_result_for_each_bet_in_order() throws Exception {
+        BetsRequest[] batch = {new BetsRequest(1, bet1Odds, BigDecimal.ONE),
+                new BetsRequest(1, new BigDecimal("1.0"), BigDecimal.ONE), new BetsRequest(999, bet1Odds, BigDecimal.ONE),
+                new BetsRequest(1, new BigDecimal("1.001"), BigDecimal.ONE)};
+        long before = serviceMetrics.getResponseErrors().get(OriginalService.Error.INCORRECT_ODDS);
+
+        String content = performAsync(postBetsBatch(batch)).andExpect(status().isOk()).andReturn().getResponse()
+                .getContentAsString();
+        JsonNode results = httpMessageConverter.getObjectMapper().readTree(content);
+
+        assertThat(results.size(), is(4));
+        assertThat(results.get(0).get("transaction_id").asLong(), is(314442L));
+        assertThat(results.get(1).toString(), is("{\"bet_id\":1,\"error\":\"Incorrect Odds\",\"code\":1}"));
+        assertThat(results.get(2).toString(), is("{\"bet_id\":999,\"error\":\"Invalid Bet ID\",\"code\":3}"));
+        // 1.001 isn't bet 1's price.
+        assertThat(results.get(3).get("code").asInt(), is(1));
+        assertThat(serviceMetrics.getResponseErrors().get(OriginalService.Error.INCORRECT_ODDS), is(before + 2));
+    }
+
+    @Test
+    public void when_post_bets_batch_then_available_bets_are_fetched_once() throws Exception {
+        BetsRequest[] batch = new BetsRequest[50];
+        Arrays.fill(batch, new BetsRequest(1, bet1Odds, BigDecimal.ONE));
+        int before = originalService.availableCalls.get();
+
+        performAsync(postBetsBatch(batch)).andExpect(status().isOk());
+
+        assertThat(originalService.availableCalls.get(), is(before + 1));
+        assertThat(originalService.betsCalls.get() >= 50, is(true));
+    }
+
+    @Test
+    public void when_post_bets_batch_with_unknown_bet_id_and_odds_of_1_then_invalid_bet_id() throws Exception {
+        String content = performAsync(postBetsBatch(new BetsRequest(999, new BigDecimal("1.0"), BigDecimal.ONE),
+                new BetsRequest(1, new BigDecimal("0.5"), BigDecimal.ONE))).andExpect(status().isOk()).andReturn()
+                        .getResponse().getContentAsString();
+        JsonNode results = httpMessageConverter.getObjectMapper().readTree(content);
+
+        assertThat(results.get(0).toString(), is("{\"bet_id\":999,\"error\":\"Invalid Bet ID\",\"code\":3}"));
+        assertThat(results.get(1).toString(), is("{\"bet_id\":1,\"error\":\"Incorrect Odds\",\"code\":1}"));
+    }
+
+    @Test
+    public void when_post_bets_with_odds_of_a_fraction_over_100_then_checked_against_the_bet() throws Exception {
+        int before = originalService.availableCalls.get();
+
+        // 1/128. The converter finds no fraction with a denominator of at most 100, but a bet could
+        // still have this price.
+        performAsync(postBets(new BetsRequest(1, new BigDecimal("1.0078125"), BigDecimal.ONE)))
+                .andExpect(status().isIAmATeapot()).andExpect(content().string(jsonError("Incorrect Odds")));
+
+        assertThat(originalService.availableCalls.get(), is(before + 1));
+    }
+
+    @Test
+    public void when_post_bets_batch_too_large_then_payload_too_large() throws Exception {
+        BetsRequest[] batch = new BetsRequest[MainController.DEFAULT_BATCH_MAX_SIZE + 1];
+        Arrays.fill(batch, new BetsRequest(1, bet1Odds, BigDecimal.ONE));
+
+        performAsync(postBetsBatch(batch)).andExpect(status().isPayloadTooLarge())
+                .andExpect(content().string(jsonError("Batch Too Large")));
+    }
+
+    RequestBuilder postBetsBatch(BetsRequest... betsRequests) throws Exception {
+        String content = httpMessageConverter.getObjectMapper().writeValueAsString(betsRequests);
+        return post("/bets/batch").content(content).contentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+    }
+
+    MockHttpServletRequestBuilder postBets(BetsRequest betsRequest) throws Exception {
+        String content = httpMessageConverter.getObjectMapper().writeValueAsString(betsRequest);
+        return post("/bets").content(content).contentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+    }
+
+    ResultActions performAsync(RequestBuilder requestBuilder) throws Exception {
+        MvcResult mvcResult = this.mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+        return this.mockMvc.perform(asyncDispatch(mvcResult));
+    }
+
+    <T> T readValue(ResultActions resultActions, Class<T> type) throws Exception {
+        String content = resultActions.andReturn().getResponse().getContentAsString();
+        return httpMessageConverter.getObjectMapper().readValue(content, type);
+    }
+
+    String jsonError(String message) {
+        return "{\"error\":\"" + message + "\"}";
+    }
+
+    @Configuration
+    public static class Config {
+        @Bean
+        public CountingOriginalServiceStub originalService(MappingJackson2HttpMessageConverter httpMessageConverter) {
+            return new CountingOriginalServiceStub(STUB_FILE_FOLDER, httpMessageConverter);
+        }
+    }
+
+    static class CountingOriginalServiceStub extends OriginalServiceStub {
+        final AtomicInteger availableCalls = new AtomicInteger();
+        final AtomicInteger betsCalls = new AtomicInteger();
+
+        CountingOriginalServiceStub(String stubFileFolder, MappingJackson2HttpMessageConverter converter) {
+            super(stubFileFolder, converter);
+        }
+
+        @Override
+        public techtest.originalservice.api.Bet[] available() {
+            availableCalls.incrementAndGet();
+            return super.available();
+        }
+
+        @Override
+        public techtest.originalservice.api.BetsResponse bets(techtest.originalservice.api.BetsRequest bet) {
+            betsCalls.incrementAndGet();
+            return super.bets(bet);
+        }
+    }
+}
@@ -17,6 +17,8 @@ import org.springframework.http.converter.json.MappingJackson2HttpMessageConvert
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.client.RestTemplate;
@@ -55,7 +57,7 @@ public class MainControllerTest {
 
     @Test
     public void when_get_available_then_ok() throws Exception {
-        this.mockMvc.perform(get("/available")).andExpect(status().isOk());
+        performAsync(get("/available")).andExpect(status().isOk());
     }
 
     @Test
@@ -67,8 +69,8 @@ public class MainControllerTest {
     public void when_post_bets_with_valid_request_body_then_created() throws Exception {
         BetsRequest betsRequest = new BetsRequest(1, bet1Odds, new BigDecimal(1));
         String content = httpMessageConverter.getObjectMapper().writeValueAsString(betsRequest);
-        ResultActions resultActions = this.mockMvc
-                .perform(post("/bets").content(content).contentType(MediaType.APPLICATION_JSON_UTF8_VALUE));
+        ResultActions resultActions = performAsync(
+                post("/bets").content(content).contentType(MediaType.APPLICATION_JSON_UTF8_VALUE));
         resultActions.andExpect(status().isCreated());
     }
 
@@ -77,8 +79,8 @@ public class MainControllerTest {
         BigDecimal incorrectOdds = new BigDecimal("1.0");
         BetsRequest betsRequest = new BetsRequest(1, incorrectOdds, new BigDecimal(1));
         String content = httpMessageConverter.getObjectMapper().writeValueAsString(betsRequest);
-        ResultActions resultActions = this.mockMvc
-                .perform(post("/bets").content(content).contentType(MediaType.APPLICATION_JSON_UTF8_VALUE));
+        ResultActions resultActions = performAsync(
+                post("/bets").content(content).contentType(MediaType.APPLICATION_JSON_UTF8_VALUE));
         resultActions.andExpect(status().isIAmATeapot()).andExpect(content().string(jsonError("Incorrect Odds")));
     }
 
@@ -87,8 +89,8 @@ public class MainControllerTest {
         BigDecimal invalidStake = new BigDecimal(-1);
         BetsRequest betsRequest = new BetsRequest(1, bet1Odds, invalidStake);
         String content = httpMessageConverter.getObjectMapper().writeValueAsString(betsRequest);
-        ResultActions resultActions = this.mockMvc
-                .perform(post("/bets").content(content).contentType(MediaType.APPLICATION_JSON_UTF8_VALUE));
+        ResultActions resultActions = performAsync(
+                post("/bets").content(content).contentType(MediaType.APPLICATION_JSON_UTF8_VALUE));
         resultActions.andExpect(status().isIAmATeapot()).andExpect(content().string(jsonError("Invalid Stake")));
     }
 
@@ -103,6 +105,15 @@ public class MainControllerTest {
         this.mockMvc.perform(get("/bets")).andExpect(status().isNotFound()).andExpect(content().string("Cannot GET /bets\n"));
     }
 
+    /**
+     * "/available" and "/bets" are async, so perform the request and then the async dispatch that
+     * writes the response.
+     */
+    ResultActions performAsync(RequestBuilder requestBuilder) throws Exception {
+        MvcResult mvcResult = this.mockMvc.perform(requestBuilder).andExpect(request().asyncStarted()).andReturn();
+        return this.mockMvc.perform(asyncDispatch(mvcResult));
+    }
+
     String jsonError(String message) {
         return "{\"error\":\"" + message + "\"}";
     }
@@ -0,0 +1,210 @@
+package techtest.myservice.codec;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import techtest.myservice.conversion.FractionalOddsToDecimalOddsConverter;
+import techtest.myservice.conversion.OriginalServiceBetToMyServiceBetConverter;
+import techtest.originalservice.CatalogHistory;
+import techtest.originalservice.CatalogIndex;
+import techtest.originalservice.ResponseCompressor;
+import techtest.originalservice.api.Bet;
+import techtest.originalservice.api.CompactBetCatalog;
+import techtest.originalservice.api.Odds;
+import techtest.originalservice.metrics.ServiceMetrics;
+
+public class AvailableResponseCacheTest {
+    AtomicLong now = new AtomicLong(1_000_000);
+    AvailableResponseCache cache;
+    Bet[] england = {new Bet(1, "World Cup 2018", "England", new Odds(10, 1))};
+    CompactBetCatalog bets = CompactBetCatalog.of(england);
+
+    @Before
+    public void before() {
+        cache = new AvailableResponseCache(Jackson2ObjectMapperBuilder.json().build(),
+                new OriginalServiceBetToMyServiceBetConverter(new FractionalOddsToDecimalOddsConverter()), 10_000,
+                new ResponseCompressor(true, true, 0, new ServiceMetrics()), new CatalogHistory<>(techtest.myservice.dto.Bet::getBet_id, 4), now::get);
+    }
+
+    @Test
+    public void the_same_bets_share_one_entry() {
+        assertThat(cache.get(bets), sameInstance(cache.get(bets)));
+    }
+
+    @Test
+    public void new_bets_with_the_same_json_keep_the_etag() {
+        AvailableResponseCache.Entry first = cache.get(bets);
+        AvailableResponseCache.Entry second = cache.get(CompactBetCatalog.of(england));
+
+        assertThat(second, not(sameInstance(first)));
+        assertThat(second.getETag(), is(first.getETag()));
+        assertThat(second.json, sameInstance(first.json));
+    }
+
+    @Test
+    public void changed_bets_get_a_new_etag() {
+        AvailableResponseCache.Entry first = cache.get(bets);
+        AvailableResponseCache.Entry second = cache.get(CompactBetCatalog.of(new Bet[] {new Bet(1, "World Cup 2018", "England", new Odds(9, 1))}));
+
+        assertThat(second.getETag(), not(first.getETag()));
+    }
+
+    @Test
+    public void older_bets_get_the_current_entry() {
+        CompactBetCatalog older = bets;
+        CompactBetCatalog newer = CompactBetCatalog.of(new Bet[] {new Bet(1, "World Cup 2018", "England", new Odds(9, 1))});
+        AvailableResponseCache.Entry first = cache.get(older);
+        AvailableResponseCache.Entry second = cache.get(newer);
+
+        // A request that still has the older bets after the newer ones were seen.
+        AvailableResponseCache.Entry stale = cache.get(older);
+
+        assertThat(stale, sameInstance(second));
+        assertThat(cache.get(newer), sameInstance(second));
+        assertThat(second.getVersion(), is(first.getVersion() + 1));
+        // The history didn't go back to the older bets either.
+        assertThat(cache.respond(second, first.getVersion(), null, null).getHeaders()
+                .getFirst(AvailableResponseCache.VERSION_HEADER), is(Long.toString(second.getVersion())));
+    }
+
+    @Test
+    public void responds_with_json_etag_and_remaining_max_age() {
+        AvailableResponseCache.Entry entry = cache.get(bets);
+        now.addAndGet(3_500);
+
+        ResponseEntity<byte[]> response = cache.respond(entry, null, null);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getBody(), sameInstance(entry.json));
+        assertThat(response.getHeaders().getETag(), is(entry.getETag()));
+        assertThat(response.getHeaders().getCacheControl(), is("max-age=6"));
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), nullValue());
+    }
+
+    @Test
+    public void max_age_is_never_negative() {
+        AvailableResponseCache.Entry entry = cache.get(bets);
+        now.addAndGet(60_000);
+
+        assertThat(cache.respond(entry, null, null).getHeaders().getCacheControl(), is("max-age=0"));
+    }
+
+    @Test
+    public void matching_if_none_match_is_not_modified() {
+        AvailableResponseCache.Entry entry = cache.get(bets);
+
+        ResponseEntity<byte[]> response = cache.respond(entry, "\"other\", W/" + entry.getETag(), null);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.NOT_MODIFIED));
+        assertThat(response.getBody(), nullValue());
+        assertThat(response.getHeaders().getETag(), is(entry.getETag()));
+    }
+
+    @Test
+    public void gzip_is_a_different_representation() {
+        AvailableResponseCache.Entry entry = cache.get(bets);
+
+        ResponseEntity<byte[]> response = cache.respond(entry, entry.getETag(), "deflate, gzip");
+
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), is("gzip"));
+        assertThat(response.getHeaders().getETag(), not(entry.getETag()));
+        assertThat(cache.respond(entry, response.getHeaders().getETag(), "gzip").getStatusCode(),
+                is(HttpStatus.NOT_MODIFIED));
+    }
+
+    @Test
+    public void compressed_once_per_list_and_encoding() {
+        AvailableResponseCache.Entry entry = cache.get(bets);
+
+        ResponseEntity<byte[]> gzipped = cache.respond(entry, null, "gzip");
+        ResponseEntity<byte[]> deflated = cache.respond(cache.get(CompactBetCatalog.of(england)), null, "deflate");
+
+        assertThat(cache.respond(entry, null, "gzip").getBody(), sameInstance(gzipped.getBody()));
+        assertThat(deflated.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING), is("deflate"));
+        assertThat(deflated.getHeaders().getETag(), not(gzipped.getHeaders().getETag()));
+        assertThat(cache.respond(entry, null, "deflate").getBody(), sameInstance(deflated.getBody()));
+    }
+
+    @Test
+    public void changed_bets_get_a_new_version() {
+        AvailableResponseCache.Entry first = cache.get(bets);
+        AvailableResponseCache.Entry same = cache.get(CompactBetCatalog.of(england));
+        AvailableResponseCache.Entry changed = cache.get(CompactBetCatalog.of(new Bet[] {new Bet(1, "World Cup 2018", "England", new Odds(9, 1))}));
+
+        assertThat(same.getVersion(), is(first.getVersion()));
+        assertThat(changed.getVersion(), is(first.getVersion() + 1));
+        assertThat(cache.respond(changed, null, null).getHeaders().getFirst(AvailableResponseCache.VERSION_HEADER),
+                is(Long.toString(changed.getVersion())));
+    }
+
+    @Test
+    public void responds_with_the_delta_since_a_version() {
+        long since = cache.get(bets).getVersion();
+        AvailableResponseCache.Entry entry = cache.get(CompactBetCatalog.of(new Bet[] {new Bet(1, "World Cup 2018", "England", new Odds(9, 1)),
+                new Bet(2, "World Cup 2018", "Brazil", new Odds(4, 1))}));
+
+        ResponseEntity<byte[]> response = cache.respond(entry, since, null, null);
+
+        assertThat(response.getStatusCode(), is(HttpStatus.OK));
+        assertThat(response.getHeaders().getETag(), nullValue());
+        assertThat(response.getHeaders().getFirst(AvailableResponseCache.VERSION_HEADER),
+                is(Long.toString(entry.getVersion())));
+        String json = new String(response.getBody(), StandardCharsets.UTF_8);
+        assertThat(json, containsString("\"since\":" + since));
+        assertThat(json, containsString("\"added\":[{\"bet_id\":2,"));
+        assertThat(json, containsString("\"changed\":[{\"bet_id\":1,"));
+        assertThat(json, containsString("\"removed\":[]"));
+        // Serialized once.
+        assertThat(cache.respond(entry, since, null, null).getBody(), sameInstance(response.getBody()));
+    }
+
+    @Test
+    public void responds_with_all_the_bets_since_an_unknown_version() {
+        AvailableResponseCache.Entry entry = cache.get(bets);
+
+        ResponseEntity<byte[]> response = cache.respond(entry, entry.getVersion() + 1, null, null);
+
+        assertThat(response.getBody(), sameInstance(entry.json));
+        assertThat(response.getHeaders().getETag(), is(entry.getETag()));
+    }
+
+    @Test
+    public void responds_with_a_page_of_an_event() {
+        AvailableResponseCache.Entry entry = cache.get(CompactBetCatalog.of(new Bet[] {new Bet(3, "World Cup 2018", "Brazil", new Odds(4, 1)),
+                new Bet(1, "World Cup 2018", "England", new Odds(10, 1)), new Bet(2, "Euro 2020", "Spain", new Odds(5, 1))}));
+
+        ResponseEntity<byte[]> response = cache.respondPage(entry,
+                CatalogIndex.Query.parse("World Cup 2018", null, "1", null), null);
+
+        String json = new String(response.getBody(), StandardCharsets.UTF_8);
+        assertThat(json, startsWith("[{\"bet_id\":1,\"event\":\"World Cup 2018\",\"name\":\"England\""));
+        assertThat(json, not(containsString("\"bet_id\":3")));
+        String cursor = response.getHeaders().getFirst(AvailableResponseCache.NEXT_CURSOR_HEADER);
+        assertThat(cursor, notNullValue());
+
+        response = cache.respondPage(entry, CatalogIndex.Query.parse("World Cup 2018", null, "1", cursor), null);
+
+        assertThat(new String(response.getBody(), StandardCharsets.UTF_8), startsWith("[{\"bet_id\":3,"));
+        assertThat(response.getHeaders().getFirst(AvailableResponseCache.NEXT_CURSOR_HEADER), nullValue());
+    }
+
+    @Test
+    public void responds_with_no_bets_of_an_unknown_event() {
+        ResponseEntity<byte[]> response = cache.respondPage(cache.get(bets),
+                CatalogIndex.Query.parse("none", null, null, null), null);
+
+        assertThat(new String(response.getBody(), StandardCharsets.UTF_8), is("[]"));
+        assertThat(response.getHeaders().getFirst(AvailableResponseCache.VERSION_HEADER), notNullValue());
+    }
+}
@@ -0,0 +1,153 @@
+package techtest.myservice.codec;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import techtest.myservice.api.BetsRequest;
+import techtest.originalservice.api.BetsResponse;
+import techtest.originalservice.api.Odds;
+
+public class BetsJsonCodecTest {
+    static final String STUB_FILE_FOLDER = "../techtest-original-service-client/src/test/resources/techtest/originalservice/api";
+
+    // Bytes allocated per call. Most of it is the JsonParser and JsonGenerator themselves (about
+    // 550 and 200 bytes on HotSpot 8), so these leave room for little more than the result, and a
+    // change that allocates per field fails.
+    static final long READ_REQUEST_BUDGET = 1024;
+    static final long TRANSCODE_RESPONSE_BUDGET = 1536;
+
+    BetsJsonCodec codec = new BetsJsonCodec();
+    ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+    byte[] remoteBetsResponse;
+
+    @Before
+    public void before() throws IOException {
+        remoteBetsResponse = Files.readAllBytes(Paths.get(STUB_FILE_FOLDER, "bets"));
+    }
+
+    @Test
+    public void reads_request() throws IOException {
+        BetsRequest request = readBetsRequest("{\"bet_id\":1,\"odds\":11.0,\"stake\":10,\"other\":{\"a\":[1]}}");
+
+        assertThat(request, is(new BetsRequest(1, new BigDecimal("11.0"), BigDecimal.TEN)));
+    }
+
+    @Test
+    public void reads_numbers_in_strings_and_nulls_as_data_binding_does() throws IOException {
+        BetsRequest request = readBetsRequest("{\"bet_id\":\"2\",\"odds\":\"1.5\",\"stake\":null}");
+
+        assertThat(request, is(new BetsRequest(2, new BigDecimal("1.5"), null)));
+        assertThat(readBetsRequest("{}"), is(new BetsRequest(0, null, null)));
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void rejects_a_request_that_is_not_an_object() throws IOException {
+        readBetsRequest("[1]");
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void rejects_a_bet_id_that_is_not_a_number() throws IOException {
+        readBetsRequest("{\"bet_id\":\"one\"}");
+    }
+
+    @Test
+    public void transcodes_response_the_same_as_data_binding() throws IOException {
+        techtest.originalservice.dto.BetsResponse remote = mapper.readValue(remoteBetsResponse,
+                techtest.originalservice.dto.BetsResponse.class);
+        techtest.myservice.dto.BetsResponse expected = new techtest.myservice.dto.BetsResponse(remote.getBet_id(),
+                remote.getEvent(), remote.getName(), new BigDecimal("11"), remote.getStake(), remote.getTransaction_id());
+
+        String json = new String(codec.read(new ByteArrayInputStream(remoteBetsResponse)), StandardCharsets.UTF_8);
+
+        assertThat(json, is(mapper.writeValueAsString(expected)));
+    }
+
+    @Test
+    public void converts_response_the_same_as_it_transcodes() throws IOException {
+        byte[] converted = codec.convert(
+                new BetsResponse(1, "World Cup 2018", "England", new Odds(10, 1), BigDecimal.TEN, 314442));
+
+        assertThat(new String(converted, StandardCharsets.UTF_8),
+                is(new String(codec.read(new ByteArrayInputStream(remoteBetsResponse)), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void transcodes_recurring_odds_rounded_for_display() throws IOException {
+        String remote = "{\"bet_id\":1,\"event\":\"e\",\"name\":\"n\",\"odds\":{\"numerator\":1,\"denominator\":3},"
+                + "\"stake\":1.50,\"transaction_id\":7}";
+
+        String json = new String(codec.read(new ByteArrayInputStream(remote.getBytes(StandardCharsets.UTF_8))),
+                StandardCharsets.UTF_8);
+
+        assertThat(json, is("{\"bet_id\":1,\"event\":\"e\",\"name\":\"n\",\"odds\":1.33,\"stake\":1.50,\"transaction_id\":7}"));
+    }
+
+    @Test
+    public void read_request_stays_within_allocation_budget() throws IOException {
+        byte[] json = "{\"bet_id\":1,\"odds\":11.0,\"stake\":10}".getBytes(StandardCharsets.UTF_8);
+        long perCall = bytesAllocatedPerCall(() -> codec.readBetsRequest(new ByteArrayInputStream(json)));
+        long bindingPerCall = bytesAllocatedPerCall(
+                () -> mapper.readValue(json, techtest.myservice.dto.BetsRequest.class).toApi());
+
+        assertThat("bytes per call: " + perCall, perCall <= READ_REQUEST_BUDGET, is(true));
+        assertThat("bytes per call: " + perCall + ", with data binding: " + bindingPerCall, perCall < bindingPerCall,
+                is(true));
+    }
+
+    @Test
+    public void transcode_response_stays_within_allocation_budget() throws IOException {
+        long perCall = bytesAllocatedPerCall(() -> codec.read(new ByteArrayInputStream(remoteBetsResponse)));
+        long bindingPerCall = bytesAllocatedPerCall(() -> mapper.writeValueAsBytes(mapper.readValue(remoteBetsResponse,
+                techtest.originalservice.dto.BetsResponse.class)));
+
+        assertThat("bytes per call: " + perCall, perCall <= TRANSCODE_RESPONSE_BUDGET, is(true));
+        assertThat("bytes per call: " + perCall + ", with data binding: " + bindingPerCall, perCall < bindingPerCall,
+                is(true));
+    }
+
+    private BetsRequest readBetsRequest(String json) throws IOException {
+        return codec.readBetsRequest(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Measures with the HotSpot per-thread allocation counter, after warming up so that the JIT
+     * and Jackson's buffer recycling have settled. Skips the test on JVMs without the counter.
+     */
+    private static long bytesAllocatedPerCall(IOCall call) throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        int calls = 20_000;
+        for (int i = 0; i < calls; i++) {
+            call.call();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < calls; i++) {
+            call.call();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / calls;
+    }
+
+    interface IOCall {
+        Object call() throws IOException;
+    }
+}
@@ -0,0 +1,156 @@
+package techtest.myservice.conversion;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import techtest.originalservice.api.Odds;
+
+/**
+ * In these tests, x_pt_y means a decimal odds of x.y, and x_f_y means a fractional odds of x/y.
+ */
+public class DecimalOddsToFractionalOddsConverterTest {
+    DecimalOddsToFractionalOddsConverter converter;
+
+    @Before
+    public void before() {
+        converter = new DecimalOddsToFractionalOddsConverter();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void when_converting_null_then_throw_NPE() {
+        converter.convert(null);
+    }
+
+    @Test
+    public void when_converting_the_stub_odds_then_fractions_are_found() {
+        assertConversion("11.0", 10, 1);
+        assertConversion("2.0", 1, 1);
+        assertConversion("4.0", 3, 1);
+        assertConversion("2.75", 7, 4);
+        assertConversion("3.0", 2, 1);
+        assertConversion("18.0", 17, 1);
+    }
+
+    @Test
+    public void when_converting_1_pt_67_then_ladder_price_4_f_6_is_preferred() {
+        assertConversion("1.67", 4, 6);
+    }
+
+    @Test
+    public void when_converting_2_pt_5_then_ladder_price_6_f_4_is_preferred() {
+        assertConversion("2.5", 6, 4);
+    }
+
+    @Test
+    public void when_converting_off_ladder_odds_then_continued_fraction_is_used() {
+        assertConversion("1.12", 3, 25);
+        assertConversion("1.43", 43, 100);
+        assertConversion("1.1E+1", 10, 1);
+    }
+
+    @Test
+    public void when_no_fraction_within_max_denominator_then_null() {
+        assertThat(converter.convert(new BigDecimal("1.001")), nullValue());
+        assertThat(converter.convert(new BigDecimal("1.333")), nullValue());
+    }
+
+    @Test
+    public void when_odds_are_not_greater_than_1_then_null() {
+        assertThat(converter.convert(new BigDecimal("1.0")), nullValue());
+        assertThat(converter.convert(new BigDecimal("0.5")), nullValue());
+        assertThat(converter.convert(new BigDecimal("-3")), nullValue());
+    }
+
+    @Test
+    public void when_max_denominator_is_larger_then_finer_fractions_are_found() {
+        converter = new DecimalOddsToFractionalOddsConverter(1000, Collections.emptyList(), 10);
+        assertConversion("1.001", 1, 1000);
+        assertConversion("1.0625", 1, 16);
+    }
+
+    @Test
+    public void when_exact_fraction_exceeds_max_denominator_then_recurring_approximation_is_used() {
+        converter = new DecimalOddsToFractionalOddsConverter(10, Collections.emptyList(), 10);
+        assertConversion("1.33", 1, 3);
+        assertConversion("1.67", 2, 3);
+        assertConversion("1.14", 1, 7);
+        assertThat(converter.convert(new BigDecimal("1.12")), nullValue());
+    }
+
+    @Test
+    public void equal_decimals_share_one_cache_entry() {
+        converter.convert(new BigDecimal("2"));
+        converter.convert(new BigDecimal("2.0"));
+        converter.convert(new BigDecimal("2.00"));
+
+        assertThat(converter.cacheSize(), is(1));
+    }
+
+    @Test
+    public void misses_are_not_cached() {
+        converter.convert(new BigDecimal("1.001"));
+        converter.convert(new BigDecimal("0.5"));
+
+        assertThat(converter.cacheSize(), is(0));
+    }
+
+    @Test
+    public void oldest_is_evicted_at_max_size() {
+        converter = new DecimalOddsToFractionalOddsConverter(100, FractionalOddsLadder.STANDARD, 2);
+        assertConversion("2", 1, 1);
+        assertConversion("3", 2, 1);
+        // Hits don't change the order, so 2 is still the oldest, and is evicted for 4.
+        assertConversion("2", 1, 1);
+        assertConversion("4", 3, 1);
+
+        assertThat(converter.cacheSize(), is(2));
+        assertThat(converter.isCached(new BigDecimal("2")), is(false));
+        assertThat(converter.isCached(new BigDecimal("3")), is(true));
+        assertThat(converter.isCached(new BigDecimal("4")), is(true));
+    }
+
+    @Test
+    public void concurrent_conversions_stay_within_max_size() throws Exception {
+        converter = new DecimalOddsToFractionalOddsConverter(100, FractionalOddsLadder.STANDARD, 10);
+        AtomicInteger misses = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 1; i <= 1000; i++) {
+                    // i/100 over 1, so all of them are prices.
+                    BigDecimal decimal = BigDecimal.ONE.add(BigDecimal.valueOf(i % 200 + 1, 2));
+                    if (null == converter.convert(decimal)) {
+                        misses.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(misses.get(), is(0));
+        assertThat(converter.cacheSize() <= 10, is(true));
+    }
+
+    @Test
+    public void when_max_cache_size_is_0_then_nothing_is_cached() {
+        converter = new DecimalOddsToFractionalOddsConverter(100, FractionalOddsLadder.STANDARD, 0);
+        assertConversion("2", 1, 1);
+
+        assertThat(converter.cacheSize(), is(0));
+    }
+
+    private void assertConversion(String decimalStr, int numerator, int denominator) {
+        Odds odds = converter.convert(new BigDecimal(decimalStr));
+        assertThat(odds, is(new Odds(numerator, denominator)));
+    }
+}
@@ -43,6 +43,11 @@ public class FractionalOddsToDecimalOddsConverterTest {
         assertConversion(1, 2, "1.5");
     }
 
+    @Test
+    public void when_converting_1_f_3_then_decimal_is_rounded_to_1_pt_33() {
+        assertConversion(1, 3, "1.33");
+    }
+
     private void assertConversion(int numerator, int denominator, String decimalStr) {
         BigDecimal d = converter.convert(new Odds(numerator, denominator));
         assertThat(d, is(new BigDecimal(decimalStr)));
@@ -0,0 +1,147 @@
+package techtest.originalservice.api;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.ToLongFunction;
+
+/**
+ * Immutable catalog of available bets, indexed by bet_id.
+ *
+ * Build one per fetched list of available bets and then look bets up by id in O(1). The index is
+ * an open-addressing hash table keyed by primitive longs (linear probing, load factor at most
+ * 0.5), so lookups neither box the bet_id nor allocate.
+ *
+ * The catalog is generic so that it can index the strongly-typed {@link Bet} as well as the
+ * lightly-typed DTOs used by the lightweight implementations. If the same bet_id appears more than
+ * once, the first occurrence wins.
+ *
+ * @param <T>
+ *            The type of bet held in the catalog.
+ */
+public final class BetCatalog<T> {
+    private static final BetCatalog<?> EMPTY = new BetCatalog<>(new Object[0], bet -> 0L);
+
+    private final List<T> bets;
+    private final long[] keys;
+    private final Object[] values;
+    private final int mask;
+    private final int size;
+
+    @SuppressWarnings("unchecked")
+    private BetCatalog(Object[] ordered, ToLongFunction<? super T> betId) {
+        this.bets = Collections.unmodifiableList(Arrays.asList((T[]) ordered));
+
+        int capacity = tableSizeFor(ordered.length);
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+
+        int count = 0;
+        for (Object bet : ordered) {
+            long key = betId.applyAsLong((T) bet);
+            int i = indexFor(key);
+            while (null != values[i] && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if (null == values[i]) {
+                keys[i] = key;
+                values[i] = bet;
+                count++;
+            }
+        }
+        this.size = count;
+    }
+
+    /**
+     * @return A catalog of the strongly-typed bets returned by {@link OriginalService#available()}.
+     */
+    public static BetCatalog<Bet> of(Bet[] bets) {
+        return of(Arrays.asList(bets), Bet::getBetId);
+    }
+
+    /**
+     * @param bets
+     *            The bets to index. Must not contain nulls.
+     * @param betId
+     *            Extracts the bet_id from a bet.
+     * @return A catalog of the given bets.
+     */
+    public static <T> BetCatalog<T> of(List<? extends T> bets, ToLongFunction<? super T> betId) {
+        Objects.requireNonNull(betId, "betId");
+        Object[] ordered = bets.toArray();
+        for (Object bet : ordered) {
+            Objects.requireNonNull(bet, "bets cannot contain null");
+        }
+        return new BetCatalog<>(ordered, betId);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> BetCatalog<T> empty() {
+        return (BetCatalog<T>) EMPTY;
+    }
+
+    /**
+     * @param betId
+     * @return The bet with the given bet_id, or null if there isn't one.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long betId) {
+        int i = indexFor(betId);
+        Object value;
+        while (null != (value = values[i])) {
+            if (keys[i] == betId) {
+                return (T) value;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * @param betId
+     * @return The bet with the given bet_id, if there is one.
+     */
+    public Optional<T> find(long betId) {
+        return Optional.ofNullable(get(betId));
+    }
+
+    public boolean contains(long betId) {
+        return null != get(betId);
+    }
+
+    /**
+     * @return The number of distinct bet_ids in the catalog.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return All the bets, in the order they were given. The list cannot be modified.
+     */
+    public List<T> bets() {
+        return bets;
+    }
+
+    private int indexFor(long key) {
+        // Murmur3 finalizer, so that sequential ids spread over the whole table.
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private static int tableSizeFor(int entries) {
+        int capacity = 2;
+        while (capacity < entries * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
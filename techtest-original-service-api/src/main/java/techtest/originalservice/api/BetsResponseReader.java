@@ -0,0 +1,23 @@
+package techtest.originalservice.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Turns the response to a bet into whatever the caller needs, e.g. its own JSON.
+ * 
+ * OriginalService implementations that receive the remote service's JSON call read() with it, so
+ * the caller can stream it without binding it to intermediate objects. Other implementations call
+ * convert() with the BetsResponse they have.
+ * 
+ * @see OriginalService#betsAsync(BetsRequest, BetsResponseReader)
+ */
+public interface BetsResponseReader<T> {
+    /**
+     * @param remoteJson
+     *            The body of a successful response from the remote service.
+     */
+    T read(InputStream remoteJson) throws IOException;
+
+    T convert(BetsResponse response);
+}
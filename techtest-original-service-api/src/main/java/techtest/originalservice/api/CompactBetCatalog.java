@@ -0,0 +1,223 @@
+package techtest.originalservice.api;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable, compact catalog of available bets, held in columns rather than as Bet objects.
+ *
+ * Each bet is a position in parallel primitive arrays of bet_id, numerator and denominator, and
+ * of indexes into a dictionary of the event and name Strings. A catalog has a few events shared
+ * by many bets (e.g. every selection of "World Cup 2018"), so each distinct String is held once
+ * per catalog, however many copies the bets it was built from had. Lookups by bet_id use the same
+ * kind of open-addressing table as BetCatalog, which maps to positions rather than objects.
+ *
+ * Callers that need Bet objects get views of a position: bet(), get() and toArray() build Bets
+ * that share the dictionary's Strings, and toArray() also shares one Odds per distinct fraction.
+ * Callers that only need a field (e.g. the odds check) can read the columns without allocating.
+ *
+ * If the same bet_id appears more than once, the first occurrence is found by get(), as it is in
+ * BetCatalog, but every position is kept.
+ *
+ * Each catalog has a sequence number, and catalogs built later have greater ones. A service that
+ * builds one per fetched list (e.g. CachingOriginalService) builds them in the order they were
+ * fetched, so callers can tell which of two lists is the newer one.
+ */
+public final class CompactBetCatalog {
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final long sequence;
+    private final long[] betIds;
+    private final int[] numerators;
+    private final int[] denominators;
+    private final int[] events;
+    private final int[] names;
+    private final String[] strings;
+
+    // Positions + 1 by bet_id, so that 0 is an empty slot.
+    private final long[] keys;
+    private final int[] positions;
+    private final int mask;
+
+    private CompactBetCatalog(Bet[] bets) {
+        sequence = SEQUENCE.incrementAndGet();
+
+        int count = bets.length;
+        betIds = new long[count];
+        numerators = new int[count];
+        denominators = new int[count];
+        events = new int[count];
+        names = new int[count];
+
+        Map<String, Integer> dictionary = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            Bet bet = bets[i];
+            betIds[i] = bet.getBetId();
+            numerators[i] = bet.getOdds().getNumerator();
+            denominators[i] = bet.getOdds().getDenominator();
+            events[i] = intern(dictionary, bet.getEvent());
+            names[i] = intern(dictionary, bet.getName());
+        }
+        strings = new String[dictionary.size()];
+        for (Map.Entry<String, Integer> entry : dictionary.entrySet()) {
+            strings[entry.getValue()] = entry.getKey();
+        }
+
+        int capacity = tableSizeFor(count);
+        keys = new long[capacity];
+        positions = new int[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < count; i++) {
+            long key = betIds[i];
+            int slot = indexFor(key);
+            while (0 != positions[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (0 == positions[slot]) {
+                keys[slot] = key;
+                positions[slot] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * @param bets
+     *            The bets, e.g. as returned by {@link OriginalService#available()}. Must not
+     *            contain nulls, or bets without odds.
+     */
+    public static CompactBetCatalog of(Bet[] bets) {
+        for (Bet bet : bets) {
+            Objects.requireNonNull(bet, "bets cannot contain null");
+            Objects.requireNonNull(bet.getOdds(), "bets must have odds");
+        }
+        return new CompactBetCatalog(bets);
+    }
+
+    /**
+     * @return The position of the bet with the given bet_id, or -1 if there isn't one.
+     */
+    public int indexOf(long betId) {
+        int slot = indexFor(betId);
+        int position;
+        while (0 != (position = positions[slot])) {
+            if (keys[slot] == betId) {
+                return position - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * @return A view of the bet with the given bet_id, or null if there isn't one.
+     */
+    public Bet get(long betId) {
+        int i = indexOf(betId);
+        return i < 0 ? null : bet(i);
+    }
+
+    public boolean contains(long betId) {
+        return indexOf(betId) >= 0;
+    }
+
+    /**
+     * @return A view of the bet at a position.
+     */
+    public Bet bet(int i) {
+        return new Bet(betIds[i], strings[events[i]], strings[names[i]], new Odds(numerators[i], denominators[i]));
+    }
+
+    /**
+     * @return Views of all the bets, in the order they were given.
+     */
+    public Bet[] toArray() {
+        Bet[] bets = new Bet[betIds.length];
+        Map<Long, Odds> odds = new HashMap<>();
+        for (int i = 0; i < bets.length; i++) {
+            long fraction = (long) numerators[i] << 32 | denominators[i];
+            Odds shared = odds.get(fraction);
+            if (null == shared) {
+                shared = new Odds(numerators[i], denominators[i]);
+                odds.put(fraction, shared);
+            }
+            bets[i] = new Bet(betIds[i], strings[events[i]], strings[names[i]], shared);
+        }
+        return bets;
+    }
+
+    /**
+     * @return The sequence number of the catalog, greater than that of every catalog built before.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return The number of bets, including any with the same bet_id as an earlier one.
+     */
+    public int size() {
+        return betIds.length;
+    }
+
+    public long betId(int i) {
+        return betIds[i];
+    }
+
+    public String event(int i) {
+        return strings[events[i]];
+    }
+
+    public String name(int i) {
+        return strings[names[i]];
+    }
+
+    public int numerator(int i) {
+        return numerators[i];
+    }
+
+    public int denominator(int i) {
+        return denominators[i];
+    }
+
+    /**
+     * @return The number of distinct event and name Strings.
+     */
+    public int dictionarySize() {
+        return strings.length;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactBetCatalog(size=" + betIds.length + ", dictionarySize=" + strings.length + ")";
+    }
+
+    private static int intern(Map<String, Integer> dictionary, String s) {
+        Integer index = dictionary.get(s);
+        if (null == index) {
+            index = dictionary.size();
+            dictionary.put(s, index);
+        }
+        return index;
+    }
+
+    private int indexFor(long key) {
+        // Murmur3 finalizer, as in BetCatalog.
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private static int tableSizeFor(int entries) {
+        int capacity = 2;
+        while (capacity < entries * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
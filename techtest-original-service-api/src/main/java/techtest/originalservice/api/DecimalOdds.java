@@ -0,0 +1,191 @@
+package techtest.originalservice.api;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Exact conversion and comparison between fractional odds (numerator/denominator) and decimal odds.
+ *
+ * Decimal odds are <code>1 + numerator / denominator</code>. Everything here works on the primitive
+ * numerator and denominator with integer arithmetic, so that checking a submitted price neither
+ * divides nor allocates BigDecimals in the common case.
+ *
+ * <h3>Display rounding policy</h3>
+ *
+ * <ul>
+ * <li>If the decimal odds terminate (the reduced denominator has no prime factors other than 2 and
+ * 5), they are shown exactly, with no trailing zeros beyond the units. E.g. 1/1 is "2", 1/2 is
+ * "1.5", 7/4 is "2.75".</li>
+ * <li>Otherwise they are rounded {@link #DISPLAY_ROUNDING HALF_UP} to {@link #DISPLAY_SCALE} decimal
+ * places. E.g. 1/3 is "1.33", 2/3 is "1.67".</li>
+ * </ul>
+ *
+ * <h3>Matching</h3>
+ *
+ * Submitted decimal odds match fractional odds if they are exactly equal (compared by integer
+ * cross-multiplication, so scale doesn't matter: "2", "2.0" and "2.00" all match 1/1), or, for
+ * recurring odds only, if they equal the displayed value. This means a client can always send back
+ * the odds it was shown.
+ */
+public final class DecimalOdds {
+    /**
+     * Decimal places shown for odds that don't terminate.
+     */
+    public static final int DISPLAY_SCALE = 2;
+
+    /**
+     * Rounding applied to odds that don't terminate.
+     */
+    public static final RoundingMode DISPLAY_ROUNDING = RoundingMode.HALF_UP;
+
+    private static final long DISPLAY_FACTOR = 100;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private DecimalOdds() {
+    }
+
+    /**
+     * @return The decimal odds of the fractional odds, rounded according to the display policy.
+     */
+    public static BigDecimal toDecimal(Odds odds) {
+        return toDecimal(odds.getNumerator(), odds.getDenominator());
+    }
+
+    /**
+     * @return The decimal odds of numerator/denominator, rounded according to the display policy.
+     */
+    public static BigDecimal toDecimal(int numerator, int denominator) {
+        checkFraction(numerator, denominator);
+
+        long top = (long) numerator + denominator;
+        long bottom = denominator;
+        long gcd = gcd(top, bottom);
+        top /= gcd;
+        bottom /= gcd;
+
+        int scale = terminatingScale(bottom);
+        if (scale < 0) {
+            // Recurring, e.g. 4/3. Round half up: (2 * top * 100 + bottom) / (2 * bottom).
+            long unscaled = (2 * top * DISPLAY_FACTOR + bottom) / (2 * bottom);
+            return BigDecimal.valueOf(unscaled, DISPLAY_SCALE);
+        }
+
+        // Terminating. bottom divides 10^scale exactly, so this is exact as long as it fits.
+        if (scale < POWERS_OF_TEN.length) {
+            long multiplier = POWERS_OF_TEN[scale] / bottom;
+            long unscaled = top * multiplier;
+            if (unscaled / multiplier == top) {
+                return BigDecimal.valueOf(unscaled, scale);
+            }
+        }
+        return new BigDecimal(top).divide(new BigDecimal(bottom));
+    }
+
+    /**
+     * @return true if the submitted decimal odds match the fractional odds (see the class javadoc).
+     */
+    public static boolean matches(Odds odds, BigDecimal submitted) {
+        return matches(odds.getNumerator(), odds.getDenominator(), submitted);
+    }
+
+    /**
+     * @return true if the submitted decimal odds match numerator/denominator (see the class
+     *         javadoc). Null or non-positive submitted odds never match.
+     */
+    public static boolean matches(int numerator, int denominator, BigDecimal submitted) {
+        checkFraction(numerator, denominator);
+
+        if (null == submitted || submitted.signum() <= 0) {
+            return false;
+        }
+
+        long top = (long) numerator + denominator;
+        int scale = submitted.scale();
+        if (submitted.precision() > 18 || scale > 18 || scale < -18) {
+            return matchesSlowly(numerator, denominator, submitted);
+        }
+        long unscaled = submitted.unscaledValue().longValue();
+
+        try {
+            // submitted == unscaled / 10^scale, and the exact odds are top / denominator.
+            if (equalRatios(unscaled, scale, top, denominator)) {
+                return true;
+            }
+            if (terminatingScale(denominator / gcd(top, denominator)) >= 0) {
+                return false;
+            }
+            long displayed = (2 * top * DISPLAY_FACTOR + denominator) / (2L * denominator);
+            return equalRatios(unscaled, scale, displayed, DISPLAY_FACTOR);
+        } catch (ArithmeticException e) {
+            // Overflow. Only happens for absurd submitted values.
+            return matchesSlowly(numerator, denominator, submitted);
+        }
+    }
+
+    /**
+     * @return true if the decimal odds of numerator/denominator terminate, and so are shown exactly.
+     */
+    public static boolean isTerminating(int numerator, int denominator) {
+        checkFraction(numerator, denominator);
+        long top = (long) numerator + denominator;
+        return terminatingScale(denominator / gcd(top, denominator)) >= 0;
+    }
+
+    /**
+     * @return true if unscaled / 10^scale == top / bottom, i.e. unscaled * bottom == top * 10^scale.
+     */
+    private static boolean equalRatios(long unscaled, int scale, long top, long bottom) {
+        if (scale >= 0) {
+            return Math.multiplyExact(unscaled, bottom) == Math.multiplyExact(top, POWERS_OF_TEN[scale]);
+        }
+        return Math.multiplyExact(Math.multiplyExact(unscaled, POWERS_OF_TEN[-scale]), bottom) == top;
+    }
+
+    private static boolean matchesSlowly(int numerator, int denominator, BigDecimal submitted) {
+        BigDecimal exact = submitted.subtract(BigDecimal.ONE).multiply(BigDecimal.valueOf(denominator));
+        if (0 == exact.compareTo(BigDecimal.valueOf(numerator))) {
+            return true;
+        }
+        return !isTerminating(numerator, denominator) && 0 == submitted.compareTo(toDecimal(numerator, denominator));
+    }
+
+    /**
+     * @return The number of decimal places needed to show 1/bottom exactly, or -1 if it recurs.
+     */
+    private static int terminatingScale(long bottom) {
+        int twos = Long.numberOfTrailingZeros(bottom);
+        bottom >>= twos;
+        int fives = 0;
+        while (0 == bottom % 5) {
+            bottom /= 5;
+            fives++;
+        }
+        return 1 == bottom ? Math.max(twos, fives) : -1;
+    }
+
+    private static long gcd(long a, long b) {
+        while (0 != b) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static void checkFraction(int numerator, int denominator) {
+        if (numerator < 0) {
+            throw new IllegalArgumentException("numerator cannot be negative: " + numerator);
+        }
+        if (denominator < 1) {
+            throw new IllegalArgumentException("denominator cannot be less than one: " + denominator);
+        }
+    }
+}
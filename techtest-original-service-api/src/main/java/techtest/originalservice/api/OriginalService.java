@@ -1,5 +1,7 @@
 package techtest.originalservice.api;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A more formal typed interface for the original service.
  * 
@@ -10,6 +12,83 @@ public interface OriginalService {
     public Bet[] available();
     public BetsResponse bets(BetsRequest bet);
 
+    /**
+     * The available bets as a catalog indexed by bet_id.
+     * 
+     * By default this builds a new catalog from available(). Implementations that hold on to a
+     * list of available bets should override this to return a catalog built once per list.
+     */
+    public default BetCatalog<Bet> catalog() {
+        return BetCatalog.of(available());
+    }
+
+    /**
+     * The available bets as a CompactBetCatalog, for callers that can read its columns rather than
+     * Bet objects.
+     * 
+     * By default this builds a new catalog from available(). Implementations that hold on to a
+     * list of available bets should override this to return a catalog built once per list.
+     */
+    public default CompactBetCatalog compactCatalog() {
+        return CompactBetCatalog.of(available());
+    }
+
+    /**
+     * Non-blocking version of available().
+     * 
+     * By default this calls available() on the calling thread and returns an already completed
+     * future. Implementations that can do non-blocking I/O should override this.
+     */
+    public default CompletableFuture<Bet[]> availableAsync() {
+        CompletableFuture<Bet[]> future = new CompletableFuture<>();
+        try {
+            future.complete(available());
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Non-blocking version of bets().
+     * 
+     * By default this calls bets() on the calling thread and returns an already completed future.
+     * Implementations that can do non-blocking I/O should override this.
+     */
+    public default CompletableFuture<BetsResponse> betsAsync(BetsRequest bet) {
+        CompletableFuture<BetsResponse> future = new CompletableFuture<>();
+        try {
+            future.complete(bets(bet));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Non-blocking version of bets() that hands the response to a BetsResponseReader.
+     * 
+     * By default this converts the BetsResponse from betsAsync(). Implementations that receive the
+     * remote service's JSON should override this to pass it to the reader as it arrives.
+     */
+    public default <T> CompletableFuture<T> betsAsync(BetsRequest bet, BetsResponseReader<T> reader) {
+        return betsAsync(bet).thenApply(reader::convert);
+    }
+
+    /**
+     * Non-blocking version of catalog().
+     */
+    public default CompletableFuture<BetCatalog<Bet>> catalogAsync() {
+        return availableAsync().thenApply(BetCatalog::of);
+    }
+
+    /**
+     * Non-blocking version of compactCatalog().
+     */
+    public default CompletableFuture<CompactBetCatalog> compactCatalogAsync() {
+        return availableAsync().thenApply(CompactBetCatalog::of);
+    }
+
     public static enum Error {
         UNKNOWN(0, "Unknown"), INCORRECT_ODDS(1, "Incorrect Odds"), INVALID_ODDS(2, "Invalid Odds"), INVALID_BET_ID(3,
                 "Invalid Bet ID"), INVALID_STAKE(4, "Invalid Stake");
@@ -70,4 +149,22 @@ public interface OriginalService {
             super(message, cause);
         }
     }
+
+    /**
+     * An InternalErrorException thrown without calling the remote service at all, because calls to
+     * it are failing or too slow (a circuit breaker is open), or because too many are already in
+     * progress (a bulkhead is full).
+     * 
+     * It has no stack trace, so that failing fast is cheap.
+     */
+    public static class ServiceUnavailableException extends InternalErrorException {
+        public ServiceUnavailableException(String message) {
+            super(message);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
 }
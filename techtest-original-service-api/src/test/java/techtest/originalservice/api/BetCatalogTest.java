@@ -0,0 +1,81 @@
+package techtest.originalservice.api;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BetCatalogTest {
+
+    @Test
+    public void finds_bet_by_id() {
+        Bet england = bet(1, "England");
+        Bet brazil = bet(2, "Brazil");
+        BetCatalog<Bet> catalog = BetCatalog.of(new Bet[] {england, brazil});
+
+        assertThat(catalog.get(1), sameInstance(england));
+        assertThat(catalog.get(2), sameInstance(brazil));
+        assertThat(catalog.size(), is(2));
+    }
+
+    @Test
+    public void missing_id_is_not_found() {
+        BetCatalog<Bet> catalog = BetCatalog.of(new Bet[] {bet(1, "England")});
+
+        assertThat(catalog.get(3), nullValue());
+        assertThat(catalog.find(3).isPresent(), is(false));
+        assertThat(catalog.find(0).isPresent(), is(false));
+        assertThat(catalog.find(-1).isPresent(), is(false));
+    }
+
+    @Test
+    public void empty_catalog_finds_nothing() {
+        assertThat(BetCatalog.of(new Bet[0]).get(1), nullValue());
+        assertThat(BetCatalog.empty().get(1), nullValue());
+    }
+
+    @Test
+    public void first_occurrence_of_duplicate_id_wins() {
+        Bet first = bet(1, "first");
+        BetCatalog<Bet> catalog = BetCatalog.of(new Bet[] {first, bet(1, "second")});
+
+        assertThat(catalog.get(1), sameInstance(first));
+        assertThat(catalog.size(), is(1));
+        assertThat(catalog.bets().size(), is(2));
+    }
+
+    @Test
+    public void bets_keep_their_original_order() {
+        Bet[] bets = {bet(3, "c"), bet(1, "a"), bet(2, "b")};
+
+        assertThat(BetCatalog.of(bets).bets(), is(Arrays.asList(bets)));
+    }
+
+    @Test
+    public void every_id_of_a_large_catalog_is_found() {
+        List<Bet> bets = new ArrayList<>();
+        for (long id = 1; id <= 50000; id++) {
+            // Spread the ids out, as well as sequential ones, to exercise probing.
+            bets.add(bet(id * 7919, "bet" + id));
+        }
+        BetCatalog<Bet> catalog = BetCatalog.of(bets, Bet::getBetId);
+
+        for (Bet bet : bets) {
+            assertThat(catalog.get(bet.getBetId()), sameInstance(bet));
+        }
+        assertThat(catalog.get(7918), nullValue());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void null_bets_are_rejected() {
+        BetCatalog.of(new Bet[] {null});
+    }
+
+    private Bet bet(long id, String name) {
+        return new Bet(id, "event", name, new Odds(1, 1));
+    }
+}
@@ -0,0 +1,116 @@
+package techtest.originalservice.api;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class CompactBetCatalogTest {
+    static final int CATALOG_SIZE = 10_000;
+
+    static final char[][] EVENTS = new char[CATALOG_SIZE / 50][];
+    static final char[][] NAMES = new char[50][];
+
+    static {
+        for (int i = 0; i < EVENTS.length; i++) {
+            EVENTS[i] = ("Event number " + i).toCharArray();
+        }
+        for (int i = 0; i < NAMES.length; i++) {
+            NAMES[i] = ("Selection " + i).toCharArray();
+        }
+    }
+
+    @Test
+    public void finds_bet_by_id() {
+        Bet england = bet(1, "World Cup 2018", "England", 10, 1);
+        Bet brazil = bet(2, "World Cup 2018", "Brazil", 2, 1);
+        CompactBetCatalog catalog = CompactBetCatalog.of(new Bet[] {england, brazil});
+
+        assertThat(catalog.get(1), is(england));
+        assertThat(catalog.get(2), is(brazil));
+        assertThat(catalog.get(3), nullValue());
+        assertThat(catalog.contains(0), is(false));
+        assertThat(catalog.indexOf(2), is(1));
+    }
+
+    @Test
+    public void reads_columns_by_position() {
+        CompactBetCatalog catalog = CompactBetCatalog.of(new Bet[] {bet(7, "World Cup 2018", "Spain", 9, 2)});
+
+        assertThat(catalog.size(), is(1));
+        assertThat(catalog.betId(0), is(7L));
+        assertThat(catalog.event(0), is("World Cup 2018"));
+        assertThat(catalog.name(0), is("Spain"));
+        assertThat(catalog.numerator(0), is(9));
+        assertThat(catalog.denominator(0), is(2));
+    }
+
+    @Test
+    public void views_share_one_copy_of_each_string_and_fraction() {
+        Bet[] bets = {bet(1, "World Cup 2018", "England", 10, 1), bet(2, "World Cup 2018", "Brazil", 10, 1),
+                bet(3, "Euro 2020", "England", 4, 1)};
+        CompactBetCatalog catalog = CompactBetCatalog.of(bets);
+
+        Bet[] views = catalog.toArray();
+
+        assertThat(views, is(bets));
+        assertThat(catalog.dictionarySize(), is(4));
+        assertThat(views[1].getEvent(), sameInstance(views[0].getEvent()));
+        assertThat(views[2].getName(), sameInstance(views[0].getName()));
+        assertThat(views[1].getOdds(), sameInstance(views[0].getOdds()));
+        assertThat(catalog.get(2).getEvent(), sameInstance(views[0].getEvent()));
+    }
+
+    @Test
+    public void first_occurrence_of_duplicate_id_wins() {
+        CompactBetCatalog catalog = CompactBetCatalog
+                .of(new Bet[] {bet(1, "e", "first", 1, 1), bet(1, "e", "second", 1, 1)});
+
+        assertThat(catalog.get(1).getName(), is("first"));
+        assertThat(catalog.size(), is(2));
+    }
+
+    @Test
+    public void every_id_of_a_large_catalog_is_found() {
+        Bet[] bets = catalogAsRead(CATALOG_SIZE);
+        CompactBetCatalog catalog = CompactBetCatalog.of(bets);
+
+        for (int i = 0; i < bets.length; i++) {
+            assertThat(catalog.indexOf(bets[i].getBetId()), is(i));
+        }
+        assertThat(catalog.get(CATALOG_SIZE * 7 + 1), nullValue());
+    }
+
+    @Test
+    public void catalogs_built_later_have_greater_sequences() {
+        Bet[] bets = {bet(1, "e", "n", 1, 1)};
+        CompactBetCatalog first = CompactBetCatalog.of(bets);
+        CompactBetCatalog second = CompactBetCatalog.of(bets);
+
+        assertThat(second.getSequence() > first.getSequence(), is(true));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void rejects_bets_without_odds() {
+        CompactBetCatalog.of(new Bet[] {new Bet(1, "e", "n", null)});
+    }
+
+    /**
+     * 200 events of 50 selections, with names shared between events, and a fresh copy of every
+     * String, as JSON deserialization makes.
+     */
+    static Bet[] catalogAsRead(int size) {
+        Bet[] bets = new Bet[size];
+        for (int i = 0; i < size; i++) {
+            char[] event = EVENTS[i / 50 % EVENTS.length];
+            char[] name = NAMES[i % 50];
+            bets[i] = bet(i * 7, new String(event, 0, event.length), new String(name, 0, name.length), 1 + i % 20,
+                    1 + i % 4);
+        }
+        return bets;
+    }
+
+    static Bet bet(long betId, String event, String name, int numerator, int denominator) {
+        return new Bet(betId, event, name, new Odds(numerator, denominator));
+    }
+}
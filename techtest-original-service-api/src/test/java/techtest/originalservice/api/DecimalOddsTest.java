@@ -0,0 +1,81 @@
+package techtest.originalservice.api;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+/**
+ * In these tests, x_f_y means a fractional odds of x/y.
+ */
+public class DecimalOddsTest {
+
+    @Test
+    public void terminating_odds_are_shown_exactly() {
+        assertThat(DecimalOdds.toDecimal(1, 1), is(new BigDecimal("2")));
+        assertThat(DecimalOdds.toDecimal(10, 1), is(new BigDecimal("11")));
+        assertThat(DecimalOdds.toDecimal(1, 2), is(new BigDecimal("1.5")));
+        assertThat(DecimalOdds.toDecimal(7, 4), is(new BigDecimal("2.75")));
+        assertThat(DecimalOdds.toDecimal(1, 8), is(new BigDecimal("1.125")));
+        assertThat(DecimalOdds.toDecimal(4, 2), is(new BigDecimal("3")));
+    }
+
+    @Test
+    public void recurring_odds_are_rounded_half_up_to_two_places() {
+        assertThat(DecimalOdds.toDecimal(1, 3), is(new BigDecimal("1.33")));
+        assertThat(DecimalOdds.toDecimal(2, 3), is(new BigDecimal("1.67")));
+        assertThat(DecimalOdds.toDecimal(1, 6), is(new BigDecimal("1.17")));
+        assertThat(DecimalOdds.toDecimal(100, 30), is(new BigDecimal("4.33")));
+    }
+
+    @Test
+    public void large_terminating_odds_fall_back_to_exact_division() {
+        BigDecimal expected = new BigDecimal(Integer.MAX_VALUE).add(new BigDecimal(1 << 30))
+                .divide(new BigDecimal(1 << 30));
+        assertThat(DecimalOdds.toDecimal(Integer.MAX_VALUE, 1 << 30), is(expected));
+    }
+
+    @Test
+    public void exact_odds_match_whatever_the_scale() {
+        assertThat(DecimalOdds.matches(1, 1, new BigDecimal("2")), is(true));
+        assertThat(DecimalOdds.matches(1, 1, new BigDecimal("2.00")), is(true));
+        assertThat(DecimalOdds.matches(10, 1, new BigDecimal("1.1E+1")), is(true));
+        assertThat(DecimalOdds.matches(7, 4, new BigDecimal("2.750")), is(true));
+    }
+
+    @Test
+    public void different_odds_do_not_match() {
+        assertThat(DecimalOdds.matches(1, 1, new BigDecimal("2.01")), is(false));
+        assertThat(DecimalOdds.matches(7, 4, new BigDecimal("2.8")), is(false));
+        assertThat(DecimalOdds.matches(1, 1, null), is(false));
+        assertThat(DecimalOdds.matches(1, 1, new BigDecimal("-2")), is(false));
+    }
+
+    @Test
+    public void recurring_odds_match_the_displayed_value() {
+        assertThat(DecimalOdds.matches(1, 3, new BigDecimal("1.33")), is(true));
+        assertThat(DecimalOdds.matches(1, 3, new BigDecimal("1.330")), is(true));
+        assertThat(DecimalOdds.matches(1, 3, new BigDecimal("1.333")), is(false));
+        assertThat(DecimalOdds.matches(1, 3, new BigDecimal("1.34")), is(false));
+    }
+
+    @Test
+    public void terminating_odds_only_match_exactly() {
+        // 1/8 is 1.125, which would display as 1.13 if it were rounded.
+        assertThat(DecimalOdds.matches(1, 8, new BigDecimal("1.13")), is(false));
+    }
+
+    @Test
+    public void absurd_submitted_odds_do_not_overflow() {
+        assertThat(DecimalOdds.matches(1, 1, new BigDecimal("2.000000000000000000000000")), is(true));
+        assertThat(DecimalOdds.matches(1, 1, new BigDecimal("99999999999999999.9")), is(false));
+        assertThat(DecimalOdds.matches(1, 3, new BigDecimal("1.3300000000000000000001")), is(false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zero_denominator_is_rejected() {
+        DecimalOdds.toDecimal(1, 0);
+    }
+}
@@ -0,0 +1,61 @@
+package techtest.originalservice;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.util.Assert;
+
+/**
+ * A semaphore bulkhead: caps the number of calls to the remote service in progress at once.
+ *
+ * tryAcquire() doesn't wait. When the bulkhead is full the call is rejected straight away, rather
+ * than queueing another thread behind a slow remote service.
+ */
+public class Bulkhead {
+    private final int maxConcurrentCalls;
+    private final Semaphore permits;
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(int maxConcurrentCalls) {
+        super();
+
+        Assert.isTrue(maxConcurrentCalls > 0, "maxConcurrentCalls must be greater than zero");
+
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.permits = new Semaphore(maxConcurrentCalls);
+    }
+
+    /**
+     * @return true if a call may be made, in which case release() must be called when it
+     *         completes.
+     */
+    public boolean tryAcquire() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * @return How many calls are in progress.
+     */
+    public int getInUse() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+
+    /**
+     * @return How many calls tryAcquire() has rejected.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,277 @@
+package techtest.originalservice;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import techtest.originalservice.api.Bet;
+import techtest.originalservice.api.BetCatalog;
+import techtest.originalservice.api.BetsRequest;
+import techtest.originalservice.api.BetsResponse;
+import techtest.originalservice.api.BetsResponseReader;
+import techtest.originalservice.api.CompactBetCatalog;
+import techtest.originalservice.api.OriginalService;
+
+/**
+ * An implementation of OriginalService that caches the result of available() and refreshes it
+ * ahead of expiry.
+ *
+ * The available bets are published atomically as a snapshot, so readers never block while a
+ * snapshot is fresh enough:
+ *
+ * <ul>
+ * <li>younger than the refresh-ahead point (three quarters of the TTL) - served from memory.</li>
+ * <li>older than the refresh-ahead point but younger than the max staleness - served from memory,
+ * and a single background refresh is started.</li>
+ * <li>older than the max staleness (or no snapshot yet) - the caller waits for a refresh.</li>
+ * </ul>
+ *
+ * Only one refresh is ever in flight. Callers that have to wait for a refresh all wait on the same
+ * one, and the async methods wait without blocking a thread.
+ *
+ * bets() is never cached and always goes to the delegate.
+ *
+ * The fetched bets aren't kept as they were read. Each one has its own copies of the event and
+ * name Strings, and its own Odds, so a snapshot keeps a CompactBetCatalog of them instead: columns
+ * of primitives, and one copy of each String. compactCatalog() returns it. available() and
+ * catalog() return Bet views of it (which share one Odds per fraction), made the first time they
+ * are asked for and then kept with the snapshot, so that they too are the same for every caller.
+ * Callers that can read the columns should, so that the views are never made. As only one refresh
+ * is in flight at once, each snapshot's catalog has a greater sequence number than the one before
+ * (see CompactBetCatalog.getSequence()), so a caller still holding an older one can tell.
+ */
+public class CachingOriginalService implements OriginalService {
+    private static final Logger LOG = LoggerFactory.getLogger(CachingOriginalService.class);
+
+    private final OriginalService delegate;
+    private final long ttlMillis;
+    private final long refreshAheadMillis;
+    private final long maxStaleMillis;
+    private final Executor refreshExecutor;
+    private final LongSupplier clock;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicReference<CompletableFuture<Snapshot>> inFlight = new AtomicReference<>();
+    private final AtomicBoolean backgroundRefreshScheduled = new AtomicBoolean();
+
+    public CachingOriginalService(OriginalService delegate, long ttlMillis, long maxStaleMillis) {
+        this(delegate, ttlMillis, maxStaleMillis, newRefreshExecutor(), System::currentTimeMillis);
+    }
+
+    CachingOriginalService(OriginalService delegate, long ttlMillis, long maxStaleMillis, Executor refreshExecutor,
+            LongSupplier clock) {
+        super();
+
+        Assert.notNull(delegate, "delegate");
+        Assert.isTrue(ttlMillis > 0, "ttlMillis must be greater than zero");
+        Assert.isTrue(maxStaleMillis >= ttlMillis, "maxStaleMillis cannot be less than ttlMillis");
+        Assert.notNull(refreshExecutor, "refreshExecutor");
+        Assert.notNull(clock, "clock");
+
+        this.delegate = delegate;
+        this.ttlMillis = ttlMillis;
+        this.refreshAheadMillis = ttlMillis - ttlMillis / 4;
+        this.maxStaleMillis = maxStaleMillis;
+        this.refreshExecutor = refreshExecutor;
+        this.clock = clock;
+    }
+
+    @Override
+    public Bet[] available() {
+        return Futures.join(current()).bets();
+    }
+
+    @Override
+    public BetCatalog<Bet> catalog() {
+        return Futures.join(current()).catalog();
+    }
+
+    @Override
+    public CompactBetCatalog compactCatalog() {
+        return Futures.join(current()).compact;
+    }
+
+    @Override
+    public BetsResponse bets(BetsRequest bet) {
+        return delegate.bets(bet);
+    }
+
+    @Override
+    public CompletableFuture<Bet[]> availableAsync() {
+        return current().thenApply(Snapshot::bets);
+    }
+
+    @Override
+    public CompletableFuture<BetCatalog<Bet>> catalogAsync() {
+        return current().thenApply(Snapshot::catalog);
+    }
+
+    @Override
+    public CompletableFuture<CompactBetCatalog> compactCatalogAsync() {
+        return current().thenApply(s -> s.compact);
+    }
+
+    @Override
+    public CompletableFuture<BetsResponse> betsAsync(BetsRequest bet) {
+        return delegate.betsAsync(bet);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> betsAsync(BetsRequest bet, BetsResponseReader<T> reader) {
+        return delegate.betsAsync(bet, reader);
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public long getMaxStaleMillis() {
+        return maxStaleMillis;
+    }
+
+    /**
+     * @return The current snapshot, or null if there isn't one yet.
+     */
+    Snapshot snapshot() {
+        return snapshot.get();
+    }
+
+    private CompletableFuture<Snapshot> current() {
+        Snapshot current = snapshot.get();
+        long now = clock.getAsLong();
+
+        if (null == current || current.age(now) > maxStaleMillis) {
+            return refresh();
+        }
+
+        if (current.age(now) > refreshAheadMillis) {
+            refreshInBackground();
+        }
+
+        return CompletableFuture.completedFuture(current);
+    }
+
+    /**
+     * Starts a refresh, or joins the one that is already in flight.
+     */
+    private CompletableFuture<Snapshot> refresh() {
+        while (true) {
+            CompletableFuture<Snapshot> existing = inFlight.get();
+            if (null != existing) {
+                return existing;
+            }
+
+            CompletableFuture<Snapshot> mine = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, mine)) {
+                fetch(mine);
+                return mine;
+            }
+        }
+    }
+
+    private void fetch(CompletableFuture<Snapshot> result) {
+        CompletableFuture<Bet[]> fetched;
+        try {
+            fetched = delegate.availableAsync();
+        } catch (RuntimeException e) {
+            fetched = Futures.failed(e);
+        }
+
+        fetched.whenComplete((bets, t) -> {
+            if (null != t) {
+                inFlight.set(null);
+                result.completeExceptionally(Futures.unwrap(t));
+                return;
+            }
+
+            Snapshot s;
+            try {
+                s = new Snapshot(CompactBetCatalog.of(bets), clock.getAsLong());
+            } catch (RuntimeException e) {
+                // The in-flight refresh must always be cleared and completed, or every later
+                // caller would wait on it forever.
+                inFlight.set(null);
+                result.completeExceptionally(e);
+                return;
+            }
+
+            // Publish the new snapshot before the in-flight refresh is cleared, so that there is no
+            // window where a caller sees neither.
+            snapshot.set(s);
+            inFlight.set(null);
+            result.complete(s);
+        });
+    }
+
+    private void refreshInBackground() {
+        if (!backgroundRefreshScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                refresh().whenComplete((s, t) -> {
+                    backgroundRefreshScheduled.set(false);
+                    if (null != t) {
+                        // Keep serving the current snapshot until it passes the max staleness.
+                        LOG.warn("Background refresh of available bets failed", t);
+                    }
+                });
+            });
+        } catch (RuntimeException e) {
+            backgroundRefreshScheduled.set(false);
+            LOG.warn("Could not schedule background refresh of available bets", e);
+        }
+    }
+
+    private static ExecutorService newRefreshExecutor() {
+        return Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "available-bets-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Snapshot of the available bets, and when they were fetched. The Bet views are made when first
+     * asked for.
+     */
+    static class Snapshot {
+        final CompactBetCatalog compact;
+        final long fetchedAt;
+
+        // Guarded by this.
+        private Bet[] bets;
+        private BetCatalog<Bet> catalog;
+
+        Snapshot(CompactBetCatalog compact, long fetchedAt) {
+            this.compact = compact;
+            this.fetchedAt = fetchedAt;
+        }
+
+        long age(long now) {
+            return now - fetchedAt;
+        }
+
+        synchronized Bet[] bets() {
+            if (null == bets) {
+                bets = compact.toArray();
+            }
+            return bets;
+        }
+
+        synchronized BetCatalog<Bet> catalog() {
+            if (null == catalog) {
+                catalog = BetCatalog.of(bets());
+            }
+            return catalog;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package techtest.originalservice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+import org.springframework.util.Assert;
+
+/**
+ * The versions of a catalog (e.g. the available bets), and what changed between them, so that a
+ * client with an old version can be sent only what has changed since.
+ *
+ * update() is given each list fetched. A list that differs from the previous one (by id and
+ * equals()) gets the next version, and the Diff between them is kept in a ring of the last
+ * maxDiffs. A list without changes keeps the version it had.
+ *
+ * since() merges the Diffs after a version into one Delta: the items added since, the items
+ * changed since (that were there at that version), and the ids of the items removed since. If the
+ * version is older than the ring, or isn't one this history gave out, there is no Delta and the
+ * client needs the whole list.
+ *
+ * Versions start at the time the history was created, in milliseconds, so a restarted service
+ * gives out higher versions than the clients of the previous one have (unless that one changed
+ * more than once a millisecond), and doesn't mistake them for its own.
+ *
+ * @param <T>
+ *            The type of the items. They are shared with every Delta, so should be immutable.
+ */
+public class CatalogHistory<T> {
+    private final ToLongFunction<? super T> idFunction;
+    private final Object[] ring;
+
+    // Guarded by this.
+    private Map<Long, T> current;
+    private long version;
+    private int diffs;
+
+    /**
+     * @param idFunction
+     *            The id of an item.
+     * @param maxDiffs
+     *            How many versions back a Delta can go.
+     */
+    public CatalogHistory(ToLongFunction<? super T> idFunction, int maxDiffs) {
+        this(idFunction, maxDiffs, System.currentTimeMillis());
+    }
+
+    CatalogHistory(ToLongFunction<? super T> idFunction, int maxDiffs, long firstVersion) {
+        super();
+
+        Assert.notNull(idFunction, "idFunction");
+        Assert.isTrue(maxDiffs >= 1, "maxDiffs must be at least 1");
+
+        this.idFunction = idFunction;
+        this.ring = new Object[maxDiffs];
+        this.version = firstVersion;
+    }
+
+    /**
+     * @return The version of the list, which is the version of the previous list if nothing has
+     *         changed.
+     */
+    public synchronized long update(List<? extends T> items) {
+        Map<Long, T> next = index(items, idFunction);
+        if (null == current) {
+            current = next;
+            return version;
+        }
+
+        Diff<T> diff = diff(current, next);
+        current = next;
+        if (diff.isEmpty()) {
+            return version;
+        }
+        version++;
+        ring[(int) (version % ring.length)] = diff;
+        diffs = Math.min(diffs + 1, ring.length);
+        return version;
+    }
+
+    /**
+     * @return The version of the last list, or the first version if there hasn't been one.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return What has changed between the version since and the current one (nothing, if they
+     *         are the same), or null if since is older than the kept Diffs or isn't a version of
+     *         this history.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized Delta<T> since(long since) {
+        if (null == current || since > version || since < version - diffs) {
+            return null;
+        }
+
+        // Each id's change since the version asked for, in the order they were first changed.
+        Map<Long, Change<T>> changes = new LinkedHashMap<>();
+        for (long v = since + 1; v <= version; v++) {
+            Diff<T> diff = (Diff<T>) ring[(int) (v % ring.length)];
+            for (T item : diff.added) {
+                long id = idFunction.applyAsLong(item);
+                Change<T> previous = changes.get(id);
+                // Removed and then added back is a change to an item that was there.
+                changes.put(id, new Change<>(null == previous ? Change.ADDED : Change.CHANGED, item));
+            }
+            for (T item : diff.changed) {
+                long id = idFunction.applyAsLong(item);
+                Change<T> previous = changes.get(id);
+                changes.put(id, new Change<>(null == previous ? Change.CHANGED : previous.kind, item));
+            }
+            for (Long id : diff.removed) {
+                Change<T> previous = changes.get(id);
+                if (null != previous && Change.ADDED == previous.kind) {
+                    // It wasn't there at the version asked for, so it hasn't gone.
+                    changes.remove(id);
+                } else {
+                    changes.put(id, new Change<>(Change.REMOVED, null));
+                }
+            }
+        }
+
+        List<T> added = new ArrayList<>();
+        List<T> changed = new ArrayList<>();
+        List<Long> removed = new ArrayList<>();
+        for (Map.Entry<Long, Change<T>> entry : changes.entrySet()) {
+            Change<T> change = entry.getValue();
+            if (Change.ADDED == change.kind) {
+                added.add(change.item);
+            } else if (Change.CHANGED == change.kind) {
+                changed.add(change.item);
+            } else {
+                removed.add(entry.getKey());
+            }
+        }
+        return new Delta<>(since, version, added, changed, removed);
+    }
+
+    /**
+     * @return The version in a "since" request parameter, or null if there isn't one or it isn't a
+     *         number.
+     */
+    public static Long parseVersion(String since) {
+        if (null == since) {
+            return null;
+        }
+        try {
+            return Long.valueOf(since.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static <T> Map<Long, T> index(List<? extends T> items, ToLongFunction<? super T> idFunction) {
+        Map<Long, T> map = new LinkedHashMap<>(items.size() * 4 / 3 + 1);
+        for (T item : items) {
+            map.put(idFunction.applyAsLong(item), item);
+        }
+        return map;
+    }
+
+    /**
+     * @return What changed between two lists, indexed by id.
+     */
+    static <T> Diff<T> diff(Map<Long, T> previous, Map<Long, T> next) {
+        List<T> added = new ArrayList<>();
+        List<T> changed = new ArrayList<>();
+        for (Map.Entry<Long, T> entry : next.entrySet()) {
+            T before = previous.get(entry.getKey());
+            if (null == before) {
+                added.add(entry.getValue());
+            } else if (!before.equals(entry.getValue())) {
+                changed.add(entry.getValue());
+            }
+        }
+        List<Long> removed = new ArrayList<>();
+        for (Long id : previous.keySet()) {
+            if (!next.containsKey(id)) {
+                removed.add(id);
+            }
+        }
+        return new Diff<>(added, changed, removed);
+    }
+
+    /**
+     * What changed between one list and the next.
+     */
+    static class Diff<T> {
+        final List<T> added;
+        final List<T> changed;
+        final List<Long> removed;
+
+        Diff(List<T> added, List<T> changed, List<Long> removed) {
+            this.added = added;
+            this.changed = changed;
+            this.removed = removed;
+        }
+
+        boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    private static class Change<T> {
+        static final int ADDED = 0;
+        static final int CHANGED = 1;
+        static final int REMOVED = 2;
+
+        final int kind;
+        final T item;
+
+        Change(int kind, T item) {
+            this.kind = kind;
+            this.item = item;
+        }
+    }
+
+    /**
+     * What changed between two versions. Serializes to JSON as e.g. {"since":1,"version":3,
+     * "added":[..],"changed":[..],"removed":[ids]}.
+     */
+    public static class Delta<T> {
+        private final long since;
+        private final long version;
+        private final List<T> added;
+        private final List<T> changed;
+        private final List<Long> removed;
+
+        Delta(long since, long version, List<T> added, List<T> changed, List<Long> removed) {
+            this.since = since;
+            this.version = version;
+            this.added = Collections.unmodifiableList(added);
+            this.changed = Collections.unmodifiableList(changed);
+            this.removed = Collections.unmodifiableList(removed);
+        }
+
+        public long getSince() {
+            return since;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public List<T> getAdded() {
+            return added;
+        }
+
+        public List<T> getChanged() {
+            return changed;
+        }
+
+        public List<Long> getRemoved() {
+            return removed;
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package techtest.originalservice;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.springframework.util.Assert;
+
+/**
+ * An index of one list of a catalog (e.g. the available bets), so that a Query for some of its
+ * items (by event, by id, a page at a time) costs the size of the result rather than a scan of
+ * the list.
+ *
+ * It is built once per list, and holds the positions of the items in the list sorted by id, for
+ * all of them and for each event. A Query is a binary search for where to start and a walk of as
+ * many positions as its limit. The list itself isn't copied, so the caller maps the positions in
+ * a Page back to its items (or to anything else it has by position, e.g. each item serialized).
+ *
+ * The items of a Page are in id order, so a cursor is the id of the last item of the previous
+ * Page, and the next Page starts at the first id after it. That still works when the list has
+ * changed between Pages: items that have gone are skipped, and items added with an id after the
+ * cursor are returned.
+ *
+ * If the same id appears more than once, each position is kept, in the order of the list. So that
+ * a Page can end part way through a run of them, the cursor also holds how many items of its id
+ * have been returned, and the next Page skips that many before carrying on.
+ */
+public class CatalogIndex {
+    private static final int[] NONE = new int[0];
+
+    // The id and event of each position of the list.
+    private final long[] ids;
+    private final String[] events;
+
+    // Positions sorted by id, of all the items and of each event's.
+    private final int[] byId;
+    private final Map<String, int[]> byEvent;
+
+    /**
+     * @param idFunction
+     *            The id of an item.
+     * @param eventFunction
+     *            The event of an item. May return null, for an item of no event.
+     */
+    public <T> CatalogIndex(List<? extends T> items, ToLongFunction<? super T> idFunction,
+            Function<? super T, String> eventFunction) {
+        super();
+
+        Assert.notNull(items, "items");
+        Assert.notNull(idFunction, "idFunction");
+        Assert.notNull(eventFunction, "eventFunction");
+
+        int count = items.size();
+        ids = new long[count];
+        events = new String[count];
+        for (int i = 0; i < count; i++) {
+            T item = items.get(i);
+            ids[i] = idFunction.applyAsLong(item);
+            events[i] = eventFunction.apply(item);
+        }
+
+        byId = sortById(allPositions(count));
+
+        Map<String, List<Integer>> positionsByEvent = new HashMap<>();
+        for (int position : byId) {
+            String event = events[position];
+            if (null != event) {
+                positionsByEvent.computeIfAbsent(event, e -> new ArrayList<>()).add(position);
+            }
+        }
+        byEvent = new HashMap<>(positionsByEvent.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<Integer>> entry : positionsByEvent.entrySet()) {
+            // Already in id order, as byId is.
+            byEvent.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    /**
+     * @return The positions in the list of the items the query asks for, in id order, at most
+     *         query's limit of them.
+     */
+    public Page query(Query query) {
+        Assert.notNull(query, "query");
+
+        if (null != query.ids) {
+            return queryIds(query);
+        }
+        int[] candidates = null == query.event ? byId : byEvent.getOrDefault(query.event, NONE);
+        int from = 0;
+        if (null != query.after) {
+            int firstOfId = firstOf(candidates, query.after);
+            from = (int) Math.min(firstAfter(candidates, query.after), (long) firstOfId + query.afterCount);
+        }
+        int to = (int) Math.min(candidates.length, (long) from + query.limit);
+        int[] positions = Arrays.copyOfRange(candidates, from, to);
+        if (to == candidates.length) {
+            return new Page(positions, null);
+        }
+        long last = ids[candidates[to - 1]];
+        return new Page(positions, encodeCursor(last, to - firstOf(candidates, last)));
+    }
+
+    private Page queryIds(Query query) {
+        int[] positions = new int[Math.min(query.ids.length, query.limit)];
+        int found = 0;
+        // The id and count of the cursor of the next Page.
+        long lastId = 0;
+        int lastCount = 0;
+        for (long id : query.ids) {
+            if (null != query.after && id < query.after) {
+                continue;
+            }
+            // How many of the id have been returned, by previous Pages and this one.
+            int returned = 0;
+            int skip = null != query.after && id == query.after ? query.afterCount : 0;
+            int i = firstOf(byId, id);
+            // Any duplicates of the id are together.
+            for (; i < byId.length && ids[byId[i]] == id; i++) {
+                int position = byId[i];
+                if (null != query.event && !query.event.equals(events[position])) {
+                    continue;
+                }
+                if (returned < skip) {
+                    returned++;
+                    continue;
+                }
+                if (found == query.limit) {
+                    // There is at least one more, so there is a next Page.
+                    return new Page(positions, encodeCursor(lastId, lastCount));
+                }
+                if (found == positions.length) {
+                    // Only if an id has duplicates.
+                    positions = Arrays.copyOf(positions, found * 2);
+                }
+                positions[found++] = position;
+                lastId = id;
+                lastCount = ++returned;
+            }
+        }
+        return new Page(Arrays.copyOf(positions, found), null);
+    }
+
+    /**
+     * @return The number of items in the list.
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * @return The number of distinct events.
+     */
+    public int eventCount() {
+        return byEvent.size();
+    }
+
+    /**
+     * @return The index in positions (which are in id order) of the first with an id after the
+     *         given one, or positions.length if there isn't one.
+     */
+    private int firstAfter(int[] positions, long after) {
+        int low = 0;
+        int high = positions.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ids[positions[mid]] <= after) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The index in positions (which are in id order) of the first with the given id or
+     *         after it.
+     */
+    private int firstOf(int[] positions, long id) {
+        return Long.MIN_VALUE == id ? 0 : firstAfter(positions, id - 1);
+    }
+
+    private int[] sortById(int[] positions) {
+        // Sorting by (id, position) keeps duplicate ids in list order.
+        Integer[] boxed = new Integer[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            boxed[i] = positions[i];
+        }
+        Arrays.sort(boxed, (a, b) -> {
+            int byIdOrder = Long.compare(ids[a], ids[b]);
+            return 0 != byIdOrder ? byIdOrder : Integer.compare(a, b);
+        });
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = boxed[i];
+        }
+        return positions;
+    }
+
+    private static int[] allPositions(int count) {
+        int[] positions = new int[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = i;
+        }
+        return positions;
+    }
+
+    /**
+     * @param count
+     *            How many items with the id have been returned.
+     */
+    static String encodeCursor(long id, int count) {
+        String decoded = id + ":" + count;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(decoded.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return The id and count of the cursor.
+     */
+    static long[] decodeCursor(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(":", -1);
+            if (2 != parts.length) {
+                throw new IllegalArgumentException("Expected id:count");
+            }
+            long count = Integer.parseInt(parts[1]);
+            if (count < 1) {
+                throw new IllegalArgumentException("count must be at least 1");
+            }
+            return new long[] {Long.parseLong(parts[0]), count};
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException too.
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * Which items of a list to return: those of an event, and/or with one of a set of ids, at most
+     * limit of them, after a cursor. Made from the request parameters by parse().
+     */
+    public static class Query {
+        // The most ids a Query may ask for.
+        public static final int MAX_IDS = 1000;
+
+        private final String event;
+        private final long[] ids;
+        private final int limit;
+        private final Long after;
+        // How many items with the id after have been returned.
+        private final int afterCount;
+
+        Query(String event, long[] ids, int limit, Long after, int afterCount) {
+            this.event = event;
+            this.ids = ids;
+            this.limit = limit;
+            this.after = after;
+            this.afterCount = afterCount;
+        }
+
+        /**
+         * All the parameters are optional, and null if not given.
+         *
+         * @param event
+         *            The event of the items.
+         * @param ids
+         *            Comma-separated ids of the items, at most MAX_IDS of them.
+         * @param limit
+         *            The most items to return, at least 1.
+         * @param cursor
+         *            The next cursor of the previous Page.
+         * @throws IllegalArgumentException
+         *             If a parameter is invalid.
+         */
+        public static Query parse(String event, String ids, String limit, String cursor) {
+            long[] parsedIds = null;
+            if (null != ids) {
+                String[] parts = ids.split(",", -1);
+                if (parts.length > MAX_IDS) {
+                    throw new IllegalArgumentException("At most " + MAX_IDS + " ids");
+                }
+                parsedIds = new long[parts.length];
+                for (int i = 0; i < parts.length; i++) {
+                    parsedIds[i] = Long.parseLong(parts[i].trim());
+                }
+                // In id order, as a Page is, and without duplicates.
+                parsedIds = Arrays.stream(parsedIds).sorted().distinct().toArray();
+            }
+
+            int parsedLimit = Integer.MAX_VALUE;
+            if (null != limit) {
+                parsedLimit = Integer.parseInt(limit.trim());
+                if (parsedLimit < 1) {
+                    throw new IllegalArgumentException("limit must be at least 1");
+                }
+            }
+
+            if (null == cursor) {
+                return new Query(event, parsedIds, parsedLimit, null, 0);
+            }
+            long[] decoded = decodeCursor(cursor);
+            return new Query(event, parsedIds, parsedLimit, decoded[0], (int) decoded[1]);
+        }
+
+        /**
+         * @return true if the Query is for the whole list, i.e. it had no parameters.
+         */
+        public boolean isAll() {
+            return null == event && null == ids && Integer.MAX_VALUE == limit && null == after;
+        }
+    }
+
+    /**
+     * The result of a Query: the positions in the list of the items, and the cursor of the next
+     * Page, or null if this is the last.
+     */
+    public static class Page {
+        private final int[] positions;
+        private final String nextCursor;
+
+        Page(int[] positions, String nextCursor) {
+            this.positions = positions;
+            this.nextCursor = nextCursor;
+        }
+
+        public int[] getPositions() {
+            return positions;
+        }
+
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+}
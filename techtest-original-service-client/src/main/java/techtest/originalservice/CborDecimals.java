@@ -0,0 +1,127 @@
+package techtest.originalservice;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.std.NumberDeserializers;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import com.fasterxml.jackson.dataformat.cbor.CBORParser;
+
+/**
+ * Writing and reading BigDecimals as CBOR decimal fractions (RFC 7049 tag 4: an array of a base 10
+ * exponent and an integer mantissa), so that they keep their exact value and scale.
+ *
+ * Jackson's CBOR support (as of 2.6) can't be used for them as it is: CBORGenerator writes a
+ * BigDecimal with tag 5 (a bigfloat, which is base 2) and the scale rather than the exponent, so
+ * other CBOR decoders read a different number, and CBORParser reads either tag back as a plain
+ * array rather than a number.
+ *
+ * module() is for ObjectMappers (see WireFormat.newObjectMapper()), and write(),
+ * isDecimalFraction() and read() for streaming generators and parsers. For any other format, they
+ * write and read BigDecimals as Jackson does.
+ */
+public final class CborDecimals {
+    public static final int DECIMAL_FRACTION_TAG = 4;
+
+    private CborDecimals() {
+    }
+
+    /**
+     * Writes the value as a decimal fraction if the generator is a CBORGenerator, or else as the
+     * generator writes a BigDecimal.
+     */
+    public static void write(JsonGenerator gen, BigDecimal value) throws IOException {
+        if (!(gen instanceof CBORGenerator) || null == value) {
+            gen.writeNumber(value);
+            return;
+        }
+        CBORGenerator cbor = (CBORGenerator) gen;
+        cbor.writeTag(DECIMAL_FRACTION_TAG);
+        cbor.writeStartArray(2);
+        cbor.writeNumber(-value.scale());
+        BigInteger mantissa = value.unscaledValue();
+        if (mantissa.bitLength() < Long.SIZE) {
+            cbor.writeNumber(mantissa.longValue());
+        } else {
+            cbor.writeNumber(mantissa);
+        }
+        cbor.writeEndArray();
+    }
+
+    /**
+     * @return true if the current token is the START_ARRAY of a decimal fraction.
+     */
+    public static boolean isDecimalFraction(JsonParser parser) {
+        return JsonToken.START_ARRAY == parser.getCurrentToken() && parser instanceof CBORParser
+                && DECIMAL_FRACTION_TAG == ((CBORParser) parser).getCurrentTag();
+    }
+
+    /**
+     * Reads the decimal fraction whose START_ARRAY is the current token, leaving its END_ARRAY as
+     * the current token.
+     *
+     * @throws JsonParseException
+     *             If the array isn't an integer exponent and mantissa.
+     */
+    public static BigDecimal read(JsonParser parser) throws IOException {
+        if (JsonToken.VALUE_NUMBER_INT != parser.nextToken()) {
+            throw new JsonParseException("Expected a decimal fraction exponent", parser.getCurrentLocation());
+        }
+        int exponent = parser.getIntValue();
+        if (JsonToken.VALUE_NUMBER_INT != parser.nextToken()) {
+            throw new JsonParseException("Expected a decimal fraction mantissa", parser.getCurrentLocation());
+        }
+        BigInteger mantissa = parser.getBigIntegerValue();
+        if (JsonToken.END_ARRAY != parser.nextToken()) {
+            throw new JsonParseException("Expected the end of a decimal fraction", parser.getCurrentLocation());
+        }
+        return new BigDecimal(mantissa, -exponent);
+    }
+
+    /**
+     * @return A module that writes and reads BigDecimals as decimal fractions.
+     */
+    public static SimpleModule module() {
+        return new SimpleModule("CborDecimals").addSerializer(BigDecimal.class, new Serializer())
+                .addDeserializer(BigDecimal.class, new Deserializer());
+    }
+
+    private static class Serializer extends StdScalarSerializer<BigDecimal> {
+        private static final long serialVersionUID = 1L;
+
+        Serializer() {
+            super(BigDecimal.class);
+        }
+
+        @Override
+        public void serialize(BigDecimal value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            write(gen, value);
+        }
+    }
+
+    private static class Deserializer extends StdScalarDeserializer<BigDecimal> {
+        private static final long serialVersionUID = 1L;
+
+        Deserializer() {
+            super(BigDecimal.class);
+        }
+
+        @Override
+        public BigDecimal deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            if (isDecimalFraction(parser)) {
+                return read(parser);
+            }
+            return NumberDeserializers.BigDecimalDeserializer.instance.deserialize(parser, context);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package techtest.originalservice;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.springframework.util.Assert;
+
+/**
+ * A circuit breaker for calls to the remote service.
+ *
+ * <ul>
+ * <li>CLOSED: calls are allowed, and the outcomes of the last windowSize calls are kept in a ring.
+ * Once at least minimumCalls have been recorded, it opens if the percentage of them that failed
+ * reaches failureRateThreshold, or the percentage that took at least slowCallMillis reaches
+ * slowCallRateThreshold.</li>
+ * <li>OPEN: calls are rejected (tryAcquire() returns false) for openMillis, then it is
+ * HALF_OPEN.</li>
+ * <li>HALF_OPEN: halfOpenCalls probe calls are allowed, and the rest are rejected. If a probe fails
+ * or is slow it opens again, and once they have all succeeded it closes, with an empty ring.</li>
+ * </ul>
+ *
+ * The caller decides what a failure is, by calling onSuccess() or onFailure() after each call that
+ * tryAcquire() allowed.
+ *
+ * tryAcquire() is a volatile read while the breaker is closed. Recording an outcome, and every
+ * call while the breaker isn't closed, takes a short lock.
+ */
+public class CircuitBreaker {
+    public static enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final Settings settings;
+    private final LongSupplier clock;
+    private final long slowCallNanos;
+
+    private volatile State state = State.CLOSED;
+    private final LongAdder rejected = new LongAdder();
+
+    // The ring of outcomes, guarded by this.
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int recorded;
+    private int failedCount;
+    private int slowCount;
+
+    // Guarded by this.
+    private long openedAt;
+    private int probesAllowed;
+    private int probesSucceeded;
+
+    public CircuitBreaker(Settings settings) {
+        this(settings, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock
+     *            The current time in milliseconds.
+     */
+    public CircuitBreaker(Settings settings, LongSupplier clock) {
+        super();
+
+        Assert.notNull(settings, "settings");
+        Assert.notNull(clock, "clock");
+        Assert.isTrue(settings.getWindowSize() > 0, "windowSize must be greater than zero");
+        Assert.isTrue(settings.getMinimumCalls() > 0 && settings.getMinimumCalls() <= settings.getWindowSize(),
+                "minimumCalls must be between 1 and windowSize");
+        Assert.isTrue(settings.getFailureRateThreshold() > 0 && settings.getFailureRateThreshold() <= 100,
+                "failureRateThreshold must be greater than 0 and at most 100");
+        Assert.isTrue(settings.getSlowCallRateThreshold() > 0 && settings.getSlowCallRateThreshold() <= 100,
+                "slowCallRateThreshold must be greater than 0 and at most 100");
+        Assert.isTrue(settings.getSlowCallMillis() > 0, "slowCallMillis must be greater than zero");
+        Assert.isTrue(settings.getOpenMillis() >= 0, "openMillis cannot be negative");
+        Assert.isTrue(settings.getHalfOpenCalls() > 0, "halfOpenCalls must be greater than zero");
+
+        this.settings = settings;
+        this.clock = clock;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(settings.getSlowCallMillis());
+        this.failed = new boolean[settings.getWindowSize()];
+        this.slow = new boolean[settings.getWindowSize()];
+    }
+
+    /**
+     * @return true if a call may be made, in which case onSuccess() or onFailure() must be called
+     *         when it completes.
+     */
+    public boolean tryAcquire() {
+        if (State.CLOSED == state) {
+            return true;
+        }
+
+        synchronized (this) {
+            if (State.OPEN == state && clock.getAsLong() - openedAt >= settings.getOpenMillis()) {
+                state = State.HALF_OPEN;
+                probesAllowed = 0;
+                probesSucceeded = 0;
+            }
+            if (State.CLOSED == state) {
+                return true;
+            }
+            if (State.HALF_OPEN == state && probesAllowed < settings.getHalfOpenCalls()) {
+                probesAllowed++;
+                return true;
+            }
+        }
+        rejected.increment();
+        return false;
+    }
+
+    public void onSuccess(long durationNanos) {
+        record(false, durationNanos >= slowCallNanos);
+    }
+
+    public void onFailure(long durationNanos) {
+        record(true, durationNanos >= slowCallNanos);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return How many calls tryAcquire() has rejected.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private synchronized void record(boolean callFailed, boolean callSlow) {
+        switch (state) {
+        case CLOSED:
+            if (recorded == failed.length) {
+                failedCount -= failed[next] ? 1 : 0;
+                slowCount -= slow[next] ? 1 : 0;
+            } else {
+                recorded++;
+            }
+            failed[next] = callFailed;
+            slow[next] = callSlow;
+            failedCount += callFailed ? 1 : 0;
+            slowCount += callSlow ? 1 : 0;
+            next = (next + 1) % failed.length;
+
+            if (recorded >= settings.getMinimumCalls()
+                    && (failedCount * 100.0 >= settings.getFailureRateThreshold() * recorded
+                            || slowCount * 100.0 >= settings.getSlowCallRateThreshold() * recorded)) {
+                open();
+            }
+            break;
+        case HALF_OPEN:
+            if (callFailed || callSlow) {
+                open();
+            } else if (++probesSucceeded >= settings.getHalfOpenCalls()) {
+                close();
+            }
+            break;
+        default:
+            // Calls allowed before the breaker opened don't change anything.
+        }
+    }
+
+    private void open() {
+        openedAt = clock.getAsLong();
+        state = State.OPEN;
+    }
+
+    private void close() {
+        next = 0;
+        recorded = 0;
+        failedCount = 0;
+        slowCount = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * Circuit breaker settings. The percentages are of the calls in the ring.
+     */
+    public static class Settings {
+        private int windowSize = 100;
+        private int minimumCalls = 20;
+        private float failureRateThreshold = 50;
+        private float slowCallRateThreshold = 80;
+        private long slowCallMillis = 2000;
+        private long openMillis = 5000;
+        private int halfOpenCalls = 5;
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public float getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(float failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public float getSlowCallRateThreshold() {
+            return slowCallRateThreshold;
+        }
+
+        public void setSlowCallRateThreshold(float slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+        }
+
+        public long getSlowCallMillis() {
+            return slowCallMillis;
+        }
+
+        public void setSlowCallMillis(long slowCallMillis) {
+            this.slowCallMillis = slowCallMillis;
+        }
+
+        public long getOpenMillis() {
+            return openMillis;
+        }
+
+        public void setOpenMillis(long openMillis) {
+            this.openMillis = openMillis;
+        }
+
+        public int getHalfOpenCalls() {
+            return halfOpenCalls;
+        }
+
+        public void setHalfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package techtest.originalservice;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.springframework.util.Assert;
+
+import techtest.originalservice.metrics.ServiceMetrics;
+
+/**
+ * Fans a list (e.g. the available bets) out to many subscribers as a stream of changes, e.g. for a
+ * Server-Sent Events endpoint.
+ *
+ * publish() is given the whole list each time (normally by a single poller), and compares it with
+ * the previous one by id and equals(). Subscribers get:
+ *
+ * <ul>
+ * <li>"snapshot" - the whole list, when they subscribe (or when the first list is published, if
+ * there isn't one yet).</li>
+ * <li>"changes" - the items that are new or not equal to their previous version.</li>
+ * <li>"removed" - the ids of the items that have gone.</li>
+ * </ul>
+ *
+ * Nothing is sent for a list without changes. Each event's data is serialized once, however many
+ * subscribers there are, and its id is the version of the list, which goes up by one for each list
+ * with changes.
+ *
+ * Each subscriber has a bounded queue of events, and is told when one is queued. publish() never
+ * waits for a subscriber: one whose queue is full, because it reads slower than the list changes,
+ * is dropped. It can subscribe again, which gets it a fresh snapshot.
+ *
+ * When the last subscriber goes, the list is forgotten, so that the next one doesn't get a stale
+ * snapshot.
+ *
+ * Metrics are recorded in the ServiceMetrics under the name given (e.g. "stream.available"):
+ * "name.subscribers" (a gauge) and "name.dropped".
+ *
+ * @param <T>
+ *            The type of the items. They are shared by every subscriber, so should be immutable.
+ */
+public class DeltaBroadcaster<T> {
+    public static final String SNAPSHOT = "snapshot";
+    public static final String CHANGES = "changes";
+    public static final String REMOVED = "removed";
+
+    private final ToLongFunction<? super T> idFunction;
+    private final Function<Object, String> json;
+    private final int queueSize;
+    private final LongAdder dropped;
+
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+
+    // Guarded by this.
+    private Map<Long, T> current;
+    private long version;
+    private Event snapshot;
+
+    /**
+     * @param idFunction
+     *            The id of an item.
+     * @param json
+     *            Serializes the data of an event: a List of items, or a List of ids.
+     * @param queueSize
+     *            The most events queued for a subscriber before it is dropped.
+     */
+    public DeltaBroadcaster(ToLongFunction<? super T> idFunction, Function<Object, String> json, int queueSize,
+            ServiceMetrics metrics, String name) {
+        super();
+
+        Assert.notNull(idFunction, "idFunction");
+        Assert.notNull(json, "json");
+        Assert.isTrue(queueSize >= 1, "queueSize must be at least 1");
+        Assert.notNull(metrics, "metrics");
+        Assert.hasText(name, "name");
+
+        this.idFunction = idFunction;
+        this.json = json;
+        this.queueSize = queueSize;
+        this.dropped = metrics.counter(name + ".dropped");
+        metrics.gauge(name + ".subscribers", subscriptions::size);
+    }
+
+    /**
+     * @param onEvent
+     *            Called when an event is queued. It is called with the broadcaster locked, so must
+     *            not block.
+     * @param onDrop
+     *            Called if the subscriber is dropped, also with the broadcaster locked.
+     */
+    public synchronized Subscription subscribe(Runnable onEvent, Runnable onDrop) {
+        Subscription subscription = new Subscription(onEvent, onDrop);
+        subscriptions.add(subscription);
+        if (null != current) {
+            subscription.offer(snapshot());
+        }
+        return subscription;
+    }
+
+    /**
+     * Sends what has changed since the last list to the subscribers. Ignored if there are none.
+     */
+    public synchronized void publish(List<? extends T> items) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+
+        Map<Long, T> next = CatalogHistory.index(items, idFunction);
+        Map<Long, T> previous = current;
+        current = next;
+        if (null == previous) {
+            // Everyone subscribed before there was a list, so is waiting for a snapshot.
+            version++;
+            snapshot = null;
+            broadcast(snapshot());
+            return;
+        }
+
+        CatalogHistory.Diff<T> diff = CatalogHistory.diff(previous, next);
+        if (diff.isEmpty()) {
+            return;
+        }
+
+        version++;
+        snapshot = null;
+        if (!diff.changed.isEmpty() || !diff.added.isEmpty()) {
+            List<T> changed = new ArrayList<>(diff.changed);
+            changed.addAll(diff.added);
+            broadcast(new Event(version, CHANGES, json.apply(changed)));
+        }
+        if (!diff.removed.isEmpty()) {
+            broadcast(new Event(version, REMOVED, json.apply(diff.removed)));
+        }
+    }
+
+    /**
+     * @return true if there is a list, i.e. one has been published since there were last no
+     *         subscribers.
+     */
+    public synchronized boolean hasCurrent() {
+        return null != current;
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private Event snapshot() {
+        if (null == snapshot) {
+            snapshot = new Event(version, SNAPSHOT, json.apply(new ArrayList<>(current.values())));
+        }
+        return snapshot;
+    }
+
+    private void broadcast(Event event) {
+        // offer() may remove the subscription, which the concurrent set allows.
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+
+    private synchronized void remove(Subscription subscription) {
+        if (subscriptions.remove(subscription) && subscriptions.isEmpty()) {
+            current = null;
+            snapshot = null;
+        }
+    }
+
+    /**
+     * One subscriber's queue of events.
+     */
+    public class Subscription {
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(queueSize);
+        private final Runnable onEvent;
+        private final Runnable onDrop;
+        private volatile boolean closed;
+
+        Subscription(Runnable onEvent, Runnable onDrop) {
+            this.onEvent = onEvent;
+            this.onDrop = onDrop;
+        }
+
+        /**
+         * @return The next event, or null if there isn't one queued.
+         */
+        public Event poll() {
+            return queue.poll();
+        }
+
+        public boolean isEmpty() {
+            return queue.isEmpty();
+        }
+
+        /**
+         * @return true if the subscription has been cancelled, or dropped.
+         */
+        public boolean isClosed() {
+            return closed;
+        }
+
+        public void cancel() {
+            closed = true;
+            remove(this);
+        }
+
+        void offer(Event event) {
+            if (closed) {
+                return;
+            }
+            if (queue.offer(event)) {
+                onEvent.run();
+                return;
+            }
+            dropped.increment();
+            closed = true;
+            queue.clear();
+            remove(this);
+            onDrop.run();
+        }
+    }
+
+    /**
+     * An event, with its data serialized.
+     */
+    public static class Event {
+        private final long id;
+        private final String name;
+        private final String data;
+
+        Event(long id, String name, String data) {
+            this.id = id;
+            this.name = name;
+            this.data = data;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getData() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package techtest.originalservice;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.springframework.util.concurrent.ListenableFuture;
+
+/**
+ * Helpers for working with CompletableFutures.
+ */
+public final class Futures {
+    private Futures() {
+    }
+
+    /**
+     * Java 8 has no CompletableFuture.failedFuture().
+     */
+    public static <T> CompletableFuture<T> failed(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    /**
+     * Adapts a Spring ListenableFuture (as returned by AsyncRestTemplate) to a CompletableFuture.
+     */
+    public static <T> CompletableFuture<T> fromListenable(ListenableFuture<T> listenable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        listenable.addCallback(future::complete, t -> future.completeExceptionally(unwrap(t)));
+        return future;
+    }
+
+    /**
+     * Waits for the future, and rethrows any failure as the original exception rather than the
+     * CompletionException that join() would throw. This keeps the exceptions thrown by the blocking
+     * OriginalService methods the same as before.
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Strips the CompletionException/ExecutionException wrappers that futures add around a failure.
+     */
+    public static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && null != t.getCause()) {
+            t = t.getCause();
+        }
+        return t;
+    }
+
+    /**
+     * Calls call for each input, with at most parallelism calls in flight at once, and collects the
+     * results in the order of the inputs.
+     * 
+     * A call is started as soon as an earlier one completes. Calls that complete straight away are
+     * handled in a loop, so a long list of them doesn't grow the stack.
+     * 
+     * If any call fails (or throws), the remaining calls are still made, and the result fails with
+     * the first failure once they have all completed. Callers that want per-input errors should
+     * handle them in call.
+     */
+    public static <I, O> CompletableFuture<List<O>> mapBounded(List<? extends I> inputs, int parallelism,
+            Function<? super I, CompletableFuture<O>> call) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        return new BoundedMap<I, O>(inputs, call).start(parallelism);
+    }
+
+    private static class BoundedMap<I, O> {
+        private final List<? extends I> inputs;
+        private final Function<? super I, CompletableFuture<O>> call;
+        private final Object[] results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final CompletableFuture<List<O>> result = new CompletableFuture<>();
+
+        BoundedMap(List<? extends I> inputs, Function<? super I, CompletableFuture<O>> call) {
+            this.inputs = inputs;
+            this.call = call;
+            this.results = new Object[inputs.size()];
+            this.remaining = new AtomicInteger(inputs.size());
+        }
+
+        CompletableFuture<List<O>> start(int parallelism) {
+            if (inputs.isEmpty()) {
+                complete();
+            }
+            for (int i = 0; i < Math.min(parallelism, inputs.size()); i++) {
+                run();
+            }
+            return result;
+        }
+
+        /**
+         * Makes calls until one doesn't complete straight away, or there are none left.
+         */
+        private void run() {
+            int i;
+            while ((i = next.getAndIncrement()) < inputs.size()) {
+                CompletableFuture<O> future;
+                try {
+                    future = call.apply(inputs.get(i));
+                } catch (RuntimeException e) {
+                    future = failed(e);
+                }
+
+                if (!future.isDone()) {
+                    int index = i;
+                    future.whenComplete((value, t) -> {
+                        record(index, value, t);
+                        run();
+                    });
+                    return;
+                }
+
+                O value = null;
+                Throwable t = null;
+                try {
+                    value = future.join();
+                } catch (CompletionException | CancellationException e) {
+                    t = e;
+                }
+                record(i, value, t);
+            }
+        }
+
+        private void record(int index, O value, Throwable t) {
+            if (null != t) {
+                failure.compareAndSet(null, unwrap(t));
+            } else {
+                results[index] = value;
+            }
+            if (0 == remaining.decrementAndGet()) {
+                complete();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void complete() {
+            Throwable t = failure.get();
+            if (null != t) {
+                result.completeExceptionally(t);
+            } else {
+                result.complete((List<O>) Arrays.asList(results));
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package techtest.originalservice;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.util.Assert;
+
+import techtest.originalservice.api.OriginalService.BusinessLogicException;
+import techtest.originalservice.metrics.LatencyHistogram;
+import techtest.originalservice.metrics.ServiceMetrics;
+
+/**
+ * Hedged requests, for idempotent calls to the remote service only (i.e. GET "/available", never
+ * POST "/bets").
+ *
+ * call() makes one attempt. If it hasn't answered after the hedge delay, a second attempt is made,
+ * and whichever answers first wins. If the first attempt fails before then (with anything but a
+ * BusinessLogicException, which is an answer), the second attempt is made straight away instead.
+ * There are never more than two attempts, and the second is only made if the RetryBudget has a
+ * token for it.
+ *
+ * The hedge delay is the settings' percentile of the latency of single attempts, recomputed at
+ * most every delayRefreshMillis and kept between minDelayMillis and maxDelayMillis. Until there
+ * are minSamples attempts to go on, it is maxDelayMillis.
+ *
+ * Metrics are recorded in the ServiceMetrics under the name given (e.g. "upstream.available"):
+ *
+ * <ul>
+ * <li>"name.attempt" - the latency of each attempt.</li>
+ * <li>"name.hedge.fired" - second attempts made.</li>
+ * <li>"name.hedge.won" - second attempts that answered first.</li>
+ * <li>"name.hedge.budgetExhausted" - second attempts not made for lack of a token.</li>
+ * <li>"name.hedge.delayMillis" - the current hedge delay.</li>
+ * </ul>
+ */
+public class Hedger {
+    private final Settings settings;
+    private final RetryBudget budget;
+    private final LatencyHistogram attemptLatency;
+    private final LongAdder fired;
+    private final LongAdder won;
+    private final LongAdder budgetExhausted;
+
+    private volatile long delayMicros;
+    private volatile long delayComputedAtNanos;
+
+    public Hedger(Settings settings, ServiceMetrics metrics, String name) {
+        super();
+
+        Assert.notNull(settings, "settings");
+        Assert.notNull(metrics, "metrics");
+        Assert.hasText(name, "name");
+        Assert.isTrue(settings.getPercentile() > 0 && settings.getPercentile() < 100,
+                "percentile must be greater than 0 and less than 100");
+        Assert.isTrue(settings.getMinDelayMillis() >= 0 && settings.getMinDelayMillis() <= settings.getMaxDelayMillis(),
+                "minDelayMillis must be between 0 and maxDelayMillis");
+
+        this.settings = settings;
+        this.budget = new RetryBudget(settings.getBudgetRatio(), settings.getBudgetMaxTokens());
+        this.attemptLatency = metrics.histogram(name + ".attempt");
+        this.fired = metrics.counter(name + ".hedge.fired");
+        this.won = metrics.counter(name + ".hedge.won");
+        this.budgetExhausted = metrics.counter(name + ".hedge.budgetExhausted");
+        this.delayMicros = TimeUnit.MILLISECONDS.toMicros(settings.getMaxDelayMillis());
+        this.delayComputedAtNanos = System.nanoTime();
+        metrics.gauge(name + ".hedge.delayMillis", () -> delayMicros / 1000.0);
+    }
+
+    /**
+     * @param attempt
+     *            Makes one attempt. Must be idempotent.
+     * @param scheduler
+     *            Runs the timer for the second attempt, which is made on its thread.
+     */
+    public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> attempt, ScheduledExecutorService scheduler) {
+        budget.onRequest();
+        HedgedCall<T> call = new HedgedCall<>(attempt);
+        call.start(scheduler, currentDelayMicros());
+        return call.result;
+    }
+
+    /**
+     * @return The hedge delay, in microseconds.
+     */
+    public long currentDelayMicros() {
+        long now = System.nanoTime();
+        if (now - delayComputedAtNanos < TimeUnit.MILLISECONDS.toNanos(settings.getDelayRefreshMillis())) {
+            return delayMicros;
+        }
+        // Racing threads may both recompute, which is harmless.
+        delayComputedAtNanos = now;
+
+        LatencyHistogram.Snapshot snapshot = attemptLatency.snapshot();
+        long micros = TimeUnit.MILLISECONDS.toMicros(settings.getMaxDelayMillis());
+        if (snapshot.getCount() >= settings.getMinSamples()) {
+            micros = Math.max(TimeUnit.MILLISECONDS.toMicros(settings.getMinDelayMillis()),
+                    Math.min(micros, snapshot.getValueAtPercentileMicros(settings.getPercentile())));
+        }
+        delayMicros = micros;
+        return micros;
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * One call, of up to two attempts.
+     *
+     * pending counts the attempts in progress, plus any thread deciding whether to make the second
+     * attempt, so that whoever brings it to zero knows there is nothing left to wait for.
+     */
+    private class HedgedCall<T> {
+        final Supplier<CompletableFuture<T>> attempt;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final AtomicInteger pending = new AtomicInteger(1);
+        final AtomicBoolean hedged = new AtomicBoolean();
+        volatile Throwable lastFailure;
+        volatile ScheduledFuture<?> timer;
+
+        HedgedCall(Supplier<CompletableFuture<T>> attempt) {
+            this.attempt = attempt;
+        }
+
+        void start(ScheduledExecutorService scheduler, long delayMicros) {
+            launch(false);
+            if (!result.isDone()) {
+                timer = scheduler.schedule(() -> {
+                    hedge();
+                }, delayMicros, TimeUnit.MICROSECONDS);
+                if (result.isDone()) {
+                    timer.cancel(false);
+                }
+            }
+        }
+
+        /**
+         * @return true if the second attempt was made.
+         */
+        boolean hedge() {
+            pending.incrementAndGet();
+            if (!result.isDone() && hedged.compareAndSet(false, true)) {
+                if (budget.tryWithdraw()) {
+                    fired.increment();
+                    launch(true);
+                    return true;
+                }
+                budgetExhausted.increment();
+            }
+            Throwable failure = lastFailure;
+            if (0 == pending.decrementAndGet() && null != failure) {
+                result.completeExceptionally(failure);
+            }
+            return false;
+        }
+
+        void launch(boolean second) {
+            long start = System.nanoTime();
+            CompletableFuture<T> future;
+            try {
+                future = attempt.get();
+            } catch (RuntimeException e) {
+                future = Futures.failed(e);
+            }
+            future.whenComplete((value, t) -> {
+                attemptLatency.recordSince(start);
+                onAttemptComplete(second, value, t);
+            });
+        }
+
+        void onAttemptComplete(boolean second, T value, Throwable t) {
+            if (null == t) {
+                if (result.complete(value)) {
+                    if (second) {
+                        won.increment();
+                    }
+                    cancelTimer();
+                }
+                pending.decrementAndGet();
+                return;
+            }
+
+            Throwable cause = Futures.unwrap(t);
+            if (cause instanceof BusinessLogicException) {
+                result.completeExceptionally(cause);
+                cancelTimer();
+                pending.decrementAndGet();
+                return;
+            }
+
+            lastFailure = cause;
+            if (!second) {
+                // Retry straight away rather than waiting for the timer.
+                hedge();
+            }
+            // Unless the other attempt is still in progress, this is the answer.
+            if (0 == pending.decrementAndGet()) {
+                result.completeExceptionally(cause);
+                cancelTimer();
+            }
+        }
+
+        void cancelTimer() {
+            ScheduledFuture<?> t = timer;
+            if (null != t) {
+                t.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Hedging settings. Hedging is off unless enabled.
+     */
+    public static class Settings {
+        private boolean enabled;
+        private double percentile = 95;
+        private long minDelayMillis = 5;
+        private long maxDelayMillis = 1000;
+        private int minSamples = 100;
+        private long delayRefreshMillis = 1000;
+        private double budgetRatio = 0.1;
+        private int budgetMaxTokens = 10;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getPercentile() {
+            return percentile;
+        }
+
+        public void setPercentile(double percentile) {
+            this.percentile = percentile;
+        }
+
+        public long getMinDelayMillis() {
+            return minDelayMillis;
+        }
+
+        public void setMinDelayMillis(long minDelayMillis) {
+            this.minDelayMillis = minDelayMillis;
+        }
+
+        public long getMaxDelayMillis() {
+            return maxDelayMillis;
+        }
+
+        public void setMaxDelayMillis(long maxDelayMillis) {
+            this.maxDelayMillis = maxDelayMillis;
+        }
+
+        public int getMinSamples() {
+            return minSamples;
+        }
+
+        public void setMinSamples(int minSamples) {
+            this.minSamples = minSamples;
+        }
+
+        public long getDelayRefreshMillis() {
+            return delayRefreshMillis;
+        }
+
+        public void setDelayRefreshMillis(long delayRefreshMillis) {
+            this.delayRefreshMillis = delayRefreshMillis;
+        }
+
+        public double getBudgetRatio() {
+            return budgetRatio;
+        }
+
+        public void setBudgetRatio(double budgetRatio) {
+            this.budgetRatio = budgetRatio;
+        }
+
+        public int getBudgetMaxTokens() {
+            return budgetMaxTokens;
+        }
+
+        public void setBudgetMaxTokens(int budgetMaxTokens) {
+            this.budgetMaxTokens = budgetMaxTokens;
+        }
+    }
+}
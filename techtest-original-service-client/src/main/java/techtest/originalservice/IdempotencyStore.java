@@ -0,0 +1,220 @@
+package techtest.originalservice;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import org.springframework.util.Assert;
+
+/**
+ * Remembers the result of a non-idempotent call (e.g. placing a bet) by a key the client chose, so
+ * that a client that retries with the same key gets the same result rather than making the call
+ * again.
+ *
+ * The first caller with a key starts the call. Anyone who asks with the key while that call is in
+ * flight shares it, and anyone who asks after it succeeded gets its result from memory. A call that
+ * fails is forgotten, so that the client can retry it.
+ *
+ * Keys are kept for ttlMillis after they were first used, and at most maxKeys are kept: the oldest
+ * are forgotten first, even if their call is still in flight.
+ *
+ * Each key is remembered with the request it was first used for, and using it for a different
+ * request (by equals()) fails with a KeyReusedException rather than returning another request's
+ * result.
+ *
+ * The keys are in a LinkedHashMap in the order they were first used, behind a short lock. The call
+ * itself is made outside the lock.
+ *
+ * @param <T>
+ *            The type of the result.
+ */
+public class IdempotencyStore<T> {
+    /** The longest key accepted, so that the memory the keys take is bounded too. */
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private final Settings settings;
+    private final LongSupplier clock;
+
+    // Guarded by this.
+    private final LinkedHashMap<String, Entry<T>> entries = new LinkedHashMap<>();
+
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder evicted = new LongAdder();
+
+    public IdempotencyStore(Settings settings) {
+        this(settings, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock
+     *            The current time in milliseconds.
+     */
+    public IdempotencyStore(Settings settings, LongSupplier clock) {
+        super();
+
+        Assert.notNull(settings, "settings");
+        Assert.notNull(clock, "clock");
+        Assert.isTrue(settings.getMaxKeys() > 0, "maxKeys must be greater than zero");
+        Assert.isTrue(settings.getTtlMillis() > 0, "ttlMillis must be greater than zero");
+
+        this.settings = settings;
+        this.clock = clock;
+    }
+
+    /**
+     * @return true if the key may be used, i.e. it isn't empty and is at most MAX_KEY_LENGTH
+     *         characters.
+     */
+    public static boolean isValidKey(String key) {
+        return null != key && !key.isEmpty() && key.length() <= MAX_KEY_LENGTH;
+    }
+
+    /**
+     * Starts the call returned by the supplier, or returns the result of the one already made (or
+     * in flight) for the key. Never blocks, except on the short lock.
+     *
+     * @param key
+     *            Must be a valid key (see isValidKey()).
+     * @param request
+     *            What the call is for. Compared with equals() to the request the key was first used
+     *            for.
+     * @param call
+     *            Only invoked by the first caller with the key.
+     * @return a future for the shared result, which fails with a KeyReusedException if the key was
+     *         first used for a different request.
+     */
+    public CompletableFuture<T> execute(String key, Object request, Supplier<? extends CompletionStage<T>> call) {
+        Assert.isTrue(isValidKey(key), "key must be a valid key");
+        Assert.notNull(request, "request");
+        Assert.notNull(call, "call");
+
+        Entry<T> existing;
+        Entry<T> mine = new Entry<>(request, clock.getAsLong());
+        synchronized (this) {
+            evictExpired(mine.createdAt);
+            existing = entries.putIfAbsent(key, mine);
+            if (null == existing) {
+                evictOverflow();
+            }
+        }
+
+        if (null != existing) {
+            if (!existing.request.equals(request)) {
+                return Futures.failed(new KeyReusedException(key));
+            }
+            replayed.increment();
+            return existing.result;
+        }
+
+        CompletionStage<T> stage;
+        try {
+            stage = call.get();
+        } catch (RuntimeException e) {
+            stage = Futures.failed(e);
+        }
+        stage.whenComplete((result, t) -> {
+            if (null == t) {
+                mine.result.complete(result);
+            } else {
+                // Forget the failure before completing, so that a retry made from a callback
+                // starts a new call.
+                synchronized (this) {
+                    entries.remove(key, mine);
+                }
+                mine.result.completeExceptionally(Futures.unwrap(t));
+            }
+        });
+        return mine.result;
+    }
+
+    /**
+     * @return How many keys are kept.
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return How many calls were answered with the result of an earlier (or in flight) call.
+     */
+    public long getReplayedCount() {
+        return replayed.sum();
+    }
+
+    /**
+     * @return How many keys were forgotten because there were more than maxKeys.
+     */
+    public long getEvictedCount() {
+        return evicted.sum();
+    }
+
+    // Must hold the lock.
+    private void evictExpired(long now) {
+        Iterator<Entry<T>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().createdAt < settings.getTtlMillis()) {
+                // The rest were first used later.
+                return;
+            }
+            it.remove();
+        }
+    }
+
+    // Must hold the lock.
+    private void evictOverflow() {
+        Iterator<Map.Entry<String, Entry<T>>> it = entries.entrySet().iterator();
+        while (entries.size() > settings.getMaxKeys() && it.hasNext()) {
+            it.next();
+            it.remove();
+            evicted.increment();
+        }
+    }
+
+    private static class Entry<T> {
+        final Object request;
+        final long createdAt;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Entry(Object request, long createdAt) {
+            this.request = request;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * The key was first used for a different request.
+     */
+    public static class KeyReusedException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public KeyReusedException(String key) {
+            super("Idempotency key was used for a different request: " + key);
+        }
+    }
+
+    public static class Settings {
+        private int maxKeys = 10000;
+        private long ttlMillis = 60 * 60 * 1000;
+
+        public int getMaxKeys() {
+            return maxKeys;
+        }
+
+        public void setMaxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+
+        public long getTtlMillis() {
+            return ttlMillis;
+        }
+
+        public void setTtlMillis(long ttlMillis) {
+            this.ttlMillis = ttlMillis;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package techtest.originalservice;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.springframework.util.Assert;
+
+import techtest.originalservice.api.Bet;
+import techtest.originalservice.api.BetsRequest;
+import techtest.originalservice.api.BetsResponse;
+import techtest.originalservice.api.BetsResponseReader;
+import techtest.originalservice.api.OriginalService;
+import techtest.originalservice.metrics.LatencyHistogram;
+import techtest.originalservice.metrics.ServiceMetrics;
+
+/**
+ * An implementation of OriginalService that records the latency of every call to the delegate in
+ * the "upstream.available" and "upstream.bets" histograms of a ServiceMetrics, whether the call
+ * succeeds or fails.
+ *
+ * Wrap the OriginalServiceClient with this (and put any caching around it), so that only real
+ * calls to the remote service are timed.
+ */
+public class MeteredOriginalService implements OriginalService {
+    private final OriginalService delegate;
+    private final LatencyHistogram availableLatency;
+    private final LatencyHistogram betsLatency;
+
+    public MeteredOriginalService(OriginalService delegate, ServiceMetrics metrics) {
+        super();
+
+        Assert.notNull(delegate, "delegate");
+        Assert.notNull(metrics, "metrics");
+
+        this.delegate = delegate;
+        this.availableLatency = metrics.histogram(ServiceMetrics.UPSTREAM_AVAILABLE);
+        this.betsLatency = metrics.histogram(ServiceMetrics.UPSTREAM_BETS);
+    }
+
+    @Override
+    public Bet[] available() {
+        long start = System.nanoTime();
+        try {
+            return delegate.available();
+        } finally {
+            availableLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public BetsResponse bets(BetsRequest bet) {
+        long start = System.nanoTime();
+        try {
+            return delegate.bets(bet);
+        } finally {
+            betsLatency.recordSince(start);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Bet[]> availableAsync() {
+        return timed(availableLatency, delegate::availableAsync);
+    }
+
+    @Override
+    public CompletableFuture<BetsResponse> betsAsync(BetsRequest bet) {
+        return timed(betsLatency, () -> delegate.betsAsync(bet));
+    }
+
+    @Override
+    public <T> CompletableFuture<T> betsAsync(BetsRequest bet, BetsResponseReader<T> reader) {
+        return timed(betsLatency, () -> delegate.betsAsync(bet, reader));
+    }
+
+    private static <T> CompletableFuture<T> timed(LatencyHistogram histogram, Supplier<CompletableFuture<T>> call) {
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            histogram.recordSince(start);
+            throw e;
+        }
+        future.whenComplete((result, t) -> histogram.recordSince(start));
+        return future;
+    }
+}
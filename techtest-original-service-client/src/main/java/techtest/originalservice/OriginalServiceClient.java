@@ -1,15 +1,27 @@
 package techtest.originalservice;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Supplier;
+
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.util.Assert;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.client.AsyncRequestCallback;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.DefaultResponseErrorHandler;
 import org.springframework.web.client.HttpMessageConverterExtractor;
+import org.springframework.web.client.RequestCallback;
 import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.DefaultUriTemplateHandler;
@@ -17,7 +29,9 @@ import org.springframework.web.util.DefaultUriTemplateHandler;
 import techtest.originalservice.api.Bet;
 import techtest.originalservice.api.BetsRequest;
 import techtest.originalservice.api.BetsResponse;
+import techtest.originalservice.api.BetsResponseReader;
 import techtest.originalservice.api.OriginalService;
+import techtest.originalservice.metrics.ErrorCounters;
 
 /**
  * An implementation of OriginalService which uses a Spring RestTemplate to connect to the remote
@@ -25,12 +39,34 @@ import techtest.originalservice.api.OriginalService;
  * 
  * This might be an unnecessary abstraction for the techtest, but such a client may be useful in
  * scenarios other than proxying the original service.
+ * 
+ * If an AsyncRestTemplate is provided then availableAsync() and betsAsync() use it, so that no
+ * thread is blocked while waiting for the remote service. Give the AsyncRestTemplate a
+ * non-blocking request factory (e.g. HttpComponentsAsyncClientHttpRequestFactory) for this to be
+ * true all the way down. Without an AsyncRestTemplate the async methods fall back to the blocking
+ * ones.
+ * 
+ * betsAsync(BetsRequest, BetsResponseReader) writes the request with RemoteBetsJson and hands the
+ * response body to the reader, so neither is bound to a DTO.
+ * 
+ * If ErrorCounters are set, every error response from the remote service is counted in them.
+ * 
+ * If a Hedger is set (see setHedging()), GET "/available" is hedged. POST "/bets" never is, as it
+ * isn't idempotent.
  */
 public class OriginalServiceClient implements OriginalService {
     private String baseUrl;
     private RestTemplate restTemplate;
+    private AsyncRestTemplate asyncRestTemplate;
+    private volatile ErrorCounters errorCounters;
+    private Hedger hedger;
+    private ScheduledExecutorService hedgeScheduler;
 
     public OriginalServiceClient(String baseUrl, RestTemplate restTemplate) {
+        this(baseUrl, restTemplate, null);
+    }
+
+    public OriginalServiceClient(String baseUrl, RestTemplate restTemplate, AsyncRestTemplate asyncRestTemplate) {
         super();
 
         Assert.hasText(baseUrl, "baseUrl must be a valid url");
@@ -40,6 +76,28 @@ public class OriginalServiceClient implements OriginalService {
         this.restTemplate = restTemplate;
         ((DefaultUriTemplateHandler) restTemplate.getUriTemplateHandler()).setBaseUrl(baseUrl);
         restTemplate.setErrorHandler(new MyResponseErrorHandler());
+
+        if (null != asyncRestTemplate) {
+            this.asyncRestTemplate = asyncRestTemplate;
+            ((DefaultUriTemplateHandler) asyncRestTemplate.getUriTemplateHandler()).setBaseUrl(baseUrl);
+            asyncRestTemplate.setErrorHandler(new MyResponseErrorHandler());
+        }
+    }
+
+    public void setErrorCounters(ErrorCounters errorCounters) {
+        this.errorCounters = errorCounters;
+    }
+
+    /**
+     * Hedges GET "/available" (never POST "/bets") with the Hedger, whose second attempts are made
+     * on the scheduler. Only takes effect with an AsyncRestTemplate, and available() then waits for
+     * the hedged availableAsync(). Call before the client is used.
+     */
+    public void setHedging(Hedger hedger, ScheduledExecutorService scheduler) {
+        Assert.isTrue((null == hedger) == (null == scheduler), "hedger and scheduler must both be given, or neither");
+
+        this.hedger = hedger;
+        this.hedgeScheduler = scheduler;
     }
 
     @Override
@@ -56,9 +114,68 @@ public class OriginalServiceClient implements OriginalService {
 
     @Override
     public Bet[] available() {
+        if (null != hedger && null != asyncRestTemplate) {
+            return Futures.join(availableAsync());
+        }
+
         techtest.originalservice.dto.Bet[] bets = this.restTemplate.getForObject("/available",
                 techtest.originalservice.dto.Bet[].class);
 
+        return toApi(bets);
+    }
+
+    @Override
+    public CompletableFuture<BetsResponse> betsAsync(BetsRequest betsRequest) {
+        if (null == asyncRestTemplate) {
+            return OriginalService.super.betsAsync(betsRequest);
+        }
+
+        // Map dto to api
+        techtest.originalservice.dto.BetsRequest reqDto = new techtest.originalservice.dto.BetsRequest(betsRequest);
+
+        // Call the remote service, mapping the response when it arrives
+        return toCompletableFuture(() -> asyncRestTemplate.postForEntity("/bets", new HttpEntity<>(reqDto),
+                techtest.originalservice.dto.BetsResponse.class))
+                        .thenApply(respEntity -> respEntity.getBody().toApi());
+    }
+
+    @Override
+    public CompletableFuture<Bet[]> availableAsync() {
+        if (null == asyncRestTemplate) {
+            return OriginalService.super.availableAsync();
+        }
+
+        Supplier<CompletableFuture<Bet[]>> attempt = () -> toCompletableFuture(
+                () -> asyncRestTemplate.getForEntity("/available", techtest.originalservice.dto.Bet[].class))
+                        .thenApply(respEntity -> toApi(respEntity.getBody()));
+        return null == hedger ? attempt.get() : hedger.call(attempt, hedgeScheduler);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> betsAsync(BetsRequest betsRequest, BetsResponseReader<T> reader) {
+        ResponseExtractor<T> extractor = response -> reader.read(response.getBody());
+
+        if (null == asyncRestTemplate) {
+            RequestCallback callback = request -> writeBetsRequest(request.getHeaders(), request.getBody(), betsRequest);
+            try {
+                return CompletableFuture.completedFuture(restTemplate.execute("/bets", HttpMethod.POST, callback, extractor));
+            } catch (RuntimeException e) {
+                return Futures.failed(e);
+            }
+        }
+
+        AsyncRequestCallback callback = request -> writeBetsRequest(request.getHeaders(), request.getBody(), betsRequest);
+        return toCompletableFuture(() -> asyncRestTemplate.execute("/bets", HttpMethod.POST, callback, extractor));
+    }
+
+    private static void writeBetsRequest(HttpHeaders headers, OutputStream body, BetsRequest betsRequest)
+            throws IOException {
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        headers.setAccept(Arrays.asList(MediaType.APPLICATION_JSON));
+        RemoteBetsJson.writeBetsRequest(betsRequest, body);
+    }
+
+    private static Bet[] toApi(techtest.originalservice.dto.Bet[] bets) {
         // Get stream of response to be used to convert to correct return type
         return Arrays.stream(bets)
                 // Map dto bets to api bets
@@ -67,6 +184,18 @@ public class OriginalServiceClient implements OriginalService {
                 .toArray(Bet[]::new);
     }
 
+    /**
+     * AsyncRestTemplate can fail before it returns a future (e.g. if the connection can't be
+     * made), so capture that as a failed future too.
+     */
+    private static <T> CompletableFuture<T> toCompletableFuture(Supplier<ListenableFuture<T>> call) {
+        try {
+            return Futures.fromListenable(call.get());
+        } catch (RuntimeException e) {
+            return Futures.failed(e);
+        }
+    }
+
     /**
      * Responsible for mapping any errors that come out of RestTemplate.
      * 
@@ -90,7 +219,12 @@ public class OriginalServiceClient implements OriginalService {
 
         @Override
         public void handleError(ClientHttpResponse response) throws IOException {
+            ErrorCounters counters = errorCounters;
+
             if (response.getStatusCode().is5xxServerError()) {
+                if (null != counters) {
+                    counters.incrementInternal();
+                }
                 // The HTTP 500 errors from the server are NOT JSON. So any attempt to process as
                 // such will fail. Therefore we abort early here.
                 throw new InternalErrorException(
@@ -108,6 +242,10 @@ public class OriginalServiceClient implements OriginalService {
                 error = OriginalService.Error.UNKNOWN;
             }
 
+            if (null != counters) {
+                counters.increment(error);
+            }
+
             throw new BusinessLogicException(error);
         }
     }
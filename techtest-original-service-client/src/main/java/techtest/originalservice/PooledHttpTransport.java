@@ -0,0 +1,424 @@
+package techtest.originalservice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.NHttpClientConnection;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.Assert;
+
+/**
+ * A pooled, keep-alive HTTP transport for RestTemplate and AsyncRestTemplate, built on Apache
+ * HttpComponents.
+ *
+ * Without this, RestTemplate falls back to SimpleClientHttpRequestFactory (a new HttpURLConnection
+ * per request, no pool limits and no timeouts). This transport has:
+ *
+ * <ul>
+ * <li>a blocking and a non-blocking connection pool, each with a max total and a max per route
+ * (i.e. per remote host).</li>
+ * <li>keep-alive, capped at {@link Settings#getKeepAliveMillis()} if the server doesn't say.</li>
+ * <li>a background thread that evicts expired connections and connections idle for longer than
+ * {@link Settings#getIdleEvictMillis()}.</li>
+ * <li>connect, read and pool wait timeouts.</li>
+ * </ul>
+ *
+ * Create one per application and share it; each RestTemplate made from it shares the same pool.
+ * Pool utilization and the time spent waiting for a pooled connection are available from
+ * {@link #getStats()} and {@link #getAsyncStats()}.
+ */
+public class PooledHttpTransport implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(PooledHttpTransport.class);
+
+    private final Settings settings;
+
+    private final TimedPoolingConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    private final TimedPoolingNConnectionManager asyncConnectionManager;
+    private final CloseableHttpAsyncClient asyncHttpClient;
+
+    private final ScheduledExecutorService evictor;
+
+    public PooledHttpTransport(Settings settings) {
+        super();
+
+        Assert.notNull(settings, "settings");
+        Assert.isTrue(settings.getMaxTotal() > 0, "maxTotal must be greater than zero");
+        Assert.isTrue(settings.getMaxPerRoute() > 0, "maxPerRoute must be greater than zero");
+
+        this.settings = settings;
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(settings.getConnectTimeoutMillis())
+                .setSocketTimeout(settings.getReadTimeoutMillis())
+                .setConnectionRequestTimeout(settings.getPoolWaitTimeoutMillis())
+                .build();
+
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return keepAlive < 0 ? settings.getKeepAliveMillis() : Math.min(keepAlive, settings.getKeepAliveMillis());
+        };
+
+        connectionManager = new TimedPoolingConnectionManager();
+        connectionManager.setMaxTotal(settings.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(settings.getMaxPerRoute());
+        connectionManager.setValidateAfterInactivity(settings.getValidateAfterInactivityMillis());
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .build();
+
+        try {
+            IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                    .setConnectTimeout(settings.getConnectTimeoutMillis())
+                    .setSoTimeout(settings.getReadTimeoutMillis())
+                    .build();
+            asyncConnectionManager = new TimedPoolingNConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("Could not create the I/O reactor for the async HTTP client", e);
+        }
+        asyncConnectionManager.setMaxTotal(settings.getMaxTotal());
+        asyncConnectionManager.setDefaultMaxPerRoute(settings.getMaxPerRoute());
+
+        asyncHttpClient = HttpAsyncClients.custom()
+                .setConnectionManager(asyncConnectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .build();
+        asyncHttpClient.start();
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "http-idle-connection-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = settings.getEvictionIntervalMillis();
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return A request factory for RestTemplate that uses the blocking pool.
+     */
+    public ClientHttpRequestFactory requestFactory() {
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    /**
+     * @return A request factory for AsyncRestTemplate that uses the non-blocking pool.
+     */
+    public AsyncClientHttpRequestFactory asyncRequestFactory() {
+        return new HttpComponentsAsyncClientHttpRequestFactory(asyncHttpClient);
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     * @return Utilization of, and wait times for, the blocking pool.
+     */
+    public Stats getStats() {
+        return new Stats(connectionManager.getTotalStats(), connectionManager.waits);
+    }
+
+    /**
+     * @return Utilization of, and wait times for, the non-blocking pool.
+     */
+    public Stats getAsyncStats() {
+        return new Stats(asyncConnectionManager.getTotalStats(), asyncConnectionManager.waits);
+    }
+
+    void evictIdleConnections() {
+        try {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(settings.getIdleEvictMillis(), TimeUnit.MILLISECONDS);
+            asyncConnectionManager.closeExpiredConnections();
+            asyncConnectionManager.closeIdleConnections(settings.getIdleEvictMillis(), TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            LOG.warn("Could not evict idle HTTP connections", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        evictor.shutdownNow();
+        try {
+            httpClient.close();
+        } finally {
+            asyncHttpClient.close();
+        }
+    }
+
+    /**
+     * Transport settings. The defaults suit a single remote service.
+     */
+    public static class Settings {
+        private int maxTotal = 200;
+        private int maxPerRoute = 100;
+        private int connectTimeoutMillis = 2000;
+        private int readTimeoutMillis = 5000;
+        private int poolWaitTimeoutMillis = 1000;
+        private long keepAliveMillis = 30000;
+        private long idleEvictMillis = 30000;
+        private long evictionIntervalMillis = 5000;
+        private int validateAfterInactivityMillis = 2000;
+
+        public int getMaxTotal() {
+            return maxTotal;
+        }
+
+        public void setMaxTotal(int maxTotal) {
+            this.maxTotal = maxTotal;
+        }
+
+        public int getMaxPerRoute() {
+            return maxPerRoute;
+        }
+
+        public void setMaxPerRoute(int maxPerRoute) {
+            this.maxPerRoute = maxPerRoute;
+        }
+
+        public int getConnectTimeoutMillis() {
+            return connectTimeoutMillis;
+        }
+
+        public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+        }
+
+        public int getReadTimeoutMillis() {
+            return readTimeoutMillis;
+        }
+
+        public void setReadTimeoutMillis(int readTimeoutMillis) {
+            this.readTimeoutMillis = readTimeoutMillis;
+        }
+
+        public int getPoolWaitTimeoutMillis() {
+            return poolWaitTimeoutMillis;
+        }
+
+        public void setPoolWaitTimeoutMillis(int poolWaitTimeoutMillis) {
+            this.poolWaitTimeoutMillis = poolWaitTimeoutMillis;
+        }
+
+        public long getKeepAliveMillis() {
+            return keepAliveMillis;
+        }
+
+        public void setKeepAliveMillis(long keepAliveMillis) {
+            this.keepAliveMillis = keepAliveMillis;
+        }
+
+        public long getIdleEvictMillis() {
+            return idleEvictMillis;
+        }
+
+        public void setIdleEvictMillis(long idleEvictMillis) {
+            this.idleEvictMillis = idleEvictMillis;
+        }
+
+        public long getEvictionIntervalMillis() {
+            return evictionIntervalMillis;
+        }
+
+        public void setEvictionIntervalMillis(long evictionIntervalMillis) {
+            this.evictionIntervalMillis = evictionIntervalMillis;
+        }
+
+        public int getValidateAfterInactivityMillis() {
+            return validateAfterInactivityMillis;
+        }
+
+        public void setValidateAfterInactivityMillis(int validateAfterInactivityMillis) {
+            this.validateAfterInactivityMillis = validateAfterInactivityMillis;
+        }
+    }
+
+    /**
+     * Point-in-time pool utilization, plus the accumulated time spent waiting to lease a
+     * connection from the pool.
+     */
+    public static class Stats {
+        private final int leased;
+        private final int available;
+        private final int pending;
+        private final int max;
+        private final long waitCount;
+        private final long waitTotalNanos;
+        private final long waitMaxNanos;
+
+        Stats(PoolStats poolStats, WaitTimes waits) {
+            this.leased = poolStats.getLeased();
+            this.available = poolStats.getAvailable();
+            this.pending = poolStats.getPending();
+            this.max = poolStats.getMax();
+            this.waitCount = waits.count.get();
+            this.waitTotalNanos = waits.totalNanos.get();
+            this.waitMaxNanos = waits.maxNanos.get();
+        }
+
+        /**
+         * @return Connections currently in use.
+         */
+        public int getLeased() {
+            return leased;
+        }
+
+        /**
+         * @return Idle connections kept alive in the pool.
+         */
+        public int getAvailable() {
+            return available;
+        }
+
+        /**
+         * @return Requests currently waiting for a connection.
+         */
+        public int getPending() {
+            return pending;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        /**
+         * @return The number of connections leased from the pool so far.
+         */
+        public long getWaitCount() {
+            return waitCount;
+        }
+
+        public double getWaitMeanMillis() {
+            return waitCount == 0 ? 0 : (double) waitTotalNanos / waitCount / 1000000;
+        }
+
+        public double getWaitMaxMillis() {
+            return (double) waitMaxNanos / 1000000;
+        }
+    }
+
+    /**
+     * Accumulates the time taken to lease connections.
+     */
+    static class WaitTimes {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long startNanos) {
+            long nanos = System.nanoTime() - startNanos;
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+                // retry
+            }
+        }
+    }
+
+    /**
+     * Blocking connection pool that times each lease.
+     */
+    static class TimedPoolingConnectionManager extends PoolingHttpClientConnectionManager {
+        final WaitTimes waits = new WaitTimes();
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            ConnectionRequest request = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit tunit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        return request.get(timeout, tunit);
+                    } finally {
+                        waits.record(start);
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+    }
+
+    /**
+     * Non-blocking connection pool that times each lease.
+     */
+    static class TimedPoolingNConnectionManager extends PoolingNHttpClientConnectionManager {
+        final WaitTimes waits = new WaitTimes();
+
+        TimedPoolingNConnectionManager(DefaultConnectingIOReactor ioReactor) {
+            super(ioReactor);
+        }
+
+        @Override
+        public Future<NHttpClientConnection> requestConnection(HttpRoute route, Object state, long connectTimeout,
+                long leaseTimeout, TimeUnit tunit, FutureCallback<NHttpClientConnection> callback) {
+            long start = System.nanoTime();
+            return super.requestConnection(route, state, connectTimeout, leaseTimeout, tunit,
+                    new FutureCallback<NHttpClientConnection>() {
+                        @Override
+                        public void completed(NHttpClientConnection result) {
+                            waits.record(start);
+                            if (null != callback) {
+                                callback.completed(result);
+                            }
+                        }
+
+                        @Override
+                        public void failed(Exception ex) {
+                            waits.record(start);
+                            if (null != callback) {
+                                callback.failed(ex);
+                            }
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            if (null != callback) {
+                                callback.cancelled();
+                            }
+                        }
+                    });
+        }
+    }
+}
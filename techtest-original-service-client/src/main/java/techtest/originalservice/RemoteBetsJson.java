@@ -0,0 +1,42 @@
+package techtest.originalservice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import techtest.originalservice.api.BetsRequest;
+
+/**
+ * Writes a bet in the remote service's JSON format straight from a BetsRequest, with a streaming
+ * JsonGenerator rather than by binding a dto.BetsRequest.
+ * 
+ * The output is the same as the dto.BetsRequest's, e.g.
+ * <code>{"bet_id":1,"odds":{"numerator":10,"denominator":1},"stake":10}</code>.
+ */
+public final class RemoteBetsJson {
+    // The caller owns the stream.
+    static final JsonFactory JSON_FACTORY = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    private RemoteBetsJson() {
+    }
+
+    public static void writeBetsRequest(BetsRequest bet, OutputStream out) throws IOException {
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeNumberField("bet_id", bet.getBetId());
+            gen.writeObjectFieldStart("odds");
+            gen.writeNumberField("numerator", bet.getOdds().getNumerator());
+            gen.writeNumberField("denominator", bet.getOdds().getDenominator());
+            gen.writeEndObject();
+            if (null == bet.getStake()) {
+                gen.writeNullField("stake");
+            } else {
+                gen.writeNumberField("stake", bet.getStake());
+            }
+            gen.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package techtest.originalservice;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.springframework.util.Assert;
+
+import techtest.originalservice.api.Bet;
+import techtest.originalservice.api.BetsRequest;
+import techtest.originalservice.api.BetsResponse;
+import techtest.originalservice.api.BetsResponseReader;
+import techtest.originalservice.api.OriginalService;
+
+/**
+ * An implementation of OriginalService that guards every call to the delegate with a Bulkhead and
+ * a CircuitBreaker. A call that either of them rejects fails straight away with a
+ * ServiceUnavailableException, without calling the delegate (the async methods return a failed
+ * future rather than throwing).
+ *
+ * A BusinessLogicException is an answer from the remote service, so only counts against the
+ * breaker if it was slow. Any other exception is a failure.
+ *
+ * Wrap the OriginalServiceClient with this (or the MeteredOriginalService around it), so that
+ * answers served from a cache don't count as calls.
+ */
+public class ResilientOriginalService implements OriginalService {
+    private final OriginalService delegate;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+
+    public ResilientOriginalService(OriginalService delegate, CircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+        super();
+
+        Assert.notNull(delegate, "delegate");
+        Assert.notNull(circuitBreaker, "circuitBreaker");
+        Assert.notNull(bulkhead, "bulkhead");
+
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+    }
+
+    @Override
+    public Bet[] available() {
+        return call(delegate::available);
+    }
+
+    @Override
+    public BetsResponse bets(BetsRequest bet) {
+        return call(() -> delegate.bets(bet));
+    }
+
+    @Override
+    public CompletableFuture<Bet[]> availableAsync() {
+        return callAsync(delegate::availableAsync);
+    }
+
+    @Override
+    public CompletableFuture<BetsResponse> betsAsync(BetsRequest bet) {
+        return callAsync(() -> delegate.betsAsync(bet));
+    }
+
+    @Override
+    public <T> CompletableFuture<T> betsAsync(BetsRequest bet, BetsResponseReader<T> reader) {
+        return callAsync(() -> delegate.betsAsync(bet, reader));
+    }
+
+    private <T> T call(Supplier<T> call) {
+        acquire();
+        long start = System.nanoTime();
+        RuntimeException failure = null;
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            release(start, failure);
+        }
+    }
+
+    private <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> call) {
+        try {
+            acquire();
+        } catch (ServiceUnavailableException e) {
+            return Futures.failed(e);
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            release(start, e);
+            throw e;
+        }
+        future.whenComplete((result, t) -> release(start, t));
+        return future;
+    }
+
+    private void acquire() {
+        if (!bulkhead.tryAcquire()) {
+            throw new ServiceUnavailableException("Too many calls to the remote service in progress");
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            bulkhead.release();
+            throw new ServiceUnavailableException("The remote service circuit breaker is open");
+        }
+    }
+
+    private void release(long start, Throwable t) {
+        bulkhead.release();
+        long duration = System.nanoTime() - start;
+        if (null == t || Futures.unwrap(t) instanceof BusinessLogicException) {
+            circuitBreaker.onSuccess(duration);
+        } else {
+            circuitBreaker.onFailure(duration);
+        }
+    }
+}
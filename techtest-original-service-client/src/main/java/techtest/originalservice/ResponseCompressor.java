@@ -0,0 +1,201 @@
+package techtest.originalservice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.util.Assert;
+
+import techtest.originalservice.metrics.LatencyHistogram;
+import techtest.originalservice.metrics.ServiceMetrics;
+
+/**
+ * Chooses the Content-Encoding of a response from the client's Accept-Encoding, and compresses
+ * response bodies, recording how well and at what cost.
+ *
+ * gzip is always offered when compression is enabled, and deflate (the zlib format, as HTTP's
+ * "deflate" is) only if it is enabled too. Bodies smaller than minSize are sent as they are, as
+ * compressing them saves less than it costs.
+ *
+ * For each encoding it records (prefixed with ServiceMetrics.COMPRESSION and the encoding, e.g.
+ * "compression.gzip"):
+ *
+ * <ul>
+ * <li>a histogram of the CPU time of each compression (the time taken, if the JVM can't measure
+ * the CPU time of a thread).</li>
+ * <li>".bytesIn" and ".bytesOut" counters, of the bodies before and after.</li>
+ * <li>a ".ratio" gauge, bytesOut / bytesIn, or 0 before anything is compressed.</li>
+ * </ul>
+ *
+ * Callers that send the same body to many clients (e.g. the available bets) should compress it
+ * once and keep the bytes.
+ */
+public class ResponseCompressor {
+    public static final int DEFAULT_MIN_SIZE = 1024;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The Content-Encodings of a compressed response.
+     */
+    public enum Encoding {
+        GZIP("gzip"), DEFLATE("deflate");
+
+        private final String name;
+
+        Encoding(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return The name of the encoding, as in the Content-Encoding header.
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final boolean enabled;
+    private final boolean deflate;
+    private final int minSize;
+    private final boolean cpuTime;
+    private final Map<Encoding, Metrics> metrics = new EnumMap<>(Encoding.class);
+
+    /**
+     * @param enabled
+     *            Whether to compress at all.
+     * @param deflate
+     *            Whether to offer deflate as well as gzip.
+     * @param minSize
+     *            The smallest body, in bytes, that is compressed.
+     */
+    public ResponseCompressor(boolean enabled, boolean deflate, int minSize, ServiceMetrics serviceMetrics) {
+        super();
+
+        Assert.isTrue(minSize >= 0, "minSize cannot be negative");
+        Assert.notNull(serviceMetrics, "serviceMetrics");
+
+        this.enabled = enabled;
+        this.deflate = deflate;
+        this.minSize = minSize;
+        this.cpuTime = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+        for (Encoding encoding : Encoding.values()) {
+            metrics.put(encoding, new Metrics(serviceMetrics, ServiceMetrics.COMPRESSION + "." + encoding.getName()));
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param acceptEncoding
+     *            The Accept-Encoding request header, or null.
+     * @param length
+     *            The length of the body.
+     * @return The encoding to send the body in, or null to send it as it is. Of the encodings the
+     *         client accepts, the one with the highest q value, with gzip before deflate if they
+     *         are the same.
+     */
+    public Encoding negotiate(String acceptEncoding, int length) {
+        if (!enabled || length < minSize) {
+            return null;
+        }
+        return negotiate(acceptEncoding, deflate);
+    }
+
+    static Encoding negotiate(String acceptEncoding, boolean deflate) {
+        if (null == acceptEncoding) {
+            return null;
+        }
+        double gzipQ = -1;
+        double deflateQ = -1;
+        double anyQ = -1;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            double q = q(parts);
+            if (Encoding.GZIP.getName().equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                gzipQ = q;
+            } else if (Encoding.DEFLATE.getName().equalsIgnoreCase(name)) {
+                deflateQ = q;
+            } else if ("*".equals(name)) {
+                anyQ = q;
+            }
+        }
+        // "*" is any encoding not listed.
+        gzipQ = gzipQ < 0 ? anyQ : gzipQ;
+        deflateQ = !deflate ? 0 : deflateQ < 0 ? anyQ : deflateQ;
+        if (gzipQ > 0 && gzipQ >= deflateQ) {
+            return Encoding.GZIP;
+        }
+        return deflateQ > 0 ? Encoding.DEFLATE : null;
+    }
+
+    /**
+     * @return The q value of an Accept-Encoding coding, 1 if it hasn't one, or 0 if it isn't a
+     *         number.
+     */
+    private static double q(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * @return The body in the encoding.
+     */
+    public byte[] compress(byte[] body, Encoding encoding) {
+        Assert.notNull(encoding, "encoding");
+
+        long start = cpuTime ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (OutputStream compressing = Encoding.GZIP == encoding ? new GZIPOutputStream(out)
+                : new DeflaterOutputStream(out)) {
+            compressing.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] compressed = out.toByteArray();
+        long end = cpuTime ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+
+        Metrics m = metrics.get(encoding);
+        m.time.record(end - start, TimeUnit.NANOSECONDS);
+        m.bytesIn.add(body.length);
+        m.bytesOut.add(compressed.length);
+        return compressed;
+    }
+
+    private static class Metrics {
+        final LatencyHistogram time;
+        final LongAdder bytesIn;
+        final LongAdder bytesOut;
+
+        Metrics(ServiceMetrics serviceMetrics, String name) {
+            time = serviceMetrics.histogram(name);
+            bytesIn = serviceMetrics.counter(name + ".bytesIn");
+            bytesOut = serviceMetrics.counter(name + ".bytesOut");
+            serviceMetrics.gauge(name + ".ratio", () -> {
+                long in = bytesIn.sum();
+                return 0 == in ? 0.0 : (double) bytesOut.sum() / in;
+            });
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package techtest.originalservice;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+/**
+ * A token bucket that limits extra attempts (retries and hedged requests) to a fraction of the
+ * requests made.
+ *
+ * Each request deposits ratio of a token, up to maxTokens, and each extra attempt withdraws a
+ * whole token. So however the remote service behaves, extra attempts add at most ratio to the load
+ * in the long run, plus a burst of maxTokens. In an outage the bucket empties and stays empty, so
+ * retries can't amplify the load on a service that is already failing.
+ *
+ * The bucket starts full. Tokens are kept in thousandths, in an AtomicLong.
+ */
+public class RetryBudget {
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long max;
+    private final AtomicLong balance;
+
+    /**
+     * @param ratio
+     *            The fraction of a token each request deposits, e.g. 0.1 for at most one extra
+     *            attempt per ten requests.
+     * @param maxTokens
+     *            The most tokens the bucket holds.
+     */
+    public RetryBudget(double ratio, int maxTokens) {
+        super();
+
+        Assert.isTrue(ratio >= 0 && ratio <= 1, "ratio must be between 0 and 1");
+        Assert.isTrue(maxTokens >= 1, "maxTokens must be at least 1");
+
+        this.deposit = Math.round(ratio * SCALE);
+        this.max = maxTokens * SCALE;
+        this.balance = new AtomicLong(max);
+    }
+
+    /**
+     * Deposits the share of a request. Call once per request, not per attempt.
+     */
+    public void onRequest() {
+        if (0 == deposit) {
+            return;
+        }
+        long current;
+        do {
+            current = balance.get();
+            if (current >= max) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(max, current + deposit)));
+    }
+
+    /**
+     * @return true if there was a token for an extra attempt, which has been taken.
+     */
+    public boolean tryWithdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - SCALE));
+        return true;
+    }
+
+    /**
+     * @return The tokens in the bucket.
+     */
+    public double getTokens() {
+        return (double) balance.get() / SCALE;
+    }
+}
@@ -0,0 +1,92 @@
+package techtest.originalservice;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import org.springframework.util.Assert;
+
+/**
+ * Coalesces concurrent calls for the same result into a single call.
+ *
+ * The first caller (the "leader") starts the call. Anyone who asks while that call is in flight
+ * shares it, and receives its result or its error. Once the call completes, the next caller starts
+ * a new one. Nothing is cached after completion - this is purely about not sending N identical
+ * requests upstream at the same moment.
+ *
+ * Only use this for idempotent, read-only calls.
+ *
+ * @param <T>
+ *            The type of the result.
+ */
+public class SingleFlight<T> {
+    private final AtomicReference<CompletableFuture<T>> inFlight = new AtomicReference<>();
+
+    /**
+     * Starts the call returned by the supplier, or joins the one already in flight. Never blocks.
+     *
+     * @param call
+     *            Only invoked by the leader.
+     * @return a future for the shared result.
+     */
+    public CompletableFuture<T> execute(Supplier<? extends CompletionStage<T>> call) {
+        Assert.notNull(call, "call");
+
+        while (true) {
+            CompletableFuture<T> existing = inFlight.get();
+            if (null != existing) {
+                return existing;
+            }
+
+            CompletableFuture<T> mine = new CompletableFuture<>();
+            if (inFlight.compareAndSet(null, mine)) {
+                CompletionStage<T> stage;
+                try {
+                    stage = call.get();
+                } catch (RuntimeException | Error e) {
+                    // Errors too, or mine would never complete or leave inFlight.
+                    stage = Futures.failed(e);
+                }
+                stage.whenComplete((result, t) -> {
+                    // Clear before completing, so that callbacks that call again start a new flight
+                    // rather than getting this one.
+                    inFlight.compareAndSet(mine, null);
+                    if (null == t) {
+                        mine.complete(result);
+                    } else {
+                        mine.completeExceptionally(Futures.unwrap(t));
+                    }
+                });
+                return mine;
+            }
+        }
+    }
+
+    /**
+     * Blocking version of execute(). The leader runs the call on its own thread, and the others
+     * wait for it. Errors are rethrown as the original exception (see Futures.join()).
+     *
+     * @param call
+     *            Only invoked by the leader.
+     * @return the shared result.
+     */
+    public T call(Supplier<T> call) {
+        Assert.notNull(call, "call");
+
+        return Futures.join(execute(() -> {
+            try {
+                return CompletableFuture.completedFuture(call.get());
+            } catch (RuntimeException | Error e) {
+                return Futures.failed(e);
+            }
+        }));
+    }
+
+    /**
+     * @return true if a call is currently in flight.
+     */
+    public boolean isInFlight() {
+        return null != inFlight.get();
+    }
+}
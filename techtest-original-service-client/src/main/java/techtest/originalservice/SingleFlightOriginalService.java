@@ -0,0 +1,117 @@
+package techtest.originalservice;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.util.Assert;
+
+import techtest.originalservice.api.Bet;
+import techtest.originalservice.api.BetCatalog;
+import techtest.originalservice.api.BetsRequest;
+import techtest.originalservice.api.BetsResponse;
+import techtest.originalservice.api.BetsResponseReader;
+import techtest.originalservice.api.CompactBetCatalog;
+import techtest.originalservice.api.OriginalService;
+
+/**
+ * An implementation of OriginalService that coalesces concurrent calls for the available bets (see
+ * SingleFlight), so that a burst of incoming requests sends one GET upstream rather than one each.
+ *
+ * Unlike CachingOriginalService, nothing is kept once the call completes, so the results are never
+ * older than the call that was in flight when they were asked for. CachingOriginalService already
+ * coalesces its own refreshes, so there is no need to put this under it.
+ *
+ * available(), catalog() and compactCatalog() share the same call. Each catalog is built from the
+ * shared bets the first time it is asked for, and then shared by everyone else who joined that call.
+ *
+ * bets() is a POST and is never coalesced.
+ */
+public class SingleFlightOriginalService implements OriginalService {
+    private final OriginalService delegate;
+
+    private final SingleFlight<Fetched> availableFlight = new SingleFlight<>();
+
+    public SingleFlightOriginalService(OriginalService delegate) {
+        super();
+
+        Assert.notNull(delegate, "delegate");
+
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Bet[] available() {
+        return Futures.join(availableAsync());
+    }
+
+    @Override
+    public BetCatalog<Bet> catalog() {
+        return Futures.join(catalogAsync());
+    }
+
+    @Override
+    public CompactBetCatalog compactCatalog() {
+        return Futures.join(compactCatalogAsync());
+    }
+
+    @Override
+    public BetsResponse bets(BetsRequest bet) {
+        return delegate.bets(bet);
+    }
+
+    @Override
+    public CompletableFuture<Bet[]> availableAsync() {
+        return fetch().thenApply(f -> f.bets);
+    }
+
+    @Override
+    public CompletableFuture<BetCatalog<Bet>> catalogAsync() {
+        return fetch().thenApply(Fetched::catalog);
+    }
+
+    @Override
+    public CompletableFuture<CompactBetCatalog> compactCatalogAsync() {
+        return fetch().thenApply(Fetched::compact);
+    }
+
+    @Override
+    public CompletableFuture<BetsResponse> betsAsync(BetsRequest bet) {
+        return delegate.betsAsync(bet);
+    }
+
+    @Override
+    public <T> CompletableFuture<T> betsAsync(BetsRequest bet, BetsResponseReader<T> reader) {
+        return delegate.betsAsync(bet, reader);
+    }
+
+    private CompletableFuture<Fetched> fetch() {
+        return availableFlight.execute(() -> delegate.availableAsync().thenApply(Fetched::new));
+    }
+
+    /**
+     * The bets from one call, and the catalogs of them, which are built when first asked for.
+     */
+    static class Fetched {
+        final Bet[] bets;
+        // Guarded by this.
+        private BetCatalog<Bet> catalog;
+        private CompactBetCatalog compact;
+
+        Fetched(Bet[] bets) {
+            this.bets = bets;
+        }
+
+        synchronized BetCatalog<Bet> catalog() {
+            if (null == catalog) {
+                catalog = BetCatalog.of(bets);
+            }
+            return catalog;
+        }
+
+        synchronized CompactBetCatalog compact() {
+            if (null == compact) {
+                compact = CompactBetCatalog.of(bets);
+            }
+            return compact;
+        }
+    }
+}
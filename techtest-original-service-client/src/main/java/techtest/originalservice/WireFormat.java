@@ -0,0 +1,156 @@
+package techtest.originalservice;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * The formats our responses (and requests) can be in: JSON, and the binary Jackson Smile and CBOR
+ * formats, which have the same data model as JSON, so the same DTOs and field names, but are
+ * smaller and cheaper to read and write. In particular, numbers are binary rather than text, so
+ * odds and stakes aren't formatted and parsed as strings.
+ *
+ * A client asks for a binary format in the Accept header, and sends one with the Content-Type
+ * header. JSON is the default, and what a client gets unless it asks for Smile or CBOR ahead of
+ * JSON.
+ *
+ * The JsonFactory of each format is thread-safe and shared by the streaming readers and writers.
+ * newObjectMapper() makes a mapper of the format, for data binding.
+ *
+ * CBOR numbers with a fraction are decimal fractions (see CborDecimals), so they are as exact as
+ * the BigDecimals they were written from.
+ */
+public enum WireFormat {
+    JSON(MediaType.APPLICATION_JSON, new JsonFactory()),
+    SMILE(new MediaType("application", "x-jackson-smile"), new SmileFactory()),
+    CBOR(new MediaType("application", "cbor"), new CBORFactory());
+
+    public static final String SMILE_VALUE = "application/x-jackson-smile";
+    public static final String CBOR_VALUE = "application/cbor";
+
+    private final MediaType mediaType;
+    private final JsonFactory factory;
+
+    WireFormat(MediaType mediaType, JsonFactory factory) {
+        this.mediaType = mediaType;
+        this.factory = factory;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return The Content-Type of a response, which for JSON has the UTF-8 charset.
+     */
+    public String getContentType() {
+        return JSON == this ? MediaType.APPLICATION_JSON_UTF8_VALUE : mediaType.toString();
+    }
+
+    public JsonFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * @return A new ObjectMapper of the format, with its own copy of the factory (as a mapper sets
+     *         itself as its factory's codec). A CBOR one reads decimal fractions into BigDecimals.
+     */
+    public ObjectMapper newObjectMapper() {
+        ObjectMapper mapper = new ObjectMapper(factory.copy());
+        if (CBOR == this) {
+            mapper.registerModule(CborDecimals.module());
+        }
+        return mapper;
+    }
+
+    /**
+     * @param accept
+     *            The Accept request header, or null.
+     * @return The format the client prefers, JSON if it doesn't ask for Smile or CBOR ahead of it.
+     */
+    public static WireFormat negotiate(String accept) {
+        // The common case, without parsing the header.
+        if (null == accept || (accept.indexOf("smile") < 0 && accept.indexOf("cbor") < 0)) {
+            return JSON;
+        }
+        List<MediaType> types;
+        try {
+            types = MediaType.parseMediaTypes(accept);
+        } catch (IllegalArgumentException e) {
+            // InvalidMediaTypeException, or a q value that isn't a number.
+            return JSON;
+        }
+        MediaType.sortBySpecificityAndQuality(types);
+        for (MediaType type : types) {
+            if (0 == type.getQualityValue()) {
+                continue;
+            }
+            // JSON first, so that a wildcard gets JSON.
+            for (WireFormat format : values()) {
+                if (type.includes(format.mediaType)) {
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    /**
+     * @param contentType
+     *            The Content-Type request header, or null.
+     * @return The format of a request body, JSON unless it is Smile or CBOR.
+     */
+    public static WireFormat ofContentType(String contentType) {
+        if (null == contentType) {
+            return JSON;
+        }
+        try {
+            MediaType type = MediaType.parseMediaType(contentType);
+            for (WireFormat format : values()) {
+                if (format.mediaType.isCompatibleWith(type)) {
+                    return format;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // Invalid, so JSON, as if there were no Content-Type.
+        }
+        return JSON;
+    }
+
+    /**
+     * Rewrites JSON in this format, token by token, without binding it to objects. Decimal numbers
+     * are written as BigDecimals, as the DTOs' are (see CborDecimals).
+     *
+     * @return The same bytes if this is JSON.
+     */
+    public byte[] transcode(byte[] json) {
+        if (JSON == this) {
+            return json;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = JSON.factory.createParser(json); JsonGenerator gen = factory.createGenerator(out)) {
+            JsonToken token;
+            while (null != (token = parser.nextToken())) {
+                if (JsonToken.VALUE_NUMBER_FLOAT == token) {
+                    CborDecimals.write(gen, parser.getDecimalValue());
+                } else {
+                    gen.copyCurrentEvent(parser);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
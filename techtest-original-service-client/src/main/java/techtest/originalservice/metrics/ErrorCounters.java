@@ -0,0 +1,63 @@
+package techtest.originalservice.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import techtest.originalservice.api.OriginalService;
+
+/**
+ * Counts errors by kind: one counter per OriginalService.Error, plus "internal" for anything else
+ * (e.g. a 500 from the remote service, or an unexpected exception).
+ *
+ * The counters are LongAdders, so incrementing them from many threads doesn't contend.
+ */
+public class ErrorCounters {
+    private static final OriginalService.Error[] ERRORS = OriginalService.Error.values();
+
+    private final LongAdder[] businessErrors = new LongAdder[ERRORS.length];
+    private final LongAdder internalErrors = new LongAdder();
+
+    public ErrorCounters() {
+        for (int i = 0; i < businessErrors.length; i++) {
+            businessErrors[i] = new LongAdder();
+        }
+    }
+
+    public void increment(OriginalService.Error error) {
+        businessErrors[(null == error ? OriginalService.Error.UNKNOWN : error).ordinal()].increment();
+    }
+
+    public void incrementInternal() {
+        internalErrors.increment();
+    }
+
+    public long get(OriginalService.Error error) {
+        return businessErrors[error.ordinal()].sum();
+    }
+
+    public long getInternal() {
+        return internalErrors.sum();
+    }
+
+    public long getTotal() {
+        long total = internalErrors.sum();
+        for (LongAdder counter : businessErrors) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    /**
+     * @return The counts keyed by lower case error name, e.g. "incorrect_odds", and "internal".
+     */
+    public Map<String, Long> toMap() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (OriginalService.Error error : ERRORS) {
+            map.put(error.name().toLowerCase(Locale.ROOT), get(error));
+        }
+        map.put("internal", getInternal());
+        return map;
+    }
+}
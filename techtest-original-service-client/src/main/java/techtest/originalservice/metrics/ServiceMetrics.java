@@ -0,0 +1,105 @@
+package techtest.originalservice.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The latency histograms and error counters of a service, by name.
+ *
+ * Histograms are created on first use and then looked up without locking, so callers on the hot
+ * path should look theirs up once and hold on to it. The same goes for the named counters, which
+ * (like gauges) are for anything that isn't a latency or an error, e.g. how many hedged requests
+ * were sent.
+ *
+ * By convention the histograms are named after what they time: "endpoint.available",
+ * "endpoint.bets" and "endpoint.betsBatch" for requests to this service, "upstream.available" and "upstream.bets" for calls
+ * to the remote service. "stream.available" prefixes the counters and gauges of the stream of
+ * changes to the available bets (see DeltaBroadcaster). "compression" prefixes the histograms,
+ * counters and gauges of compressed responses (see ResponseCompressor).
+ */
+public class ServiceMetrics {
+    public static final String ENDPOINT_AVAILABLE = "endpoint.available";
+    public static final String ENDPOINT_BETS = "endpoint.bets";
+    public static final String ENDPOINT_BETS_BATCH = "endpoint.betsBatch";
+    public static final String UPSTREAM_AVAILABLE = "upstream.available";
+    public static final String UPSTREAM_BETS = "upstream.bets";
+    public static final String STREAM_AVAILABLE = "stream.available";
+    public static final String COMPRESSION = "compression";
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final ErrorCounters upstreamErrors = new ErrorCounters();
+    private final ErrorCounters responseErrors = new ErrorCounters();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+    public LatencyHistogram histogram(String name) {
+        LatencyHistogram histogram = histograms.get(name);
+        return null != histogram ? histogram : histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    public LongAdder counter(String name) {
+        LongAdder counter = counters.get(name);
+        return null != counter ? counter : counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /**
+     * Registers a gauge, whose value is read each time the metrics are. A gauge with the same name
+     * is replaced.
+     */
+    public void gauge(String name, Supplier<? extends Number> value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * @return Errors returned by the remote service.
+     */
+    public ErrorCounters getUpstreamErrors() {
+        return upstreamErrors;
+    }
+
+    /**
+     * @return Errors returned by this service to its clients.
+     */
+    public ErrorCounters getResponseErrors() {
+        return responseErrors;
+    }
+
+    /**
+     * Flattens the metrics into a map, e.g.
+     *
+     * <pre>
+     * endpoint.available.count = 10
+     * endpoint.available.mean = 1.25 (milliseconds)
+     * endpoint.available.max, .p50, .p90, .p99, .p999 (milliseconds)
+     * upstream.available.hedge.fired = 2 (a counter or gauge)
+     * errors.upstream.incorrect_odds = 1
+     * errors.response.internal = 0
+     * </pre>
+     */
+    public Map<String, Number> toMap() {
+        Map<String, Number> map = new LinkedHashMap<>();
+        for (LatencyHistogram histogram : new TreeMap<>(histograms).values()) {
+            String prefix = histogram.getName() + ".";
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            map.put(prefix + "count", snapshot.getCount());
+            map.put(prefix + "mean", snapshot.getMeanMicros() / 1000.0);
+            map.put(prefix + "max", snapshot.getMaxMicros() / 1000.0);
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                map.put(prefix + PERCENTILE_NAMES[i], snapshot.getValueAtPercentileMicros(PERCENTILES[i]) / 1000.0);
+            }
+        }
+        new TreeMap<>(counters).forEach((name, counter) -> map.put(name, counter.sum()));
+        new TreeMap<>(gauges).forEach((name, gauge) -> map.put(name, gauge.get()));
+        upstreamErrors.toMap().forEach((name, count) -> map.put("errors.upstream." + name, count));
+        responseErrors.toMap().forEach((name, count) -> map.put("errors.response." + name, count));
+        return map;
+    }
+}
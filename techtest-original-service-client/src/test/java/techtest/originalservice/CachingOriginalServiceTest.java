@@ -0,0 +1,359 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import techtest.originalservice.api.Bet;
+import techtest.originalservice.api.BetsRequest;
+import techtest.originalservice.api.BetsResponse;
+import techtest.originalservice.api.CompactBetCatalog;
+import techtest.originalservice.api.Odds;
+import techtest.originalservice.api.OriginalService;
+import techtest.originalservice.api.OriginalService.InternalErrorException;
+
+/**
+ * These tests drive CachingOriginalService with a fake clock and a fake executor, so that expiry and
+ * background refreshes happen exactly when the test says so.
+ */
+public class CachingOriginalServiceTest {
+    // Bytes per bet of a snapshot of CATALOG_SIZE bets, as it is cached: the columns, the index by
+    // bet_id (which has at least two slots per bet), and the Strings.
+    static final long BYTES_PER_BET_BUDGET = 80;
+    static final int CATALOG_SIZE = 10_000;
+
+    long ttl = 1000;
+    long maxStale = 5000;
+
+    long now;
+    List<Runnable> scheduled;
+    CountingOriginalService delegate;
+    CachingOriginalService cache;
+
+    @Before
+    public void before() {
+        now = 0;
+        scheduled = new ArrayList<>();
+        delegate = new CountingOriginalService();
+        cache = new CachingOriginalService(delegate, ttl, maxStale, scheduled::add, () -> now);
+    }
+
+    @Test
+    public void first_call_fetches_from_delegate() {
+        Bet[] actual = cache.available();
+
+        assertThat(actual.length, is(1));
+        assertThat(delegate.availableCalls.get(), is(1));
+    }
+
+    @Test
+    public void fresh_snapshot_is_served_from_memory() {
+        Bet[] first = cache.available();
+        now = ttl / 2;
+        Bet[] second = cache.available();
+
+        assertThat(second, sameInstance(first));
+        assertThat(delegate.availableCalls.get(), is(1));
+        assertThat(scheduled.size(), is(0));
+    }
+
+    @Test
+    public void snapshot_past_refresh_ahead_point_is_served_and_refreshed_in_background() {
+        Bet[] first = cache.available();
+        now = ttl - 1;
+
+        Bet[] second = cache.available();
+        Bet[] third = cache.available();
+
+        // The old snapshot is still served, and only one refresh is scheduled.
+        assertThat(second, sameInstance(first));
+        assertThat(third, sameInstance(first));
+        assertThat(scheduled.size(), is(1));
+
+        scheduled.get(0).run();
+
+        assertThat(delegate.availableCalls.get(), is(2));
+        assertThat(cache.available(), not(sameInstance(first)));
+    }
+
+    @Test
+    public void snapshot_past_max_staleness_is_refreshed_before_returning() {
+        Bet[] first = cache.available();
+        now = maxStale + 1;
+
+        Bet[] second = cache.available();
+
+        assertThat(second, not(sameInstance(first)));
+        assertThat(delegate.availableCalls.get(), is(2));
+    }
+
+    @Test
+    public void failed_background_refresh_keeps_current_snapshot() {
+        Bet[] first = cache.available();
+        delegate.fail = true;
+        now = ttl + 1;
+
+        cache.available();
+        scheduled.get(0).run();
+
+        assertThat(cache.available(), sameInstance(first));
+    }
+
+    @Test
+    public void catalog_is_built_once_per_snapshot() {
+        assertThat(cache.catalog(), sameInstance(cache.catalog()));
+        assertThat(cache.catalog().get(1), sameInstance(cache.available()[0]));
+        assertThat(delegate.availableCalls.get(), is(1));
+    }
+
+    @Test
+    public void compact_catalog_is_kept_and_views_are_only_made_when_asked_for() {
+        CompactBetCatalog compact = cache.compactCatalog();
+
+        assertThat(cache.compactCatalogAsync().join(), sameInstance(compact));
+        assertThat(cache.snapshot().compact, sameInstance(compact));
+        assertThat(objectsReachableFrom(cache.snapshot()).stream().anyMatch(o -> o instanceof Bet), is(false));
+
+        assertThat(cache.available()[0], is(compact.get(1)));
+        assertThat(delegate.availableCalls.get(), is(1));
+    }
+
+    /**
+     * Compares the bytes per bet of a cached snapshot with the Bets as read from the remote service
+     * (each with its own Strings and Odds).
+     */
+    @Test
+    public void snapshot_footprint_stays_within_budget() {
+        delegate.pendingAvailable = CompletableFuture.completedFuture(catalogAsRead(CATALOG_SIZE));
+        cache.compactCatalog();
+
+        long cached = deepSize(cache.snapshot()) / CATALOG_SIZE;
+        long asRead = deepSize(catalogAsRead(CATALOG_SIZE)) / CATALOG_SIZE;
+
+        String report = "bytes per bet: " + cached + ", as read: " + asRead;
+        System.out.println(getClass().getSimpleName() + " " + report);
+        assertThat(report, cached <= BYTES_PER_BET_BUDGET, is(true));
+        assertThat(report, cached * 2 < asRead, is(true));
+    }
+
+    @Test
+    public void concurrent_async_callers_share_one_refresh() {
+        CompletableFuture<Bet[]> upstream = new CompletableFuture<>();
+        delegate.pendingAvailable = upstream;
+
+        CompletableFuture<Bet[]> first = cache.availableAsync();
+        CompletableFuture<Bet[]> second = cache.availableAsync();
+
+        assertThat(first.isDone(), is(false));
+        assertThat(delegate.availableCalls.get(), is(1));
+
+        Bet[] bets = {new Bet(1, "event", "name", new Odds(1, 1))};
+        upstream.complete(bets);
+
+        // The snapshot's bets are views of a CompactBetCatalog of the fetched ones.
+        assertThat(first.join(), is(bets));
+        assertThat(second.join(), sameInstance(first.join()));
+        assertThat(cache.available(), sameInstance(first.join()));
+    }
+
+    @Test
+    public void failed_refresh_is_rethrown_as_original_exception() {
+        delegate.fail = true;
+        try {
+            cache.available();
+            fail("Expected exception");
+        } catch (InternalErrorException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void failure_building_snapshot_fails_the_refresh_and_clears_it() {
+        CompletableFuture<Bet[]> upstream = new CompletableFuture<>();
+        delegate.pendingAvailable = upstream;
+
+        CompletableFuture<Bet[]> first = cache.availableAsync();
+        upstream.complete(new Bet[] {null});
+
+        assertThat(first.isCompletedExceptionally(), is(true));
+
+        // The failed refresh isn't shared with later callers, who start a new one.
+        delegate.pendingAvailable = null;
+        assertThat(cache.available().length, is(1));
+        assertThat(delegate.availableCalls.get(), is(2));
+    }
+
+    @Test
+    public void bets_are_never_cached() {
+        BetsRequest req = new BetsRequest(1, new Odds(1, 1), BigDecimal.ONE);
+        cache.bets(req);
+        cache.bets(req);
+
+        assertThat(delegate.betsCalls.get(), is(2));
+    }
+
+    /**
+     * 200 events of 50 selections, with names shared between events, and a fresh copy of every
+     * String, as JSON deserialization makes.
+     */
+    static Bet[] catalogAsRead(int size) {
+        Bet[] bets = new Bet[size];
+        for (int i = 0; i < size; i++) {
+            bets[i] = new Bet(i * 7, new String("Event number " + i / 50 % 200), new String("Selection " + i % 50),
+                    new Odds(1 + i % 20, 1 + i % 4));
+        }
+        return bets;
+    }
+
+    /**
+     * Estimates the bytes of every object reachable from root, as laid out by a 64-bit HotSpot JVM
+     * with compressed oops: 12 byte object headers, 16 byte array headers, 4 byte references, and
+     * every object padded to 8 bytes. Strings are counted as a header, fields and char[], as in
+     * Java 8.
+     */
+    static long deepSize(Object root) {
+        long size = 0;
+        for (Object o : objectsReachableFrom(root)) {
+            size += shallowSize(o);
+        }
+        return size;
+    }
+
+    static Set<Object> objectsReachableFrom(Object root) {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Object o = pending.pop();
+            if (!seen.add(o) || o instanceof String) {
+                continue;
+            }
+            Class<?> type = o.getClass();
+            if (type.isArray()) {
+                if (!type.getComponentType().isPrimitive()) {
+                    for (int i = 0; i < Array.getLength(o); i++) {
+                        Object element = Array.get(o, i);
+                        if (null != element) {
+                            pending.push(element);
+                        }
+                    }
+                }
+                continue;
+            }
+            for (Field field : instanceFields(type)) {
+                if (!field.getType().isPrimitive()) {
+                    Object value = get(field, o);
+                    if (null != value) {
+                        pending.push(value);
+                    }
+                }
+            }
+        }
+        return seen;
+    }
+
+    static long shallowSize(Object o) {
+        Class<?> type = o.getClass();
+        if (o instanceof String) {
+            return align(12 + 4 + 4) + align(16 + 2 * ((String) o).length());
+        }
+        if (type.isArray()) {
+            return align(16 + (long) Array.getLength(o) * bytes(type.getComponentType()));
+        }
+        long size = 12;
+        for (Field field : instanceFields(type)) {
+            size += bytes(field.getType());
+        }
+        return align(size);
+    }
+
+    static List<Field> instanceFields(Class<?> type) {
+        // Only our own classes are walked, so that the JDK's internals don't need to be opened.
+        assertThat(type.getName(), startsWith("techtest."));
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c = type; null != c && Object.class != c; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+
+    static Object get(Field field, Object o) {
+        try {
+            field.setAccessible(true);
+            return field.get(o);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static int bytes(Class<?> type) {
+        if (long.class == type || double.class == type) {
+            return 8;
+        }
+        if (int.class == type || float.class == type) {
+            return 4;
+        }
+        if (short.class == type || char.class == type) {
+            return 2;
+        }
+        if (byte.class == type || boolean.class == type) {
+            return 1;
+        }
+        return 4;
+    }
+
+    static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    static class CountingOriginalService implements OriginalService {
+        AtomicInteger availableCalls = new AtomicInteger();
+        AtomicInteger betsCalls = new AtomicInteger();
+        boolean fail;
+        CompletableFuture<Bet[]> pendingAvailable;
+
+        @Override
+        public CompletableFuture<Bet[]> availableAsync() {
+            if (null == pendingAvailable) {
+                return OriginalService.super.availableAsync();
+            }
+            availableCalls.incrementAndGet();
+            return pendingAvailable;
+        }
+
+        @Override
+        public Bet[] available() {
+            availableCalls.incrementAndGet();
+            if (fail) {
+                throw new InternalErrorException("fail");
+            }
+            return new Bet[] {new Bet(1, "event", "name", new Odds(1, 1))};
+        }
+
+        @Override
+        public BetsResponse bets(BetsRequest bet) {
+            betsCalls.incrementAndGet();
+            return new BetsResponse(bet.getBetId(), "event", "name", bet.getOdds(), bet.getStake(), 1);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import techtest.originalservice.CatalogHistory.Delta;
+import techtest.originalservice.DeltaBroadcasterTest.Item;
+
+public class CatalogHistoryTest {
+    CatalogHistory<Item> history;
+
+    @Before
+    public void before() {
+        history = new CatalogHistory<>(Item::getId, 3, 100);
+    }
+
+    @Test
+    public void only_lists_with_changes_get_a_new_version() {
+        assertThat(history.update(Arrays.asList(new Item(1, "a"))), is(100L));
+        assertThat(history.update(Arrays.asList(new Item(1, "a"))), is(100L));
+        assertThat(history.update(Arrays.asList(new Item(1, "b"))), is(101L));
+        assertThat(history.getVersion(), is(101L));
+    }
+
+    @Test
+    public void delta_merges_the_changes_since_a_version() {
+        history.update(Arrays.asList(new Item(1, "a"), new Item(2, "b"), new Item(3, "c")));
+        history.update(Arrays.asList(new Item(1, "a2"), new Item(2, "b"), new Item(3, "c")));
+        history.update(Arrays.asList(new Item(1, "a3"), new Item(3, "c"), new Item(4, "d")));
+
+        Delta<Item> delta = history.since(100);
+
+        assertThat(delta.getSince(), is(100L));
+        assertThat(delta.getVersion(), is(102L));
+        assertThat(delta.getAdded(), is(Arrays.asList(new Item(4, "d"))));
+        assertThat(delta.getChanged(), is(Arrays.asList(new Item(1, "a3"))));
+        assertThat(delta.getRemoved(), is(Arrays.asList(2L)));
+
+        delta = history.since(101);
+        assertThat(delta.getChanged(), is(Arrays.asList(new Item(1, "a3"))));
+    }
+
+    @Test
+    public void delta_of_items_that_came_and_went() {
+        history.update(Arrays.asList(new Item(1, "a")));
+        // 2 is added and removed again, 1 is removed and added back.
+        history.update(Arrays.asList(new Item(2, "b")));
+        history.update(Arrays.asList(new Item(1, "a")));
+
+        Delta<Item> delta = history.since(100);
+
+        assertThat(delta.getAdded().isEmpty(), is(true));
+        assertThat(delta.getChanged(), is(Arrays.asList(new Item(1, "a"))));
+        assertThat(delta.getRemoved().isEmpty(), is(true));
+    }
+
+    @Test
+    public void delta_since_the_current_version_is_empty() {
+        history.update(Arrays.asList(new Item(1, "a")));
+
+        Delta<Item> delta = history.since(100);
+
+        assertThat(delta.getVersion(), is(100L));
+        assertThat(delta.getAdded().isEmpty() && delta.getChanged().isEmpty() && delta.getRemoved().isEmpty(), is(true));
+    }
+
+    @Test
+    public void no_delta_for_versions_that_have_aged_out_or_are_unknown() {
+        assertThat(history.since(100), nullValue());
+
+        history.update(Collections.emptyList());
+        for (int i = 1; i <= 4; i++) {
+            history.update(Arrays.asList(new Item(1, "v" + i)));
+        }
+
+        assertThat(history.since(100), nullValue());
+        assertThat(history.since(101), notNullValue());
+        assertThat(history.since(105), nullValue());
+    }
+
+    @Test
+    public void parse_version() {
+        assertThat(CatalogHistory.parseVersion("42"), is(42L));
+        assertThat(CatalogHistory.parseVersion(null), nullValue());
+        assertThat(CatalogHistory.parseVersion("latest"), nullValue());
+    }
+}
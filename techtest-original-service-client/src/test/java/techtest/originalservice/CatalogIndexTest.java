@@ -0,0 +1,118 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import techtest.originalservice.CatalogIndex.Page;
+import techtest.originalservice.CatalogIndex.Query;
+import techtest.originalservice.DeltaBroadcasterTest.Item;
+
+public class CatalogIndexTest {
+    // The value of an Item is its event. Not in id order, as the remote service's aren't.
+    List<Item> items = Arrays.asList(new Item(5, "cup"), new Item(3, "cup"), new Item(9, "euro"), new Item(1, "cup"),
+            new Item(7, "euro"));
+    CatalogIndex index = new CatalogIndex(items, Item::getId, item -> item.value);
+
+    @Test
+    public void pages_of_an_event_in_id_order() {
+        Page page = index.query(Query.parse("cup", null, "2", null));
+
+        assertThat(page.getPositions(), is(new int[] {3, 1}));
+        assertThat(page.getNextCursor(), notNullValue());
+
+        page = index.query(Query.parse("cup", null, "2", page.getNextCursor()));
+
+        assertThat(page.getPositions(), is(new int[] {0}));
+        assertThat(page.getNextCursor(), nullValue());
+    }
+
+    @Test
+    public void all_of_an_event_without_a_limit() {
+        assertThat(index.query(Query.parse("euro", null, null, null)).getPositions(), is(new int[] {4, 2}));
+        assertThat(index.query(Query.parse("none", null, null, null)).getPositions(), is(new int[0]));
+        assertThat(index.eventCount(), is(2));
+    }
+
+    @Test
+    public void pages_of_everything() {
+        Page page = index.query(Query.parse(null, null, "3", null));
+
+        assertThat(page.getPositions(), is(new int[] {3, 1, 0}));
+        assertThat(index.query(Query.parse(null, null, "3", page.getNextCursor())).getPositions(),
+                is(new int[] {4, 2}));
+    }
+
+    @Test
+    public void ids_of_an_event() {
+        Page page = index.query(Query.parse("cup", "9, 5,2,1,5", null, null));
+
+        assertThat(page.getPositions(), is(new int[] {3, 0}));
+        assertThat(page.getNextCursor(), nullValue());
+    }
+
+    @Test
+    public void pages_of_ids() {
+        Page page = index.query(Query.parse(null, "7,3,9", "2", null));
+
+        assertThat(page.getPositions(), is(new int[] {1, 4}));
+        assertThat(index.query(Query.parse(null, "7,3,9", "2", page.getNextCursor())).getPositions(),
+                is(new int[] {2}));
+    }
+
+    @Test
+    public void cursor_still_works_when_the_list_has_changed() {
+        String cursor = index.query(Query.parse(null, null, "2", null)).getNextCursor();
+        // 3, the cursor, has gone, and 4 has been added.
+        CatalogIndex changed = new CatalogIndex(Arrays.asList(new Item(1, "cup"), new Item(4, "cup"),
+                new Item(5, "cup")), Item::getId, item -> item.value);
+
+        assertThat(changed.query(Query.parse(null, null, null, cursor)).getPositions(), is(new int[] {1, 2}));
+    }
+
+    @Test
+    public void pages_can_end_part_way_through_a_duplicate_id() {
+        CatalogIndex duplicates = new CatalogIndex(Arrays.asList(new Item(2, "cup"), new Item(1, "cup"),
+                new Item(2, "euro"), new Item(2, "cup"), new Item(3, "cup")), Item::getId, item -> item.value);
+
+        Page page = duplicates.query(Query.parse(null, null, "2", null));
+        assertThat(page.getPositions(), is(new int[] {1, 0}));
+        page = duplicates.query(Query.parse(null, null, "2", page.getNextCursor()));
+        assertThat(page.getPositions(), is(new int[] {2, 3}));
+        page = duplicates.query(Query.parse(null, null, "2", page.getNextCursor()));
+        assertThat(page.getPositions(), is(new int[] {4}));
+        assertThat(page.getNextCursor(), nullValue());
+
+        page = duplicates.query(Query.parse("cup", "2,3", "1", null));
+        assertThat(page.getPositions(), is(new int[] {0}));
+        page = duplicates.query(Query.parse("cup", "2,3", "1", page.getNextCursor()));
+        assertThat(page.getPositions(), is(new int[] {3}));
+        page = duplicates.query(Query.parse("cup", "2,3", "1", page.getNextCursor()));
+        assertThat(page.getPositions(), is(new int[] {4}));
+        assertThat(page.getNextCursor(), nullValue());
+    }
+
+    @Test
+    public void no_parameters_is_all() {
+        assertThat(Query.parse(null, null, null, null).isAll(), is(true));
+        assertThat(Query.parse(null, null, "1", null).isAll(), is(false));
+    }
+
+    @Test
+    public void invalid_parameters_are_rejected() {
+        for (String[] params : new String[][] {{null, "1,x", null, null}, {null, null, "0", null},
+                {null, null, "many", null}, {null, null, null, "not a cursor!"},
+                {null, null, null, CatalogIndex.encodeCursor(1, 0)}}) {
+            try {
+                Query.parse(params[0], params[1], params[2], params[3]);
+                fail(Arrays.toString(params));
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import techtest.originalservice.CircuitBreaker.State;
+
+public class CircuitBreakerTest {
+    static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    long now;
+    CircuitBreaker breaker;
+
+    @Before
+    public void before() {
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings();
+        settings.setWindowSize(10);
+        settings.setMinimumCalls(4);
+        settings.setFailureRateThreshold(50);
+        settings.setSlowCallRateThreshold(75);
+        settings.setSlowCallMillis(100);
+        settings.setOpenMillis(1000);
+        settings.setHalfOpenCalls(2);
+        breaker = new CircuitBreaker(settings, () -> now);
+    }
+
+    @Test
+    public void stays_closed_below_the_minimum_calls() {
+        breaker.onFailure(FAST);
+        breaker.onFailure(FAST);
+        breaker.onFailure(FAST);
+
+        assertThat(breaker.getState(), is(State.CLOSED));
+        assertThat(breaker.tryAcquire(), is(true));
+    }
+
+    @Test
+    public void opens_at_the_failure_rate_threshold() {
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+        breaker.onFailure(FAST);
+        assertThat(breaker.getState(), is(State.CLOSED));
+
+        breaker.onFailure(FAST);
+
+        assertThat(breaker.getState(), is(State.OPEN));
+        assertThat(breaker.tryAcquire(), is(false));
+        assertThat(breaker.getRejectedCount(), is(1L));
+    }
+
+    @Test
+    public void opens_at_the_slow_call_rate_threshold() {
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(SLOW);
+        breaker.onSuccess(SLOW);
+        breaker.onSuccess(SLOW);
+
+        assertThat(breaker.getState(), is(State.OPEN));
+    }
+
+    @Test
+    public void old_outcomes_roll_out_of_the_window() {
+        breaker.onFailure(FAST);
+        for (int i = 0; i < 9; i++) {
+            breaker.onSuccess(FAST);
+        }
+        // The first failure has rolled out, so this is 4 failures in 10.
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(FAST);
+        }
+
+        assertThat(breaker.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void half_open_after_open_millis_allows_only_the_probes() {
+        open();
+
+        now += 999;
+        assertThat(breaker.tryAcquire(), is(false));
+
+        now += 1;
+        assertThat(breaker.tryAcquire(), is(true));
+        assertThat(breaker.getState(), is(State.HALF_OPEN));
+        assertThat(breaker.tryAcquire(), is(true));
+        assertThat(breaker.tryAcquire(), is(false));
+    }
+
+    @Test
+    public void closes_when_the_probes_succeed() {
+        open();
+        now += 1000;
+        breaker.tryAcquire();
+        breaker.tryAcquire();
+
+        breaker.onSuccess(FAST);
+        assertThat(breaker.getState(), is(State.HALF_OPEN));
+        breaker.onSuccess(FAST);
+
+        assertThat(breaker.getState(), is(State.CLOSED));
+        // With an empty window.
+        breaker.onFailure(FAST);
+        assertThat(breaker.getState(), is(State.CLOSED));
+    }
+
+    @Test
+    public void opens_again_when_a_probe_fails() {
+        open();
+        now += 1000;
+        breaker.tryAcquire();
+
+        breaker.onFailure(FAST);
+
+        assertThat(breaker.getState(), is(State.OPEN));
+        assertThat(breaker.tryAcquire(), is(false));
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(FAST);
+        }
+        assertThat(breaker.getState(), is(State.OPEN));
+    }
+}
@@ -0,0 +1,145 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import techtest.originalservice.DeltaBroadcaster.Event;
+import techtest.originalservice.DeltaBroadcaster.Subscription;
+import techtest.originalservice.metrics.ServiceMetrics;
+
+public class DeltaBroadcasterTest {
+    ServiceMetrics metrics;
+    DeltaBroadcaster<Item> broadcaster;
+
+    @Before
+    public void before() {
+        metrics = new ServiceMetrics();
+        broadcaster = new DeltaBroadcaster<>(Item::getId, Object::toString, 2, metrics, "stream.test");
+    }
+
+    @Test
+    public void first_list_is_a_snapshot_for_everyone_waiting() {
+        Subscription first = subscribe();
+        Subscription second = subscribe();
+
+        broadcaster.publish(Arrays.asList(new Item(1, "a"), new Item(2, "b")));
+
+        for (Subscription subscription : Arrays.asList(first, second)) {
+            assertEvent(subscription.poll(), 1, DeltaBroadcaster.SNAPSHOT, "[1=a, 2=b]");
+            assertThat(subscription.poll(), nullValue());
+        }
+    }
+
+    @Test
+    public void only_changes_are_sent() {
+        Subscription subscription = subscribe();
+        broadcaster.publish(Arrays.asList(new Item(1, "a"), new Item(2, "b")));
+        subscription.poll();
+
+        broadcaster.publish(Arrays.asList(new Item(1, "a"), new Item(2, "b")));
+        assertThat(subscription.poll(), nullValue());
+
+        broadcaster.publish(Arrays.asList(new Item(1, "a"), new Item(2, "c"), new Item(3, "d")));
+        assertEvent(subscription.poll(), 2, DeltaBroadcaster.CHANGES, "[2=c, 3=d]");
+
+        broadcaster.publish(Arrays.asList(new Item(3, "d")));
+        assertEvent(subscription.poll(), 3, DeltaBroadcaster.REMOVED, "[1, 2]");
+    }
+
+    @Test
+    public void late_subscribers_get_a_snapshot_of_the_current_list() {
+        subscribe();
+        broadcaster.publish(Arrays.asList(new Item(1, "a")));
+        broadcaster.publish(Arrays.asList(new Item(1, "b")));
+
+        Subscription late = subscribe();
+
+        assertEvent(late.poll(), 2, DeltaBroadcaster.SNAPSHOT, "[1=b]");
+        assertThat(late.poll(), nullValue());
+    }
+
+    @Test
+    public void slow_subscribers_are_dropped_when_their_queue_is_full() {
+        AtomicInteger drops = new AtomicInteger();
+        Subscription slow = broadcaster.subscribe(() -> {
+        }, drops::incrementAndGet);
+        Subscription fast = subscribe();
+
+        for (int i = 0; i < 3; i++) {
+            broadcaster.publish(Arrays.asList(new Item(1, "v" + i)));
+            fast.poll();
+        }
+
+        assertThat(drops.get(), is(1));
+        assertThat(slow.isClosed(), is(true));
+        assertThat(slow.poll(), nullValue());
+        assertThat(fast.isClosed(), is(false));
+        assertThat(broadcaster.getSubscriberCount(), is(1));
+        assertThat(metrics.toMap().get("stream.test.dropped"), is((Number) 1L));
+    }
+
+    @Test
+    public void list_is_forgotten_when_the_last_subscriber_goes() {
+        Subscription subscription = subscribe();
+        broadcaster.publish(Arrays.asList(new Item(1, "a")));
+        assertThat(broadcaster.hasCurrent(), is(true));
+
+        subscription.cancel();
+        assertThat(broadcaster.hasCurrent(), is(false));
+        broadcaster.publish(Arrays.asList(new Item(1, "b")));
+        assertThat(broadcaster.hasCurrent(), is(false));
+
+        Subscription next = subscribe();
+        assertThat(next.poll(), nullValue());
+        broadcaster.publish(Arrays.asList(new Item(1, "c")));
+        assertEvent(next.poll(), 2, DeltaBroadcaster.SNAPSHOT, "[1=c]");
+    }
+
+    private Subscription subscribe() {
+        return broadcaster.subscribe(() -> {
+        }, () -> {
+        });
+    }
+
+    private static void assertEvent(Event event, long id, String name, String data) {
+        assertThat(event, notNullValue());
+        assertThat(event.getId(), is(id));
+        assertThat(event.getName(), is(name));
+        assertThat(event.getData(), is(data));
+    }
+
+    static class Item {
+        final long id;
+        final String value;
+
+        Item(long id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Item && ((Item) o).id == id && ((Item) o).value.equals(value);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(id) * 31 + value.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return id + "=" + value;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+import techtest.originalservice.api.OriginalService.InternalErrorException;
+
+public class FuturesTest {
+
+    @Test
+    public void mapBounded_keeps_the_order_of_the_inputs() {
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        CompletableFuture<List<String>> result = Futures.mapBounded(Arrays.asList(1, 2, 3), 3, i -> {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        });
+
+        calls.get(2).complete("3");
+        calls.get(0).complete("1");
+        calls.get(1).complete("2");
+
+        assertThat(result.join(), is(Arrays.asList("1", "2", "3")));
+    }
+
+    @Test
+    public void mapBounded_makes_at_most_parallelism_calls_at_once() {
+        List<CompletableFuture<Integer>> calls = new ArrayList<>();
+        CompletableFuture<List<Integer>> result = Futures.mapBounded(Arrays.asList(1, 2, 3, 4, 5), 2, i -> {
+            CompletableFuture<Integer> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        });
+
+        assertThat(calls.size(), is(2));
+
+        calls.get(0).complete(1);
+        assertThat(calls.size(), is(3));
+
+        for (int i = 1; i < 5; i++) {
+            calls.get(i).complete(i + 1);
+        }
+        assertThat(calls.size(), is(5));
+        assertThat(result.join(), is(Arrays.asList(1, 2, 3, 4, 5)));
+    }
+
+    @Test
+    public void mapBounded_handles_many_completed_calls_without_recursing() {
+        List<Integer> inputs = IntStream.range(0, 100_000).boxed().collect(Collectors.toList());
+
+        List<Integer> result = Futures.mapBounded(inputs, 1, CompletableFuture::completedFuture).join();
+
+        assertThat(result, is(inputs));
+    }
+
+    @Test
+    public void mapBounded_of_nothing_is_empty() {
+        assertThat(Futures.mapBounded(Collections.emptyList(), 4, i -> null).join().isEmpty(), is(true));
+    }
+
+    @Test
+    public void mapBounded_fails_with_the_first_failure_once_all_calls_complete() {
+        InternalErrorException error = new InternalErrorException("fail");
+        List<Integer> called = new ArrayList<>();
+        CompletableFuture<List<Integer>> result = Futures.mapBounded(Arrays.asList(1, 2, 3), 1, i -> {
+            called.add(i);
+            if (2 == i) {
+                throw error;
+            }
+            return CompletableFuture.completedFuture(i);
+        });
+
+        assertThat(called, is(Arrays.asList(1, 2, 3)));
+        try {
+            result.join();
+            fail();
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), sameInstance((Throwable) error));
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import techtest.originalservice.api.OriginalService;
+import techtest.originalservice.api.OriginalService.BusinessLogicException;
+import techtest.originalservice.api.OriginalService.InternalErrorException;
+import techtest.originalservice.metrics.ServiceMetrics;
+
+public class HedgerTest {
+    ScheduledExecutorService scheduler;
+    ServiceMetrics metrics;
+    Hedger.Settings settings;
+    List<CompletableFuture<String>> attempts;
+
+    @Before
+    public void before() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        metrics = new ServiceMetrics();
+        settings = new Hedger.Settings();
+        settings.setMaxDelayMillis(20);
+        settings.setBudgetMaxTokens(1);
+        settings.setBudgetRatio(0);
+        attempts = new ArrayList<>();
+    }
+
+    @After
+    public void after() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void fast_attempt_is_not_hedged() throws Exception {
+        Hedger hedger = new Hedger(settings, metrics, "upstream.available");
+
+        CompletableFuture<String> result = hedger.call(() -> CompletableFuture.completedFuture("first"), scheduler);
+        Thread.sleep(50);
+
+        assertThat(result.join(), is("first"));
+        assertThat(metrics.counter("upstream.available.hedge.fired").sum(), is(0L));
+        assertThat(metrics.histogram("upstream.available.attempt").snapshot().getCount(), is(1L));
+    }
+
+    @Test
+    public void slow_attempt_is_hedged_after_the_delay_and_the_first_answer_wins() throws Exception {
+        Hedger hedger = new Hedger(settings, metrics, "upstream.available");
+
+        CompletableFuture<String> result = hedger.call(this::pendingAttempt, scheduler);
+        assertThat(attempts.size(), is(1));
+
+        waitForAttempts(2);
+        attempts.get(1).complete("second");
+        attempts.get(0).complete("first");
+
+        assertThat(result.join(), is("second"));
+        assertThat(metrics.counter("upstream.available.hedge.fired").sum(), is(1L));
+        assertThat(metrics.counter("upstream.available.hedge.won").sum(), is(1L));
+        assertThat(metrics.histogram("upstream.available.attempt").snapshot().getCount(), is(2L));
+    }
+
+    @Test
+    public void failed_attempt_is_retried_straight_away() {
+        settings.setMaxDelayMillis(60_000);
+        Hedger hedger = new Hedger(settings, metrics, "upstream.available");
+
+        CompletableFuture<String> result = hedger.call(this::pendingAttempt, scheduler);
+        attempts.get(0).completeExceptionally(new InternalErrorException("fail"));
+
+        assertThat(attempts.size(), is(2));
+        attempts.get(1).complete("second");
+        assertThat(result.join(), is("second"));
+    }
+
+    @Test
+    public void business_errors_are_not_retried() {
+        Hedger hedger = new Hedger(settings, metrics, "upstream.available");
+
+        CompletableFuture<String> result = hedger.call(this::pendingAttempt, scheduler);
+        attempts.get(0).completeExceptionally(new BusinessLogicException(OriginalService.Error.UNKNOWN));
+
+        assertThat(attempts.size(), is(1));
+        assertThat(failureOf(result), instanceOf(BusinessLogicException.class));
+    }
+
+    @Test
+    public void no_second_attempt_without_a_token() {
+        Hedger hedger = new Hedger(settings, metrics, "upstream.available");
+        InternalErrorException error = new InternalErrorException("fail");
+
+        CompletableFuture<String> first = hedger.call(() -> Futures.failed(error), scheduler);
+        CompletableFuture<String> second = hedger.call(() -> Futures.failed(error), scheduler);
+
+        assertThat(failureOf(first), sameInstance((Throwable) error));
+        assertThat(failureOf(second), sameInstance((Throwable) error));
+        assertThat(metrics.counter("upstream.available.hedge.fired").sum(), is(1L));
+        assertThat(metrics.counter("upstream.available.hedge.budgetExhausted").sum(), is(1L));
+    }
+
+    @Test
+    public void delay_is_the_percentile_of_attempt_latency_within_bounds() {
+        settings.setMinSamples(10);
+        settings.setDelayRefreshMillis(0);
+        settings.setMinDelayMillis(1);
+        settings.setMaxDelayMillis(50);
+        Hedger hedger = new Hedger(settings, metrics, "upstream.available");
+        assertThat(hedger.currentDelayMicros(), is(50_000L));
+
+        for (int i = 0; i < 100; i++) {
+            metrics.histogram("upstream.available.attempt").record(10, TimeUnit.MILLISECONDS);
+        }
+        long delay = hedger.currentDelayMicros();
+        assertThat(delay >= 10_000 && delay < 11_000, is(true));
+
+        for (int i = 0; i < 1000; i++) {
+            metrics.histogram("upstream.available.attempt").record(1, TimeUnit.SECONDS);
+        }
+        assertThat(hedger.currentDelayMicros(), is(50_000L));
+    }
+
+    private synchronized CompletableFuture<String> pendingAttempt() {
+        CompletableFuture<String> attempt = new CompletableFuture<>();
+        attempts.add(attempt);
+        return attempt;
+    }
+
+    private void waitForAttempts(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && attemptCount() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(attemptCount(), is(count));
+    }
+
+    private synchronized int attemptCount() {
+        return attempts.size();
+    }
+
+    private static Throwable failureOf(CompletableFuture<?> future) {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+        throw new AssertionError("Expected a failure");
+    }
+}
@@ -0,0 +1,113 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class IdempotencyStoreTest {
+    long now;
+    AtomicInteger calls = new AtomicInteger();
+    IdempotencyStore<String> store;
+
+    @Before
+    public void before() {
+        IdempotencyStore.Settings settings = new IdempotencyStore.Settings();
+        settings.setMaxKeys(2);
+        settings.setTtlMillis(1000);
+        store = new IdempotencyStore<>(settings, () -> now);
+    }
+
+    CompletableFuture<String> call(CompletableFuture<String> result) {
+        calls.incrementAndGet();
+        return result;
+    }
+
+    @Test
+    public void concurrent_and_later_duplicates_share_one_call() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+
+        CompletableFuture<String> first = store.execute("k", "bet 1", () -> call(upstream));
+        CompletableFuture<String> concurrent = store.execute("k", "bet 1", () -> call(upstream));
+        assertThat(concurrent.isDone(), is(false));
+
+        upstream.complete("placed");
+        CompletableFuture<String> later = store.execute("k", "bet 1", () -> call(upstream));
+
+        assertThat(first.join(), is("placed"));
+        assertThat(concurrent.join(), is("placed"));
+        assertThat(later.join(), is("placed"));
+        assertThat(calls.get(), is(1));
+        assertThat(store.getReplayedCount(), is(2L));
+    }
+
+    @Test
+    public void failed_calls_are_forgotten() {
+        CompletableFuture<String> failed = store.execute("k", "bet 1",
+                () -> call(Futures.failed(new IllegalStateException("timeout"))));
+        assertThat(failed.isCompletedExceptionally(), is(true));
+
+        CompletableFuture<String> retried = store.execute("k", "bet 1",
+                () -> call(CompletableFuture.completedFuture("placed")));
+
+        assertThat(retried.join(), is("placed"));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    public void a_key_reused_for_a_different_request_fails() throws Exception {
+        store.execute("k", "bet 1", () -> call(CompletableFuture.completedFuture("placed")));
+
+        CompletableFuture<String> reused = store.execute("k", "bet 2",
+                () -> call(CompletableFuture.completedFuture("other")));
+
+        try {
+            reused.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IdempotencyStore.KeyReusedException.class));
+        }
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    public void keys_expire_after_ttl() {
+        store.execute("k", "bet 1", () -> call(CompletableFuture.completedFuture("placed")));
+
+        now = 999;
+        store.execute("k", "bet 1", () -> call(CompletableFuture.completedFuture("placed again")));
+        assertThat(calls.get(), is(1));
+
+        now = 1000;
+        assertThat(store.execute("k", "bet 1", () -> call(CompletableFuture.completedFuture("placed again"))).join(),
+                is("placed again"));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    public void never_keeps_more_than_max_keys() {
+        for (String key : new String[] {"a", "b", "c"}) {
+            store.execute(key, "bet 1", () -> call(CompletableFuture.completedFuture(key)));
+        }
+
+        assertThat(store.getSize(), is(2));
+        assertThat(store.getEvictedCount(), is(1L));
+        // "a" was the oldest, so is called again.
+        store.execute("a", "bet 1", () -> call(CompletableFuture.completedFuture("a")));
+        assertThat(calls.get(), is(4));
+    }
+
+    @Test
+    public void valid_keys() {
+        assertThat(IdempotencyStore.isValidKey(null), is(false));
+        assertThat(IdempotencyStore.isValidKey(""), is(false));
+        assertThat(IdempotencyStore.isValidKey("5f1c2e4a-retry"), is(true));
+        assertThat(IdempotencyStore.isValidKey(new String(new char[IdempotencyStore.MAX_KEY_LENGTH + 1])),
+                is(false));
+    }
+}
@@ -9,6 +9,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.math.BigDecimal;
 import java.nio.charset.Charset;
+import java.util.concurrent.ExecutionException;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -17,11 +18,13 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.test.web.client.RequestMatcher;
 import org.springframework.util.StreamUtils;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.RestTemplate;
 
 import techtest.originalservice.api.Bet;
 import techtest.originalservice.api.BetsRequest;
 import techtest.originalservice.api.BetsResponse;
+import techtest.originalservice.api.BetsResponseReader;
 import techtest.originalservice.api.Odds;
 import techtest.originalservice.api.OriginalService;
 import techtest.originalservice.api.OriginalService.BusinessLogicException;
@@ -42,13 +45,17 @@ public class OriginalServiceClientTest {
     String baseUrl = "http://skybettechtestapi.herokuapp.com";
     OriginalService originalService;
     RestTemplate restTemplate;
+    AsyncRestTemplate asyncRestTemplate;
     MockRestServiceServer mockServer;
+    MockRestServiceServer mockAsyncServer;
 
     @Before
     public void before() {
         restTemplate = new RestTemplate();
-        originalService = new OriginalServiceClient(baseUrl, restTemplate);
+        asyncRestTemplate = new AsyncRestTemplate();
+        originalService = new OriginalServiceClient(baseUrl, restTemplate, asyncRestTemplate);
         mockServer = MockRestServiceServer.createServer(restTemplate);
+        mockAsyncServer = MockRestServiceServer.createServer(asyncRestTemplate);
     }
 
     @Test
@@ -62,6 +69,80 @@ public class OriginalServiceClientTest {
         assertThat(actual.length, is(6));
     }
 
+    @Test
+    public void there_are_6_bets_available_async() throws Exception {
+        mockAsyncServer.expect(relativeRequestTo("/available"))
+                .andRespond(withSuccess(testData("available"), MediaType.APPLICATION_JSON_UTF8));
+
+        Bet[] actual = originalService.availableAsync().get();
+
+        assertThat(actual, notNullValue());
+        assertThat(actual.length, is(6));
+        assertThat(actual[0], is(new Bet(1, "World Cup 2018", "England", new Odds(10, 1))));
+    }
+
+    @Test
+    public void when_valid_bet_made_async_then_valid_response_returned() throws Exception {
+        mockAsyncServer.expect(relativeRequestTo("/bets"))
+                .andRespond(withStatus(HttpStatus.CREATED).body(testData("bets")).contentType(MediaType.APPLICATION_JSON_UTF8));
+
+        BetsResponse actual = originalService.betsAsync(betsRequest()).get();
+
+        assertThat(actual.getBetId(), is(1L));
+        assertThat(actual.getOdds(), is(new Odds(10, 1)));
+    }
+
+    @Test
+    public void when_valid_bet_made_async_with_reader_then_request_is_streamed_and_reader_gets_the_response()
+            throws Exception {
+        mockAsyncServer.expect(relativeRequestTo("/bets"))
+                .andExpect(content().string("{\"bet_id\":1,\"odds\":{\"numerator\":10,\"denominator\":1},\"stake\":1}"))
+                .andRespond(withStatus(HttpStatus.CREATED).body(testData("bets")).contentType(MediaType.APPLICATION_JSON_UTF8));
+
+        String actual = originalService.betsAsync(betsRequest(), new BetsResponseReader<String>() {
+            @Override
+            public String read(InputStream remoteJson) throws IOException {
+                return StreamUtils.copyToString(remoteJson, Charset.forName("UTF8"));
+            }
+
+            @Override
+            public String convert(BetsResponse response) {
+                throw new AssertionError("The client has the JSON, so should not convert");
+            }
+        }).get();
+
+        assertThat(actual, is(testData("bets")));
+    }
+
+    @Test
+    public void when_bet_made_async_with_invalid_stake_then_future_fails_with_business_logic_exception()
+            throws Exception {
+        mockAsyncServer.expect(relativeRequestTo("/bets")).andRespond(withStatus(HttpStatus.I_AM_A_TEAPOT)
+                .body(testData("bets_invalidStake")).contentType(MediaType.APPLICATION_JSON_UTF8));
+
+        try {
+            originalService.betsAsync(betsRequest()).get();
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(BusinessLogicException.class));
+            assertThat(((BusinessLogicException) e.getCause()).getError(), is(OriginalService.Error.INVALID_STAKE));
+        }
+    }
+
+    @Test
+    public void when_bet_made_async_with_zero_bet_id_then_future_fails_with_internal_error_exception()
+            throws Exception {
+        mockAsyncServer.expect(relativeRequestTo("/bets")).andRespond(withStatus(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body(testData("bets_zeroOrNegativeBetId")).contentType(MediaType.APPLICATION_JSON_UTF8));
+
+        try {
+            originalService.betsAsync(betsRequestWithId(0)).get();
+            fail("Expected exception");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(InternalErrorException.class));
+        }
+    }
+
     @Test(expected = NullPointerException.class)
     public void when_bets_with_null_request_then_NPE() {
         originalService.bets(null);
@@ -0,0 +1,99 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.RestTemplate;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests PooledHttpTransport against a local JDK HttpServer, which records the client port of each
+ * request so that we can tell whether connections were reused.
+ */
+public class PooledHttpTransportTest {
+    HttpServer server;
+    String baseUrl;
+    Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    PooledHttpTransport transport;
+
+    @Before
+    public void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/available", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "[]".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+
+        PooledHttpTransport.Settings settings = new PooledHttpTransport.Settings();
+        settings.setMaxTotal(4);
+        settings.setMaxPerRoute(2);
+        transport = new PooledHttpTransport(settings);
+    }
+
+    @After
+    public void after() throws IOException {
+        transport.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void sequential_requests_reuse_one_kept_alive_connection() {
+        RestTemplate restTemplate = new RestTemplate(transport.requestFactory());
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(restTemplate.getForObject(baseUrl + "/available", String.class), is("[]"));
+        }
+
+        assertThat(clientPorts.size(), is(1));
+
+        PooledHttpTransport.Stats stats = transport.getStats();
+        assertThat(stats.getWaitCount(), is(5L));
+        assertThat(stats.getLeased(), is(0));
+        assertThat(stats.getAvailable(), is(1));
+        assertThat(stats.getMax(), is(4));
+    }
+
+    @Test
+    public void async_requests_use_the_non_blocking_pool() throws Exception {
+        AsyncRestTemplate asyncRestTemplate = new AsyncRestTemplate(transport.asyncRequestFactory());
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(asyncRestTemplate.getForEntity(baseUrl + "/available", String.class).get().getBody(), is("[]"));
+        }
+
+        assertThat(clientPorts.size(), is(1));
+        assertThat(transport.getAsyncStats().getWaitCount(), is(3L));
+        assertThat(transport.getStats().getWaitCount(), is(0L));
+    }
+
+    @Test
+    public void idle_connections_are_evicted() {
+        transport.getSettings().setIdleEvictMillis(0);
+        RestTemplate restTemplate = new RestTemplate(transport.requestFactory());
+        restTemplate.getForObject(baseUrl + "/available", String.class);
+        assertThat(transport.getStats().getAvailable(), is(1));
+
+        transport.evictIdleConnections();
+
+        assertThat(transport.getStats().getAvailable(), is(0));
+    }
+}
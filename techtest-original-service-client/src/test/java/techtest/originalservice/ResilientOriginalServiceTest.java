@@ -0,0 +1,81 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import techtest.originalservice.CachingOriginalServiceTest.CountingOriginalService;
+import techtest.originalservice.api.Bet;
+import techtest.originalservice.api.OriginalService.InternalErrorException;
+import techtest.originalservice.api.OriginalService.ServiceUnavailableException;
+
+public class ResilientOriginalServiceTest {
+    CountingOriginalService delegate;
+    CircuitBreaker breaker;
+    Bulkhead bulkhead;
+    ResilientOriginalService service;
+
+    @Before
+    public void before() {
+        CircuitBreaker.Settings settings = new CircuitBreaker.Settings();
+        settings.setWindowSize(2);
+        settings.setMinimumCalls(2);
+        delegate = new CountingOriginalService();
+        breaker = new CircuitBreaker(settings);
+        bulkhead = new Bulkhead(1);
+        service = new ResilientOriginalService(delegate, breaker, bulkhead);
+    }
+
+    @Test
+    public void open_breaker_fails_fast_without_calling_the_delegate() {
+        delegate.fail = true;
+        failingCall();
+        failingCall();
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+
+        try {
+            service.available();
+            fail();
+        } catch (ServiceUnavailableException e) {
+            assertThat(e.getStackTrace().length, is(0));
+        }
+        assertThat(delegate.availableCalls.get(), is(2));
+        assertThat(bulkhead.getInUse(), is(0));
+    }
+
+    @Test
+    public void full_bulkhead_fails_async_calls_fast() {
+        CompletableFuture<Bet[]> upstream = new CompletableFuture<>();
+        delegate.pendingAvailable = upstream;
+
+        CompletableFuture<Bet[]> first = service.availableAsync();
+        CompletableFuture<Bet[]> second = service.availableAsync();
+
+        assertThat(delegate.availableCalls.get(), is(1));
+        try {
+            second.join();
+            fail();
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), instanceOf(ServiceUnavailableException.class));
+        }
+        assertThat(bulkhead.getRejectedCount(), is(1L));
+
+        upstream.complete(new Bet[0]);
+        assertThat(first.join().length, is(0));
+        assertThat(bulkhead.getInUse(), is(0));
+    }
+
+    private void failingCall() {
+        try {
+            service.available();
+            fail();
+        } catch (InternalErrorException e) {
+            assertThat(e, not(instanceOf(ServiceUnavailableException.class)));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+
+import techtest.originalservice.ResponseCompressor.Encoding;
+import techtest.originalservice.metrics.ServiceMetrics;
+
+public class ResponseCompressorTest {
+    ServiceMetrics metrics = new ServiceMetrics();
+    ResponseCompressor compressor = new ResponseCompressor(true, true, 100, metrics);
+
+    @Test
+    public void accept_encoding_is_parsed() {
+        assertThat(ResponseCompressor.negotiate("gzip", false), is(Encoding.GZIP));
+        assertThat(ResponseCompressor.negotiate("br, GZIP;q=0.5", false), is(Encoding.GZIP));
+        assertThat(ResponseCompressor.negotiate("*", false), is(Encoding.GZIP));
+        assertThat(ResponseCompressor.negotiate("gzip;q=0", false), nullValue());
+        assertThat(ResponseCompressor.negotiate("identity", false), nullValue());
+        assertThat(ResponseCompressor.negotiate(null, false), nullValue());
+    }
+
+    @Test
+    public void highest_q_value_wins() {
+        assertThat(ResponseCompressor.negotiate("gzip, deflate", true), is(Encoding.GZIP));
+        assertThat(ResponseCompressor.negotiate("gzip;q=0.5, deflate", true), is(Encoding.DEFLATE));
+        assertThat(ResponseCompressor.negotiate("deflate", true), is(Encoding.DEFLATE));
+        assertThat(ResponseCompressor.negotiate("gzip;q=0, *", true), is(Encoding.DEFLATE));
+        // Unless deflate isn't enabled.
+        assertThat(ResponseCompressor.negotiate("gzip;q=0.5, deflate", false), is(Encoding.GZIP));
+        assertThat(ResponseCompressor.negotiate("deflate", false), nullValue());
+    }
+
+    @Test
+    public void small_bodies_and_disabled_compression_are_sent_as_they_are() {
+        assertThat(compressor.negotiate("gzip", 99), nullValue());
+        assertThat(compressor.negotiate("gzip", 100), is(Encoding.GZIP));
+        assertThat(new ResponseCompressor(false, true, 0, metrics).negotiate("gzip", 1000), nullValue());
+    }
+
+    @Test
+    public void compresses_and_records_the_ratio() throws IOException {
+        byte[] body = json(200);
+
+        byte[] gzipped = compressor.compress(body, Encoding.GZIP);
+        byte[] deflated = compressor.compress(body, Encoding.DEFLATE);
+
+        assertThat(read(new GZIPInputStream(new ByteArrayInputStream(gzipped))), is(body));
+        assertThat(read(new InflaterInputStream(new ByteArrayInputStream(deflated))), is(body));
+        Map<String, Number> map = metrics.toMap();
+        assertThat(map.get("compression.gzip.count"), is(1L));
+        assertThat(map.get("compression.gzip.bytesIn"), is((long) body.length));
+        assertThat(map.get("compression.gzip.bytesOut"), is((long) gzipped.length));
+        assertThat(map.get("compression.deflate.ratio"), is((double) deflated.length / body.length));
+    }
+
+    @Test
+    public void ratio_is_zero_before_anything_is_compressed() {
+        assertThat(metrics.toMap().get("compression.gzip.ratio"), is(0.0));
+    }
+
+    static byte[] json(int bets) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < bets; i++) {
+            json.append(i > 0 ? "," : "").append("{\"bet_id\":").append(i)
+                    .append(",\"event\":\"World Cup 2018\",\"name\":\"England\",\"odds\":11}");
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
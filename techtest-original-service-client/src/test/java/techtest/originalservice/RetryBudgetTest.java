@@ -0,0 +1,43 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class RetryBudgetTest {
+
+    @Test
+    public void starts_full() {
+        RetryBudget budget = new RetryBudget(0.1, 2);
+
+        assertThat(budget.tryWithdraw(), is(true));
+        assertThat(budget.tryWithdraw(), is(true));
+        assertThat(budget.tryWithdraw(), is(false));
+    }
+
+    @Test
+    public void requests_earn_a_fraction_of_a_token_each() {
+        RetryBudget budget = new RetryBudget(0.25, 1);
+        budget.tryWithdraw();
+
+        for (int i = 0; i < 3; i++) {
+            budget.onRequest();
+        }
+        assertThat(budget.tryWithdraw(), is(false));
+
+        budget.onRequest();
+        assertThat(budget.tryWithdraw(), is(true));
+    }
+
+    @Test
+    public void never_holds_more_than_max_tokens() {
+        RetryBudget budget = new RetryBudget(1, 3);
+
+        for (int i = 0; i < 100; i++) {
+            budget.onRequest();
+        }
+
+        assertThat(budget.getTokens(), is(3.0));
+    }
+}
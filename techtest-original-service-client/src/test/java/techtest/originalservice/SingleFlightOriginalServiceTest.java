@@ -0,0 +1,170 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import techtest.originalservice.CachingOriginalServiceTest.CountingOriginalService;
+import techtest.originalservice.api.Bet;
+import techtest.originalservice.api.BetCatalog;
+import techtest.originalservice.api.BetsRequest;
+import techtest.originalservice.api.Odds;
+import techtest.originalservice.api.OriginalService.InternalErrorException;
+
+public class SingleFlightOriginalServiceTest {
+    CountingOriginalService delegate;
+    SingleFlightOriginalService service;
+
+    @Before
+    public void before() {
+        delegate = new CountingOriginalService();
+        service = new SingleFlightOriginalService(delegate);
+    }
+
+    @Test
+    public void concurrent_async_callers_share_one_call() {
+        CompletableFuture<Bet[]> upstream = new CompletableFuture<>();
+        delegate.pendingAvailable = upstream;
+
+        CompletableFuture<Bet[]> first = service.availableAsync();
+        CompletableFuture<Bet[]> second = service.availableAsync();
+
+        assertThat(delegate.availableCalls.get(), is(1));
+
+        Bet[] bets = {new Bet(1, "event", "name", new Odds(1, 1))};
+        upstream.complete(bets);
+
+        assertThat(first.join(), sameInstance(bets));
+        assertThat(second.join(), sameInstance(bets));
+    }
+
+    @Test
+    public void concurrent_callers_share_the_error() {
+        CompletableFuture<Bet[]> upstream = new CompletableFuture<>();
+        delegate.pendingAvailable = upstream;
+
+        CompletableFuture<Bet[]> first = service.availableAsync();
+        CompletableFuture<Bet[]> second = service.availableAsync();
+        InternalErrorException error = new InternalErrorException("fail");
+        upstream.completeExceptionally(error);
+
+        for (CompletableFuture<Bet[]> f : new CompletableFuture[] {first, second}) {
+            try {
+                Futures.join(f);
+                fail("Expected exception");
+            } catch (InternalErrorException e) {
+                assertThat(e, sameInstance(error));
+            }
+        }
+    }
+
+    @Test
+    public void concurrent_available_and_catalog_callers_share_one_call() {
+        CompletableFuture<Bet[]> upstream = new CompletableFuture<>();
+        delegate.pendingAvailable = upstream;
+
+        CompletableFuture<Bet[]> available = service.availableAsync();
+        CompletableFuture<BetCatalog<Bet>> first = service.catalogAsync();
+        CompletableFuture<BetCatalog<Bet>> second = service.catalogAsync();
+
+        assertThat(delegate.availableCalls.get(), is(1));
+
+        Bet[] bets = {new Bet(1, "event", "name", new Odds(1, 1))};
+        upstream.complete(bets);
+
+        assertThat(available.join(), sameInstance(bets));
+        assertThat(first.join().get(1), sameInstance(bets[0]));
+        assertThat(second.join(), sameInstance(first.join()));
+    }
+
+    @Test
+    public void nothing_is_kept_after_the_call_completes() {
+        service.available();
+        service.available();
+
+        assertThat(delegate.availableCalls.get(), is(2));
+    }
+
+    @Test
+    public void bets_are_never_coalesced() {
+        BetsRequest req = new BetsRequest(1, new Odds(1, 1), BigDecimal.ONE);
+        service.bets(req);
+        service.bets(req);
+
+        assertThat(delegate.betsCalls.get(), is(2));
+    }
+
+    @Test
+    public void concurrent_blocking_callers_share_one_call() throws Exception {
+        SingleFlight<String> flight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        int callers = 8;
+
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> flight.call(() -> {
+                calls.incrementAndGet();
+                leaderStarted.countDown();
+                await(release);
+                return "result";
+            })));
+            leaderStarted.await(5, TimeUnit.SECONDS);
+
+            for (int i = 1; i < callers; i++) {
+                results.add(executor.submit(() -> flight.call(() -> {
+                    calls.incrementAndGet();
+                    return "not the leader";
+                })));
+            }
+            // Let the followers join before the leader finishes.
+            Thread.sleep(200);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS), is("result"));
+            }
+            assertThat(calls.get(), is(1));
+            assertThat(flight.isInFlight(), is(false));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void error_thrown_by_the_call_is_not_left_in_flight() throws Exception {
+        SingleFlight<String> flight = new SingleFlight<>();
+        AssertionError error = new AssertionError("fail");
+
+        CompletableFuture<String> failed = flight.execute(() -> {
+            throw error;
+        });
+
+        assertThat(failed.isCompletedExceptionally(), is(true));
+        assertThat(flight.isInFlight(), is(false));
+        assertThat(flight.execute(() -> CompletableFuture.completedFuture("result")).get(), is("result"));
+    }
+
+    static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package techtest.originalservice;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class WireFormatTest {
+    static final byte[] JSON = "[{\"bet_id\":1,\"event\":\"World Cup 2018\",\"name\":\"England\",\"odds\":2.75}]"
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void json_unless_smile_or_cbor_is_asked_for_ahead_of_it() {
+        assertThat(WireFormat.negotiate(null), is(WireFormat.JSON));
+        assertThat(WireFormat.negotiate("*/*"), is(WireFormat.JSON));
+        assertThat(WireFormat.negotiate("application/json, application/x-jackson-smile"), is(WireFormat.JSON));
+        assertThat(WireFormat.negotiate("application/x-jackson-smile"), is(WireFormat.SMILE));
+        assertThat(WireFormat.negotiate("application/json;q=0.5, application/cbor"), is(WireFormat.CBOR));
+        assertThat(WireFormat.negotiate("application/cbor;q=0, */*"), is(WireFormat.JSON));
+        assertThat(WireFormat.negotiate("application/cbor;q=x"), is(WireFormat.JSON));
+    }
+
+    @Test
+    public void format_of_a_content_type() {
+        assertThat(WireFormat.ofContentType(null), is(WireFormat.JSON));
+        assertThat(WireFormat.ofContentType("application/json;charset=UTF-8"), is(WireFormat.JSON));
+        assertThat(WireFormat.ofContentType("application/x-jackson-smile"), is(WireFormat.SMILE));
+        assertThat(WireFormat.ofContentType("application/cbor"), is(WireFormat.CBOR));
+    }
+
+    @Test
+    public void transcoded_json_reads_back_the_same_with_exact_decimals() throws Exception {
+        JsonNode expected = new ObjectMapper().readTree(JSON);
+
+        assertThat(WireFormat.JSON.transcode(JSON), sameInstance(JSON));
+        for (WireFormat format : new WireFormat[] {WireFormat.SMILE, WireFormat.CBOR}) {
+            byte[] transcoded = format.transcode(JSON);
+            ObjectMapper mapper = format.newObjectMapper();
+
+            assertThat(format.toString(), mapper.readTree(transcoded).get(0).get("name"),
+                    is(expected.get(0).get("name")));
+            assertThat(format.toString(), mapper.readValue(transcoded, Item[].class)[0].odds,
+                    is(new BigDecimal("2.75")));
+            assertThat(format.toString(), transcoded.length < JSON.length, is(true));
+        }
+    }
+
+    @Test
+    public void cbor_decimal_fractions_keep_their_scale() throws Exception {
+        ObjectMapper cbor = WireFormat.CBOR.newObjectMapper();
+        BigDecimal[] decimals = {new BigDecimal("11.0"), new BigDecimal("-0.001"), new BigDecimal("1E+3")};
+
+        assertThat(cbor.readValue(cbor.writeValueAsBytes(decimals), BigDecimal[].class), is(decimals));
+        // Tag 4, and an (indefinite-length) array of -2 and 275.
+        assertThat(cbor.writeValueAsBytes(new BigDecimal("2.75")),
+                is(new byte[] {(byte) 0xc4, (byte) 0x9f, 0x21, 0x19, 0x01, 0x13, (byte) 0xff}));
+    }
+
+    static class Item {
+        public long bet_id;
+        public String event;
+        public String name;
+        public BigDecimal odds;
+    }
+}
@@ -0,0 +1,123 @@
+package techtest.originalservice.metrics;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import techtest.originalservice.api.OriginalService;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void small_values_have_their_own_buckets() {
+        for (int v = 0; v < LatencyHistogram.SUB_BUCKET_COUNT; v++) {
+            assertThat(LatencyHistogram.bucketIndex(v), is(v));
+            assertThat(LatencyHistogram.bucketUpperBound(v), is((long) v));
+        }
+    }
+
+    @Test
+    public void every_value_is_within_its_bucket_and_buckets_are_contiguous() {
+        long previousUpperBound = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long lowerBound = previousUpperBound + 1;
+            long upperBound = LatencyHistogram.bucketUpperBound(i);
+            assertThat(LatencyHistogram.bucketIndex(lowerBound), is(i));
+            assertThat(LatencyHistogram.bucketIndex(upperBound), is(i));
+            // Relative error is at most 1/32.
+            assertThat((upperBound - lowerBound) * 32 <= lowerBound + 32, is(true));
+            previousUpperBound = upperBound;
+        }
+        assertThat(previousUpperBound, is(LatencyHistogram.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles_are_within_the_bucket_resolution() {
+        LatencyHistogram histogram = new LatencyHistogram("test", 4);
+        for (int v = 1; v <= 10_000; v++) {
+            histogram.recordMicros(v);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(10_000L));
+        assertThat(snapshot.getMaxMicros(), is(10_000L));
+        assertThat(snapshot.getMeanMicros(), is(5000.5));
+        assertWithin(snapshot.getValueAtPercentileMicros(50), 5000);
+        assertWithin(snapshot.getValueAtPercentileMicros(99), 9900);
+        assertThat(snapshot.getValueAtPercentileMicros(100), is(10_000L));
+    }
+
+    @Test
+    public void out_of_range_values_are_clamped() {
+        LatencyHistogram histogram = new LatencyHistogram("test", 1);
+        histogram.recordMicros(-5);
+        histogram.record(1, TimeUnit.DAYS);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(2L));
+        assertThat(snapshot.getValueAtPercentileMicros(50), is(0L));
+        assertThat(snapshot.getMaxMicros(), is(LatencyHistogram.MAX_VALUE));
+    }
+
+    @Test
+    public void empty_histogram_is_all_zeros() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram("test").snapshot();
+        assertThat(snapshot.getCount(), is(0L));
+        assertThat(snapshot.getMeanMicros(), is(0.0));
+        assertThat(snapshot.getValueAtPercentileMicros(99), is(0L));
+    }
+
+    @Test
+    public void concurrent_recording_loses_nothing() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram("test", 2);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100_000; i++) {
+                        histogram.recordMicros(i % 1000);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertThat(snapshot.getCount(), is(800_000L));
+        assertThat(snapshot.getMaxMicros(), is(999L));
+        assertThat(snapshot.getMeanMicros(), is(499.5));
+    }
+
+    @Test
+    public void service_metrics_are_flattened_in_milliseconds() {
+        ServiceMetrics metrics = new ServiceMetrics();
+        metrics.histogram(ServiceMetrics.UPSTREAM_BETS).recordMicros(2000);
+        metrics.getUpstreamErrors().increment(OriginalService.Error.INCORRECT_ODDS);
+        metrics.getResponseErrors().incrementInternal();
+
+        Map<String, Number> map = metrics.toMap();
+        assertThat(map.get("upstream.bets.count"), is((Number) 1L));
+        assertThat(map.get("upstream.bets.p99"), is((Number) 2.0));
+        assertThat(map.get("errors.upstream.incorrect_odds"), is((Number) 1L));
+        assertThat(map.get("errors.upstream.internal"), is((Number) 0L));
+        assertThat(map.get("errors.response.internal"), is((Number) 1L));
+    }
+
+    private static void assertWithin(long actual, long expected) {
+        assertThat("" + actual, Math.abs(actual - expected) <= expected / 32 + 1, is(true));
+    }
+}
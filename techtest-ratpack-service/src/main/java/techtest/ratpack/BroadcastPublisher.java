@@ -0,0 +1,148 @@
+package techtest.ratpack;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.util.Assert;
+
+import techtest.originalservice.DeltaBroadcaster;
+import techtest.originalservice.DeltaBroadcaster.Event;
+
+/**
+ * A reactive streams Publisher of the events of a DeltaBroadcaster, for one Subscriber (e.g. the
+ * response of Ratpack's ServerSentEvents), which gets its own subscription to the broadcaster.
+ *
+ * Events are only taken from the subscription's queue as the Subscriber requests them, so a
+ * Subscriber that stops requesting (e.g. Ratpack's response, while the client's connection isn't
+ * writable) lets its queue fill up, and is dropped by the broadcaster. Its stream is then
+ * completed.
+ *
+ * cancel() cancels the stream from outside, e.g. when the client's connection closes, which the
+ * response doesn't tell the stream about until it next writes.
+ */
+public class BroadcastPublisher implements Publisher<Event> {
+    private final DeltaBroadcaster<?> broadcaster;
+    private final Runnable onSubscribe;
+
+    private volatile Delivery delivery;
+    private volatile boolean cancelled;
+
+    /**
+     * @param onSubscribe
+     *            Run once the Subscriber is subscribed to the broadcaster, e.g. to fetch the
+     *            list if there isn't one yet.
+     */
+    public BroadcastPublisher(DeltaBroadcaster<?> broadcaster, Runnable onSubscribe) {
+        super();
+
+        Assert.notNull(broadcaster, "broadcaster");
+        Assert.notNull(onSubscribe, "onSubscribe");
+
+        this.broadcaster = broadcaster;
+        this.onSubscribe = onSubscribe;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Event> subscriber) {
+        Assert.state(null == delivery, "Only one Subscriber is allowed");
+        Delivery d = new Delivery(subscriber);
+        delivery = d;
+        d.start();
+        if (cancelled) {
+            d.cancel();
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+        Delivery d = delivery;
+        if (null != d) {
+            d.cancel();
+        }
+    }
+
+    /**
+     * Delivers one subscription's events. drain() can be called from any thread (the broadcaster's
+     * publisher, or the Subscriber's), but only one runs at a time, so the Subscriber's signals are
+     * serialized.
+     */
+    private class Delivery implements Subscription {
+        final Subscriber<? super Event> subscriber;
+        final AtomicLong requested = new AtomicLong();
+        final AtomicInteger wip = new AtomicInteger();
+        volatile DeltaBroadcaster<?>.Subscription subscription;
+        volatile boolean dropped;
+        volatile boolean done;
+
+        Delivery(Subscriber<? super Event> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            subscriber.onSubscribe(this);
+            DeltaBroadcaster<?>.Subscription s = broadcaster.subscribe(this::drain, () -> {
+                dropped = true;
+                drain();
+            });
+            subscription = s;
+            if (done) {
+                // Cancelled from onSubscribe().
+                s.cancel();
+                return;
+            }
+            drain();
+            onSubscribe.run();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Requested " + n + " events. Must be positive."));
+                return;
+            }
+            long current;
+            do {
+                current = requested.get();
+            } while (!requested.compareAndSet(current, Long.MAX_VALUE - current < n ? Long.MAX_VALUE : current + n));
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            done = true;
+            DeltaBroadcaster<?>.Subscription s = subscription;
+            if (null != s) {
+                s.cancel();
+            }
+        }
+
+        void drain() {
+            if (0 != wip.getAndIncrement()) {
+                return;
+            }
+            int missed = 1;
+            do {
+                DeltaBroadcaster<?>.Subscription s = subscription;
+                if (null != s) {
+                    while (!done && requested.get() > 0) {
+                        Event event = s.poll();
+                        if (null == event) {
+                            break;
+                        }
+                        requested.decrementAndGet();
+                        subscriber.onNext(event);
+                    }
+                    if (!done && dropped) {
+                        done = true;
+                        subscriber.onComplete();
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+            } while (0 != missed);
+        }
+    }
+}
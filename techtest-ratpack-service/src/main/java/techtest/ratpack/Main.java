@@ -1,12 +1,18 @@
 package techtest.ratpack;
 
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import org.apache.commons.validator.routines.UrlValidator;
@@ -16,16 +22,46 @@ import org.springframework.http.MediaType;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.Value;
 import ratpack.error.internal.DefaultDevelopmentErrorHandler;
+import ratpack.exec.ExecController;
+import ratpack.exec.Execution;
 import ratpack.exec.Promise;
 import ratpack.handling.Context;
+import ratpack.handling.Handler;
 import ratpack.http.client.HttpClient;
+import ratpack.http.client.ReceivedResponse;
+import ratpack.registry.Registry;
 import ratpack.server.RatpackServer;
+import ratpack.server.Service;
+import ratpack.server.StartEvent;
+import ratpack.util.MultiValueMap;
+import ratpack.sse.ServerSentEvents;
+import ratpack.stream.Streams;
+import techtest.originalservice.CatalogHistory;
+import techtest.originalservice.CatalogIndex;
+import techtest.originalservice.DeltaBroadcaster;
+import techtest.originalservice.Futures;
+import techtest.originalservice.Hedger;
+import techtest.originalservice.ResponseCompressor;
+import techtest.originalservice.WireFormat;
+import techtest.originalservice.api.BetCatalog;
+import techtest.originalservice.api.DecimalOdds;
 import techtest.originalservice.api.OriginalService;
+import techtest.originalservice.metrics.ErrorCounters;
+import techtest.originalservice.metrics.LatencyHistogram;
+import techtest.originalservice.metrics.ServiceMetrics;
 
 /**
  * This is a Ratpack application that implements the techtest API.
@@ -36,13 +72,107 @@ import techtest.originalservice.api.OriginalService;
  * techtest-original-service-api project, but no other shared classes.
  * 
  * The app is configured with the "techtest.remoteServiceUrl" system property.
+ * 
+ * The available bets are cached (see PromiseCache) and refreshed in the background, as they are in
+ * myservice's "prod" profile, with the "techtest.availableCache.ttlMillis" (default 1000) and
+ * "techtest.availableCache.maxStaleMillis" (default 10000) system properties.
+ * 
+ * "/available" has the version of the bets (see CatalogHistory) in its "X-Catalog-Version" header,
+ * and "/available?since=version" returns only the bets added, changed and removed since, like
+ * myservice's. Deltas go back "techtest.availableHistory.size" (default 64) changes, and an older
+ * (or unknown) version gets all the bets. The "event", "ids", "limit" and "cursor" parameters ask
+ * for a page of the bets in bet_id order, with the cursor of the next page in "X-Next-Cursor", like
+ * myservice's. Each GET of the bets is indexed (see CatalogIndex) and each bet serialized once, so
+ * a page costs the size of the page.
+ * 
+ * "/available/stream" is a Server-Sent Events stream of the available bets, like myservice's: a
+ * snapshot, and then only the bets that change (see DeltaBroadcaster). The bets are polled every
+ * "techtest.availableStream.pollMillis" (default 1000) while there are clients, and a client that
+ * falls "techtest.availableStream.queueSize" (default 16) events behind is dropped.
+ * 
+ * "/bets/batch" places an array of bets like myservice's MainController does: every bet is
+ * checked against one GET of the available bets, and the valid ones are posted with at most
+ * "techtest.batch.parallelism" (system property, default 8) in flight at once, each in its own
+ * forked execution. Batches of more than "techtest.batch.maxSize" (default 100) bets are rejected
+ * with 413.
+ * 
+ * GET "/available" to the remote service can be hedged (see Hedger) with the system property
+ * "techtest.hedge.enabled=true", tuned with "techtest.hedge.percentile" (default 95),
+ * "techtest.hedge.minDelayMillis" (5), "techtest.hedge.maxDelayMillis" (1000) and
+ * "techtest.hedge.budgetRatio" (0.1). POST "/bets" is never hedged.
+ * 
+ * JSON responses of at least "techtest.compression.minSize" (default 1024) bytes are gzipped for
+ * clients that accept it, and deflated too with "techtest.compression.deflate=true" (see
+ * ResponseCompressor), unless "techtest.compression.enabled=false". "/available" compresses all
+ * the bets once per GET of them, rather than per response.
+ * 
+ * JSON is read straight from the Netty buffers of the requests and remote responses, and written
+ * straight into pooled Netty buffers, with an ObjectReader or ObjectWriter prebuilt for each type.
+ * The ObjectMapper they come from replaces Ratpack's default one in the registry.
+ * 
+ * Clients may also send requests in Smile or CBOR (with the Content-Type header), and ask for
+ * responses in them (with the Accept header), like myservice's (see WireFormat). Each format has
+ * its own readers and writer of the same DTOs. All the bets of "/available" are transcoded once per
+ * GET and format, and pages and deltas for each response.
+ * 
+ * Latency histograms and error counters (see ServiceMetrics) are served as JSON from "/metrics",
+ * with the same names as the myservice app publishes to the actuator (without the "techtest."
+ * prefix).
  */
 public class Main {
     public static void main(String[] args) throws Exception {
         new Main().start();
     }
 
+    static final String VERSION_HEADER = "X-Catalog-Version";
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     String baseUrl;
+    int batchMaxSize;
+    int batchParallelism;
+
+    // null unless hedging is enabled.
+    Hedger availableHedger;
+
+    // Compresses the JSON responses for clients that accept it.
+    ResponseCompressor responseCompressor;
+
+    // The available bets, refreshed in the background. Concurrent refreshes share one GET.
+    PromiseCache<AvailableBets> availableCache;
+
+    // The versions of the available bets, updated by each GET.
+    CatalogHistory<AvailableBet> availableHistory;
+
+    // The "/available/stream" clients, and the poller that publishes to them.
+    DeltaBroadcaster<AvailableBet> availableBroadcaster;
+    long availableStreamPollMillis;
+    Registry serverRegistry;
+    final AtomicBoolean availablePolling = new AtomicBoolean();
+    volatile AvailableBets lastPublishedAvailable;
+
+    // Readers and writers are immutable and thread-safe, and cache their (de)serializers.
+    final ObjectMapper mapper = new ObjectMapper();
+    final ObjectWriter writer = mapper.writer();
+    final ObjectReader remoteAvailableReader = mapper.readerFor(new TypeReference<List<RemoteAvailableBet>>() {
+    });
+    final ObjectWriter remoteBetsRequestWriter = mapper.writerFor(RemoteBetsRequest.class);
+    final ObjectReader remoteBetsResponseReader = mapper.readerFor(RemoteBetsResponse.class);
+    final ObjectReader remoteErrorReader = mapper.readerFor(DefaultError.class);
+
+    // Our clients' requests and responses, in each WireFormat.
+    final Map<WireFormat, FormatCodec> codecs = new EnumMap<>(WireFormat.class);
+
+    {
+        codecs.put(WireFormat.JSON, new FormatCodec(mapper));
+        codecs.put(WireFormat.SMILE, new FormatCodec(WireFormat.SMILE.newObjectMapper()));
+        codecs.put(WireFormat.CBOR, new FormatCodec(WireFormat.CBOR.newObjectMapper()));
+    }
+
+    final ServiceMetrics metrics = new ServiceMetrics();
+    final LatencyHistogram upstreamAvailableLatency = metrics.histogram(ServiceMetrics.UPSTREAM_AVAILABLE);
+    final LatencyHistogram upstreamBetsLatency = metrics.histogram(ServiceMetrics.UPSTREAM_BETS);
+    final ErrorCounters upstreamErrors = metrics.getUpstreamErrors();
+    final ErrorCounters responseErrors = metrics.getResponseErrors();
 
     /**
      * Starts the application.
@@ -59,38 +189,224 @@ public class Main {
             throw new IllegalArgumentException("System property " + baseUrlPropName + " must be a valid URL. Was: " + baseUrl);
         }
 
+        availableCache = new PromiseCache<>(Long.getLong("techtest.availableCache.ttlMillis", 1000),
+                Long.getLong("techtest.availableCache.maxStaleMillis", 10000));
+        availableHistory = new CatalogHistory<>(AvailableBet::getBet_id,
+                Integer.getInteger("techtest.availableHistory.size", 64));
+
+        availableBroadcaster = new DeltaBroadcaster<>(AvailableBet::getBet_id, ob -> {
+            try {
+                return writer.writeValueAsString(ob);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, Integer.getInteger("techtest.availableStream.queueSize", 16), metrics, ServiceMetrics.STREAM_AVAILABLE);
+        availableStreamPollMillis = Long.getLong("techtest.availableStream.pollMillis", 1000);
+
+        responseCompressor = new ResponseCompressor(
+                Boolean.parseBoolean(System.getProperty("techtest.compression.enabled", "true")),
+                Boolean.getBoolean("techtest.compression.deflate"),
+                Integer.getInteger("techtest.compression.minSize", ResponseCompressor.DEFAULT_MIN_SIZE), metrics);
+
+        batchMaxSize = Integer.getInteger("techtest.batch.maxSize", 100);
+        batchParallelism = Integer.getInteger("techtest.batch.parallelism", 8);
+        if (batchParallelism < 1) {
+            throw new IllegalArgumentException("System property techtest.batch.parallelism must be at least 1. Was: "
+                    + batchParallelism);
+        }
+
+        if (Boolean.getBoolean("techtest.hedge.enabled")) {
+            Hedger.Settings hedgeSettings = new Hedger.Settings();
+            hedgeSettings.setEnabled(true);
+            hedgeSettings.setPercentile(Double.parseDouble(System.getProperty("techtest.hedge.percentile", "95")));
+            hedgeSettings.setMinDelayMillis(Long.getLong("techtest.hedge.minDelayMillis", 5));
+            hedgeSettings.setMaxDelayMillis(Long.getLong("techtest.hedge.maxDelayMillis", 1000));
+            hedgeSettings.setBudgetRatio(Double.parseDouble(System.getProperty("techtest.hedge.budgetRatio", "0.1")));
+            availableHedger = new Hedger(hedgeSettings, metrics, ServiceMetrics.UPSTREAM_AVAILABLE);
+        }
+
         RatpackServer.start(spec -> {
             spec.registryOf(rspec -> {
                 // The DefaultDevelopmentErrorHandler outputs a lot more error info.
                 rspec.add(new DefaultDevelopmentErrorHandler());
+                rspec.add(ObjectMapper.class, mapper);
+                rspec.add(Service.class, new Service() {
+                    @Override
+                    public void onStart(StartEvent event) {
+                        startAvailablePoller(event.getRegistry());
+                    }
+                });
             }).handlers(chain -> {
                 // Add the two handlers, using Java 8 method references.
                 // If a request is made for a resource we don't handle, Ratpack will send a HTTP 404
                 // with message "Client error 404".
                 // If the HTTP method is invalid, Ratpack will send a HTTP 405 with message "Client
                 // error 405".
-                chain.get("available", this::handleGetAvailable);
-                chain.post("bets", this::handlePostBets);
+                chain.get("available", timed(ServiceMetrics.ENDPOINT_AVAILABLE, this::handleGetAvailable));
+                chain.get("available/stream", this::handleGetAvailableStream);
+                chain.post("bets", timed(ServiceMetrics.ENDPOINT_BETS, this::handlePostBets));
+                chain.post("bets/batch", timed(ServiceMetrics.ENDPOINT_BETS_BATCH, this::handlePostBetsBatch));
+                chain.get("metrics", ctx -> sendValue(ctx, metrics.toMap()));
             });
         });
     }
 
+    /**
+     * Times the handler, from when it starts to when the response has been sent.
+     */
+    private Handler timed(String histogramName, Handler handler) {
+        LatencyHistogram histogram = metrics.histogram(histogramName);
+        return ctx -> {
+            long start = System.nanoTime();
+            ctx.onClose(outcome -> histogram.recordSince(start));
+            handler.handle(ctx);
+        };
+    }
+
     /**
      * Handler method for available bets.
      * 
-     * Delegates to getAvailable() to get the bets from the remote service.
+     * Delegates to getAvailable() to get the bets from the remote service. With a "since" version,
+     * sends only what has changed since, if the availableHistory still has it. With any of the
+     * "event", "ids", "limit" or "cursor" parameters, sends only that page of the bets.
      * 
      * @param ctx
      * @throws URISyntaxException
      */
     private void handleGetAvailable(Context ctx) throws URISyntaxException {
-        getAvailable(ctx).map(remoteAvailableBets -> {
-            return remoteAvailableBets.stream().map(remoteBet -> {
-                BigDecimal odds = decimalOddsFromFractionalOdds(remoteBet.getOdds());
-                return new AvailableBet(remoteBet.getBet_id(), remoteBet.getEvent(), remoteBet.getName(), odds);
-            }).collect(Collectors.toList());
-        }).then(availableBets -> {
-            sendJson(ctx, availableBets);
+        MultiValueMap<String, String> params = ctx.getRequest().getQueryParams();
+        CatalogIndex.Query query;
+        try {
+            query = CatalogIndex.Query.parse(params.get("event"), params.get("ids"), params.get("limit"),
+                    params.get("cursor"));
+        } catch (IllegalArgumentException e) {
+            responseErrors.incrementInternal();
+            ctx.getResponse().status(400);
+            sendValue(ctx, new DefaultError("Invalid Query"));
+            return;
+        }
+        Long since = CatalogHistory.parseVersion(params.get("since"));
+        getAvailable(ctx).then(availableBets -> {
+            if (!query.isAll()) {
+                sendPage(ctx, availableBets, query);
+                return;
+            }
+            CatalogHistory.Delta<AvailableBet> delta = null == since ? null : availableHistory.since(since);
+            if (null != delta) {
+                ctx.getResponse().getHeaders().set(VERSION_HEADER, Long.toString(delta.getVersion()));
+                sendValue(ctx, delta);
+            } else {
+                ctx.getResponse().getHeaders().set(VERSION_HEADER, Long.toString(availableBets.getVersion()));
+                sendAvailable(ctx, availableBets);
+            }
+        });
+    }
+
+    /**
+     * Sends the page of the available bets that the query asks for, joining the JSON of each bet
+     * (made once per GET) into a pooled buffer, or transcoding it for a binary format.
+     */
+    private void sendPage(Context ctx, AvailableBets availableBets, CatalogIndex.Query query) {
+        CatalogIndex.Page page = availableBets.getIndex().query(query);
+        byte[][] items = availableBets.getItems();
+        int[] positions = page.getPositions();
+        int length = 2 + Math.max(0, positions.length - 1);
+        for (int position : positions) {
+            length += items[position].length;
+        }
+
+        ByteBuf buffer = ctx.get(ByteBufAllocator.class).buffer(length);
+        buffer.writeByte('[');
+        for (int i = 0; i < positions.length; i++) {
+            if (i > 0) {
+                buffer.writeByte(',');
+            }
+            buffer.writeBytes(items[positions[i]]);
+        }
+        buffer.writeByte(']');
+
+        ctx.getResponse().getHeaders().set(VERSION_HEADER, Long.toString(availableBets.getVersion()));
+        if (null != page.getNextCursor()) {
+            ctx.getResponse().getHeaders().set(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        WireFormat format = responseFormat(ctx);
+        if (WireFormat.JSON != format) {
+            byte[] json = new byte[buffer.readableBytes()];
+            buffer.readBytes(json);
+            buffer.release();
+            buffer = Unpooled.wrappedBuffer(format.transcode(json));
+        }
+        send(ctx, format, buffer);
+    }
+
+    /**
+     * Sends all the available bets, whose JSON is made once per GET, and transcoded once per GET
+     * and format, and compressed once per GET, format and encoding.
+     */
+    private void sendAvailable(Context ctx, AvailableBets availableBets) {
+        WireFormat format = responseFormat(ctx);
+        byte[] json = availableBets.getJson();
+        byte[] uncompressed = WireFormat.JSON == format ? json
+                : availableBets.getEncoded().computeIfAbsent(format, f -> f.transcode(json));
+        ResponseCompressor.Encoding encoding = responseCompressor
+                .negotiate(ctx.getRequest().getHeaders().get(HttpHeaders.ACCEPT_ENCODING), uncompressed.length);
+        byte[] body = null == encoding ? uncompressed
+                : availableBets.getCompressed().computeIfAbsent(format.name() + "-" + encoding.getName(),
+                        key -> responseCompressor.compress(uncompressed, encoding));
+        setEncodingHeaders(ctx, encoding);
+        ctx.getResponse().contentType(format.getContentType());
+        ctx.getResponse().send(body);
+    }
+
+    /**
+     * Handler method for the available bets stream.
+     * 
+     * Each client has its own subscription to the availableBroadcaster, whose events are only
+     * taken as the response can write them, and which is cancelled when the client disconnects.
+     * 
+     * @param ctx
+     */
+    private void handleGetAvailableStream(Context ctx) {
+        BroadcastPublisher events = new BroadcastPublisher(availableBroadcaster, () -> {
+            if (!availableBroadcaster.hasCurrent()) {
+                // Rather than wait for the next poll.
+                serverRegistry.get(ExecController.class).getExecutor().execute(this::pollAvailable);
+            }
+        });
+        ctx.getDirectChannelAccess().getChannel().closeFuture().addListener(future -> events.cancel());
+        ctx.render(ServerSentEvents.serverSentEvents(Streams.bindExec(events), e -> {
+            e.id(Long.toString(e.getItem().getId())).event(e.getItem().getName()).data(e.getItem().getData());
+        }));
+    }
+
+    /**
+     * Polls the available bets for the "/available/stream" clients, on the compute threads.
+     */
+    private void startAvailablePoller(Registry registry) {
+        serverRegistry = registry;
+        registry.get(ExecController.class).getExecutor().scheduleWithFixedDelay(this::pollAvailable,
+                availableStreamPollMillis, availableStreamPollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publishes the available bets to the availableBroadcaster, if anyone is subscribed, in a
+     * forked execution. At most one poll is in progress at once. The bets come from the
+     * availableCache, already converted, and are only published when they have been refreshed.
+     */
+    private void pollAvailable() {
+        if (0 == availableBroadcaster.getSubscriberCount() || !availablePolling.compareAndSet(false, true)) {
+            return;
+        }
+        serverRegistry.get(ExecController.class).fork().onError(e -> {
+            // The next poll tries again.
+        }).onComplete(e -> availablePolling.set(false)).start(e -> {
+            getAvailable(serverRegistry).then(availableBets -> {
+                if (availableBets == lastPublishedAvailable && availableBroadcaster.hasCurrent()) {
+                    return;
+                }
+                availableBroadcaster.publish(availableBets.getConverted());
+                lastPublishedAvailable = availableBets;
+            });
         });
     }
 
@@ -102,48 +418,159 @@ public class Main {
      * @param ctx
      */
     private void handlePostBets(Context ctx) {
-        ObjectMapper mapper = ctx.get(ObjectMapper.class);
-
+        ObjectReader betsRequestReader = codecs.get(requestFormat(ctx)).getBetsRequestReader();
         ctx.getRequest().getBody().map(reqbody -> {
-            return mapper.readValue(reqbody.getInputStream(), BetsRequest.class);
+            return betsRequestReader.<BetsRequest> readValue(reqbody.getInputStream());
         }).flatMap(betsRequest -> {
-            return getAvailable(ctx).flatMap(remoteAvailableBets -> {
-                RemoteOdds fractionalOdds = checkOdds(betsRequest.getBet_id(), betsRequest.getOdds(), remoteAvailableBets);
+            return getAvailable(ctx).flatMap(availableBets -> {
+                BetCatalog<RemoteAvailableBet> catalog = availableBets.getCatalog();
+                RemoteOdds fractionalOdds = checkOdds(betsRequest.getBet_id(), betsRequest.getOdds(), catalog);
                 RemoteBetsRequest remoteBetsRequest = new RemoteBetsRequest(betsRequest.getBet_id(), fractionalOdds,
                         betsRequest.getStake());
                 return postBets(ctx, remoteBetsRequest);
             });
         }).onError(OriginalService.BusinessLogicException.class, e -> {
-            sendJson(ctx, new DefaultError(e.getError().getDescription()));
+            responseErrors.increment(e.getError());
+            sendValue(ctx, new DefaultError(e.getError().getDescription()));
         }).onError(e -> {
             // Any other error is treated as INVALID_BET
-            sendJson(ctx, new DefaultError(OriginalService.Error.INVALID_BET_ID.getDescription()));
+            responseErrors.increment(OriginalService.Error.INVALID_BET_ID);
+            sendValue(ctx, new DefaultError(OriginalService.Error.INVALID_BET_ID.getDescription()));
         }).then(remoteBetsResponse -> {
-            sendJson(ctx, convertRemoteBetsResponse(remoteBetsResponse));
+            sendValue(ctx, convertRemoteBetsResponse(remoteBetsResponse));
         });
     }
 
     /**
-     * Uses the Ratpack HttpClient to GET the RemoteAvailableBet objects.
+     * handler method for a batch of bets.
+     * 
+     * The response has a result for each bet, in the order of the request: a BetsResponse if it
+     * was placed, or a BatchItemError if it wasn't.
      * 
      * @param ctx
+     */
+    private void handlePostBetsBatch(Context ctx) {
+        ObjectReader betsRequestsReader = codecs.get(requestFormat(ctx)).getBetsRequestsReader();
+        ctx.getRequest().getBody().map(reqbody -> {
+            return betsRequestsReader.<List<BetsRequest>> readValue(reqbody.getInputStream());
+        }).onError(e -> {
+            // As for "/bets", a request we can't read is treated as INVALID_BET
+            responseErrors.increment(OriginalService.Error.INVALID_BET_ID);
+            sendValue(ctx, new DefaultError(OriginalService.Error.INVALID_BET_ID.getDescription()));
+        }).then(betsRequests -> {
+            if (betsRequests.size() > batchMaxSize) {
+                responseErrors.incrementInternal();
+                ctx.getResponse().status(413);
+                sendValue(ctx, new DefaultError("Batch Too Large"));
+                return;
+            }
+            if (betsRequests.isEmpty()) {
+                sendValue(ctx, betsRequests);
+                return;
+            }
+
+            getAvailable(ctx).flatMap(availableBets -> {
+                BetCatalog<RemoteAvailableBet> catalog = availableBets.getCatalog();
+                CompletableFuture<List<Object>> results = Futures.mapBounded(betsRequests, batchParallelism,
+                        betsRequest -> placeBatchItem(ctx, betsRequest, catalog));
+                return Promise.<List<Object>> of(down -> down.accept(results));
+            }).then(results -> {
+                sendValue(ctx, results);
+            });
+        });
+    }
+
+    /**
+     * Places one bet of a batch, in its own forked execution. Never fails: errors are returned as
+     * the bet's result.
+     */
+    private CompletableFuture<Object> placeBatchItem(Context ctx, BetsRequest betsRequest,
+            BetCatalog<RemoteAvailableBet> catalog) {
+        CompletableFuture<Object> placed = new CompletableFuture<>();
+        try {
+            RemoteOdds fractionalOdds = checkOdds(betsRequest.getBet_id(), betsRequest.getOdds(), catalog);
+            RemoteBetsRequest remoteBetsRequest = new RemoteBetsRequest(betsRequest.getBet_id(), fractionalOdds,
+                    betsRequest.getStake());
+            Execution.fork().onError(placed::completeExceptionally).start(e -> {
+                postBets(ctx, remoteBetsRequest).map(this::convertRemoteBetsResponse)
+                        .onError(placed::completeExceptionally).then(placed::complete);
+            });
+        } catch (RuntimeException e) {
+            placed.completeExceptionally(e);
+        }
+
+        return placed.handle((response, t) -> {
+            if (null == t) {
+                return response;
+            }
+            Throwable cause = Futures.unwrap(t);
+            OriginalService.Error error = OriginalService.Error.UNKNOWN;
+            if (cause instanceof OriginalService.BusinessLogicException) {
+                error = ((OriginalService.BusinessLogicException) cause).getError();
+                responseErrors.increment(error);
+            } else {
+                responseErrors.incrementInternal();
+            }
+            return new BatchItemError(betsRequest.getBet_id(), error.getDescription(), error.getCode());
+        });
+    }
+
+    /**
+     * Uses the Ratpack HttpClient to GET the RemoteAvailableBet objects.
+     * 
+     * The bets are served from the PromiseCache, which refreshes them in the background, so most
+     * requests don't wait for the remote service at all. Requests that do wait (there are no bets
+     * yet, or they are older than "techtest.availableCache.maxStaleMillis") share one GET. The
+     * shared bets must not be modified.
+     * 
+     * If hedging is enabled, the GET is hedged, with each attempt in its own forked
+     * execution and the hedge timer on the compute threads.
+     * 
+     * @param registry
+     *            The request's Context, or the server registry.
      * @return
      * @throws URISyntaxException
      */
-    private Promise<List<RemoteAvailableBet>> getAvailable(Context ctx) throws URISyntaxException {
-        HttpClient httpClient = ctx.get(HttpClient.class);
-        ObjectMapper mapper = ctx.get(ObjectMapper.class);
+    private Promise<AvailableBets> getAvailable(Registry registry) throws URISyntaxException {
+        HttpClient httpClient = registry.get(HttpClient.class);
+        URI uri = new URI(baseUrl + "/available");
+
+        return availableCache.get(() -> {
+            long start = System.nanoTime();
+            Promise<List<RemoteAvailableBet>> available;
+            if (null == availableHedger) {
+                available = fetchAvailable(httpClient, uri);
+            } else {
+                ExecController execController = registry.get(ExecController.class);
+                CompletableFuture<List<RemoteAvailableBet>> hedged = availableHedger.call(() -> {
+                    CompletableFuture<List<RemoteAvailableBet>> attempt = new CompletableFuture<>();
+                    execController.fork().onError(attempt::completeExceptionally).start(e -> {
+                        fetchAvailable(httpClient, uri).onError(attempt::completeExceptionally).then(attempt::complete);
+                    });
+                    return attempt;
+                }, execController.getExecutor());
+                available = Promise.of(down -> down.accept(hedged));
+            }
+            return available.wiretap(result -> upstreamAvailableLatency.recordSince(start)).map(this::newAvailableBets);
+        });
+    }
 
-        return httpClient.get(new URI(baseUrl + "/available")).map(remoteResponse -> {
-            InputStream in = remoteResponse.getBody().getInputStream();
-            return mapper.readValue(in, new TypeReference<List<RemoteAvailableBet>>() {
-            });
+    /**
+     * One GET of the available bets, read straight from the response's buffer.
+     */
+    private Promise<List<RemoteAvailableBet>> fetchAvailable(HttpClient httpClient, URI uri) {
+        return httpClient.get(uri).map(remoteResponse -> {
+            checkRemoteResponse(remoteResponse);
+            return remoteAvailableReader.<List<RemoteAvailableBet>> readValue(remoteResponse.getBody().getInputStream());
         });
     }
 
     /**
      * Uses the Ratpack HttpClient to POST a bet.
      * 
+     * The request is written into a buffer from the HttpClient's (pooled) allocator, and the response
+     * is read straight from its buffer.
+     * 
      * @param ctx
      * @param remoteBetsRequest
      * @return
@@ -151,20 +578,64 @@ public class Main {
      */
     private Promise<RemoteBetsResponse> postBets(Context ctx, RemoteBetsRequest remoteBetsRequest) throws URISyntaxException {
         HttpClient httpClient = ctx.get(HttpClient.class);
-        ObjectMapper mapper = ctx.get(ObjectMapper.class);
 
+        long start = System.nanoTime();
         return httpClient.post(new URI(baseUrl + "/bets"), action -> {
             action.getHeaders().set(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_UTF8_VALUE);
-            action.body(respbody -> {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                mapper.writeValue(baos, remoteBetsRequest);
-                respbody.bytes(baos.toByteArray());
+            action.body(reqbody -> {
+                reqbody.stream(out -> remoteBetsRequestWriter.writeValue(out, remoteBetsRequest));
             });
-        }).map(remoteResponse -> {
-            return mapper.readValue(remoteResponse.getBody().getText(), RemoteBetsResponse.class);
+        }).wiretap(result -> upstreamBetsLatency.recordSince(start)).map(remoteResponse -> {
+            checkRemoteResponse(remoteResponse);
+            return remoteBetsResponseReader.<RemoteBetsResponse> readValue(remoteResponse.getBody().getInputStream());
         });
     }
 
+    /**
+     * Counts an error response from the remote service, and turns it into a BusinessLogicException.
+     * The remote service's HTTP 500s are text, and its other errors are JSON DefaultErrors.
+     */
+    private void checkRemoteResponse(ReceivedResponse remoteResponse) throws Exception {
+        int status = remoteResponse.getStatusCode();
+        if (status < 400) {
+            return;
+        }
+        if (status >= 500) {
+            upstreamErrors.incrementInternal();
+            throw new OriginalService.InternalErrorException("The remote service returned HTTP " + status);
+        }
+
+        String description = remoteErrorReader.<DefaultError> readValue(remoteResponse.getBody().getInputStream()).error;
+        OriginalService.Error error = OriginalService.Error.UNKNOWN;
+        for (OriginalService.Error e : OriginalService.Error.values()) {
+            if (e.getDescription().equals(description)) {
+                error = e;
+            }
+        }
+        upstreamErrors.increment(error);
+        throw new OriginalService.BusinessLogicException(error);
+    }
+
+    /**
+     * Converts the bets of one GET, gives them their version, and serializes each of them for the
+     * pages of "/available".
+     */
+    private AvailableBets newAvailableBets(List<RemoteAvailableBet> remoteBets) throws JsonProcessingException {
+        List<AvailableBet> converted = convertRemoteAvailableBets(remoteBets);
+        byte[][] items = new byte[converted.size()][];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = writer.writeValueAsBytes(converted.get(i));
+        }
+        return new AvailableBets(remoteBets, converted, items, availableHistory.update(converted));
+    }
+
+    private List<AvailableBet> convertRemoteAvailableBets(List<RemoteAvailableBet> remoteBets) {
+        return remoteBets.stream().map(remoteBet -> {
+            BigDecimal odds = decimalOddsFromFractionalOdds(remoteBet.getOdds());
+            return new AvailableBet(remoteBet.getBet_id(), remoteBet.getEvent(), remoteBet.getName(), odds);
+        }).collect(Collectors.toList());
+    }
+
     private BetsResponse convertRemoteBetsResponse(RemoteBetsResponse remoteBetsResponse) {
         // Convert from RemoteBetsResponse to BetsResponse
         BigDecimal bdOdds = decimalOddsFromFractionalOdds(remoteBetsResponse.getOdds());
@@ -177,18 +648,15 @@ public class Main {
      * Lightweight version of MainController.checkOdds(). See that javadoc on that method for more
      * info.
      */
-    private RemoteOdds checkOdds(long betId, BigDecimal submittedOdds, List<RemoteAvailableBet> bets) {
-        Optional<RemoteAvailableBet> betWithId = findAvailableBet(betId, bets);
+    private RemoteOdds checkOdds(long betId, BigDecimal submittedOdds, BetCatalog<RemoteAvailableBet> bets) {
+        Optional<RemoteAvailableBet> betWithId = bets.find(betId);
 
-        // If the betWithId is found, convert its fractional odds to decimal.
-        // Compare these decimal odds to those submitted by the user.
+        // If the betWithId is found, compare its fractional odds to the decimal odds submitted by
+        // the user (see DecimalOdds).
         // If they do not match, throw an INCORRECT_ODDS error.
         Optional<RemoteOdds> odds = betWithId.map(bet -> {
-            BigDecimal bdOdds = decimalOddsFromFractionalOdds(bet.getOdds());
-
-            // compareTo() is safer than equals() as the BigDecimals may have have different scales.
-            // https://docs.oracle.com/javase/8/docs/api/java/math/BigDecimal.html#compareTo-java.math.BigDecimal-
-            if (0 != bdOdds.compareTo(submittedOdds)) {
+            RemoteOdds remoteOdds = bet.getOdds();
+            if (!DecimalOdds.matches(remoteOdds.getNumerator(), remoteOdds.getDenominator(), submittedOdds)) {
                 throw new OriginalService.BusinessLogicException(OriginalService.Error.INCORRECT_ODDS);
             }
 
@@ -200,42 +668,95 @@ public class Main {
         return odds.orElseThrow(() -> new OriginalService.BusinessLogicException(OriginalService.Error.INVALID_BET_ID));
     }
 
-    /**
-     * @param betId
-     *            The betId to look for.
-     * @param bets
-     *            The List of bets to look through.
-     * @return
-     */
-    private Optional<RemoteAvailableBet> findAvailableBet(long betId, List<RemoteAvailableBet> bets) {
-        // Using Java 8 Steams and Optional to align with techtest technical requirements.
-        return bets.stream()
-                // filter to find the matching bet
-                .filter(bet -> bet.getBet_id() == betId)
-                // return the first filtered item (if any)
-                .findFirst();
-    }
-
     private BigDecimal decimalOddsFromFractionalOdds(RemoteOdds odds) {
-        return new BigDecimal(odds.getNumerator()).divide(new BigDecimal(odds.getDenominator())).add(BigDecimal.ONE);
+        return DecimalOdds.toDecimal(odds.getNumerator(), odds.getDenominator());
     }
 
     /**
-     * Serialises a JSON object to the response.
+     * Serialises an object to the response, in the format the client asked for, into a pooled
+     * buffer that Netty releases once it has been written.
      * 
      * @param ctx
      * @param ob
      *            The object to serialise.
      */
-    private static void sendJson(Context ctx, Object ob) {
-        ObjectMapper mapper = ctx.get(ObjectMapper.class);
-        ctx.getResponse().contentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+    private void sendValue(Context ctx, Object ob) {
+        WireFormat format = responseFormat(ctx);
+        ByteBuf buffer = ctx.get(ByteBufAllocator.class).buffer();
         try {
-            ctx.getResponse().send(mapper.writeValueAsBytes(ob));
-        } catch (JsonProcessingException e) {
+            codecs.get(format).getWriter().writeValue(new ByteBufOutputStream(buffer), ob);
+        } catch (IOException e) {
+            buffer.release();
             ctx.getResponse().status(500);
-            ctx.getResponse().send("Error serializing user to JSON");
+            ctx.getResponse().send("Error serializing user to " + format);
+            return;
         }
+        send(ctx, format, buffer);
+    }
+
+    /**
+     * Sends the body in the buffer, compressed if the client accepts it and it is large enough, in
+     * which case the buffer is released here rather than by Netty.
+     */
+    private void send(Context ctx, WireFormat format, ByteBuf buffer) {
+        ResponseCompressor.Encoding encoding = responseCompressor
+                .negotiate(ctx.getRequest().getHeaders().get(HttpHeaders.ACCEPT_ENCODING), buffer.readableBytes());
+        setEncodingHeaders(ctx, encoding);
+        ctx.getResponse().contentType(format.getContentType());
+        if (null == encoding) {
+            ctx.getResponse().send(buffer);
+            return;
+        }
+        byte[] body = new byte[buffer.readableBytes()];
+        buffer.readBytes(body);
+        buffer.release();
+        ctx.getResponse().send(responseCompressor.compress(body, encoding));
+    }
+
+    /**
+     * @return The format of the request body, from its Content-Type.
+     */
+    private static WireFormat requestFormat(Context ctx) {
+        return WireFormat.ofContentType(ctx.getRequest().getHeaders().get(HttpHeaders.CONTENT_TYPE));
+    }
+
+    /**
+     * @return The format the client asked for in the Accept header.
+     */
+    private static WireFormat responseFormat(Context ctx) {
+        return WireFormat.negotiate(ctx.getRequest().getHeaders().get(HttpHeaders.ACCEPT));
+    }
+
+    private void setEncodingHeaders(Context ctx, ResponseCompressor.Encoding encoding) {
+        // The format depends on Accept, and the encoding on Accept-Encoding.
+        ctx.getResponse().getHeaders().set(HttpHeaders.VARY, responseCompressor.isEnabled()
+                ? HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING : HttpHeaders.ACCEPT);
+        if (null != encoding) {
+            ctx.getResponse().getHeaders().set(HttpHeaders.CONTENT_ENCODING, encoding.getName());
+        }
+    }
+
+    /**
+     * @return The JSON items joined into a JSON array.
+     */
+    static byte[] jsonArray(byte[][] items) {
+        int length = 2 + Math.max(0, items.length - 1);
+        for (byte[] item : items) {
+            length += item.length;
+        }
+
+        byte[] json = new byte[length];
+        int pos = 0;
+        json[pos++] = '[';
+        for (byte[] item : items) {
+            if (pos > 1) {
+                json[pos++] = ',';
+            }
+            System.arraycopy(item, 0, json, pos, item.length);
+            pos += item.length;
+        }
+        json[pos] = ']';
+        return json;
     }
 
     /**
@@ -253,10 +774,68 @@ public class Main {
         }
     }
 
+    /**
+     * The readers and writer of our clients' requests and responses in one WireFormat.
+     */
+    @Value
+    static class FormatCodec {
+        ObjectWriter writer;
+        ObjectReader betsRequestReader;
+        ObjectReader betsRequestsReader;
+
+        FormatCodec(ObjectMapper mapper) {
+            this.writer = mapper.writer();
+            this.betsRequestReader = mapper.readerFor(BetsRequest.class);
+            this.betsRequestsReader = mapper.readerFor(new TypeReference<List<BetsRequest>>() {
+            });
+        }
+    }
+
+    /**
+     * The available bets, a catalog of them by bet_id, their converted form and version, and an
+     * index and the JSON of each converted bet for the pages of "/available", built once per GET.
+     * The JSON of all the converted bets is joined from each bet's, and transcoded to each binary
+     * format and compressed in each encoding (keyed by format and encoding) the first time a client
+     * asks for it.
+     */
+    @Value
+    static class AvailableBets {
+        List<RemoteAvailableBet> bets;
+        BetCatalog<RemoteAvailableBet> catalog;
+        List<AvailableBet> converted;
+        CatalogIndex index;
+        byte[][] items;
+        byte[] json;
+        Map<WireFormat, byte[]> encoded;
+        Map<String, byte[]> compressed;
+        long version;
+
+        AvailableBets(List<RemoteAvailableBet> bets, List<AvailableBet> converted, byte[][] items, long version) {
+            this.bets = bets;
+            this.catalog = BetCatalog.of(bets, RemoteAvailableBet::getBet_id);
+            this.converted = converted;
+            this.index = new CatalogIndex(converted, AvailableBet::getBet_id, AvailableBet::getEvent);
+            this.items = items;
+            this.json = jsonArray(items);
+            this.encoded = new ConcurrentHashMap<>();
+            this.compressed = new ConcurrentHashMap<>();
+            this.version = version;
+        }
+    }
+
     // ----------
     // Data Transfer Objects
     // ----------
 
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BatchItemError {
+        long bet_id;
+        String error;
+        int code;
+    }
+
     @Data
     @NoArgsConstructor
     @AllArgsConstructor
@@ -0,0 +1,106 @@
+package techtest.ratpack;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import ratpack.exec.Promise;
+import ratpack.func.Factory;
+import ratpack.util.Exceptions;
+
+/**
+ * Promise-based version of techtest.originalservice.CachingOriginalService: a stale-while-
+ * revalidate cache of a single value.
+ *
+ * <ul>
+ * <li>younger than the refresh-ahead point (three quarters of the TTL) - served from memory.</li>
+ * <li>older than the refresh-ahead point but younger than the max staleness - served from memory,
+ * and a background refresh is started.</li>
+ * <li>older than the max staleness (or no value yet) - the caller waits for a refresh.</li>
+ * </ul>
+ *
+ * Refreshes go through a PromiseSingleFlight, so only one is ever in flight, in its own forked
+ * execution on the event loop, and callers that have to wait for one all wait on the same one
+ * without blocking a thread. A value is published before its refresh completes.
+ *
+ * A failed refresh leaves the current value in place, to be served until it passes the max
+ * staleness. Callers waiting for a refresh get its error, and a failed background refresh is
+ * logged.
+ *
+ * Must be called from within a Ratpack execution.
+ *
+ * @param <T>
+ *            The type of the value. It is shared by every caller, so should be immutable.
+ */
+public class PromiseCache<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(PromiseCache.class);
+
+    private final long refreshAheadMillis;
+    private final long maxStaleMillis;
+    private final LongSupplier clock;
+
+    private final PromiseSingleFlight<Entry<T>> flight = new PromiseSingleFlight<>();
+    private final AtomicReference<Entry<T>> entry = new AtomicReference<>();
+
+    public PromiseCache(long ttlMillis, long maxStaleMillis) {
+        this(ttlMillis, maxStaleMillis, System::currentTimeMillis);
+    }
+
+    PromiseCache(long ttlMillis, long maxStaleMillis, LongSupplier clock) {
+        super();
+
+        Assert.isTrue(ttlMillis > 0, "ttlMillis must be greater than zero");
+        Assert.isTrue(maxStaleMillis >= ttlMillis, "maxStaleMillis cannot be less than ttlMillis");
+        Assert.notNull(clock, "clock");
+
+        this.refreshAheadMillis = ttlMillis - ttlMillis / 4;
+        this.maxStaleMillis = maxStaleMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @param fetch
+     *            Creates the Promise for a fresh value. Only invoked for a refresh.
+     * @return a Promise for the current value.
+     */
+    public Promise<T> get(Factory<Promise<T>> fetch) {
+        Entry<T> current = entry.get();
+        long now = clock.getAsLong();
+
+        if (null == current || now - current.fetchedAt > maxStaleMillis) {
+            return refresh(fetch).map(e -> e.value);
+        }
+
+        if (now - current.fetchedAt > refreshAheadMillis) {
+            // The shared refresh starts now, whether or not anyone subscribes to its Promise, so
+            // nobody may see its error but the log.
+            refresh(() -> fetch.create().mapError(t -> {
+                LOG.warn("Background refresh failed", t);
+                throw Exceptions.toException(t);
+            }));
+        }
+
+        return Promise.value(current.value);
+    }
+
+    private Promise<Entry<T>> refresh(Factory<Promise<T>> fetch) {
+        return flight.execute(() -> fetch.create().map(value -> {
+            Entry<T> fetched = new Entry<>(value, clock.getAsLong());
+            entry.set(fetched);
+            return fetched;
+        }));
+    }
+
+    private static class Entry<T> {
+        final T value;
+        final long fetchedAt;
+
+        Entry(T value, long fetchedAt) {
+            this.value = value;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package techtest.ratpack;
+
+import java.util.concurrent.CompletableFuture;
+
+import ratpack.exec.Execution;
+import ratpack.exec.Promise;
+import ratpack.func.Factory;
+import techtest.originalservice.SingleFlight;
+
+/**
+ * Promise-based version of techtest.originalservice.SingleFlight.
+ *
+ * The first caller's Promise is subscribed in its own forked execution, so the shared call is not
+ * tied to the lifetime of the request that happened to start it. Every caller (including the first)
+ * gets a Promise that resumes in the caller's own execution when the shared call completes.
+ *
+ * Must be called from within a Ratpack execution.
+ *
+ * @param <T>
+ *            The type of the result.
+ */
+public class PromiseSingleFlight<T> {
+    private final SingleFlight<T> flight = new SingleFlight<>();
+
+    /**
+     * @param call
+     *            Creates the Promise for the call. Only invoked by the leader.
+     * @return a Promise for the shared result.
+     */
+    public Promise<T> execute(Factory<Promise<T>> call) {
+        CompletableFuture<T> shared = flight.execute(() -> {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            Execution.fork().onError(result::completeExceptionally).start(e -> {
+                call.create().onError(result::completeExceptionally).then(result::complete);
+            });
+            return result;
+        });
+
+        return Promise.of(down -> down.accept(shared));
+    }
+}
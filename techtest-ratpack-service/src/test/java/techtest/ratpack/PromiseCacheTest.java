@@ -0,0 +1,145 @@
+package techtest.ratpack;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ratpack.exec.Promise;
+import ratpack.test.exec.ExecHarness;
+import techtest.ratpack.PromiseSingleFlightTest.PendingCall;
+
+/**
+ * These tests drive PromiseCache with a fake clock, and complete each fetch when they say so (see
+ * PendingCall), so that expiry and refreshes happen exactly when the test says so. Each get() is in
+ * its own execution of an ExecHarness.
+ */
+public class PromiseCacheTest {
+    static final long TIMEOUT_SECONDS = PromiseSingleFlightTest.TIMEOUT_SECONDS;
+
+    long ttl = 1000;
+    long maxStale = 5000;
+
+    volatile long now;
+    ExecHarness harness = ExecHarness.harness();
+    PendingCall fetch = new PendingCall();
+    PromiseCache<String> cache = new PromiseCache<>(ttl, maxStale, () -> now);
+
+    @After
+    public void after() {
+        harness.close();
+    }
+
+    @Test
+    public void first_get_waits_for_a_fetch() throws Exception {
+        CompletableFuture<String> first = get();
+        assertThat(first.isDone(), is(false));
+
+        fetch.next().success("first");
+
+        assertThat(first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("first"));
+    }
+
+    @Test
+    public void fresh_value_is_served_from_memory() throws Exception {
+        prime("first");
+        now = ttl / 2;
+
+        assertThat(get().get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("first"));
+        assertThat(fetch.calls.get(), is(1));
+    }
+
+    @Test
+    public void stale_value_within_the_ttl_is_served_and_refreshed_in_the_background() throws Exception {
+        prime("first");
+        now = ttl - 1;
+
+        // Served without waiting for the refresh, which hasn't completed.
+        assertThat(get().get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("first"));
+        assertThat(get().get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("first"));
+
+        // Only one refresh was started.
+        fetch.next().success("second");
+        assertThat(fetch.calls.get(), is(2));
+    }
+
+    @Test
+    public void value_past_max_staleness_waits_for_a_refresh() throws Exception {
+        prime("first");
+        now = maxStale + 1;
+
+        CompletableFuture<String> second = get();
+        assertThat(second.isDone(), is(false));
+
+        fetch.next().success("second");
+
+        assertThat(second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("second"));
+        assertThat(fetch.calls.get(), is(2));
+    }
+
+    @Test
+    public void concurrent_gets_share_one_refresh() throws Exception {
+        List<CompletableFuture<String>> gets = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            gets.add(get());
+        }
+
+        fetch.next().success("first");
+
+        for (CompletableFuture<String> get : gets) {
+            assertThat(get.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("first"));
+        }
+        assertThat(fetch.calls.get(), is(1));
+    }
+
+    @Test
+    public void failed_refresh_keeps_the_current_value() throws Exception {
+        prime("first");
+        now = ttl - 1;
+
+        assertThat(get().get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("first"));
+        fetch.next().error(new IllegalStateException("fail"));
+
+        assertThat(get().get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("first"));
+    }
+
+    @Test
+    public void failed_refresh_fails_the_gets_waiting_for_it() throws Exception {
+        CompletableFuture<String> first = get();
+        IllegalStateException error = new IllegalStateException("fail");
+
+        fetch.next().error(error);
+
+        assertThat(PromiseSingleFlightTest.failureOf(first), sameInstance(error));
+    }
+
+    void prime(String value) throws Exception {
+        CompletableFuture<String> first = get();
+        fetch.next().success(value);
+        assertThat(first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is(value));
+    }
+
+    /**
+     * Calls get() in a new execution, and returns once it has been called.
+     *
+     * @return The result of the Promise it returned.
+     */
+    CompletableFuture<String> get() throws InterruptedException {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        CountDownLatch called = new CountDownLatch(1);
+        harness.getController().fork().onError(result::completeExceptionally).start(e -> {
+            Promise<String> promise = cache.get(fetch);
+            called.countDown();
+            promise.onError(result::completeExceptionally).then(result::complete);
+        });
+        assertThat(called.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), is(true));
+        return result;
+    }
+}
@@ -0,0 +1,133 @@
+package techtest.ratpack;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import ratpack.exec.Downstream;
+import ratpack.exec.Promise;
+import ratpack.func.Factory;
+import ratpack.test.exec.ExecHarness;
+
+/**
+ * Each caller is in its own execution of an ExecHarness, and the shared call's Promise only
+ * completes when the test says so (see PendingCall).
+ */
+public class PromiseSingleFlightTest {
+    static final long TIMEOUT_SECONDS = 5;
+
+    ExecHarness harness = ExecHarness.harness();
+    PendingCall call = new PendingCall();
+    PromiseSingleFlight<String> flight = new PromiseSingleFlight<>();
+
+    @After
+    public void after() {
+        harness.close();
+    }
+
+    @Test
+    public void concurrent_callers_share_one_call() throws Exception {
+        CompletableFuture<String> first = execute();
+        CompletableFuture<String> second = execute();
+        CompletableFuture<String> third = execute();
+
+        call.next().success("result");
+
+        assertThat(first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("result"));
+        assertThat(second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("result"));
+        assertThat(third.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("result"));
+        assertThat(call.calls.get(), is(1));
+    }
+
+    @Test
+    public void concurrent_callers_share_the_error_and_it_is_not_remembered() throws Exception {
+        CompletableFuture<String> first = execute();
+        CompletableFuture<String> second = execute();
+
+        IllegalStateException error = new IllegalStateException("fail");
+        call.next().error(error);
+
+        assertThat(failureOf(first), sameInstance(error));
+        assertThat(failureOf(second), sameInstance(error));
+
+        CompletableFuture<String> retried = execute();
+        call.next().success("result");
+
+        assertThat(retried.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("result"));
+        assertThat(call.calls.get(), is(2));
+    }
+
+    @Test
+    public void call_after_completion_starts_a_new_one() throws Exception {
+        CompletableFuture<String> first = execute();
+        call.next().success("first");
+        assertThat(first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("first"));
+
+        CompletableFuture<String> second = execute();
+        call.next().success("second");
+
+        assertThat(second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), is("second"));
+        assertThat(call.calls.get(), is(2));
+    }
+
+    /**
+     * Calls execute() in a new execution, and returns once it has been called.
+     *
+     * @return The result of the Promise it returned.
+     */
+    CompletableFuture<String> execute() throws InterruptedException {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        CountDownLatch called = new CountDownLatch(1);
+        harness.getController().fork().onError(result::completeExceptionally).start(e -> {
+            Promise<String> promise = flight.execute(call);
+            called.countDown();
+            promise.onError(result::completeExceptionally).then(result::complete);
+        });
+        assertThat(called.await(TIMEOUT_SECONDS, TimeUnit.SECONDS), is(true));
+        return result;
+    }
+
+    static Throwable failureOf(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("Expected exception");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    /**
+     * A call whose Promises wait until the test takes their Downstream with next() and completes
+     * it.
+     */
+    static class PendingCall implements Factory<Promise<String>> {
+        final AtomicInteger calls = new AtomicInteger();
+        final BlockingQueue<Downstream<? super String>> pending = new LinkedBlockingQueue<>();
+
+        @Override
+        public Promise<String> create() {
+            calls.incrementAndGet();
+            return Promise.<String> of(pending::add);
+        }
+
+        /**
+         * @return The Downstream of the next Promise that is waiting, once there is one.
+         */
+        Downstream<? super String> next() throws InterruptedException {
+            Downstream<? super String> downstream = pending.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertThat(downstream, notNullValue());
+            return downstream;
+        }
+    }
+}
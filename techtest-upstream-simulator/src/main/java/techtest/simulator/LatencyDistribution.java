@@ -0,0 +1,96 @@
+package techtest.simulator;
+
+import java.util.Random;
+
+/**
+ * How long the simulator waits before answering a request.
+ * 
+ * Distributions can be written as strings, for system properties:
+ * 
+ * <ul>
+ * <li>"none" - no added latency.</li>
+ * <li>"fixed:20" - always 20ms.</li>
+ * <li>"uniform:5-50" - between 5ms and 50ms.</li>
+ * <li>"normal:30,10" - mean 30ms, standard deviation 10ms (never less than 0).</li>
+ * <li>"lognormal:20,0.8" - median 20ms, sigma 0.8. A long tail, which is closer to what real
+ * services do.</li>
+ * </ul>
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+    /**
+     * @param random
+     *            Source of randomness. Only ever used by one thread at a time.
+     * @return The next latency in milliseconds.
+     */
+    long nextMillis(Random random);
+
+    static LatencyDistribution none() {
+        return random -> 0;
+    }
+
+    static LatencyDistribution fixed(long millis) {
+        checkArgument(millis >= 0, "millis cannot be negative");
+        return random -> millis;
+    }
+
+    static LatencyDistribution uniform(long minMillis, long maxMillis) {
+        checkArgument(minMillis >= 0 && maxMillis >= minMillis, "need 0 <= minMillis <= maxMillis");
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis + 1));
+    }
+
+    static LatencyDistribution normal(double meanMillis, double stdDevMillis) {
+        checkArgument(meanMillis >= 0 && stdDevMillis >= 0, "meanMillis and stdDevMillis cannot be negative");
+        return random -> Math.max(0, Math.round(meanMillis + random.nextGaussian() * stdDevMillis));
+    }
+
+    static LatencyDistribution logNormal(double medianMillis, double sigma) {
+        checkArgument(medianMillis >= 0 && sigma >= 0, "medianMillis and sigma cannot be negative");
+        double mu = Math.log(medianMillis);
+        return random -> Math.round(Math.exp(mu + random.nextGaussian() * sigma));
+    }
+
+    /**
+     * @param spec
+     *            See the interface javadoc.
+     */
+    static LatencyDistribution parse(String spec) {
+        String s = spec.trim().toLowerCase();
+        try {
+            if (s.isEmpty() || s.equals("none")) {
+                return none();
+            }
+            int colon = s.indexOf(':');
+            checkArgument(colon > 0, "Expected name:args");
+            String name = s.substring(0, colon);
+            String args = s.substring(colon + 1);
+            switch (name) {
+            case "fixed":
+                return fixed(Long.parseLong(args));
+            case "uniform": {
+                String[] parts = args.split("-");
+                checkArgument(2 == parts.length, "Expected uniform:min-max");
+                return uniform(Long.parseLong(parts[0].trim()), Long.parseLong(parts[1].trim()));
+            }
+            case "normal":
+            case "lognormal": {
+                String[] parts = args.split(",");
+                checkArgument(2 == parts.length, "Expected " + name + ":a,b");
+                double a = Double.parseDouble(parts[0].trim());
+                double b = Double.parseDouble(parts[1].trim());
+                return name.equals("normal") ? normal(a, b) : logNormal(a, b);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown distribution " + name);
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid latency distribution \"" + spec + "\": " + e.getMessage(), e);
+        }
+    }
+
+    static void checkArgument(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+}
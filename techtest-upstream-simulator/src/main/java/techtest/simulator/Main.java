@@ -0,0 +1,45 @@
+package techtest.simulator;
+
+/**
+ * Runs the UpstreamSimulator standalone.
+ * 
+ * Configured with "techtest.simulator.*" system properties, named after the fields of
+ * UpstreamSimulator.Settings. E.g.
+ * 
+ * <pre>
+ * java -Dtechtest.simulator.port=8090
+ *      -Dtechtest.simulator.latency=lognormal:20,0.5
+ *      -Dtechtest.simulator.errorRate500=0.01
+ *      -jar target/techtest-upstream-simulator-0.0.1-SNAPSHOT-exec.jar
+ * </pre>
+ */
+public class Main {
+    static final String PREFIX = "techtest.simulator.";
+
+    public static void main(String[] args) throws Exception {
+        UpstreamSimulator.Settings settings = new UpstreamSimulator.Settings();
+        settings.setHost(System.getProperty(PREFIX + "host", settings.getHost()));
+        settings.setPort(Integer.getInteger(PREFIX + "port", 8090));
+        settings.setBacklog(Integer.getInteger(PREFIX + "backlog", settings.getBacklog()));
+        settings.setStubFileFolder(System.getProperty(PREFIX + "stubFileFolder", settings.getStubFileFolder()));
+        settings.setLatency(System.getProperty(PREFIX + "latency", settings.getLatency()));
+        settings.setErrorRate418(doubleProperty("errorRate418", settings.getErrorRate418()));
+        settings.setErrorRate500(doubleProperty("errorRate500", settings.getErrorRate500()));
+        settings.setMaxConnections(Integer.getInteger(PREFIX + "maxConnections", settings.getMaxConnections()));
+        settings.setCatalogSize(Integer.getInteger(PREFIX + "catalogSize", settings.getCatalogSize()));
+
+        UpstreamSimulator simulator = new UpstreamSimulator(settings);
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::close));
+
+        System.out.println("Upstream simulator listening on " + simulator.getBaseUrl() + " with " + settings);
+        System.out.println(simulator.getCatalogSize() + " bets available");
+
+        // The HTTP server's threads are daemons, so keep the JVM alive until it is killed.
+        Thread.currentThread().join();
+    }
+
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(PREFIX + name);
+        return null == value ? defaultValue : Double.parseDouble(value);
+    }
+}
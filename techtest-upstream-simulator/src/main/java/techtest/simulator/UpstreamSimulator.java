@@ -0,0 +1,352 @@
+package techtest.simulator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.Data;
+
+/**
+ * A fake of the remote service (http://skybettechtestapi.herokuapp.com), for load testing the
+ * three service implementations without the real thing.
+ *
+ * It serves "/available" and "/bets" like the remote service does, from the stub files in the
+ * techtest-original-service-client project (which are copied into this jar), and validates bets
+ * against the catalog the same way: 418 with a JSON error for business errors, and 500 with a text
+ * body for a bet_id that is zero or negative.
+ *
+ * On top of that it can add, per request:
+ *
+ * <ul>
+ * <li>latency, from a LatencyDistribution.</li>
+ * <li>random 418 "Incorrect Odds" errors (as if the price had changed) and random 500 errors.</li>
+ * </ul>
+ *
+ * Requests are handled by a fixed pool of maxConnections threads, and latency is spent on those
+ * threads, so at most maxConnections requests are in progress at once and the rest queue, as they
+ * would for a real server with that many workers.
+ *
+ * The catalog can be made bigger than the stub file with catalogSize, by repeating the stub bets
+ * with new ids.
+ *
+ * It uses the JDK's built-in HTTP server so that it can be embedded in tests and benchmarks without
+ * extra dependencies. See Main to run it standalone.
+ */
+public class UpstreamSimulator implements Closeable {
+    static final String CLASSPATH_STUB_FOLDER = "/techtest/simulator/stub/";
+    static final String INTERNAL_SERVER_ERROR = "Internal Server Error";
+    static final String APPLICATION_JSON = "application/json; charset=utf-8";
+    static final String TEXT_PLAIN = "text/plain; charset=utf-8";
+
+    private final Settings settings;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final LatencyDistribution latency;
+    private final HttpServer server;
+    private final ExecutorService workers;
+
+    private final Map<Long, JsonNode> catalog = new HashMap<>();
+    private final byte[] availableJson;
+    private final AtomicLong nextTransactionId = new AtomicLong(314442);
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicInteger inProgress = new AtomicInteger();
+    private final AtomicInteger maxInProgress = new AtomicInteger();
+
+    /**
+     * Creates and starts the simulator.
+     */
+    public UpstreamSimulator(Settings settings) throws IOException {
+        super();
+
+        checkArgument(null != settings, "settings");
+        checkArgument(settings.getMaxConnections() > 0, "maxConnections must be greater than zero");
+        checkArgument(settings.getCatalogSize() >= 0, "catalogSize cannot be negative");
+        checkArgument(settings.getErrorRate418() >= 0 && settings.getErrorRate500() >= 0
+                && settings.getErrorRate418() + settings.getErrorRate500() <= 1, "error rates must add up to at most 1");
+
+        this.settings = settings;
+        this.latency = LatencyDistribution.parse(settings.getLatency());
+
+        ArrayNode bets = buildCatalog((ArrayNode) mapper.readTree(readStubFile("available")), settings.getCatalogSize());
+        for (JsonNode bet : bets) {
+            catalog.putIfAbsent(bet.get("bet_id").asLong(), bet);
+        }
+        this.availableJson = mapper.writeValueAsBytes(bets);
+
+        this.workers = Executors.newFixedThreadPool(settings.getMaxConnections(), new ThreadFactoryWithPrefix());
+        this.server = HttpServer.create(new InetSocketAddress(settings.getHost(), settings.getPort()), settings.getBacklog());
+        this.server.setExecutor(workers);
+        this.server.createContext("/", this::handle);
+        this.server.start();
+    }
+
+    /**
+     * @return The base URL of the simulator, e.g. "http://localhost:8090". Pass this as the
+     *         "techtest.remoteServiceUrl" of the service under test.
+     */
+    public String getBaseUrl() {
+        return "http://" + settings.getHost() + ":" + getPort();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public int getCatalogSize() {
+        return catalog.size();
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getInjectedErrorCount() {
+        return injectedErrors.get();
+    }
+
+    /**
+     * @return The most requests that have been in progress at once.
+     */
+    public int getMaxInProgress() {
+        return maxInProgress.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int current = inProgress.incrementAndGet();
+        maxInProgress.accumulateAndGet(current, Math::max);
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = readFully(in);
+            sleep(latency.nextMillis(ThreadLocalRandom.current()));
+            respond(exchange, body);
+        } catch (RuntimeException e) {
+            send(exchange, 500, TEXT_PLAIN, INTERNAL_SERVER_ERROR);
+        } finally {
+            inProgress.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    private void respond(HttpExchange exchange, byte[] body) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        boolean available = "/available".equals(path) && "GET".equals(method);
+        boolean bets = "/bets".equals(path) && "POST".equals(method);
+
+        if (!available && !bets) {
+            // The remote service returns a String of the form "Cannot $METHOD $PATH\n".
+            send(exchange, 404, TEXT_PLAIN, "Cannot " + method + " " + path + "\n");
+            return;
+        }
+
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < settings.getErrorRate500()) {
+            injectedErrors.incrementAndGet();
+            send(exchange, 500, TEXT_PLAIN, INTERNAL_SERVER_ERROR);
+            return;
+        }
+        if (bets && roll < settings.getErrorRate500() + settings.getErrorRate418()) {
+            injectedErrors.incrementAndGet();
+            sendError(exchange, "Incorrect Odds");
+            return;
+        }
+
+        if (available) {
+            send(exchange, 200, APPLICATION_JSON, availableJson);
+        } else {
+            placeBet(exchange, body);
+        }
+    }
+
+    /**
+     * Validates the bet the same way the remote service does.
+     */
+    private void placeBet(HttpExchange exchange, byte[] body) throws IOException {
+        JsonNode request;
+        try {
+            request = mapper.readTree(body);
+        } catch (IOException e) {
+            sendError(exchange, "Invalid Bet ID");
+            return;
+        }
+
+        JsonNode betId = null == request ? null : request.get("bet_id");
+        if (null == betId || !betId.canConvertToLong()) {
+            sendError(exchange, "Invalid Bet ID");
+            return;
+        }
+        if (betId.asLong() <= 0) {
+            send(exchange, 500, TEXT_PLAIN, INTERNAL_SERVER_ERROR);
+            return;
+        }
+        JsonNode bet = catalog.get(betId.asLong());
+        if (null == bet) {
+            sendError(exchange, "Invalid Bet ID");
+            return;
+        }
+
+        JsonNode odds = request.get("odds");
+        if (null == odds || !odds.path("numerator").canConvertToInt() || !odds.path("denominator").canConvertToInt()
+                || odds.path("numerator").asInt() < 1 || odds.path("denominator").asInt() < 1) {
+            sendError(exchange, "Invalid Odds");
+            return;
+        }
+        if (!odds.equals(bet.get("odds"))) {
+            sendError(exchange, "Incorrect Odds");
+            return;
+        }
+
+        JsonNode stake = request.get("stake");
+        if (null == stake || !stake.isNumber() || stake.decimalValue().signum() <= 0) {
+            sendError(exchange, "Invalid Stake");
+            return;
+        }
+
+        ObjectNode response = ((ObjectNode) bet).deepCopy();
+        response.set("stake", stake);
+        response.put("transaction_id", nextTransactionId.getAndIncrement());
+        send(exchange, 201, APPLICATION_JSON, mapper.writeValueAsBytes(response));
+    }
+
+    private void sendError(HttpExchange exchange, String error) throws IOException {
+        ObjectNode json = mapper.createObjectNode();
+        json.put("error", error);
+        send(exchange, 418, APPLICATION_JSON, mapper.writeValueAsBytes(json));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        send(exchange, status, contentType, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Repeats the stub bets, with new ids and events, until there are catalogSize of them. A
+     * catalogSize of 0 means just the stub bets.
+     */
+    static ArrayNode buildCatalog(ArrayNode stubBets, int catalogSize) {
+        if (0 == catalogSize) {
+            return stubBets;
+        }
+
+        ArrayNode bets = stubBets.arrayNode();
+        for (int i = 0; i < catalogSize; i++) {
+            ObjectNode bet = ((ObjectNode) stubBets.get(i % stubBets.size())).deepCopy();
+            int round = i / stubBets.size();
+            bet.put("bet_id", i + 1);
+            if (round > 0) {
+                bet.put("event", bet.get("event").asText() + " #" + round);
+            }
+            bets.add(bet);
+        }
+        return bets;
+    }
+
+    private byte[] readStubFile(String name) throws IOException {
+        if (null != settings.getStubFileFolder()) {
+            return Files.readAllBytes(Paths.get(settings.getStubFileFolder(), name));
+        }
+        try (InputStream in = UpstreamSimulator.class.getResourceAsStream(CLASSPATH_STUB_FOLDER + name)) {
+            if (null == in) {
+                throw new IOException("Stub file " + name + " not found on the classpath");
+            }
+            return readFully(in);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while (-1 != (n = in.read(buf))) {
+            out.write(buf, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void checkArgument(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private static class ThreadFactoryWithPrefix implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "upstream-simulator-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    /**
+     * Simulator settings. The defaults behave like the stub files, with no latency or errors.
+     */
+    @Data
+    public static class Settings {
+        private String host = "localhost";
+        // 0 picks a free port.
+        private int port = 0;
+        private int backlog = 1024;
+        // null means the stub files bundled in this jar.
+        private String stubFileFolder;
+        // See LatencyDistribution.parse().
+        private String latency = "none";
+        // Fraction of POST /bets answered with 418 "Incorrect Odds", regardless of the request.
+        private double errorRate418;
+        // Fraction of requests answered with 500 "Internal Server Error".
+        private double errorRate500;
+        // Requests handled at once. The rest queue.
+        private int maxConnections = 64;
+        // 0 means the bets in the stub file.
+        private int catalogSize;
+    }
+}
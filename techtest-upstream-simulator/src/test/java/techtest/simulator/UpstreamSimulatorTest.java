@@ -0,0 +1,175 @@
+package techtest.simulator;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+
+import techtest.originalservice.OriginalServiceClient;
+import techtest.originalservice.api.Bet;
+import techtest.originalservice.api.BetsRequest;
+import techtest.originalservice.api.BetsResponse;
+import techtest.originalservice.api.Odds;
+import techtest.originalservice.api.OriginalService;
+import techtest.originalservice.api.OriginalService.BusinessLogicException;
+import techtest.originalservice.api.OriginalService.InternalErrorException;
+
+/**
+ * Drives the UpstreamSimulator with the real OriginalServiceClient, so that we know the simulator
+ * looks like the remote service to our code.
+ */
+public class UpstreamSimulatorTest {
+    UpstreamSimulator simulator;
+    OriginalService client;
+
+    @After
+    public void after() {
+        if (null != simulator) {
+            simulator.close();
+        }
+    }
+
+    void start(UpstreamSimulator.Settings settings) throws Exception {
+        simulator = new UpstreamSimulator(settings);
+        client = new OriginalServiceClient(simulator.getBaseUrl(), new RestTemplate());
+    }
+
+    @Test
+    public void serves_the_stub_bets() throws Exception {
+        start(new UpstreamSimulator.Settings());
+
+        Bet[] bets = client.available();
+
+        assertThat(bets.length, is(6));
+        assertThat(bets[0], is(new Bet(1, "World Cup 2018", "England", new Odds(10, 1))));
+    }
+
+    @Test
+    public void places_a_bet_at_the_right_odds() throws Exception {
+        start(new UpstreamSimulator.Settings());
+
+        BetsResponse response = client.bets(new BetsRequest(4, new Odds(7, 4), BigDecimal.TEN));
+
+        assertThat(response.getBetId(), is(4L));
+        assertThat(response.getName(), is("Labour"));
+        assertThat(response.getStake(), is(BigDecimal.TEN));
+        assertThat(response.getTransactionId(), is(314442L));
+    }
+
+    @Test
+    public void rejects_bets_like_the_remote_service() throws Exception {
+        start(new UpstreamSimulator.Settings());
+
+        assertBusinessError(new BetsRequest(1, new Odds(1, 1), BigDecimal.TEN), OriginalService.Error.INCORRECT_ODDS);
+        assertBusinessError(new BetsRequest(99, new Odds(10, 1), BigDecimal.TEN), OriginalService.Error.INVALID_BET_ID);
+        assertBusinessError(new BetsRequest(1, new Odds(10, 1), BigDecimal.ZERO), OriginalService.Error.INVALID_STAKE);
+        try {
+            client.bets(new BetsRequest(0, new Odds(10, 1), BigDecimal.TEN));
+            fail("Expected exception");
+        } catch (InternalErrorException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void catalog_can_be_bigger_than_the_stub_file() throws Exception {
+        UpstreamSimulator.Settings settings = new UpstreamSimulator.Settings();
+        settings.setCatalogSize(1000);
+        start(settings);
+
+        Bet[] bets = client.available();
+
+        assertThat(bets.length, is(1000));
+        assertThat(bets[999].getBetId(), is(1000L));
+        assertThat(bets[6].getEvent(), is("World Cup 2018 #1"));
+        assertThat(client.bets(new BetsRequest(1000, bets[999].getOdds(), BigDecimal.ONE)).getBetId(), is(1000L));
+    }
+
+    @Test
+    public void errors_are_injected_at_the_configured_rate() throws Exception {
+        UpstreamSimulator.Settings settings = new UpstreamSimulator.Settings();
+        settings.setErrorRate500(1);
+        start(settings);
+
+        try {
+            client.available();
+            fail("Expected exception");
+        } catch (InternalErrorException e) {
+            assertThat(simulator.getInjectedErrorCount(), is(1L));
+        }
+    }
+
+    @Test
+    public void business_errors_are_only_injected_into_bets() throws Exception {
+        UpstreamSimulator.Settings settings = new UpstreamSimulator.Settings();
+        settings.setErrorRate418(1);
+        start(settings);
+
+        assertThat(client.available().length, is(6));
+        assertBusinessError(new BetsRequest(1, new Odds(10, 1), BigDecimal.TEN), OriginalService.Error.INCORRECT_ODDS);
+    }
+
+    @Test
+    public void latency_is_added_and_requests_beyond_max_connections_queue() throws Exception {
+        UpstreamSimulator.Settings settings = new UpstreamSimulator.Settings();
+        settings.setLatency("fixed:100");
+        settings.setMaxConnections(2);
+        start(settings);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            long start = System.nanoTime();
+            Future<?>[] futures = new Future<?>[4];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(() -> client.available());
+            }
+            for (Future<?> f : futures) {
+                f.get(5, TimeUnit.SECONDS);
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            // 4 requests, 2 at a time, 100ms each.
+            assertThat(elapsedMillis >= 200, is(true));
+            assertThat(simulator.getMaxInProgress(), is(2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void latency_distributions_can_be_parsed() {
+        assertThat(LatencyDistribution.parse("fixed:20").nextMillis(null), is(20L));
+        assertThat(LatencyDistribution.parse("none").nextMillis(null), is(0L));
+
+        Random random = new Random(1);
+        LatencyDistribution uniform = LatencyDistribution.parse("uniform:5-50");
+        for (int i = 0; i < 1000; i++) {
+            long millis = uniform.nextMillis(random);
+            assertThat(millis >= 5 && millis <= 50, is(true));
+        }
+        assertThat(LatencyDistribution.parse("lognormal:20,0.5").nextMillis(random) >= 0, is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalid_latency_distribution_is_rejected() {
+        LatencyDistribution.parse("gamma:1,2");
+    }
+
+    void assertBusinessError(BetsRequest request, OriginalService.Error expected) {
+        try {
+            client.bets(request);
+            fail("Expected exception");
+        } catch (BusinessLogicException e) {
+            assertThat(e.getError(), is(expected));
+        }
+    }
+}